@@ -5,6 +5,7 @@ import java.util.Calendar;
 import java.util.Collection;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
 import java.util.UUID;
 
 import org.tdl.vireo.batch.CommentService;
@@ -156,9 +157,18 @@ public class FilterTab extends AbstractVireoController {
 		if (direction == null)
 			direction = SearchDirection.ASCENDING;
 		
+		// The position is either a numeric offset or a cursor from the
+		// previous page.
 		Integer offset = 0;
-		if (session.get(NAMES[SUBMISSION][OFFSET]) != null)
-			offset = Integer.valueOf(session.get(NAMES[SUBMISSION][OFFSET]));
+		String cursor = null;
+		String position = session.get(NAMES[SUBMISSION][OFFSET]);
+		if (position != null) {
+			try {
+				offset = Integer.valueOf(position);
+			} catch (NumberFormatException nfe) {
+				cursor = position;
+			}
+		}
 		
 		// Lookup the results per page
 		Integer resultsPerPage = 100;
@@ -171,7 +181,11 @@ public class FilterTab extends AbstractVireoController {
 			}
 		}
 				
-		SearchResult<Submission> results = searcher.submissionSearch(activeFilter, orderby, direction, offset, resultsPerPage);
+		SearchResult<Submission> results;
+		if (cursor != null)
+			results = searcher.submissionSearch(activeFilter, orderby, direction, cursor, resultsPerPage);
+		else
+			results = searcher.submissionSearch(activeFilter, orderby, direction, offset, resultsPerPage);
 		
 		// Step 3: Prepare any variables for display
 		//////////
@@ -209,6 +223,9 @@ public class FilterTab extends AbstractVireoController {
 		} else {
 			facets = getDefaultFacets(SUBMISSION);
 		}
+		
+		// Count the values of each facet shown.
+		Map<SearchFacet, Map<String, Integer>> facetCounts = searcher.submissionFacetCounts(activeFilter, facets);
 				
 		// Add all search orders to the view
 		for (SearchOrder order : SearchOrder.values())
@@ -236,7 +253,7 @@ public class FilterTab extends AbstractVireoController {
 		List<Person> assignees = personRepo.findPersonsByRole(RoleType.REVIEWER);
 		List<EmailTemplate> templates = settingRepo.findAllEmailTemplates();
 		
-		render(nav, allFilters, activeFilter, results, orderby, columns, facets, direction, resultsPerPage, assignees, templates);
+		render(nav, allFilters, activeFilter, results, orderby, columns, facets, facetCounts, direction, resultsPerPage, assignees, templates);
 	}
 	
 	/**
@@ -284,9 +301,18 @@ public class FilterTab extends AbstractVireoController {
 		if (direction == null)
 			direction = SearchDirection.ASCENDING;
 		
+		// The position is either a numeric offset or a cursor from the
+		// previous page.
 		Integer offset = 0;
-		if (session.get(NAMES[ACTION_LOG][OFFSET]) != null)
-			offset = Integer.valueOf(session.get(NAMES[ACTION_LOG][OFFSET]));
+		String cursor = null;
+		String position = session.get(NAMES[ACTION_LOG][OFFSET]);
+		if (position != null) {
+			try {
+				offset = Integer.valueOf(position);
+			} catch (NumberFormatException nfe) {
+				cursor = position;
+			}
+		}
 		
 		// Lookup the results per page
 		Integer resultsPerPage = 100;
@@ -300,7 +326,11 @@ public class FilterTab extends AbstractVireoController {
 		}
 		
 		//SearchResult<ActionLog> results = subRepo.filterSearchActionLogs(activeFilter,orderby, direction, offset, limit);
-		SearchResult<ActionLog> results = searcher.actionLogSearch(activeFilter, orderby, direction, offset, resultsPerPage);
+		SearchResult<ActionLog> results;
+		if (cursor != null)
+			results = searcher.actionLogSearch(activeFilter, orderby, direction, cursor, resultsPerPage);
+		else
+			results = searcher.actionLogSearch(activeFilter, orderby, direction, offset, resultsPerPage);
 
 		// Step 3: Prepare any variables for display
 		//////////
@@ -339,6 +369,9 @@ public class FilterTab extends AbstractVireoController {
 			facets = getDefaultFacets(ACTION_LOG);
 		}
 		
+		// Count the values of each facet shown.
+		Map<SearchFacet, Map<String, Integer>> facetCounts = searcher.actionLogFacetCounts(activeFilter, facets);
+		
 		
 		// Add all search orders to the view
 		for (SearchOrder order : SearchOrder.values())
@@ -352,14 +385,14 @@ public class FilterTab extends AbstractVireoController {
 		renderArgs.put(SearchDirection.ASCENDING.name(), SearchDirection.ASCENDING);
 		renderArgs.put(SearchDirection.DESCENDING.name(), SearchDirection.DESCENDING);
 		
-		render(nav, allFilters, activeFilter, results, orderby, columns, facets, direction, resultsPerPage);
+		render(nav, allFilters, activeFilter, results, orderby, columns, facets, facetCounts, direction, resultsPerPage);
 	}
 	
 	/**
 	 * Modify the current search parameters.
 	 * 
 	 * This includes things like the sort column, direction, and pagination
-	 * offset. These parameters are received and updated in the session before
+	 * offset or cursor. These parameters are received and updated in the session before
 	 * being redirected back to the list() or log() methods.
 	 * 
 	 * @param nav
@@ -375,6 +408,7 @@ public class FilterTab extends AbstractVireoController {
 		String direction = params.get("direction");
 		Integer orderby = params.get("orderby",Integer.class);
 		Integer offset = params.get("offset", Integer.class);
+		String cursor = params.get("cursor");
 		
 		if (direction != null) {
 			// Toggle the current direction.
@@ -394,6 +428,10 @@ public class FilterTab extends AbstractVireoController {
 		
 		if (offset != null)
 			session.put(NAMES[type][OFFSET], offset);
+		
+		// Cursors share the session slot with the offset.
+		if (cursor != null && cursor.trim().length() > 0)
+			session.put(NAMES[type][OFFSET], cursor);
 			
 		if ("list".equals(nav))
 			list();
@@ -12,6 +12,7 @@ import org.tdl.vireo.export.ChunkStream;
 import org.tdl.vireo.export.DepositService;
 import org.tdl.vireo.export.ExportService;
 import org.tdl.vireo.export.Packager;
+import org.tdl.vireo.job.BatchJob;
 import org.tdl.vireo.job.JobManager;
 import org.tdl.vireo.job.JobMetadata;
 import org.tdl.vireo.job.JobStatus;
@@ -32,7 +33,11 @@ import org.tdl.vireo.search.SearchResult;
 import org.tdl.vireo.state.State;
 
 import play.Logger;
+import play.jobs.Job;
+import play.libs.F.Action;
+import play.libs.F.Either;
 import play.libs.F.Promise;
+import play.libs.F.Timeout;
 import play.modules.spring.Spring;
 import play.mvc.Catch;
 import play.mvc.Http.Cookie;
@@ -49,6 +54,9 @@ public class JobTab extends AbstractVireoController {
 	// Spring dependency
 	public static JobManager jobManager = Spring.getBeanOfType(JobManager.class);
 	
+	// How long to hold a request open waiting for a job to change.
+	public static final String POLL_TIMEOUT = "30s";
+	
 	/**
 	 * Display the progress bar. If the job is currently active then javascript
 	 * will repeataly update the state until the job is no longer active.
@@ -81,11 +89,51 @@ public class JobTab extends AbstractVireoController {
 	 * Get the most up-to-date status about a job and return it as a JSON
 	 * payload.
 	 * 
+	 * If the version of the job last seen by the client is provided, and the
+	 * job has not changed since, then the request is held open until the job
+	 * does change (or the poll times out). No thread is held while waiting, so
+	 * the client may immediately poll again after each response.
+	 * 
 	 * @param jobId
 	 *            The UUID of the job.
+	 * @param version
+	 *            (Optional) The version of the job last seen by the client.
 	 */
 	@Security(RoleType.REVIEWER)
-	public static void updateJSON(String jobId) {
+	public static void updateJSON(String jobId, Long version) {
+		
+		UUID id = UUID.fromString(jobId);
+		notFoundIfNull(id);
+		
+		final JobMetadata job = jobManager.findJob(id);
+		notFoundIfNull(job);
+		
+		if (version != null && job.getStatus().isActive()) {
+			Promise<Long> change = job.getChange(version);
+			if (!change.isDone()) {
+				await(Promise.waitEither(change, new Timeout(POLL_TIMEOUT)), new Action<Either<Long, Timeout>>() {
+					public void invoke(Either<Long, Timeout> result) {
+						renderJobJSON(job);
+					}
+				});
+			}
+		}
+		
+		renderJobJSON(job);
+	}
+	
+	/**
+	 * Pause, resume, or cancel a running batch job, and then return the job's
+	 * updated status as a JSON payload. Only the job's owner, or a manager, may
+	 * control a job.
+	 * 
+	 * @param jobId
+	 *            The UUID of the job.
+	 * @param action
+	 *            Either "pause", "resume", or "cancel".
+	 */
+	@Security(RoleType.REVIEWER)
+	public static void controlJSON(String jobId, String action) {
 		
 		UUID id = UUID.fromString(jobId);
 		notFoundIfNull(id);
@@ -93,7 +141,43 @@ public class JobTab extends AbstractVireoController {
 		JobMetadata job = jobManager.findJob(id);
 		notFoundIfNull(job);
 		
-		jobId = escapeJavaScript(jobId);
+		if (!context.isManager() && (context.getPerson() == null || !context.getPerson().getId().equals(job.getOwnerId())))
+			forbidden();
+		
+		Job running = job.getJob();
+		if (running instanceof BatchJob && job.getStatus().isActive()) {
+			BatchJob batch = (BatchJob) running;
+			
+			if ("pause".equals(action))
+				batch.pause();
+			else if ("resume".equals(action))
+				batch.resume();
+			else if ("cancel".equals(action))
+				batch.cancel();
+			else
+				error("Unknown job action: "+action);
+		}
+		
+		renderJobJSON(job);
+	}
+	
+	/**
+	 * Render the job's current status as a JSON payload.
+	 * 
+	 * @param job
+	 *            The job's metadata.
+	 */
+	private static void renderJobJSON(JobMetadata job) {
+		
+		// Read first, so any change made while rendering is seen next poll.
+		long version = job.getVersion();
+		
+		Job running = job.getJob();
+		boolean controllable = (running instanceof BatchJob) && job.getStatus().isActive();
+		boolean paused = controllable && ((BatchJob) running).isPaused();
+		boolean cancelled = controllable && ((BatchJob) running).isCancelled();
+		
+		String jobId = escapeJavaScript(job.getId().toString());
 		String name = escapeJavaScript(job.getName());
 		String status = escapeJavaScript(job.getStatus().name());
 		String progress = escapeJavaScript(job.getProgress().toString());
@@ -105,7 +189,11 @@ public class JobTab extends AbstractVireoController {
 				"\"name\" : \"" + name + "\", "+
 				"\"status\" : \"" + status + "\", "+
 				"\"progress\" : \"" + progress + "\", "+
-				"\"message\" : \"" + message + "\" "+
+				"\"message\" : \"" + message + "\", "+
+				"\"controllable\" : \"" + controllable + "\", "+
+				"\"paused\" : \"" + paused + "\", "+
+				"\"cancelled\" : \"" + cancelled + "\", "+
+				"\"version\" : \"" + version + "\" "+
 				"}");
 	}
 	
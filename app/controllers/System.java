@@ -11,6 +11,8 @@ import org.tdl.vireo.error.ErrorLog;
 import org.tdl.vireo.error.ErrorReport;
 import org.tdl.vireo.job.JobManager;
 import org.tdl.vireo.job.JobMetadata;
+import org.tdl.vireo.job.JobScheduler;
+import org.tdl.vireo.job.JobScheduler.PoolMetrics;
 import org.tdl.vireo.job.JobStatus;
 import org.tdl.vireo.model.EmailTemplate;
 import org.tdl.vireo.model.RoleType;
@@ -43,6 +45,7 @@ public class System extends AbstractVireoController {
 	public static SystemEmailTemplateService templateService = Spring.getBeanOfType(SystemEmailTemplateService.class);
 	public static SettingsRepository settingRepo = Spring.getBeanOfType(SettingsRepository.class);
 	public static JobManager jobManager = Spring.getBeanOfType(JobManager.class);
+	public static JobScheduler jobScheduler = Spring.getBeanOfType(JobScheduler.class);
 	public static ErrorLog errorLog = Spring.getBeanOfType(ErrorLog.class);
 
 	
@@ -149,7 +152,8 @@ public class System extends AbstractVireoController {
 	}
 	
 	/**
-	 * Display and manage background jobs.
+	 * Display and manage background jobs, along with how busy each family's
+	 * pool of threads is.
 	 */
 	@Security(RoleType.ADMINISTRATOR)
 	public static void jobPanel() {
@@ -157,12 +161,15 @@ public class System extends AbstractVireoController {
 		// Job data
 		List<JobMetadata> jobs = jobManager.findAllJobs();
 		
+		// Pool metrics
+		List<PoolMetrics> pools = jobScheduler.getMetrics();
+		
 		// Status Definitions
 		for (JobStatus status : JobStatus.values()) {
 			renderArgs.put(status.name(), status);
 		}
 		
-		renderTemplate("System/jobPanel.html",jobs);
+		renderTemplate("System/jobPanel.html",jobs,pools);
 	}
 	
 	/**
@@ -4,6 +4,7 @@ import java.util.Iterator;
 
 import org.tdl.vireo.batch.AssignService;
 import org.tdl.vireo.error.ErrorLog;
+import org.tdl.vireo.job.BatchJob;
 import org.tdl.vireo.job.JobManager;
 import org.tdl.vireo.job.JobMetadata;
 import org.tdl.vireo.job.JobStatus;
@@ -115,13 +116,12 @@ public class AssignServiceImpl implements AssignService {
 	/**
 	 * The background job to change assignee on submissions.
 	 */
-	public class AssignJob extends Job {
+	public class AssignJob extends BatchJob {
 
 		// Static state.
 		public final SearchFilter filter;
 		public final Long assignTo;
 		public final Long personId;
-		public final JobMetadata metadata;
 
 
 		/**
@@ -134,6 +134,7 @@ public class AssignServiceImpl implements AssignService {
 		 * 			  The id of the person to assign submissions too.
 		 */
 		public AssignJob(SearchFilter filter, Long assignTo) {
+			super(jobManager.register("Batch Assign",context.getPerson()));
 
 			this.filter = filter;
 			this.assignTo = assignTo;
@@ -143,7 +144,6 @@ public class AssignServiceImpl implements AssignService {
 			else
 				personId = null;
 			
-			metadata = jobManager.register("Batch Assign",context.getPerson());
 			metadata.setJob(this);
 			metadata.setStatus(JobStatus.READY);
 			metadata.setMessage("Waiting to start...");
@@ -170,36 +170,20 @@ public class AssignServiceImpl implements AssignService {
 				
 				// Figure out how many submissions total we are working with
 				long[] subIds = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.ASCENDING);
-				metadata.getProgress().total = subIds.length;
-				metadata.getProgress().completed = 0;
+				metadata.getProgress().setTotal(subIds.length);
+				metadata.getProgress().setCompleted(0);
 				
 								
 				// Assign!
 				metadata.setMessage("Changing assignee on submissions...");
-				for (long subId : subIds) {
-				
-					Submission sub = subRepo.findSubmission(subId);
-					
-					if(assignTo!=null) 
-						sub.setAssignee(personRepo.findPerson(assignTo));
-					else
-						sub.setAssignee(null);
-					
-					sub.save();
-					
-					// Immediately save the transaction
-					JPA.em().getTransaction().commit();
-					JPA.em().clear();
-					JPA.em().getTransaction().begin();
-					
-					// Don't let memory get out of control
-					System.gc();
-					metadata.getProgress().completed++;
+				if (processInChunks(subRepo, subIds)) {
+					metadata.setMessage(null);
+					metadata.setStatus(JobStatus.SUCCESS);
+				} else {
+					metadata.setMessage("Cancelled, "+metadata.getProgress().completed+" of "+subIds.length+" submissions were assigned.");
+					metadata.setStatus(JobStatus.CANCELLED);
 				}
 				
-				metadata.setMessage(null);
-				metadata.setStatus(JobStatus.SUCCESS);
-				
 			} catch (RuntimeException re) {
 				
 				Logger.fatal(re,"Unexpected exception while attempting to change assignee on items. Aborted, although some items may have been changed.");
@@ -221,6 +205,19 @@ public class AssignServiceImpl implements AssignService {
 				metadata.setJob(null);
 			}
 		}
+		
+		/**
+		 * Change the assignee of a single submission.
+		 */
+		@Override
+		protected void process(Submission sub) {
+			if(assignTo!=null) 
+				sub.setAssignee(personRepo.findPerson(assignTo));
+			else
+				sub.setAssignee(null);
+			
+			sub.save();
+		}
 
 	}
 
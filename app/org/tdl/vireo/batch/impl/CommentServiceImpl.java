@@ -6,6 +6,7 @@ import org.tdl.vireo.batch.CommentService;
 import org.tdl.vireo.email.EmailService;
 import org.tdl.vireo.email.VireoEmail;
 import org.tdl.vireo.error.ErrorLog;
+import org.tdl.vireo.job.BatchJob;
 import org.tdl.vireo.job.JobManager;
 import org.tdl.vireo.job.JobMetadata;
 import org.tdl.vireo.job.JobStatus;
@@ -130,7 +131,7 @@ public class CommentServiceImpl implements CommentService {
 	/**
 	 * The background job to place a comment or email on submissions.
 	 */
-	public class CommentJob extends Job {
+	public class CommentJob extends BatchJob {
 
 		// Static state.
 		public final SearchFilter filter;
@@ -140,7 +141,6 @@ public class CommentServiceImpl implements CommentService {
 		public final Boolean ccAdvisor;
 		public final Boolean sendEmail;
 		public final Long personId;
-		public final JobMetadata metadata;
 
 
 		/**
@@ -161,6 +161,11 @@ public class CommentServiceImpl implements CommentService {
 		 */
 		public CommentJob(SearchFilter filter, String comment, String subject, Boolean visibility,
 				Boolean ccAdvisor, Boolean sendEmail) {
+			
+			// Emails are committed one at a time, so the log of what has been
+			// sent always matches what has actually been sent.
+			super(jobManager.register(sendEmail ? "Batch Email" : "Batch Comment", context.getPerson()),
+					sendEmail ? 1 : DEFAULT_CHUNK_SIZE);
 
 			this.filter = filter;
 			this.comment = comment;
@@ -174,12 +179,6 @@ public class CommentServiceImpl implements CommentService {
 			else
 				personId = null;
 			
-			
-			String jobTitle = "Batch Comment"	;		
-			if (this.sendEmail)
-				jobTitle = "Batch Email";
-			metadata = jobManager.register(jobTitle,context.getPerson());
-
 			metadata.setJob(this);
 			metadata.setStatus(JobStatus.READY);
 			metadata.setMessage("Waiting to start...");
@@ -206,8 +205,8 @@ public class CommentServiceImpl implements CommentService {
 				
 				// Figure out how many submissions total we are exporting
 				long[] subIds = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.ASCENDING);
-				metadata.getProgress().total = subIds.length;
-				metadata.getProgress().completed = 0;
+				metadata.getProgress().setTotal(subIds.length);
+				metadata.getProgress().setCompleted(0);
 				
 				// Comment!
 				if (this.sendEmail)
@@ -215,62 +214,14 @@ public class CommentServiceImpl implements CommentService {
 				else
 					metadata.setMessage("Adding comments...");
 				
-				for (long subId : subIds) {
-
-					Submission sub = subRepo.findSubmission(subId);
-					
-					if(sendEmail){
-						VireoEmail email = emailService.createEmail();
-						
-						// Run the parameters
-						email.addParameters(sub);
-						email.setSubject(subject);
-						email.setMessage(comment);
-						email.applyParameterSubstitution();
-						
-						// Create list of recipients
-						email.addTo(sub.getSubmitter());
-						
-						// Create list of carbon copies
-						if(ccAdvisor && sub.getCommitteeContactEmail() != null)
-							email.addCc(sub.getCommitteeContactEmail());
-						
-						if(context.getPerson()!=null)
-							email.setReplyTo(context.getPerson());
-						
-						email.setLogOnCompletion(context.getPerson(), sub);
-						emailService.sendEmail(email, true);
-						
-					} else {
-						String entry;
-						if (subject != null && subject.trim().length() > 0)
-							entry = subject+": "+comment;
-						else
-							entry = comment;
-						
-						ActionLog log = sub.logAction(entry);
-						if(!visibility)
-							log.setPrivate(true);
-						else
-							log.setPrivate(false);
-						
-						sub.save();
-						log.save();
-					}
-					
-					// Immediately save the transaction
-					JPA.em().getTransaction().commit();
-					JPA.em().clear();
-					JPA.em().getTransaction().begin();
-					
-					// Don't let memory get out of control
-					System.gc();
-					metadata.getProgress().completed++;
+				if (processInChunks(subRepo, subIds)) {
+					metadata.setMessage(null);
+					metadata.setStatus(JobStatus.SUCCESS);
+				} else {
+					metadata.setMessage("Cancelled, "+metadata.getProgress().completed+" of "+subIds.length+" submissions were completed.");
+					metadata.setStatus(JobStatus.CANCELLED);
 				}
 				
-				metadata.setMessage(null);
-				metadata.setStatus(JobStatus.SUCCESS);
-				
 			} catch (RuntimeException re) {
 				Logger.fatal(re,"Unexpected exception while attempting to comment/email on items. Aborted, although some items may have been completed.");
 				
@@ -291,6 +242,51 @@ public class CommentServiceImpl implements CommentService {
 				metadata.setJob(null);
 			}
 		}
+		
+		/**
+		 * Comment on, or email, a single submission.
+		 */
+		@Override
+		protected void process(Submission sub) {
+			if(sendEmail){
+				VireoEmail email = emailService.createEmail();
+				
+				// Run the parameters
+				email.addParameters(sub);
+				email.setSubject(subject);
+				email.setMessage(comment);
+				email.applyParameterSubstitution();
+				
+				// Create list of recipients
+				email.addTo(sub.getSubmitter());
+				
+				// Create list of carbon copies
+				if(ccAdvisor && sub.getCommitteeContactEmail() != null)
+					email.addCc(sub.getCommitteeContactEmail());
+				
+				if(context.getPerson()!=null)
+					email.setReplyTo(context.getPerson());
+				
+				email.setLogOnCompletion(context.getPerson(), sub);
+				emailService.sendEmail(email, true);
+				
+			} else {
+				String entry;
+				if (subject != null && subject.trim().length() > 0)
+					entry = subject+": "+comment;
+				else
+					entry = comment;
+				
+				ActionLog log = sub.logAction(entry);
+				if(!visibility)
+					log.setPrivate(true);
+				else
+					log.setPrivate(false);
+				
+				sub.save();
+				log.save();
+			}
+		}
 
 	}
 
@@ -1,11 +1,13 @@
 package org.tdl.vireo.batch.impl;
 
 import java.util.Iterator;
+import java.util.List;
 
 import org.tdl.vireo.batch.DeleteService;
 import org.tdl.vireo.batch.TransitionService;
 import org.tdl.vireo.error.ErrorLog;
 import org.tdl.vireo.export.DepositService;
+import org.tdl.vireo.job.BatchJob;
 import org.tdl.vireo.job.JobManager;
 import org.tdl.vireo.job.JobMetadata;
 import org.tdl.vireo.job.JobStatus;
@@ -117,12 +119,11 @@ public class DeleteServiceImpl implements DeleteService {
 	/**
 	 * The background job to delete submissions.
 	 */
-	public class DeleteJob extends Job {
+	public class DeleteJob extends BatchJob {
 
 		// Static state.
 		public final SearchFilter filter;
 		public final Long personId;
-		public final JobMetadata metadata;
 
 
 		/**
@@ -132,6 +133,7 @@ public class DeleteServiceImpl implements DeleteService {
 		 *            The filter to use to search for submissions.
 		 */
 		public DeleteJob(SearchFilter filter) {
+			super(jobManager.register("Batch Delete",context.getPerson()));
 
 			this.filter = filter;
 
@@ -140,7 +142,6 @@ public class DeleteServiceImpl implements DeleteService {
 			else
 				personId = null;
 			
-			metadata = jobManager.register("Batch Delete",context.getPerson());
 			metadata.setJob(this);
 			metadata.setStatus(JobStatus.READY);
 			metadata.setMessage("Waiting to start...");
@@ -167,30 +168,19 @@ public class DeleteServiceImpl implements DeleteService {
 				
 				// Figure out how many submissions total we are exporting
 				long[] subIds = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.ASCENDING);
-				metadata.getProgress().total = subIds.length;
-				metadata.getProgress().completed = 0;
+				metadata.getProgress().setTotal(subIds.length);
+				metadata.getProgress().setCompleted(0);
 				
 				// Delete!
 				metadata.setMessage("Deleting submissions...");				
-				for (long subId : subIds) {
-
-					Submission sub = subRepo.findSubmission(subId);
-					sub.delete();
-					
-					
-					// Immediately save the transaction
-					JPA.em().getTransaction().commit();
-					JPA.em().clear();
-					JPA.em().getTransaction().begin();
-					
-					// Don't let memory get out of controll
-					System.gc();
-					metadata.getProgress().completed++;
+				if (processInChunks(subRepo, subIds)) {
+					metadata.setMessage(null);
+					metadata.setStatus(JobStatus.SUCCESS);
+				} else {
+					metadata.setMessage("Cancelled, "+metadata.getProgress().completed+" of "+subIds.length+" submissions were deleted.");
+					metadata.setStatus(JobStatus.CANCELLED);
 				}
 				
-				metadata.setMessage(null);
-				metadata.setStatus(JobStatus.SUCCESS);
-				
 			} catch (RuntimeException re) {
 				Logger.fatal(re,"Unexpected exception while attempting to deleting items. Aborted, although some items may have been deleted.");
 				
@@ -211,6 +201,22 @@ public class DeleteServiceImpl implements DeleteService {
 				metadata.setJob(null);
 			}
 		}
+		
+		/**
+		 * Delete the whole chunk at once, without loading any of it.
+		 */
+		@Override
+		protected void processChunk(SubmissionRepository subRepo, List<Long> chunk) {
+			subRepo.deleteSubmissions(chunk);
+		}
+		
+		/**
+		 * Delete a single submission.
+		 */
+		@Override
+		protected void process(Submission sub) {
+			sub.delete();
+		}
 
 	}
 
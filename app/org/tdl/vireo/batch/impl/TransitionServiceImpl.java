@@ -5,6 +5,7 @@ import java.util.Iterator;
 import org.tdl.vireo.batch.TransitionService;
 import org.tdl.vireo.error.ErrorLog;
 import org.tdl.vireo.export.DepositService;
+import org.tdl.vireo.job.BatchJob;
 import org.tdl.vireo.job.JobManager;
 import org.tdl.vireo.job.JobMetadata;
 import org.tdl.vireo.job.JobStatus;
@@ -145,14 +146,13 @@ public class TransitionServiceImpl implements TransitionService {
 	/**
 	 * The background job to update submissions.
 	 */
-	public class TransitionJob extends Job {
+	public class TransitionJob extends BatchJob {
 
 		// Static state.
 		public final SearchFilter filter;
 		public final State state;
 		public final DepositLocation location;
 		public final Long personId;
-		public final JobMetadata metadata;
 
 
 		/**
@@ -167,6 +167,13 @@ public class TransitionServiceImpl implements TransitionService {
 		 *            be null)
 		 */
 		public TransitionJob(SearchFilter filter, State state, DepositLocation location) {
+			
+			// Deposits are committed one at a time, so the record of what
+			// has been deposited always matches the repository.
+			super(jobManager.register(
+					(state.isDepositable() && location != null) ? "Batch Deposit" : "Batch Update Status",
+					context.getPerson()),
+					(state.isDepositable() && location != null) ? 1 : DEFAULT_CHUNK_SIZE);
 
 			this.filter = filter;
 			this.state = state;
@@ -176,12 +183,7 @@ public class TransitionServiceImpl implements TransitionService {
 				personId = context.getPerson().getId();
 			else
 				personId = null;
-
-			String jobName = "Batch Update Status";
-			if (state.isDepositable() && location != null) 
-				jobName = "Batch Deposit";
 			
-			metadata = jobManager.register(jobName,context.getPerson());
 			metadata.setJob(this);
 			metadata.setStatus(JobStatus.READY);
 			metadata.setMessage("Waiting to start...");
@@ -208,40 +210,22 @@ public class TransitionServiceImpl implements TransitionService {
 				
 				// Figure out how many submissions total we are exporting
 				long[] subIds = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.ASCENDING);
-				metadata.getProgress().total = subIds.length;
-				metadata.getProgress().completed = 0;
+				metadata.getProgress().setTotal(subIds.length);
+				metadata.getProgress().setCompleted(0);
 				
 				// Transition!
 				if (state.isDepositable() && location != null) 
 					metadata.setMessage("Depositing submissions...");
 				else
 					metadata.setMessage("Updating submissions...");
-				for (long subId : subIds) {
-
-					Submission sub = subRepo.findSubmission(subId);
-					
-					if (state.isDepositable() && location != null) {
-						// We're doing a deposit transition
-						depositService.deposit(location, sub, state, true);
-					} else {
-						// Do a regular transition
-						sub.setState(state);
-						sub.save();
-					}
-					
-					// Immediately save the transaction
-					JPA.em().getTransaction().commit();
-					JPA.em().clear();
-					JPA.em().getTransaction().begin();
-					
-					// Don't let memory get out of controll
-					System.gc();
-					metadata.getProgress().completed++;
+				if (processInChunks(subRepo, subIds)) {
+					metadata.setMessage(null);
+					metadata.setStatus(JobStatus.SUCCESS);
+				} else {
+					metadata.setMessage("Cancelled, "+metadata.getProgress().completed+" of "+subIds.length+" submissions were updated.");
+					metadata.setStatus(JobStatus.CANCELLED);
 				}
 				
-				metadata.setMessage(null);
-				metadata.setStatus(JobStatus.SUCCESS);
-				
 			} catch (RuntimeException re) {
 				Logger.fatal(re,"Unexpected exception while attempting to transition items. Aborted.");
 				
@@ -263,6 +247,21 @@ public class TransitionServiceImpl implements TransitionService {
 			}
 
 		}
+		
+		/**
+		 * Transition a single submission.
+		 */
+		@Override
+		protected void process(Submission sub) {
+			if (state.isDepositable() && location != null) {
+				// We're doing a deposit transition
+				depositService.deposit(location, sub, state, true);
+			} else {
+				// Do a regular transition
+				sub.setState(state);
+				sub.save();
+			}
+		}
 
 	}
 
@@ -10,6 +10,8 @@ import org.apache.commons.mail.SimpleEmail;
 import org.tdl.vireo.email.EmailService;
 import org.tdl.vireo.email.VireoEmail;
 import org.tdl.vireo.error.ErrorLog;
+import org.tdl.vireo.job.JobFamily;
+import org.tdl.vireo.job.ScheduledJob;
 import org.tdl.vireo.model.ActionLog;
 import org.tdl.vireo.model.Person;
 import org.tdl.vireo.model.Submission;
@@ -19,7 +21,6 @@ import play.Logger;
 import play.Play;
 import play.db.jpa.JPA;
 import play.db.jpa.JPAPlugin;
-import play.jobs.Job;
 import play.libs.Mail;
 import play.modules.spring.Spring;
 
@@ -80,7 +81,7 @@ public class EmailServiceImpl implements EmailService {
 	/**
 	 * Internal class to handle the sending of an email within a thread.
 	 */
-	public static class EmailJob extends Job {
+	public static class EmailJob extends ScheduledJob {
 
 		public VireoEmail email;
 		public SecurityContext context;
@@ -99,6 +100,7 @@ public class EmailServiceImpl implements EmailService {
 		 *            re-thrown.
 		 */
 		public EmailJob(VireoEmail email, SecurityContext context, boolean wait) {
+			super(JobFamily.EMAIL);
 			this.email = email;
 			this.context = context;
 			this.wait = wait;
@@ -1,5 +1,12 @@
 package org.tdl.vireo.export.impl;
 
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import org.apache.commons.io.IOUtils;
 import org.springframework.beans.factory.BeanNameAware;
 import org.tdl.vireo.export.Packager;
 
@@ -11,6 +18,10 @@ import org.tdl.vireo.export.Packager;
  * implementations. The goal is to help remove some of the burden of creating a
  * new packager from scratch.
  * 
+ * A packager is a single spring bean which may be generating packages for
+ * several exports and deposits at once, so implementations must not keep any
+ * per-package state in their fields or in the working directory.
+ * 
  * @author <a href="http://www.scottphillips.com">Scott Phillips</a>
  */
 public abstract class AbstractPackagerImpl implements Packager, BeanNameAware {
@@ -48,5 +59,43 @@ public abstract class AbstractPackagerImpl implements Packager, BeanNameAware {
 	public void setDisplayName(String displayName) {
 		this.displayName = displayName;
 	}
+	
+	/**
+	 * Add a file to a zip archive, copying it straight from where it is.
+	 * 
+	 * @param zos
+	 *            The archive's output stream.
+	 * @param entryName
+	 *            The name of the entry in the archive.
+	 * @param file
+	 *            The file to add.
+	 */
+	protected static void zipFile(ZipOutputStream zos, String entryName, File file) throws IOException {
+		zos.putNextEntry(new ZipEntry(entryName));
+		FileInputStream in = new FileInputStream(file);
+		try {
+			IOUtils.copy(in, zos);
+		} finally {
+			in.close();
+		}
+		zos.closeEntry();
+	}
+	
+	/**
+	 * Add generated content, such as a manifest, to a zip archive without
+	 * writing it to disk first.
+	 * 
+	 * @param zos
+	 *            The archive's output stream.
+	 * @param entryName
+	 *            The name of the entry in the archive.
+	 * @param content
+	 *            The content of the entry.
+	 */
+	protected static void zipString(ZipOutputStream zos, String entryName, String content) throws IOException {
+		zos.putNextEntry(new ZipEntry(entryName));
+		zos.write(content.getBytes());
+		zos.closeEntry();
+	}
 
 }
@@ -11,9 +11,11 @@ import org.tdl.vireo.export.DepositService;
 import org.tdl.vireo.export.Depositor;
 import org.tdl.vireo.export.ExportPackage;
 import org.tdl.vireo.export.Packager;
+import org.tdl.vireo.job.JobFamily;
 import org.tdl.vireo.job.JobManager;
 import org.tdl.vireo.job.JobMetadata;
 import org.tdl.vireo.job.JobStatus;
+import org.tdl.vireo.job.ScheduledJob;
 import org.tdl.vireo.model.ActionLog;
 import org.tdl.vireo.model.DepositLocation;
 import org.tdl.vireo.model.Person;
@@ -29,7 +31,6 @@ import org.tdl.vireo.state.State;
 
 import play.Logger;
 import play.db.jpa.JPA;
-import play.jobs.Job;
 import play.modules.spring.Spring;
 
 
@@ -127,7 +128,7 @@ public class DepositServiceImpl implements DepositService{
 	 * 3) Update the state of the submission weather it was successful or failed.
 	 * 
 	 */
-	public class DepositJob extends Job {
+	public class DepositJob extends ScheduledJob {
 		
 		// Member fields
 		public final DepositLocation location;
@@ -162,6 +163,7 @@ public class DepositServiceImpl implements DepositService{
 		 */
 		public DepositJob(DepositLocation location, Submission submission,
 				State successState, boolean runInThread) {
+			super(JobFamily.DEPOSIT);
 			this.location = location;
 			this.submission = submission;
 			this.successState = successState;
@@ -192,8 +194,8 @@ public class DepositServiceImpl implements DepositService{
 			if (!runInThread) {
 				metadata = jobManager.register("Item "+submission.getId()+" Deposit", context.getPerson());
 				metadata.setJob(this);
-				metadata.getProgress().total = 0;
-				metadata.getProgress().completed = 1;
+				metadata.getProgress().setTotal(0);
+				metadata.getProgress().setCompleted(1);
 				metadata.setStatus(JobStatus.READY);
 			} else {
 				metadata = null;
@@ -230,7 +232,7 @@ public class DepositServiceImpl implements DepositService{
 				depositSubmission(submission);
 				
 				if (metadata != null) {
-					metadata.getProgress().completed = 1;
+					metadata.getProgress().setCompleted(1);
 					metadata.setStatus(JobStatus.SUCCESS);
 				}
 				
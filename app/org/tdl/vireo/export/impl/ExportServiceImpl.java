@@ -1,16 +1,23 @@
 package org.tdl.vireo.export.impl;
 
-import java.io.BufferedInputStream;
 import java.io.BufferedOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedList;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
@@ -21,9 +28,12 @@ import org.tdl.vireo.export.ChunkStream;
 import org.tdl.vireo.export.ExportPackage;
 import org.tdl.vireo.export.ExportService;
 import org.tdl.vireo.export.Packager;
+import org.tdl.vireo.job.JobFamily;
 import org.tdl.vireo.job.JobManager;
 import org.tdl.vireo.job.JobMetadata;
+import org.tdl.vireo.job.JobScheduler;
 import org.tdl.vireo.job.JobStatus;
+import org.tdl.vireo.job.ScheduledJob;
 import org.tdl.vireo.model.Person;
 import org.tdl.vireo.model.PersonRepository;
 import org.tdl.vireo.model.Submission;
@@ -36,8 +46,8 @@ import org.tdl.vireo.search.Searcher;
 import org.tdl.vireo.security.SecurityContext;
 
 import play.Logger;
-import play.db.jpa.JPA;
-import play.jobs.Job;
+import play.Play;
+import play.db.jpa.JPAPlugin;
 import play.modules.spring.Spring;
 
 
@@ -50,6 +60,10 @@ public class ExportServiceImpl implements ExportService {
 	
 	public final static String MIME_TYPE = "application/zip";
 	public final static int BUFFER_SIZE = 10; // Each chunk may be big.
+	public final static int COPY_BUFFER_SIZE = 64 * 1024;
+	
+	// How many packages each export keeps in progress at the same time.
+	public final int threads;
 	
 	// The repositories
 	public PersonRepository personRepo;
@@ -64,7 +78,17 @@ public class ExportServiceImpl implements ExportService {
 	
 	// Maintains job metadata
 	public JobManager jobManager;
+	
+	// Runs the workers generating each export's packages.
+	public JobScheduler scheduler;
 
+	/**
+	 * Construct a new export service.
+	 */
+	public ExportServiceImpl() {
+		threads = Math.max(1, Integer.valueOf(Play.configuration.getProperty("export.threads", "4")));
+	}
+	
 	/**
 	 * @param searcher
 	 *            Set the searcher used for identify batch of submissions to be
@@ -114,6 +138,14 @@ public class ExportServiceImpl implements ExportService {
 	public void setJobManager(JobManager jobManager) {
 		this.jobManager = jobManager;
 	}
+	
+	/**
+	 * @param scheduler
+	 *            The scheduler which runs the workers generating packages.
+	 */
+	public void setJobScheduler(JobScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
 
 	@Override
 	public ChunkStream export(Packager packager, SearchFilter filter) {
@@ -137,7 +169,7 @@ public class ExportServiceImpl implements ExportService {
 	/**
 	 * Background job to export
 	 */
-	public class ExportJob extends Job {
+	public class ExportJob extends ScheduledJob {
 		
 		// Member fields
 		public final Packager packager;
@@ -159,6 +191,7 @@ public class ExportServiceImpl implements ExportService {
 		 *            The output stream where to send the export too.
 		 */
 		public ExportJob(Packager packager, SearchFilter filter, OutputStream out) {
+			super(JobFamily.EXPORT);
 			this.packager = packager;
 			this.filter = filter;
 			this.out = out;
@@ -190,6 +223,10 @@ public class ExportServiceImpl implements ExportService {
 		 * archived. The archive will be buffered, and sent directly to the
 		 * ChunkStream to be transmitted to the browser. This means we never
 		 * have the complete archive on the server at any one time.
+		 * 
+		 * Packages are generated by the export family's workers, a few
+		 * submissions ahead of this thread which writes them into the archive
+		 * in order.
 		 */
 		public void doJob() throws IOException {
 
@@ -211,25 +248,33 @@ public class ExportServiceImpl implements ExportService {
 				
 				// Figure out how many submissions total we are exporting
 				long[] subIds = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.ASCENDING);
-				meta.getProgress().total = subIds.length;
-				meta.getProgress().completed = 0;
+				meta.getProgress().setTotal(subIds.length);
+				meta.getProgress().setCompleted(0);
 				
-				// Start processing bitstreams
-				BufferedOutputStream bos = new BufferedOutputStream(out);
+				// Generate packages on several threads ahead of the zip writer,
+				// which adds them to the archive in order as each is ready.
+				BufferedOutputStream bos = new BufferedOutputStream(out, COPY_BUFFER_SIZE);
 				ZipOutputStream zos = new ZipOutputStream(bos);
 				String archiveFolder = packager.getBeanName()+File.separator;
+				
+				ExecutorService executor = scheduler.createWorkers(JobFamily.EXPORT);
+				LinkedList<Future<ExportPackage>> pending = new LinkedList<Future<ExportPackage>>();
 				try {
-					// Iterate over all the items, adding each one to the export.
-					for (long subId : subIds) {
-						Submission sub = subRepo.findSubmission(subId);
-
-						ExportPackage pkg = packager.generatePackage(sub);
+					int next = 0;
+					while (next < subIds.length || !pending.isEmpty()) {
+						
+						// Keep a few packages in progress ahead of the writer.
+						while (next < subIds.length && pending.size() < threads) {
+							pending.add(executor.submit(new PackageWorker(subIds[next++])));
+						}
+						
+						ExportPackage pkg = waitFor(pending.removeFirst());
 						try {
 							String entryName = null;
 							if(pkg.getEntryName()!=null){
 								entryName = pkg.getEntryName();
 							} else {
-								entryName = archiveFolder + "submission_" + sub.getId();
+								entryName = archiveFolder + "submission_" + pkg.getSubmission().getId();
 							}							
 							if (pkg.getFile().isDirectory()) {
 								zipDirectory(entryName + File.separator, pkg.getFile(), zos);
@@ -241,17 +286,20 @@ public class ExportServiceImpl implements ExportService {
 							pkg.delete();
 						}
 						
-						// Immediately save the transaction
-						JPA.em().getTransaction().commit();
-						JPA.em().clear();
-						JPA.em().getTransaction().begin();
-						
-						// Don't let memory get out of control
-						System.gc();
-						
-						meta.getProgress().completed++;
+						meta.getProgress().advance(1);
 					}
 				} finally {
+					// Stop any workers, and clean up packages which were
+					// generated but never written.
+					executor.shutdownNow();
+					for (Future<ExportPackage> future : pending) {
+						try {
+							future.get(1, TimeUnit.MINUTES).delete();
+						} catch (Exception e) {
+							// Nothing to clean up.
+						}
+					}
+					
 					// Ensure the ziparchive is closed.
 					try {
 						zos.close();
@@ -290,6 +338,78 @@ public class ExportServiceImpl implements ExportService {
 			meta.setJob(null);
 		}
 
+		/**
+		 * Wait for a package to be generated, passing along any failure.
+		 * 
+		 * @param future
+		 *            The package being generated.
+		 * @return The generated package.
+		 */
+		protected ExportPackage waitFor(Future<ExportPackage> future) throws IOException {
+			try {
+				return future.get();
+			} catch (InterruptedException ie) {
+				throw new RuntimeException("Interrupted while waiting for an export package.", ie);
+			} catch (ExecutionException ee) {
+				Throwable cause = ee.getCause();
+				if (cause instanceof IOException)
+					throw (IOException) cause;
+				if (cause instanceof RuntimeException)
+					throw (RuntimeException) cause;
+				throw new RuntimeException(cause);
+			}
+		}
+		
+		/**
+		 * Generate the package for one submission. Each worker runs in its own
+		 * thread, with its own database transaction and security context. The
+		 * workers share the one packager, which keeps no per-package state.
+		 */
+		protected class PackageWorker implements Callable<ExportPackage> {
+			
+			// The submission to package
+			public final long subId;
+			
+			/**
+			 * Construct a new package worker.
+			 * 
+			 * @param subId
+			 *            The id of the submission to package.
+			 */
+			public PackageWorker(long subId) {
+				this.subId = subId;
+			}
+			
+			@Override
+			public ExportPackage call() throws Exception {
+				
+				JPAPlugin.startTx(false);
+				boolean rollback = true;
+				try {
+					if (personId != null) {
+						context.login(personRepo.findPerson(personId));
+					} else {
+						context.turnOffAuthorization();
+					}
+					
+					try {
+						Submission sub = subRepo.findSubmission(subId);
+						ExportPackage pkg = packager.generatePackage(sub);
+						rollback = false;
+						return pkg;
+					} finally {
+						if (personId != null) {
+							context.logout();
+						} else {
+							context.restoreAuthorization();
+						}
+					}
+				} finally {
+					JPAPlugin.closeTx(rollback);
+				}
+			}
+		}
+		
 		/**
 		 * Zip a directory, and any sub directories that it may contain.
 		 * 
@@ -310,17 +430,8 @@ public class ExportServiceImpl implements ExportService {
 				if (file.isDirectory()) {					
 					zipDirectory(baseName + file.getName() + File.separator, file, zos);
 				} else {					
-					InputStream is = new BufferedInputStream(new FileInputStream(file));
-					
 					zos.putNextEntry(new ZipEntry(baseName + file.getName()));
-
-					byte[] buf = new byte[1024];
-					int len;
-					while ((len = is.read(buf)) > 0) {
-						zos.write(buf, 0, len);
-					}
-
-					is.close();
+					copyFile(file, zos);
 					zos.closeEntry();
 				}	
 			}
@@ -344,23 +455,40 @@ public class ExportServiceImpl implements ExportService {
 		protected void zipFile(String baseName, File file, ZipOutputStream zos)
 				throws IOException {
 			// Add all the files		
-			InputStream is = new BufferedInputStream(new FileInputStream(file));
-
 			String extension = FilenameUtils.getExtension(file.getName());
 
 			zos.putNextEntry(new ZipEntry(baseName+"."+extension));
-
-			byte[] buf = new byte[1024];
-			int len;
-			while ((len = is.read(buf)) > 0) {
-				zos.write(buf, 0, len);
-			}
-
-			is.close();
+			copyFile(file, zos);
 			zos.closeEntry();
 
 		}
 		
+		/**
+		 * Copy the contents of a file into the current archive entry. The file
+		 * is transfered straight from its channel into the archive, rather
+		 * than through a small intermediate buffer.
+		 * 
+		 * @param file
+		 *            The file to copy.
+		 * @param zos
+		 *            The output stream for the zip archive.
+		 */
+		protected void copyFile(File file, ZipOutputStream zos) throws IOException {
+			FileInputStream fis = new FileInputStream(file);
+			try {
+				FileChannel channel = fis.getChannel();
+				WritableByteChannel target = Channels.newChannel(zos);
+				
+				long position = 0;
+				long size = channel.size();
+				while (position < size) {
+					position += channel.transferTo(position, size - position, target);
+				}
+			} finally {
+				fis.close();
+			}
+		}
+		
 	}
 
 }
@@ -1,7 +1,6 @@
 package org.tdl.vireo.export.impl;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -10,7 +9,6 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FileUtils;
@@ -117,7 +115,6 @@ public class FilePackagerImpl extends AbstractPackagerImpl {
 			parameters = StringVariableReplacement.setParameters(submission);
 			
 			//Customize Entry Name
-			String entryNameTemplate = entryName;
 			String customEntryName = StringVariableReplacement.applyParameterSubstitution(entryName, parameters);
 			
 			File pkg = null;
@@ -129,9 +126,6 @@ public class FilePackagerImpl extends AbstractPackagerImpl {
 				
 				FileOutputStream fos = new FileOutputStream(pkg);
 				ZipOutputStream zos = new ZipOutputStream(fos);
-				
-				byte[] buf = new byte[1024];
-				int len;
 							
 				// Add all the attachments
 				for(Attachment attachment : submission.getAttachments())
@@ -155,40 +149,14 @@ public class FilePackagerImpl extends AbstractPackagerImpl {
 					}
 					
 					//Check fir custom directory structure set in spring
-					File exportFile = null;
-					Boolean hasDir = false;
-					
 					if(attachmentAttributes.get(attachment.getType().name()).get("directory")!=null) {
 						String dirName = (String) attachmentAttributes.get(attachment.getType().name()).get("directory");
 						dirName = dirName.replace("{FILE_NAME}", shortFileName);
 						dirName = StringVariableReplacement.applyParameterSubstitution(dirName, parameters);
-						exportFile = new File(dirName,fileName);
 						fileName = dirName + fileName;
-						hasDir = true;
-					} else {
-						exportFile = new File(fileName);
-					}
-													
-					FileUtils.copyFile(
-							attachment.getFile(),
-							exportFile
-							);
-					ZipEntry ze = new ZipEntry(fileName);
-					zos.putNextEntry(ze);
-					FileInputStream in = new FileInputStream(exportFile);
-					
-					while ((len = in.read(buf)) > 0) {
-						zos.write(buf, 0, len);
 					}
 					
-					in.close();
-					zos.closeEntry();
-					
-					if(hasDir) {
-						FileUtils.deleteDirectory(exportFile.getParentFile());
-					} else {
-						exportFile.delete();
-					}
+					zipFile(zos, fileName, attachment.getFile());
 				}
 				
 				zos.close();
@@ -242,8 +210,6 @@ public class FilePackagerImpl extends AbstractPackagerImpl {
 				}//End for loop
 				
 			}
-		
-			this.setEntryName(entryNameTemplate);
 			
 			// Create the actual package!
 			return new FilePackage(submission, pkg, customEntryName);
@@ -1,7 +1,6 @@
 package org.tdl.vireo.export.impl;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -10,7 +9,6 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.zip.ZipEntry;
 import java.util.zip.ZipOutputStream;
 
 import org.apache.commons.io.FileUtils;
@@ -214,7 +212,6 @@ public class MultipleTemplatePackagerImpl extends AbstractPackagerImpl {
 			parameters = StringVariableReplacement.setParameters(submission);
 			
 			//Customize Entry Name
-			String entryNameTemplate = entryName;
 			String customEntryName = StringVariableReplacement.applyParameterSubstitution(entryName, parameters);
 			
 			File pkg;
@@ -228,9 +225,6 @@ public class MultipleTemplatePackagerImpl extends AbstractPackagerImpl {
 				FileOutputStream fos = new FileOutputStream(pkg);
 				ZipOutputStream zos = new ZipOutputStream(fos);
 				
-				byte[] buf = new byte[1024];
-				int len;
-				
 				// Generate each of the export files
 				for (String name : templates.keySet()) {
 					VirtualFile templateFile = templates.get(name);
@@ -257,21 +251,7 @@ public class MultipleTemplatePackagerImpl extends AbstractPackagerImpl {
 						
 		
 					// Copy the manifest
-					File outputFile = new File(name);
-					FileUtils.writeStringToFile(outputFile, rendered);
-					
-					ZipEntry ze = new ZipEntry(outputFile.getName());
-					zos.putNextEntry(ze);
-					FileInputStream in = new FileInputStream(outputFile);
-					
-					while((len = in.read(buf)) > 0) {
-						zos.write(buf, 0, len);
-					}
-					
-					in.close();
-					zos.closeEntry();
-					
-					outputFile.delete();
+					zipString(zos, new File(name).getName(), rendered);
 				}
 				
 				// Add all the attachments
@@ -290,42 +270,14 @@ public class MultipleTemplatePackagerImpl extends AbstractPackagerImpl {
 						fileName = StringVariableReplacement.applyParameterSubstitution(fileName, parameters);
 					}
 					
-					File exportFile = null;
-					Boolean hasDir = false;
-					
 					if(attachmentAttributes.get(attachment.getType().name()).get("directory")!=null) {
 						String dirName = (String) attachmentAttributes.get(attachment.getType().name()).get("directory");
 						dirName = dirName.replace("{FILE_NAME}", shortFileName);
 						dirName = StringVariableReplacement.applyParameterSubstitution(dirName, parameters);
-						exportFile = new File(dirName,fileName);
 						fileName = dirName + fileName;
-						hasDir = true;
-					} else {
-						exportFile = new File(fileName);
 					}
-													
-					FileUtils.copyFile(
-							attachment.getFile(),
-							exportFile
-							);
-					ZipEntry ze = new ZipEntry(fileName);
-					zos.putNextEntry(ze);
-					FileInputStream in = new FileInputStream(exportFile);
-					
-					while ((len = in.read(buf)) > 0) {
-						zos.write(buf, 0, len);
-					}
-					
-					in.close();
-					zos.closeEntry();
 					
-					
-					//cleaning up either temp directory or temp files 
-					if(hasDir) {
-						FileUtils.deleteDirectory(exportFile.getParentFile());
-					} else {
-						exportFile.delete();
-					}
+					zipFile(zos, fileName, attachment.getFile());
 				}
 				
 				zos.close();
@@ -407,8 +359,6 @@ public class MultipleTemplatePackagerImpl extends AbstractPackagerImpl {
 				
 			}//End for loop
 			
-			this.setEntryName(entryNameTemplate);
-			
 			// Create the actual package!
 			return new TemplatePackage(submission, null, format, pkg, customEntryName);
 			
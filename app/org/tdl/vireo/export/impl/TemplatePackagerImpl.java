@@ -1,7 +1,6 @@
 package org.tdl.vireo.export.impl;
 
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.util.ArrayList;
@@ -10,7 +9,6 @@ import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Properties;
-import java.util.zip.ZipEntry;
 import java.util.zip.ZipInputStream;
 import java.util.zip.ZipOutputStream;
 
@@ -251,12 +249,10 @@ public class TemplatePackagerImpl extends AbstractPackagerImpl {
 			Map<String, String> parameters = new HashMap<String, String>();
 			parameters = StringVariableReplacement.setParameters(submission);
 			
-			// Customize Manifest Name
-			String manifestNameTemplate = manifestName;
-			manifestName = StringVariableReplacement.applyParameterSubstitution(manifestName, parameters);
+			// Customize Manifest Name, the bean is shared so keep it local.
+			String manifestName = StringVariableReplacement.applyParameterSubstitution(this.manifestName, parameters);
 			
 			// Cusotmize Entry Name			
-			String entryNameTemplate = entryName;
 			String customEntryName = StringVariableReplacement.applyParameterSubstitution(entryName, parameters);			
 			
 			// Generate the manifest.
@@ -288,23 +284,7 @@ public class TemplatePackagerImpl extends AbstractPackagerImpl {
 					ZipOutputStream zos = new ZipOutputStream(fos);
 					
 					// Copy the manifest
-					File manifestFile = new File(manifestName);
-					FileUtils.writeStringToFile(manifestFile, manifest);
-					
-					ZipEntry ze = new ZipEntry(manifestName);
-					zos.putNextEntry(ze);
-					FileInputStream in = new FileInputStream(manifestFile);
-					
-					byte[] buf = new byte[1024];
-					int len;
-					while ((len = in.read(buf)) > 0) {
-						zos.write(buf, 0, len);						
-					}
-					
-					in.close();
-					zos.closeEntry();
-					
-					manifestFile.delete();
+					zipString(zos, manifestName, manifest);
 					
 					if (attachmentTypes.size() > 0 ) {
 						
@@ -329,43 +309,15 @@ public class TemplatePackagerImpl extends AbstractPackagerImpl {
 									fileName = StringVariableReplacement.applyParameterSubstitution(fileName, parameters);
 								}
 								
-								File exportFile = null;
-								
 								// Check for custom directory structure set in spring.
-								Boolean hasDir = false;
-								
 								if(attachmentAttributes.get(attachment.getType().name()).get("directory")!=null) {
 									String dirName = (String) attachmentAttributes.get(attachment.getType().name()).get("directory");
 									dirName = dirName.replace("{FILE_NAME}", shortFileName);
 									dirName = StringVariableReplacement.applyParameterSubstitution(dirName, parameters);
-									exportFile = new File(dirName,fileName);
 									fileName = dirName + fileName;
-									hasDir = true;
-								} else {
-									exportFile = new File(fileName);
-								}
-																
-								FileUtils.copyFile(
-										attachment.getFile(),
-										exportFile
-										);
-								ze = new ZipEntry(fileName);
-								zos.putNextEntry(ze);
-								in = new FileInputStream(exportFile);
-								
-								while ((len = in.read(buf)) > 0) {
-									zos.write(buf, 0, len);
 								}
 								
-								in.close();
-								zos.closeEntry();
-								
-								//cleaning up either temp directory or temp files
-								if(hasDir) {
-									FileUtils.deleteDirectory(exportFile.getParentFile());
-								} else {
-									exportFile.delete();
-								}				
+								zipFile(zos, fileName, attachment.getFile());
 						}
 					
 					zos.close();
@@ -437,10 +389,6 @@ public class TemplatePackagerImpl extends AbstractPackagerImpl {
 					FileUtils.writeStringToFile(pkg, manifest);
 				}
 			}
-		
-			// Reset Manifest and Entry Name Placeholders
-			this.setManifestName(manifestNameTemplate);
-			this.setEntryName(entryNameTemplate);
 			
 			// Create the actual package!
 			return new TemplatePackage(submission, mimeType, format, pkg, customEntryName);
@@ -0,0 +1,191 @@
+package org.tdl.vireo.job;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.tdl.vireo.model.Submission;
+import org.tdl.vireo.model.SubmissionRepository;
+
+import play.Play;
+import play.db.jpa.JPA;
+
+/**
+ * A background job which works through a batch of submissions. The submissions
+ * are loaded a chunk at a time, and the transaction is committed (and the
+ * entity manager cleared) once per chunk rather than once per submission. The
+ * number of submissions in each chunk is set by the batch.chunkSize
+ * configuration parameter.
+ * 
+ * A batch job may be paused, resumed, or cancelled while it is running. These
+ * only take effect between chunks, so everything in a chunk is either
+ * committed together or not at all. A paused job holds onto its thread until it
+ * is either resumed or cancelled.
+ * 
+ * Batch jobs are run on the scheduler's pool for the BATCH family.
+ */
+public abstract class BatchJob extends ScheduledJob {
+
+	// The default number of submissions processed in each transaction.
+	public static final int DEFAULT_CHUNK_SIZE = Integer.valueOf(Play.configuration.getProperty("batch.chunkSize", "50"));
+
+	// The job's metadata
+	public final JobMetadata metadata;
+
+	// How many submissions are processed in each transaction.
+	public final int chunkSize;
+
+	// Flags controlling the job, they are checked between chunks.
+	protected boolean pauseRequested = false;
+	protected boolean cancelRequested = false;
+
+	/**
+	 * Construct a new batch job using the default chunk size.
+	 * 
+	 * @param metadata
+	 *            The job's metadata, already registered with the job manager.
+	 */
+	public BatchJob(JobMetadata metadata) {
+		this(metadata, DEFAULT_CHUNK_SIZE);
+	}
+
+	/**
+	 * Construct a new batch job.
+	 * 
+	 * @param metadata
+	 *            The job's metadata, already registered with the job manager.
+	 * @param chunkSize
+	 *            How many submissions are processed in each transaction.
+	 */
+	public BatchJob(JobMetadata metadata, int chunkSize) {
+		super(JobFamily.BATCH);
+
+		if (chunkSize < 1)
+			throw new IllegalArgumentException("The chunk size must be at least one.");
+
+		this.metadata = metadata;
+		this.chunkSize = chunkSize;
+	}
+
+	/**
+	 * Do the work for a single submission. This is called within the chunk's
+	 * transaction, so there is no need to commit anything.
+	 * 
+	 * @param sub
+	 *            The submission to process.
+	 */
+	protected abstract void process(Submission sub);
+
+	/**
+	 * Process each of the submissions, a chunk at a time. The job's progress is
+	 * updated after each chunk has been committed.
+	 * 
+	 * @param subRepo
+	 *            The repository to load submissions from.
+	 * @param subIds
+	 *            The ids of the submissions to process, in order.
+	 * @return True if every submission was processed, false if the job was
+	 *         cancelled before the last chunk.
+	 */
+	protected boolean processInChunks(SubmissionRepository subRepo, long[] subIds) {
+
+		for (int start = 0; start < subIds.length; start += chunkSize) {
+
+			if (!checkpoint())
+				return false;
+
+			int end = Math.min(start + chunkSize, subIds.length);
+			List<Long> chunk = new ArrayList<Long>(end - start);
+			for (int i = start; i < end; i++)
+				chunk.add(subIds[i]);
+
+			processChunk(subRepo, chunk);
+
+			// Save the chunk, and let go of everything loaded for it.
+			JPA.em().getTransaction().commit();
+			JPA.em().clear();
+			JPA.em().getTransaction().begin();
+
+			metadata.getProgress().advance(chunk.size());
+		}
+
+		return true;
+	}
+
+	/**
+	 * Do the work for a single chunk. By default the chunk's submissions are
+	 * loaded together, and then each is handed to process(). Jobs which can
+	 * work on the whole chunk at once, without loading it, may override this.
+	 * 
+	 * @param subRepo
+	 *            The repository to load submissions from.
+	 * @param chunk
+	 *            The ids of the submissions in this chunk.
+	 */
+	protected void processChunk(SubmissionRepository subRepo, List<Long> chunk) {
+		
+		// Submissions which have been deleted since the search are skipped.
+		for (Submission sub : subRepo.findSubmissions(chunk))
+			process(sub);
+	}
+
+	/**
+	 * Pause the job after the current chunk has been committed.
+	 */
+	public synchronized void pause() {
+		if (!cancelRequested)
+			pauseRequested = true;
+	}
+
+	/**
+	 * Resume a paused job.
+	 */
+	public synchronized void resume() {
+		pauseRequested = false;
+		notifyAll();
+	}
+
+	/**
+	 * Cancel the job after the current chunk has been committed. Anything
+	 * already committed is left as is.
+	 */
+	public synchronized void cancel() {
+		cancelRequested = true;
+		pauseRequested = false;
+		notifyAll();
+	}
+
+	/**
+	 * @return True if the job has been asked to pause.
+	 */
+	public synchronized boolean isPaused() {
+		return pauseRequested;
+	}
+
+	/**
+	 * @return True if the job has been asked to cancel.
+	 */
+	public synchronized boolean isCancelled() {
+		return cancelRequested;
+	}
+
+	/**
+	 * Called between chunks, block for as long as the job is paused.
+	 * 
+	 * @return True if the job should continue, false if it has been cancelled.
+	 */
+	protected synchronized boolean checkpoint() {
+		if (pauseRequested && !cancelRequested) {
+			metadata.setStatus(JobStatus.PAUSED);
+			while (pauseRequested && !cancelRequested) {
+				try {
+					wait();
+				} catch (InterruptedException ie) {
+					cancelRequested = true;
+				}
+			}
+			if (!cancelRequested)
+				metadata.setStatus(JobStatus.RUNNING);
+		}
+		return !cancelRequested;
+	}
+}
@@ -0,0 +1,78 @@
+package org.tdl.vireo.job;
+
+/**
+ * The families of background jobs. Each family is run on its own pool of
+ * threads, so a long running job from one family is never able to starve the
+ * jobs of another. The number of threads and the priority of each family may
+ * be configured with the jobs.<family>.threads and jobs.<family>.priority
+ * parameters, where the family is the lower case name.
+ * 
+ * Families whose jobs split their work between several threads, like a
+ * rebuild or an export, also have a pool of workers. Its size is configured
+ * with the jobs.<family>.workers parameter.
+ */
+public enum JobFamily {
+
+	// Updates and commits to the search index.
+	INDEX(1, 0, JobPriority.INTERACTIVE),
+
+	// Rebuilding the search index from scratch.
+	REBUILD(1, 4, JobPriority.BULK),
+
+	// Depositing single submissions into a repository.
+	DEPOSIT(2, 0, JobPriority.INTERACTIVE),
+
+	// Sending emails.
+	EMAIL(2, 0, JobPriority.INTERACTIVE),
+
+	// Batch operations across many submissions.
+	BATCH(2, 0, JobPriority.BULK),
+
+	// Exporting packages of many submissions. Each export streams to the
+	// browser as it runs, so several may run at once.
+	EXPORT(4, 4, JobPriority.BULK);
+
+	// The default number of threads, workers, and priority, for the family.
+	private int threads;
+	private int workers;
+	private JobPriority priority;
+
+	/**
+	 * Private family constructor
+	 * 
+	 * @param threads
+	 *            The default number of threads.
+	 * @param workers
+	 *            The default number of worker threads.
+	 * @param priority
+	 *            The default priority.
+	 */
+	JobFamily(int threads, int workers, JobPriority priority) {
+		this.threads = threads;
+		this.workers = workers;
+		this.priority = priority;
+	}
+
+	/**
+	 * @return The default number of threads for the family.
+	 */
+	public int getDefaultThreads() {
+		return threads;
+	}
+
+	/**
+	 * @return The default number of worker threads for the family, zero if
+	 *         the family's jobs have no workers.
+	 */
+	public int getDefaultWorkers() {
+		return workers;
+	}
+
+	/**
+	 * @return The default priority of the family's jobs.
+	 */
+	public JobPriority getDefaultPriority() {
+		return priority;
+	}
+
+}
@@ -2,6 +2,7 @@ package org.tdl.vireo.job;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.TimeUnit;
 
 import org.tdl.vireo.model.Person;
 
@@ -63,12 +64,25 @@ public interface JobManager {
 
 	
 	/**
-	 * Yield the current thread until there are no more active jobs.
+	 * Block the current thread until there are no more active jobs.
 	 */
 	public void waitForJobs();
 	
 	/**
-	 * Yield the current thread until the specified job has completed.
+	 * Block the current thread until there are no more active jobs, or the
+	 * timeout has passed.
+	 * 
+	 * @param timeout
+	 *            The maximum time to wait.
+	 * @param unit
+	 *            The unit of the timeout.
+	 * @return True if there are no more active jobs, false if the timeout
+	 *         passed first.
+	 */
+	public boolean waitForJobs(long timeout, TimeUnit unit);
+	
+	/**
+	 * Block the current thread until the specified job has completed.
 	 * 
 	 * @param id
 	 *            The UUID of the job to wait for.
@@ -76,7 +90,22 @@ public interface JobManager {
 	public void waitForJobs(UUID id);
 
 	/**
-	 * Yield the current thread until all jobs by the specified owner has
+	 * Block the current thread until the specified job has completed, or the
+	 * timeout has passed.
+	 * 
+	 * @param id
+	 *            The UUID of the job to wait for.
+	 * @param timeout
+	 *            The maximum time to wait.
+	 * @param unit
+	 *            The unit of the timeout.
+	 * @return True if the job has completed, false if the timeout passed
+	 *         first.
+	 */
+	public boolean waitForJobs(UUID id, long timeout, TimeUnit unit);
+
+	/**
+	 * Block the current thread until all jobs by the specified owner has
 	 * completed.
 	 * 
 	 * @param owner
@@ -85,7 +114,7 @@ public interface JobManager {
 	public void waitForJobs(Person owner);
 
 	/**
-	 * Yield the current thread until all jobs of the specified type have
+	 * Block the current thread until all jobs of the specified type have
 	 * completed.
 	 * 
 	 * @param type
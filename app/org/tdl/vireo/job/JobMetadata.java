@@ -1,8 +1,10 @@
 package org.tdl.vireo.job;
 
 import java.util.UUID;
+import java.util.concurrent.Future;
 
 import play.jobs.Job;
+import play.libs.F.Promise;
 
 /**
  * Metadata about a background job.
@@ -50,6 +52,31 @@ public interface JobMetadata {
 	 */
 	public void setStatus(JobStatus status);
 
+	/**
+	 * @return A future which is done, with the job's final status, once the
+	 *         job is no longer active. Waiting callers may block on this,
+	 *         optionally with a timeout.
+	 */
+	public Future<JobStatus> getCompletion();
+
+	/**
+	 * @return A number which increases each time the job's status, progress,
+	 *         or message changes.
+	 */
+	public long getVersion();
+
+	/**
+	 * Wait for the job to change. Because this is a promise, a controller may
+	 * await it without holding onto a request thread.
+	 * 
+	 * @param version
+	 *            The last version of the job seen by the caller.
+	 * @return A promise redeemed with the job's new version the next time the
+	 *         job changes. If the job has already moved past the provided
+	 *         version then the promise is redeemed immediately.
+	 */
+	public Promise<Long> getChange(long version);
+
 	/**
 	 * @return The job's progress object. This object maintains metadata about
 	 *         how for along the job has completed processing.
@@ -88,14 +115,58 @@ public interface JobMetadata {
 
 	/**
 	 * A progress object which maintains the current progress of a running job.
+	 * 
+	 * Jobs should update their progress through the setters, so that anyone
+	 * waiting on the job is told about the change.
 	 */
 	public class Progress {
 
 		// How many things need to be done.
-		public int total = 0;
+		public volatile int total = 0;
 
 		// How many things have been completed so far.
-		public int completed = 0;
+		public volatile int completed = 0;
+
+		/**
+		 * Set the total number of "things" to be done.
+		 * 
+		 * @param total
+		 *            The new total.
+		 */
+		public void setTotal(int total) {
+			this.total = total;
+			changed();
+		}
+
+		/**
+		 * Set the number of "things" which have been completed so far.
+		 * 
+		 * @param completed
+		 *            The new number completed.
+		 */
+		public void setCompleted(int completed) {
+			this.completed = completed;
+			changed();
+		}
+
+		/**
+		 * Record that more "things" have been completed.
+		 * 
+		 * @param count
+		 *            How many more have been completed.
+		 */
+		public void advance(int count) {
+			this.completed += count;
+			changed();
+		}
+
+		/**
+		 * Called after the progress has changed. The job's metadata overrides
+		 * this to tell anyone waiting on the job.
+		 */
+		protected void changed() {
+			// Nothing by default
+		}
 
 		/**
 		 * @return The total number of "things" to be done.
@@ -0,0 +1,37 @@
+package org.tdl.vireo.job;
+
+/**
+ * How urgently a background job should be run. Interactive jobs are those a
+ * person is likely waiting on, and are always started ahead of any bulk jobs
+ * queued in the same family. The threads of interactive families are also
+ * given a higher thread priority than the threads of bulk families.
+ */
+public enum JobPriority {
+
+	// Someone is waiting on the job, such as an index commit or single deposit.
+	INTERACTIVE(Thread.NORM_PRIORITY),
+
+	// Work across many submissions which may take a while anyway.
+	BULK(Thread.NORM_PRIORITY - 1);
+
+	// The priority given to threads running jobs of this priority.
+	private int threadPriority;
+
+	/**
+	 * Private priority constructor
+	 * 
+	 * @param threadPriority
+	 *            The java thread priority.
+	 */
+	JobPriority(int threadPriority) {
+		this.threadPriority = threadPriority;
+	}
+
+	/**
+	 * @return The java thread priority for threads running these jobs.
+	 */
+	public int getThreadPriority() {
+		return threadPriority;
+	}
+
+}
@@ -0,0 +1,111 @@
+package org.tdl.vireo.job;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+
+import play.libs.F.Promise;
+
+/**
+ * The job scheduler runs background jobs on a separate, bounded, pool of
+ * threads for each family of jobs. Within a family interactive jobs are always
+ * started before bulk jobs, otherwise jobs are started in the order they were
+ * scheduled. Jobs which extend ScheduledJob are handed to the scheduler
+ * whenever they are started with now().
+ */
+public interface JobScheduler {
+
+	/**
+	 * Schedule a job to be run as soon as a thread in its family is free.
+	 * 
+	 * @param job
+	 *            The job to run.
+	 * @return A promise redeemed with the job's result once it has run.
+	 */
+	public <V> Promise<V> schedule(ScheduledJob<V> job);
+
+	/**
+	 * Create an executor for the workers of a running job, such as the threads
+	 * generating the packages of an export. The workers are queued on their
+	 * family's pool of workers, with the priority of the job creating them, so
+	 * every job of the family shares the same bounded set of worker threads.
+	 * 
+	 * @param family
+	 *            The family whose workers' pool runs the workers.
+	 * @return A new executor, which should be shut down once the job is done
+	 *         with it.
+	 */
+	public ExecutorService createWorkers(JobFamily family);
+
+	/**
+	 * @return The current metrics of each family's pool, in the order of the
+	 *         families, each followed by the family's workers' pool if it has
+	 *         one.
+	 */
+	public List<PoolMetrics> getMetrics();
+
+	/**
+	 * A snapshot of the metrics of a single family's pool.
+	 */
+	public class PoolMetrics {
+
+		// The family of jobs run by the pool.
+		public final JobFamily family;
+
+		// Whether this is the pool of the family's workers.
+		public final boolean workers;
+
+		// The default priority of the family's jobs.
+		public final JobPriority priority;
+
+		// The maximum number of threads.
+		public final int threads;
+
+		// How many jobs are running right now.
+		public final int active;
+
+		// How many jobs are waiting for a thread.
+		public final int queued;
+
+		// How many jobs have been started since the server started.
+		public final long started;
+
+		// The total time (in milliseconds) started jobs spent waiting.
+		public final long totalWait;
+
+		// The longest any started job spent waiting.
+		public final long longestWait;
+
+		// How long the oldest job in the queue has been waiting so far.
+		public final long oldestQueued;
+
+		/**
+		 * Construct a new snapshot of a pool's metrics.
+		 */
+		public PoolMetrics(JobFamily family, boolean workers,
+				JobPriority priority, int threads, int active, int queued,
+				long started, long totalWait, long longestWait,
+				long oldestQueued) {
+			this.family = family;
+			this.workers = workers;
+			this.priority = priority;
+			this.threads = threads;
+			this.active = active;
+			this.queued = queued;
+			this.started = started;
+			this.totalWait = totalWait;
+			this.longestWait = longestWait;
+			this.oldestQueued = oldestQueued;
+		}
+
+		/**
+		 * @return The average time (in milliseconds) started jobs spent
+		 *         waiting for a thread.
+		 */
+		public long getAverageWait() {
+			if (started == 0)
+				return 0;
+			return totalWait / started;
+		}
+	}
+
+}
@@ -16,6 +16,9 @@ public enum JobStatus {
 	// The job is currently running.
 	RUNNING(true),
 
+	// The job has been paused, and is waiting to be resumed or cancelled.
+	PAUSED(true),
+
 	// The job has completed with out error successfully.
 	SUCCESS(false),
 
@@ -46,7 +49,7 @@ public enum JobStatus {
 	}
 
 	// Helpfull definitions of all active and final states.
-	public static JobStatus[] ACTIVE = { WAITING, READY, RUNNING };
+	public static JobStatus[] ACTIVE = { WAITING, READY, RUNNING, PAUSED };
 	public static JobStatus[] COMPLETED = { SUCCESS, FAILED, CANCELLED };
 
 }
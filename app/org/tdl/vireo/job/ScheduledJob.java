@@ -0,0 +1,117 @@
+package org.tdl.vireo.job;
+
+import play.jobs.Job;
+import play.libs.F.Promise;
+import play.modules.spring.Spring;
+
+/**
+ * A background job which belongs to a family of jobs. When the job is started
+ * with now() it is handed to the job scheduler, and run on its family's own
+ * pool of threads rather than the single pool shared by all of Play's jobs.
+ * 
+ * A job takes the priority configured for its family, unless it is given one.
+ * Jobs created while a bulk job is running, such as the deposits and emails of
+ * a batch operation, are bulk jobs themselves so they queue behind the jobs
+ * someone is waiting on.
+ */
+public abstract class ScheduledJob<V> extends Job<V> {
+
+	// The priority of the job being run by the current thread, if any.
+	private static final ThreadLocal<JobPriority> running = new ThreadLocal<JobPriority>();
+
+	// The family this job belongs to.
+	public final JobFamily family;
+
+	// The priority of this job, or null to use its family's priority.
+	protected JobPriority priority = null;
+
+	/**
+	 * Construct a new scheduled job.
+	 * 
+	 * @param family
+	 *            The family this job belongs to.
+	 */
+	public ScheduledJob(JobFamily family) {
+		if (family == null)
+			throw new IllegalArgumentException("A job family is required.");
+
+		this.family = family;
+
+		if (running.get() == JobPriority.BULK)
+			this.priority = JobPriority.BULK;
+	}
+
+	/**
+	 * @return The priority of the job being run by the current thread, or null
+	 *         if the thread is not running a scheduled job.
+	 */
+	public static JobPriority getRunningPriority() {
+		return running.get();
+	}
+
+	/**
+	 * @return The priority of this job, or null to use the priority configured
+	 *         for its family.
+	 */
+	public JobPriority getPriority() {
+		return priority;
+	}
+
+	/**
+	 * @param priority
+	 *            The priority of this job, or null to use the priority
+	 *            configured for its family.
+	 */
+	public void setPriority(JobPriority priority) {
+		this.priority = priority;
+	}
+
+	/**
+	 * Schedule the job to be run on its family's pool. If the scheduler is not
+	 * available, such as while the application is starting and spring's
+	 * context is not ready, then the job is run on Play's shared pool instead.
+	 */
+	@Override
+	public Promise<V> now() {
+		JobScheduler scheduler = null;
+		try {
+			scheduler = Spring.getBeanOfType(JobScheduler.class);
+		} catch (RuntimeException re) {
+			// Spring has not been started yet.
+		}
+
+		if (scheduler == null)
+			return super.now();
+
+		return scheduler.schedule(this);
+	}
+
+	/**
+	 * Run the job in the current thread, within its own invocation context,
+	 * and then redeem the promise with the result. This is called by the
+	 * scheduler's threads.
+	 * 
+	 * @param promise
+	 *            The promise to redeem once the job has run.
+	 * @param priority
+	 *            The priority the job is being run with.
+	 */
+	public void runAndRedeem(Promise<V> promise, JobPriority priority) {
+		V result;
+		running.set(priority);
+		try {
+			result = call();
+		} finally {
+			running.remove();
+		}
+
+		if (wasError) {
+			if (lastException != null)
+				promise.invokeWithException(lastException);
+			else
+				promise.invokeWithException(new Exception("Unknown error"));
+		} else {
+			promise.invoke(result);
+		}
+	}
+}
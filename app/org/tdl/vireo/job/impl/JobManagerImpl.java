@@ -1,13 +1,21 @@
 package org.tdl.vireo.job.impl;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.Iterator;
-import java.util.LinkedList;
+import java.util.EnumMap;
 import java.util.List;
-import java.util.Queue;
+import java.util.Map;
+import java.util.TreeSet;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.tdl.vireo.job.JobManager;
 import org.tdl.vireo.job.JobMetadata;
@@ -17,166 +25,191 @@ import org.tdl.vireo.model.Person;
 /**
  * Implementation of the job manager interface.
  * 
- * This class provides synchronized access to a list of background operations.
+ * Jobs are kept in a concurrent registry, ordered by when they were registered
+ * and indexed by their id, owner, and status. None of the lookups take a global
+ * lock, so polling the status of one job never waits on another job being
+ * registered. The status index is kept up to date by each job's metadata as its
+ * status changes.
  * 
  * @author <a href="http://www.scottphillips.com">Scott Phillips</a>
  */
 public class JobManagerImpl implements JobManager {
 
 	// Maximum operation size
-	public int maxSize = 50;
+	public volatile int maxSize = 50;
 	
-	// The list of currently running background operations
-	protected List<JobMetadata> jobs = Collections.synchronizedList(new LinkedList());	
+	// All registered jobs, keyed by the order they were registered in.
+	protected final ConcurrentSkipListMap<Long, JobMetadataImpl> jobs = new ConcurrentSkipListMap<Long, JobMetadataImpl>();
+	protected final AtomicLong sequence = new AtomicLong();
+	protected final AtomicInteger size = new AtomicInteger();
+	
+	// Indexes from id, owner, and status to the registered jobs.
+	protected final ConcurrentHashMap<UUID, JobMetadataImpl> byId = new ConcurrentHashMap<UUID, JobMetadataImpl>();
+	protected final ConcurrentHashMap<Long, ConcurrentSkipListSet<Long>> byOwner = new ConcurrentHashMap<Long, ConcurrentSkipListSet<Long>>();
+	protected final Map<JobStatus, ConcurrentSkipListSet<Long>> byStatus = new EnumMap<JobStatus, ConcurrentSkipListSet<Long>>(JobStatus.class);
+	
+	/**
+	 * Construct a new, empty, job manager.
+	 */
+	public JobManagerImpl() {
+		// The status index never changes shape after this, only its sets do.
+		for (JobStatus status : JobStatus.values())
+			byStatus.put(status, new ConcurrentSkipListSet<Long>());
+	}
 	
 	@Override
-	public synchronized JobMetadata findJob(UUID jobId) {
+	public JobMetadata findJob(UUID jobId) {
 		
 		if (jobId == null)
 			throw new IllegalArgumentException("Unable to find background operations with a specific id without the id specified.");
 		
-		
-		for (JobMetadata job: jobs) {
-			if (jobId.equals(job.getId()))
-				return job;
-		}
-		
-		return null;
+		return byId.get(jobId);
 	}
 
 	@Override
-	public synchronized List<JobMetadata> findAllJobs() {
-		List<JobMetadata> all = new ArrayList<JobMetadata>(jobs);
-		Collections.reverse(all);
-		return all;
+	public List<JobMetadata> findAllJobs() {
+		return new ArrayList<JobMetadata>(jobs.descendingMap().values());
 	}
 	
 	@Override
-	public synchronized List<JobMetadata> findJobsByStatus(JobStatus ... statusList) {
+	public List<JobMetadata> findJobsByStatus(JobStatus ... statusList) {
 		
-		List<JobMetadata> found = new ArrayList<JobMetadata>();
+		// Merge the index for each status, newest first.
+		TreeSet<Long> sequences = new TreeSet<Long>(Collections.reverseOrder());
+		for (JobStatus status : statusList)
+			sequences.addAll(byStatus.get(status));
 		
-		for (JobMetadata job: jobs) {
-			for (JobStatus status : statusList) {
-				if (job.getStatus() == status) {
-					found.add(job);
-				}
-			}
+		List<JobMetadata> found = new ArrayList<JobMetadata>();
+		for (Long seq : sequences) {
+			JobMetadata job = jobs.get(seq);
+			if (job != null && Arrays.asList(statusList).contains(job.getStatus()))
+				found.add(job);
 		}
 		
-		Collections.reverse(found);
 		return found;
 	}
 
 	@Override
-	public synchronized List<JobMetadata> findJobsByOwner(Person owner) {
+	public List<JobMetadata> findJobsByOwner(Person owner) {
 		if (owner == null || owner.getId() == null)
 			throw new IllegalArgumentException("Unable to find background operations from a specific owner without the owner specified.");
 		
 		List<JobMetadata> found = new ArrayList<JobMetadata>();
 		
-		Long personId = owner.getId();
+		ConcurrentSkipListSet<Long> sequences = byOwner.get(owner.getId());
+		if (sequences == null)
+			return found;
 		
-		for (JobMetadata job: jobs) {
-			if (personId.equals(job.getOwnerId())) {
+		for (Long seq : sequences.descendingSet()) {
+			JobMetadata job = jobs.get(seq);
+			if (job != null)
 				found.add(job);
-			}
 		}
 		
-		Collections.reverse(found);
 		return found;
 	}
 
 	@Override
-	public synchronized List<JobMetadata> findJobsByType(Class type) {
+	public List<JobMetadata> findJobsByType(Class type) {
 		if ( type == null )
 			throw new IllegalArgumentException("Unable to find background operations of a specific type without the type specified.");
 		
 		List<JobMetadata> found = new ArrayList<JobMetadata>();
 		
-		for (JobMetadata job: jobs) {
+		for (JobMetadata job: jobs.descendingMap().values()) {
 			if (type.isInstance(job)) {
 				found.add(job);
 			}
 		}
 		
-		Collections.reverse(found);
 		return found;
 	}
 	
 	@Override
 	public void waitForJobs(UUID id) {
+		waitForJobs(id, -1, TimeUnit.MILLISECONDS);
+	}
+	
+	@Override
+	public boolean waitForJobs(UUID id, long timeout, TimeUnit unit) {
 		
 		JobMetadata job = this.findJob(id);
 		
 		if (job == null)
-			return;
+			return true;
 		
-		while (job.getStatus().isActive()) {
-			Thread.yield();
-		}
+		return await(Collections.singletonList(job), deadline(timeout, unit));
 	}
 
 	@Override
 	public void waitForJobs() {
+		waitForJobs(-1, TimeUnit.MILLISECONDS);
+	}
+	
+	@Override
+	public boolean waitForJobs(long timeout, TimeUnit unit) {
+		
+		long deadline = deadline(timeout, unit);
 		
-		while (this.findJobsByStatus(JobStatus.ACTIVE).size() > 0) {
-			Thread.yield();
+		// New jobs may be registered while we wait, so keep checking.
+		List<JobMetadata> active;
+		while ((active = this.findJobsByStatus(JobStatus.ACTIVE)).size() > 0) {
+			if (!await(active, deadline))
+				return false;
 		}
+		return true;
 	}
 	
 	@Override
 	public void waitForJobs(Person owner) {
 		
-		int active;
-		do {
-			active = 0;
-			List<JobMetadata> jobs = this.findJobsByOwner(owner);
-			for (JobMetadata job : jobs) {
-				if (job.getStatus().isActive()) {
-					active++;
-				}
-			}
-			
-			if (active > 0)
-				Thread.yield();
-			
-		} while ( active > 0 );
-		
+		List<JobMetadata> jobs;
+		while (hasActive(jobs = this.findJobsByOwner(owner))) {
+			if (!await(jobs, -1))
+				return;
+		}
 	}
 
 	@Override
 	public void waitForJobs(Class type) {
 	
-		int active;
-		do {
-			active = 0;
-			List<JobMetadata> jobs = this.findJobsByType(type);
-			for (JobMetadata job : jobs) {
-				if (job.getStatus().isActive()) {
-					active++;
-				}
-			}
-			
-			if (active > 0)
-				Thread.yield();
-			
-		} while ( active > 0 );
+		List<JobMetadata> jobs;
+		while (hasActive(jobs = this.findJobsByType(type))) {
+			if (!await(jobs, -1))
+				return;
+		}
 	}
 
 	@Override
-	public synchronized JobMetadata register(String name, Person owner) {
+	public JobMetadata register(String name, Person owner) {
 		
 		Long ownerId = null;
 		if (owner != null && owner.getId() != null)
 			ownerId = owner.getId();
 		
 		JobMetadataImpl job = new JobMetadataImpl(name, ownerId);
-
-		jobs.add(job);
+		
+		synchronized (job) {
+			job.sequence = sequence.incrementAndGet();
+			job.manager = this;
+			
+			byId.put(job.getId(), job);
+			byStatus.get(job.getStatus()).add(job.sequence);
+			if (ownerId != null) {
+				ConcurrentSkipListSet<Long> owned = byOwner.get(ownerId);
+				if (owned == null) {
+					ConcurrentSkipListSet<Long> created = new ConcurrentSkipListSet<Long>();
+					owned = byOwner.putIfAbsent(ownerId, created);
+					if (owned == null)
+						owned = created;
+				}
+				owned.add(job.sequence);
+			}
+			jobs.put(job.sequence, job);
+		}
+		size.incrementAndGet();
+		
 		_prune();
-
-
 		
 		return job;
 	}
@@ -188,12 +221,42 @@ public class JobManagerImpl implements JobManager {
 	}
 	
 	@Override
-	public synchronized void deregister(JobMetadata job) {
+	public void deregister(JobMetadata job) {
 		
-		jobs.remove(job);
-
+		if (job == null)
+			return;
+		
+		JobMetadataImpl registered = byId.remove(job.getId());
+		if (registered == null)
+			return;
+		
+		synchronized (registered) {
+			jobs.remove(registered.sequence);
+			for (ConcurrentSkipListSet<Long> sequences : byStatus.values())
+				sequences.remove(registered.sequence);
+			if (registered.getOwnerId() != null) {
+				ConcurrentSkipListSet<Long> owned = byOwner.get(registered.getOwnerId());
+				if (owned != null)
+					owned.remove(registered.sequence);
+			}
+			registered.manager = null;
+		}
+		size.decrementAndGet();
 	}
 	
+	/**
+	 * Called by a registered job, while holding its own lock, after its
+	 * status has changed so the status index can be updated.
+	 * 
+	 * @param job
+	 *            The job which changed.
+	 * @param previous
+	 *            The job's previous status.
+	 */
+	protected void statusChanged(JobMetadataImpl job, JobStatus previous) {
+		byStatus.get(job.getStatus()).add(job.sequence);
+		byStatus.get(previous).remove(job.sequence);
+	}
 	
 	/**
 	 * Set the maximum size for the operation queue.
@@ -214,32 +277,93 @@ public class JobManagerImpl implements JobManager {
 	private void _prune() {
 		
 		// Prune if we are too big.
-		while (jobs.size() > maxSize) {
+		while (size.get() > maxSize) {
 			
-			// Find the last completed operation and remove that.
-			Iterator<JobMetadata> itr = jobs.iterator();
-			while (itr.hasNext()) {
-				if (!itr.next().getStatus().isActive()) {
-					itr.remove();
+			// Find the oldest completed operation and remove that.
+			JobMetadataImpl completed = null;
+			for (JobMetadataImpl job : jobs.values()) {
+				if (!job.getStatus().isActive()) {
+					completed = job;
 					break;
 				}
 			}
 			
 			// if we exhausted the list and didn't find any to prune then just return. There is nothing we can do here.
-			if (!itr.hasNext())
+			if (completed == null)
 				return;
 			
+			deregister(completed);
 		}
 	}
 	
+	/**
+	 * Block until each of the jobs has completed, without using any CPU while
+	 * waiting.
+	 * 
+	 * @param jobs
+	 *            The jobs to wait for.
+	 * @param deadline
+	 *            The System.nanoTime() after which to give up, or -1 to wait
+	 *            forever.
+	 * @return True if all the jobs completed, false if the deadline passed or
+	 *         the thread was interrupted.
+	 */
+	protected static boolean await(List<JobMetadata> jobs, long deadline) {
+		
+		for (JobMetadata job : jobs) {
+			if (!job.getStatus().isActive())
+				continue;
+			
+			try {
+				if (deadline < 0) {
+					job.getCompletion().get();
+				} else {
+					long remaining = deadline - System.nanoTime();
+					if (remaining <= 0)
+						return false;
+					job.getCompletion().get(remaining, TimeUnit.NANOSECONDS);
+				}
+			} catch (InterruptedException ie) {
+				Thread.currentThread().interrupt();
+				return false;
+			} catch (ExecutionException ee) {
+				// The job has still finished.
+			} catch (TimeoutException te) {
+				return false;
+			}
+		}
+		return true;
+	}
+	
+	/**
+	 * @return True if any of the jobs are still active.
+	 */
+	protected static boolean hasActive(List<JobMetadata> jobs) {
+		for (JobMetadata job : jobs) {
+			if (job.getStatus().isActive())
+				return true;
+		}
+		return false;
+	}
+	
+	/**
+	 * @return The System.nanoTime() deadline for a timeout, or -1 if the
+	 *         timeout is negative, meaning wait forever.
+	 */
+	protected static long deadline(long timeout, TimeUnit unit) {
+		if (timeout < 0)
+			return -1;
+		return System.nanoTime() + unit.toNanos(timeout);
+	}
+	
 	/**
 	 * Helpfull method to display the state of the job queue
 	 */
-	public synchronized String toString() {
+	public String toString() {
 		
 		StringBuilder string = new StringBuilder();
 		
-		for (JobMetadata job : jobs) {
+		for (JobMetadata job : jobs.values()) {
 			string.append(job.getId());
 			string.append(": ");
 			string.append(job.getStatus().name());
@@ -1,12 +1,14 @@
 package org.tdl.vireo.job.impl;
 
 import java.util.UUID;
+import java.util.concurrent.Future;
 
 import org.tdl.vireo.job.JobManager;
 import org.tdl.vireo.job.JobMetadata;
 import org.tdl.vireo.job.JobStatus;
 
 import play.jobs.Job;
+import play.libs.F.Promise;
 import play.modules.spring.Spring;
 
 /**
@@ -27,10 +29,26 @@ public class JobMetadataImpl implements JobMetadata {
 	public final String name;
 
 	// Dynamic attributes
-	public JobStatus status = JobStatus.WAITING;
-	public Progress progress = new Progress();
+	public volatile JobStatus status = JobStatus.WAITING;
+	public Progress progress = new Progress() {
+		@Override
+		protected void changed() {
+			JobMetadataImpl.this.changed();
+		}
+	};
 	public Job job = null;
-	public String message = null;
+	public volatile String message = null;
+	
+	// Redeemed once the job reaches a final status.
+	public final Promise<JobStatus> completion = new Promise<JobStatus>();
+	
+	// Bumped on every change, and the promise redeemed by the next change.
+	protected long version = 0;
+	protected Promise<Long> change = new Promise<Long>();
+	
+	// The manager this job is registered with, told about status changes.
+	protected JobManagerImpl manager = null;
+	protected long sequence = 0;
 
 	/**
 	 * Construct a new job metadata without any owner.
@@ -80,7 +98,38 @@ public class JobMetadataImpl implements JobMetadata {
 	
 	@Override
 	public void setStatus(JobStatus status) {
-		this.status = status;
+		synchronized (this) {
+			JobStatus previous = this.status;
+			this.status = status;
+			
+			if (manager != null && previous != status)
+				manager.statusChanged(this, previous);
+		}
+		
+		changed();
+		if (!status.isActive())
+			completion.invoke(status);
+	}
+	
+	@Override
+	public Future<JobStatus> getCompletion() {
+		return completion;
+	}
+	
+	@Override
+	public synchronized long getVersion() {
+		return version;
+	}
+	
+	@Override
+	public synchronized Promise<Long> getChange(long version) {
+		if (version == this.version)
+			return change;
+		
+		// The caller is already behind.
+		Promise<Long> behind = new Promise<Long>();
+		behind.invoke(this.version);
+		return behind;
 	}
 	
 	@Override
@@ -106,5 +155,22 @@ public class JobMetadataImpl implements JobMetadata {
 	@Override
 	public void setMessage(String message) {
 		this.message = message;
+		changed();
+	}
+	
+	/**
+	 * Record that the job has changed, waking anyone waiting on it. The
+	 * promise is redeemed outside of the lock so callbacks can not block
+	 * the job.
+	 */
+	protected void changed() {
+		Promise<Long> redeem;
+		long current;
+		synchronized (this) {
+			current = ++version;
+			redeem = change;
+			change = new Promise<Long>();
+		}
+		redeem.invoke(current);
 	}
 }
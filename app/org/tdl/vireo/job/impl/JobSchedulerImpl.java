@@ -0,0 +1,381 @@
+package org.tdl.vireo.job.impl;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.tdl.vireo.job.JobFamily;
+import org.tdl.vireo.job.JobPriority;
+import org.tdl.vireo.job.JobScheduler;
+import org.tdl.vireo.job.ScheduledJob;
+
+import play.Play;
+import play.libs.F.Promise;
+
+/**
+ * Implementation of the job scheduler interface.
+ * 
+ * Each family of jobs is given its own thread pool, sized by the
+ * jobs.<family>.threads configuration parameter. The pools queue their jobs by
+ * priority and then by the order they were scheduled, so an interactive job is
+ * never left behind a queue of bulk jobs. The thread running a job is given the
+ * job's thread priority while it runs. Idle threads are let go after a minute.
+ * 
+ * Families with workers, sized by the jobs.<family>.workers configuration
+ * parameter, are given a second pool for them. The workers never wait on
+ * anything else, so a job waiting on its workers can't hold them up.
+ */
+public class JobSchedulerImpl implements JobScheduler {
+
+	// How long idle threads are kept around, in seconds.
+	public static final long KEEP_ALIVE = 60;
+
+	// The pool for each family of jobs.
+	protected final Map<JobFamily, Pool> pools = new EnumMap<JobFamily, Pool>(JobFamily.class);
+
+	// The pool of workers for each family which has them.
+	protected final Map<JobFamily, Pool> workerPools = new EnumMap<JobFamily, Pool>(JobFamily.class);
+
+	/**
+	 * Construct a new scheduler, with a pool for each family configured from
+	 * the application's configuration.
+	 */
+	public JobSchedulerImpl() {
+		for (JobFamily family : JobFamily.values()) {
+			String prefix = "jobs." + family.name().toLowerCase();
+
+			int threads = Integer.valueOf(Play.configuration.getProperty(prefix + ".threads", String.valueOf(family.getDefaultThreads())));
+			int workers = Integer.valueOf(Play.configuration.getProperty(prefix + ".workers", String.valueOf(family.getDefaultWorkers())));
+			JobPriority priority = JobPriority.valueOf(Play.configuration.getProperty(prefix + ".priority", family.getDefaultPriority().name()).toUpperCase());
+
+			if (threads < 1)
+				throw new IllegalArgumentException("The " + prefix + ".threads parameter must be at least one.");
+
+			if (workers < 0)
+				throw new IllegalArgumentException("The " + prefix + ".workers parameter must not be negative.");
+
+			pools.put(family, new Pool(family, false, threads, priority));
+			if (workers > 0)
+				workerPools.put(family, new Pool(family, true, workers, priority));
+		}
+	}
+
+	@Override
+	public <V> Promise<V> schedule(final ScheduledJob<V> job) {
+
+		if (job == null)
+			throw new IllegalArgumentException("Unable to schedule a job without the job.");
+
+		Pool pool = pools.get(job.family);
+
+		JobPriority priority = job.getPriority();
+		if (priority == null)
+			priority = pool.priority;
+
+		final Promise<V> promise = new Promise<V>();
+		pool.execute(new QueuedJob(priority, pool.sequence.incrementAndGet()) {
+			public void run() {
+				job.runAndRedeem(promise, priority);
+			}
+		});
+
+		return promise;
+	}
+
+	@Override
+	public ExecutorService createWorkers(JobFamily family) {
+
+		if (family == null)
+			throw new IllegalArgumentException("Unable to create workers without the family.");
+
+		Pool pool = workerPools.get(family);
+		if (pool == null)
+			throw new IllegalArgumentException("The " + family.name().toLowerCase() + " family has no workers.");
+
+		JobPriority priority = ScheduledJob.getRunningPriority();
+		if (priority == null)
+			priority = pool.priority;
+
+		return new Workers(pool, priority);
+	}
+
+	@Override
+	public List<PoolMetrics> getMetrics() {
+		List<PoolMetrics> metrics = new ArrayList<PoolMetrics>();
+		for (JobFamily family : pools.keySet()) {
+			metrics.add(pools.get(family).getMetrics());
+			if (workerPools.containsKey(family))
+				metrics.add(workerPools.get(family).getMetrics());
+		}
+		return metrics;
+	}
+
+	/**
+	 * Stop accepting new jobs. Jobs already queued are still run.
+	 */
+	public void shutdown() {
+		for (Pool pool : pools.values())
+			pool.shutdown();
+		for (Pool pool : workerPools.values())
+			pool.shutdown();
+	}
+
+	/**
+	 * A job waiting in a pool's queue. Queued jobs are ordered by their
+	 * priority, and then by the order they were scheduled.
+	 */
+	protected static abstract class QueuedJob implements Runnable, Comparable<QueuedJob> {
+
+		public final JobPriority priority;
+		public final long sequence;
+		public final long queuedAt = System.currentTimeMillis();
+
+		/**
+		 * Construct a new queued job.
+		 * 
+		 * @param priority
+		 *            The priority of the job.
+		 * @param sequence
+		 *            The order in which the job was scheduled.
+		 */
+		public QueuedJob(JobPriority priority, long sequence) {
+			this.priority = priority;
+			this.sequence = sequence;
+		}
+
+		@Override
+		public int compareTo(QueuedJob other) {
+			if (priority != other.priority)
+				return priority.compareTo(other.priority);
+			return (sequence < other.sequence) ? -1 : ((sequence == other.sequence) ? 0 : 1);
+		}
+	}
+
+	/**
+	 * The workers of a single running job, which are queued on its family's
+	 * pool of workers. Shutting the workers down cancels those which have not
+	 * started yet, while any which are running are left to finish so their
+	 * results may still be cleaned up.
+	 */
+	protected static class Workers extends AbstractExecutorService {
+
+		public final Pool pool;
+		public final JobPriority priority;
+
+		// The workers which have not finished yet.
+		protected final Set<Worker<?>> outstanding = new HashSet<Worker<?>>();
+		protected boolean shutdown = false;
+
+		/**
+		 * Construct a new set of workers.
+		 * 
+		 * @param pool
+		 *            The pool which runs the workers.
+		 * @param priority
+		 *            The priority of the workers.
+		 */
+		public Workers(Pool pool, JobPriority priority) {
+			this.pool = pool;
+			this.priority = priority;
+		}
+
+		@Override
+		protected <T> RunnableFuture<T> newTaskFor(Callable<T> callable) {
+			return new Worker<T>(callable);
+		}
+
+		@Override
+		protected <T> RunnableFuture<T> newTaskFor(Runnable runnable, T value) {
+			return new Worker<T>(Executors.callable(runnable, value));
+		}
+
+		@Override
+		public void execute(Runnable command) {
+
+			Worker<?> worker;
+			if (command instanceof Worker)
+				worker = (Worker<?>) command;
+			else
+				worker = new Worker<Object>(Executors.callable(command));
+
+			synchronized (this) {
+				if (shutdown)
+					throw new RejectedExecutionException("Unable to start a worker after the workers have been shut down.");
+				outstanding.add(worker);
+			}
+
+			pool.execute(worker.queued);
+		}
+
+		@Override
+		public synchronized void shutdown() {
+			shutdown = true;
+			notifyAll();
+		}
+
+		@Override
+		public List<Runnable> shutdownNow() {
+
+			List<Worker<?>> workers;
+			synchronized (this) {
+				shutdown = true;
+				workers = new ArrayList<Worker<?>>(outstanding);
+			}
+
+			List<Runnable> waiting = new ArrayList<Runnable>();
+			for (Worker<?> worker : workers) {
+				if (pool.remove(worker.queued)) {
+					worker.cancel(false);
+					waiting.add(worker);
+				}
+			}
+			return waiting;
+		}
+
+		@Override
+		public synchronized boolean isShutdown() {
+			return shutdown;
+		}
+
+		@Override
+		public synchronized boolean isTerminated() {
+			return shutdown && outstanding.isEmpty();
+		}
+
+		@Override
+		public synchronized boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+			long deadline = System.currentTimeMillis() + unit.toMillis(timeout);
+			while (!isTerminated()) {
+				long remaining = deadline - System.currentTimeMillis();
+				if (remaining <= 0)
+					return false;
+				wait(remaining);
+			}
+			return true;
+		}
+
+		/**
+		 * A single worker, along with its place in the pool's queue.
+		 */
+		protected class Worker<T> extends FutureTask<T> {
+
+			public final QueuedJob queued;
+
+			/**
+			 * Construct a new worker.
+			 * 
+			 * @param callable
+			 *            The work to do.
+			 */
+			public Worker(Callable<T> callable) {
+				super(callable);
+				queued = new QueuedJob(priority, pool.sequence.incrementAndGet()) {
+					public void run() {
+						Worker.this.run();
+					}
+				};
+			}
+
+			@Override
+			protected void done() {
+				synchronized (Workers.this) {
+					outstanding.remove(this);
+					Workers.this.notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * The bounded pool of threads for a single family of jobs, or for its
+	 * workers, which keeps track of how long its jobs wait to be started.
+	 */
+	protected static class Pool extends ThreadPoolExecutor {
+
+		public final JobFamily family;
+		public final boolean workers;
+		public final JobPriority priority;
+		public final AtomicLong sequence = new AtomicLong();
+
+		// Wait time metrics, in milliseconds.
+		public final AtomicLong started = new AtomicLong();
+		public final AtomicLong totalWait = new AtomicLong();
+		public final AtomicLong longestWait = new AtomicLong();
+
+		/**
+		 * Construct a new pool.
+		 * 
+		 * @param family
+		 *            The family of jobs run by this pool.
+		 * @param workers
+		 *            Whether this pool runs the family's workers.
+		 * @param threads
+		 *            The maximum number of threads.
+		 * @param priority
+		 *            The default priority of the family's jobs.
+		 */
+		public Pool(final JobFamily family, final boolean workers, int threads, JobPriority priority) {
+			super(threads, threads, KEEP_ALIVE, TimeUnit.SECONDS, new PriorityBlockingQueue<Runnable>(), new ThreadFactory() {
+
+				final AtomicInteger count = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					Thread thread = new Thread(runnable, "jobs-" + family.name().toLowerCase() + (workers ? "-worker-" : "-") + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+			allowCoreThreadTimeOut(true);
+
+			this.family = family;
+			this.workers = workers;
+			this.priority = priority;
+		}
+
+		@Override
+		protected void beforeExecute(Thread thread, Runnable runnable) {
+			QueuedJob job = (QueuedJob) runnable;
+			thread.setPriority(job.priority.getThreadPriority());
+
+			long wait = System.currentTimeMillis() - job.queuedAt;
+			started.incrementAndGet();
+			totalWait.addAndGet(wait);
+
+			long longest = longestWait.get();
+			while (wait > longest && !longestWait.compareAndSet(longest, wait))
+				longest = longestWait.get();
+		}
+
+		/**
+		 * @return A snapshot of the pool's current metrics.
+		 */
+		public PoolMetrics getMetrics() {
+
+			long now = System.currentTimeMillis();
+			long oldestQueued = 0;
+			for (Runnable runnable : getQueue())
+				oldestQueued = Math.max(oldestQueued, now - ((QueuedJob) runnable).queuedAt);
+
+			return new PoolMetrics(family, workers, priority, getMaximumPoolSize(),
+					getActiveCount(), getQueue().size(), started.get(),
+					totalWait.get(), longestWait.get(), oldestQueued);
+		}
+	}
+}
@@ -44,6 +44,16 @@ public interface PersonRepository {
 	 */
 	public Person findPerson(Long id);
 
+	/**
+	 * Find several people at once based upon their unique ids.
+	 * 
+	 * @param ids
+	 *            The people's ids.
+	 * @return The people found, in no particular order. Ids which are not
+	 *         found are skipped.
+	 */
+	public List<Person> findPersons(List<Long> ids);
+
 	/**
 	 * Find a person based upon their unique email address.
 	 * 
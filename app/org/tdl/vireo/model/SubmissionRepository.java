@@ -43,7 +43,7 @@ public interface SubmissionRepository {
 	 * implementations may impose a limit on the number of ids that are
 	 * permissible. If an submission object was not found for the particular id,
 	 * then it will not appear in the resulting list and no exception will be
-	 * thrown. The result list may be in any order.
+	 * thrown. The result list is in the same order as the list of ids.
 	 * 
 	 * @param submissionIds
 	 *            The ids of all the submission objects.
@@ -79,6 +79,15 @@ public interface SubmissionRepository {
 	 */
 	public Iterator<Submission> findAllSubmissions();
 	
+	/**
+	 * Find the ids of all submissions in Vireo, in ascending order. This is
+	 * useful for splitting up the set of all submissions into partitions which
+	 * may be processed separately.
+	 * 
+	 * @return An ordered list of all submission ids.
+	 */
+	public List<Long> findAllSubmissionIds();
+	
 	/**
 	 * Find how many submissions are stored in the persistent repository.
 	 * 
@@ -87,6 +96,24 @@ public interface SubmissionRepository {
 	 */
 	public long findSubmissionsTotal();
 	
+	/**
+	 * Delete a group of submissions, along with everything that belongs to
+	 * them: attachments, committee members, custom action values, and action
+	 * logs. This is the bulk equivalent of calling delete() on each
+	 * submission, but the submissions are never loaded. The attachment files
+	 * are removed from disk only once the current transaction has been
+	 * committed.
+	 * 
+	 * Any of these submissions already loaded into the current persistence
+	 * context must not be used afterwards.
+	 * 
+	 * @param submissionIds
+	 *            The ids of the submissions to delete. Ids which are not
+	 *            found are ignored.
+	 * @return The number of submissions deleted.
+	 */
+	public int deleteSubmissions(List<Long> submissionIds);
+	
 	// //////////////////////////////////////////////////////////////
 	// Submission informational
 	// //////////////////////////////////////////////////////////////
@@ -181,7 +208,7 @@ public interface SubmissionRepository {
 	 * implementations may impose a limit on the number of ids that are
 	 * permissible. If a log object was not found for the particular id, then it
 	 * will not appear in the resulting list and no exception will be thrown.
-	 * The result list may be in any order.
+	 * The result list is in the same order as the list of ids.
 	 * 
 	 * @param logIds
 	 *            The ids of all the action log objects.
@@ -33,6 +33,11 @@ public abstract class JpaAbstractModel<T extends JpaAbstractModel> extends Model
 		Indexer indexer = Spring.getBeanOfType(Indexer.class);
 		indexer.updated(result);
 		
+		// Tell the settings repository, in case this is one of the settings.
+		JpaSettingsRepositoryImpl settingRepo = Spring.getBeanOfType(JpaSettingsRepositoryImpl.class);
+		if (settingRepo != null)
+			settingRepo.updated(result);
+		
 		return result;
 	}
 
@@ -44,6 +49,11 @@ public abstract class JpaAbstractModel<T extends JpaAbstractModel> extends Model
 		Indexer indexer = Spring.getBeanOfType(Indexer.class);
 		indexer.updated(result);
 		
+		// Tell the settings repository, in case this is one of the settings.
+		JpaSettingsRepositoryImpl settingRepo = Spring.getBeanOfType(JpaSettingsRepositoryImpl.class);
+		if (settingRepo != null)
+			settingRepo.updated(result);
+		
 		return result;
 	}
 
@@ -0,0 +1,35 @@
+package org.tdl.vireo.model.jpa;
+
+import javax.persistence.MappedSuperclass;
+
+/**
+ * Abstract parent class of the JPA-based settings models, such as degrees,
+ * majors, and configuration values. These are served from the settings
+ * repository's snapshot as detached copies, so saving or deleting one first
+ * merges it into the current transaction.
+ * 
+ * Saving a detached copy returns the managed object it was merged into, which
+ * should be used from then on. The copy itself is left detached.
+ * 
+ * @param <T>
+ *            The specific model implementation type.
+ */
+@MappedSuperclass
+public abstract class JpaAbstractSettingsModel<T extends JpaAbstractSettingsModel> extends JpaAbstractModel<T> {
+
+	@Override
+	public T save() {
+		if (getId() != null && !em().contains(this))
+			return (T) merge().save();
+		
+		return super.save();
+	}
+
+	@Override
+	public T delete() {
+		if (getId() != null && !em().contains(this))
+			return (T) merge().delete();
+		
+		return super.delete();
+	}
+}
@@ -13,7 +13,7 @@ import org.tdl.vireo.model.College;
  */
 @Entity
 @Table(name = "college")
-public class JpaCollegeImpl extends JpaAbstractModel<JpaCollegeImpl> implements College {
+public class JpaCollegeImpl extends JpaAbstractSettingsModel<JpaCollegeImpl> implements College {
 
 	@Column(nullable = false)
 	public int displayOrder;
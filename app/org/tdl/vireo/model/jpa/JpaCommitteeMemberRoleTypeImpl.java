@@ -17,7 +17,7 @@ import org.tdl.vireo.model.DegreeLevel;
 @Entity
 @Table(name = "committee_member_role_type",
        uniqueConstraints = { @UniqueConstraint( columnNames = { "name", "level" } ) } )
-public class JpaCommitteeMemberRoleTypeImpl extends JpaAbstractModel<JpaCommitteeMemberRoleTypeImpl> implements CommitteeMemberRoleType {
+public class JpaCommitteeMemberRoleTypeImpl extends JpaAbstractSettingsModel<JpaCommitteeMemberRoleTypeImpl> implements CommitteeMemberRoleType {
 
 	@Column(nullable = false)
 	public int displayOrder;
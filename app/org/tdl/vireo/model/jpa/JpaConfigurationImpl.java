@@ -13,7 +13,7 @@ import org.tdl.vireo.model.Configuration;
  */
 @Entity
 @Table(name = "configuration")
-public class JpaConfigurationImpl extends JpaAbstractModel<JpaConfigurationImpl> implements Configuration {
+public class JpaConfigurationImpl extends JpaAbstractSettingsModel<JpaConfigurationImpl> implements Configuration {
 
 	@Column(nullable = false, unique = true, length=255)
 	public String name;
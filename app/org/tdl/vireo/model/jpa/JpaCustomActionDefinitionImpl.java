@@ -19,7 +19,7 @@ import play.modules.spring.Spring;
  */
 @Entity
 @Table(name = "custom_action_definition")
-public class JpaCustomActionDefinitionImpl extends JpaAbstractModel<JpaCustomActionDefinitionImpl> implements
+public class JpaCustomActionDefinitionImpl extends JpaAbstractSettingsModel<JpaCustomActionDefinitionImpl> implements
 		CustomActionDefinition {
 
 	@Column(nullable = false)
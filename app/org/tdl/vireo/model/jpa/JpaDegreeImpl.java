@@ -16,7 +16,7 @@ import org.tdl.vireo.model.DegreeLevel;
 @Entity
 @Table(name = "degree",
        uniqueConstraints = { @UniqueConstraint( columnNames = { "name", "level" } ) } )
-public class JpaDegreeImpl extends JpaAbstractModel<JpaDegreeImpl> implements Degree {
+public class JpaDegreeImpl extends JpaAbstractSettingsModel<JpaDegreeImpl> implements Degree {
 
 	@Column(nullable = false)
 	public int displayOrder;
@@ -14,7 +14,7 @@ import org.tdl.vireo.model.Department;
  */
 @Entity
 @Table(name = "department")
-public class JpaDepartmentImpl extends JpaAbstractModel<JpaDepartmentImpl> implements Department {
+public class JpaDepartmentImpl extends JpaAbstractSettingsModel<JpaDepartmentImpl> implements Department {
 
 	@Column(nullable = false)
 	public int displayOrder;
@@ -23,7 +23,7 @@ import play.modules.spring.Spring;
  */
 @Entity
 @Table(name = "deposit_location")
-public class JpaDepositLocationImpl extends JpaAbstractModel<JpaDepositLocationImpl> implements DepositLocation {
+public class JpaDepositLocationImpl extends JpaAbstractSettingsModel<JpaDepositLocationImpl> implements DepositLocation {
 
 	@Column(nullable = false)
 	public int displayOrder;
@@ -16,7 +16,7 @@ import org.tdl.vireo.model.DocumentType;
 @Entity
 @Table(name = "document_type",
        uniqueConstraints = { @UniqueConstraint( columnNames = { "name", "level" } ) } )
-public class JpaDocumentTypeImpl extends JpaAbstractModel<JpaDocumentTypeImpl> implements DocumentType {
+public class JpaDocumentTypeImpl extends JpaAbstractSettingsModel<JpaDocumentTypeImpl> implements DocumentType {
 
 	@Column(nullable = false)
 	public int displayOrder;
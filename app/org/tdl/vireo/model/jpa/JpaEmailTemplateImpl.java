@@ -13,7 +13,7 @@ import org.tdl.vireo.model.EmailTemplate;
  */
 @Entity
 @Table(name = "email_template")
-public class JpaEmailTemplateImpl extends JpaAbstractModel<JpaEmailTemplateImpl> implements EmailTemplate {
+public class JpaEmailTemplateImpl extends JpaAbstractSettingsModel<JpaEmailTemplateImpl> implements EmailTemplate {
 
 	@Column(nullable = false)
 	public int displayOrder;
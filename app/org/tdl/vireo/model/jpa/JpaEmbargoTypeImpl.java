@@ -19,7 +19,7 @@ import play.modules.spring.Spring;
  */
 @Entity
 @Table(name = "embargo_type")
-public class JpaEmbargoTypeImpl extends JpaAbstractModel<JpaEmbargoTypeImpl> implements EmbargoType {
+public class JpaEmbargoTypeImpl extends JpaAbstractSettingsModel<JpaEmbargoTypeImpl> implements EmbargoType {
 	
 	@Column(nullable = false)
 	public int displayOrder;
@@ -15,7 +15,7 @@ import org.tdl.vireo.model.GraduationMonth;
  */
 @Entity
 @Table(name = "graduation_month")
-public class JpaGraduationMonthImpl extends JpaAbstractModel<JpaGraduationMonthImpl> implements GraduationMonth {
+public class JpaGraduationMonthImpl extends JpaAbstractSettingsModel<JpaGraduationMonthImpl> implements GraduationMonth {
 
 	@Column(nullable = false)
 	public int displayOrder;
@@ -16,7 +16,7 @@ import org.tdl.vireo.model.Language;
  */
 @Entity
 @Table(name = "language")
-public class JpaLanguageImpl extends JpaAbstractModel<JpaLanguageImpl> implements Language {
+public class JpaLanguageImpl extends JpaAbstractSettingsModel<JpaLanguageImpl> implements Language {
 
 	@Column(nullable = false)
 	public int displayOrder;
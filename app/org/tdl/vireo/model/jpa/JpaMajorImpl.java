@@ -13,7 +13,7 @@ import org.tdl.vireo.model.Major;
  */
 @Entity
 @Table(name = "major")
-public class JpaMajorImpl extends JpaAbstractModel<JpaMajorImpl> implements Major {
+public class JpaMajorImpl extends JpaAbstractSettingsModel<JpaMajorImpl> implements Major {
 
 	@Column(nullable = false)
 	public int displayOrder;
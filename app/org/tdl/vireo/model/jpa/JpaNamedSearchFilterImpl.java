@@ -1,18 +1,16 @@
 package org.tdl.vireo.model.jpa;
 
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
-import javax.persistence.CollectionTable;
 import javax.persistence.Column;
-import javax.persistence.ElementCollection;
 import javax.persistence.Entity;
-import javax.persistence.JoinColumn;
-import javax.persistence.JoinTable;
-import javax.persistence.ManyToMany;
+import javax.persistence.EntityManager;
 import javax.persistence.ManyToOne;
-import javax.persistence.OneToMany;
 import javax.persistence.PostLoad;
 import javax.persistence.PostPersist;
 import javax.persistence.PostUpdate;
@@ -20,11 +18,10 @@ import javax.persistence.PrePersist;
 import javax.persistence.PreRemove;
 import javax.persistence.PreUpdate;
 import javax.persistence.Table;
-import javax.persistence.Temporal;
-import javax.persistence.TemporalType;
 import javax.persistence.Transient;
 import javax.persistence.UniqueConstraint;
 
+import org.apache.commons.lang.StringUtils;
 import org.tdl.vireo.model.ActionLog;
 import org.tdl.vireo.model.EmbargoType;
 import org.tdl.vireo.model.NamedSearchFilter;
@@ -33,8 +30,15 @@ import org.tdl.vireo.model.PersonRepository;
 import org.tdl.vireo.model.SettingsRepository;
 import org.tdl.vireo.model.Submission;
 import org.tdl.vireo.model.SubmissionRepository;
+import org.tdl.vireo.search.IdSet;
 import org.tdl.vireo.search.Semester;
+import org.tdl.vireo.search.impl.UriActiveSearchFilterImpl;
 
+import play.Logger;
+import play.db.DB;
+import play.db.jpa.JPA;
+import play.jobs.Job;
+import play.jobs.OnApplicationStart;
 import play.modules.spring.Spring;
 
 /**
@@ -46,6 +50,11 @@ import play.modules.spring.Spring;
  * can not be referenced by a JPA query so there was no good way to handle
  * deleting those elements.
  * 
+ * Later still the criteria were moved out of their separate collection tables
+ * into a single encoded column, so that loading or saving a filter only takes
+ * a single row. Filters saved before then are migrated when the application
+ * starts.
+ * 
  * @author <a href="http://www.scottphillips.com">Scott Phillips</a>
  */
 @Entity
@@ -61,108 +70,70 @@ public class JpaNamedSearchFilterImpl extends JpaAbstractModel<JpaNamedSearchFil
 	
 	public boolean publicFlag;
 	
-	// These @ElementCollections have "_" so their names don't 
-	// conflict with getIncludedSubmissions() and play's enhances.
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_included_submissions",
-			joinColumns=@JoinColumn(name="search_filter_id"))
+	// The encoded criteria of a filter without any criteria.
+	public static final String EMPTY_CRITERIA = StringUtils.repeat(":", 19);
+	
+	// The criteria of the filter, encoded in the same form as an active
+	// search filter (see UriActiveSearchFilterImpl.encode()). This way loading
+	// or saving a filter only ever reads or writes this one row.
+	@Column(length=1048576) // 2^20
+	public String criteria;
+	
+	// The decoded criteria, which are kept up to date as the filter is
+	// changed and encoded again just before it is saved.
+	@Transient
 	public List<Long> includedSubmissionIds;
 	
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_excluded_submissions",
-			joinColumns=@JoinColumn(name="search_filter_id"))
+	@Transient
 	public List<Long> excludedSubmissionIds;
 	
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_included_actionlogs",
-			joinColumns=@JoinColumn(name="search_filter_id"))
+	@Transient
 	public List<Long> includedActionLogIds;
 
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_excluded_actionlogs",
-			joinColumns=@JoinColumn(name="search_filter_id"))
+	@Transient
 	public List<Long> excludedActionLogIds;
 	
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_text",
-			joinColumns=@JoinColumn(name="search_filter_id"))
+	@Transient
 	public List<String> searchText;
 	
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_states",
-			joinColumns=@JoinColumn(name="search_filter_id"))
+	@Transient
 	public List<String> states;
 	
 	// Note: -1 means unassigned
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_assignees",
-			joinColumns=@JoinColumn(name="search_filter_id"))
+	@Transient
 	public List<Long> assigneeIds;
 
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_embargos",
-			joinColumns=@JoinColumn(name="search_filter_id"))
+	@Transient
 	public List<Long> embargoIds;
 	
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_semesters",
-			joinColumns=@JoinColumn(name="search_filter_id"))
-	public List<String> semesters;
-	
 	@Transient
 	public List<Semester> cachedSemesters;
 	
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_degrees",
-			joinColumns=@JoinColumn(name="search_filter_id"))
+	@Transient
 	public List<String> degrees;
 	
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_departments",
-			joinColumns=@JoinColumn(name="search_filter_id"))
+	@Transient
 	public List<String> departments;
 
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_programs",
-			joinColumns=@JoinColumn(name="search_filter_id"))
+	@Transient
 	public List<String> programs;
 	
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_colleges",
-			joinColumns=@JoinColumn(name="search_filter_id"))
+	@Transient
 	public List<String> colleges;
 		
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_majors",
-			joinColumns=@JoinColumn(name="search_filter_id"))
+	@Transient
 	public List<String> majors;
 	
-	@ElementCollection
-	@CollectionTable(
-			name="search_filter_documenttypes",
-			joinColumns=@JoinColumn(name="search_filter_id"))
+	@Transient
 	public List<String> documentTypes;
 	
+	@Transient
 	public Boolean umiRelease;
 
-	@Temporal(TemporalType.DATE)
+	@Transient
 	public Date rangeStart;
 	
-	@Temporal(TemporalType.DATE)
+	@Transient
 	public Date rangeEnd;
 	
 	/**
@@ -192,7 +163,6 @@ public class JpaNamedSearchFilterImpl extends JpaAbstractModel<JpaNamedSearchFil
 		this.states = new ArrayList<String>();
 		this.assigneeIds = new ArrayList<Long>();
 		this.embargoIds = new ArrayList<Long>();
-		this.semesters = new ArrayList<String>();
 		this.cachedSemesters = new ArrayList<Semester>();
 		this.degrees = new ArrayList<String>();
 		this.departments = new ArrayList<String>();
@@ -203,64 +173,69 @@ public class JpaNamedSearchFilterImpl extends JpaAbstractModel<JpaNamedSearchFil
 	}
 
 	/**
-	 * Just before data is written to the database update some fields for
-	 * saving.
-	 * 
-	 * 1) the semester's data structure with the current state of the
-	 * cachedSemester's data structure. Since while the object is live that is
-	 * the structure that is manipulated.
-	 * 
-	 * 2) Check if the unassigned user has been added to the list, aka (null).
-	 * If so remove it from the list and set the unassigned flag.
+	 * Just before data is written to the database encode the current criteria
+	 * into their single column. The unassigned user is stored as -1 while the
+	 * filter is live, and encoded as null.
 	 */
 	@PrePersist
 	@PreUpdate
 	@PreRemove
 	public void onSave() {
-		// 1) Semester
-		semesters.clear();
-		for(Semester semester : cachedSemesters) {
-			// Format: year/month
-			
-			String value;
-			if (semester.year == null)
-				value = "null";
-			else
-				value = String.valueOf(semester.year);
-			
-			value += "/";
-			
-			if (semester.month == null)
-				value += "null";
-			else
-				value += String.valueOf(semester.month);
-			
-			semesters.add(value);
-		}
+		
+		List<Long> assignees = new ArrayList<Long>();
+		for (Long id : assigneeIds)
+			assignees.add(id == -1 ? null : id);
+		
+		criteria = UriActiveSearchFilterImpl.encode(new List<?>[] {
+				includedSubmissionIds, excludedSubmissionIds,
+				includedActionLogIds, excludedActionLogIds,
+				searchText, states, assignees, embargoIds, cachedSemesters,
+				degrees, departments, colleges, programs, majors, documentTypes },
+				umiRelease, rangeStart, rangeEnd);
 	}
 
 	/**
-	 * After being loaded from the database update our cached copy of the
-	 * semester data structure and unassigned assignees.
+	 * After being loaded from the database decode the criteria from their
+	 * single column. A filter which has not been migrated yet has no criteria.
 	 */
 	@PostPersist
 	@PostLoad
 	@PostUpdate
 	public void onLoad() {
-		// 1) Semesters
-		cachedSemesters = new ArrayList<Semester>();
-		for(String semesterString : semesters) {
-			
-			String[] split = semesterString.split("/");
-			
-			Semester semester = new Semester();
-			if (!"null".equals(split[0]))
-				semester.year = Integer.valueOf(split[0]);
-			if (!"null".equals(split[1]))
-				semester.month = Integer.valueOf(split[1]);
-			
-			cachedSemesters.add(semester);
-		}
+		
+		String[] split = UriActiveSearchFilterImpl.split(criteria != null ? criteria : EMPTY_CRITERIA);
+		int i = 1;
+		includedSubmissionIds = UriActiveSearchFilterImpl.decodeIds(split[i++], Submission.class);
+		excludedSubmissionIds = UriActiveSearchFilterImpl.decodeIds(split[i++], Submission.class);
+		includedActionLogIds = UriActiveSearchFilterImpl.decodeIds(split[i++], ActionLog.class);
+		excludedActionLogIds = UriActiveSearchFilterImpl.decodeIds(split[i++], ActionLog.class);
+		searchText = UriActiveSearchFilterImpl.decodeList(split[i++], String.class);
+		states = UriActiveSearchFilterImpl.decodeList(split[i++], String.class);
+		
+		assigneeIds = new ArrayList<Long>();
+		for (Long id : UriActiveSearchFilterImpl.decodeIds(split[i++], Person.class))
+			assigneeIds.add(id == null ? -1L : id);
+		
+		embargoIds = UriActiveSearchFilterImpl.decodeIds(split[i++], EmbargoType.class);
+		cachedSemesters = UriActiveSearchFilterImpl.decodeList(split[i++], Semester.class);
+		degrees = UriActiveSearchFilterImpl.decodeList(split[i++], String.class);
+		departments = UriActiveSearchFilterImpl.decodeList(split[i++], String.class);
+		colleges = UriActiveSearchFilterImpl.decodeList(split[i++], String.class);
+		programs = UriActiveSearchFilterImpl.decodeList(split[i++], String.class);
+		majors = UriActiveSearchFilterImpl.decodeList(split[i++], String.class);
+		documentTypes = UriActiveSearchFilterImpl.decodeList(split[i++], String.class);
+		umiRelease = UriActiveSearchFilterImpl.decodeBoolean(split[i++]);
+		rangeStart = UriActiveSearchFilterImpl.decodeDate(split[i++], "rangeStart");
+		rangeEnd = UriActiveSearchFilterImpl.decodeDate(split[i++], "rangeEnd");
+	}
+	
+	@Override
+	public JpaNamedSearchFilterImpl save() {
+		
+		// Changing only the criteria does not make the entity dirty, so make
+		// sure they are encoded before the row is compared.
+		onSave();
+		return super.save();
 	}
 	
 	@Override
@@ -319,6 +294,11 @@ public class JpaNamedSearchFilterImpl extends JpaAbstractModel<JpaNamedSearchFil
 		return result;
 	}
 
+	@Override
+	public IdSet getIncludedSubmissionIds() {
+		return IdSet.of(includedSubmissionIds);
+	}
+
 	@Override
 	public void addIncludedSubmission(Submission sub) {
 		
@@ -344,6 +324,11 @@ public class JpaNamedSearchFilterImpl extends JpaAbstractModel<JpaNamedSearchFil
 		return result;
 	}
 
+	@Override
+	public IdSet getExcludedSubmissionIds() {
+		return IdSet.of(excludedSubmissionIds);
+	}
+
 	@Override
 	public void addExcludedSubmission(Submission sub) {
 		excludedSubmissionIds.add(sub.getId());
@@ -368,6 +353,11 @@ public class JpaNamedSearchFilterImpl extends JpaAbstractModel<JpaNamedSearchFil
 		return result;
 	}
 
+	@Override
+	public IdSet getIncludedActionLogIds() {
+		return IdSet.of(includedActionLogIds);
+	}
+
 	@Override
 	public void addIncludedActionLog(ActionLog log) {
 		
@@ -396,6 +386,11 @@ public class JpaNamedSearchFilterImpl extends JpaAbstractModel<JpaNamedSearchFil
 		return result;
 	}
 
+	@Override
+	public IdSet getExcludedActionLogIds() {
+		return IdSet.of(excludedActionLogIds);
+	}
+
 	@Override
 	public void addExcludedActionLog(ActionLog log) {
 		excludedActionLogIds.add(log.getId());
@@ -667,4 +662,140 @@ public class JpaNamedSearchFilterImpl extends JpaAbstractModel<JpaNamedSearchFil
 	public void setDateRangeEnd(Date end) {
 		rangeEnd = end;
 	}
+	
+	/**
+	 * When the application starts move the criteria of any filters saved
+	 * before they were encoded into a single column out of the separate
+	 * tables they used to be stored in. The old rows are removed as each
+	 * filter is migrated, so this only does any work once. The migration
+	 * runs in a single transaction, if any filter fails then it is all rolled
+	 * back and tried again at the next start.
+	 */
+	@OnApplicationStart
+	public static class migrateSearchFilterCriteria extends Job {
+		
+		// The old tables, and their value column, in the order encoded.
+		public static final String[][] TABLES = {
+			{ "search_filter_included_submissions", "includedSubmissionIds" },
+			{ "search_filter_excluded_submissions", "excludedSubmissionIds" },
+			{ "search_filter_included_actionlogs", "includedActionLogIds" },
+			{ "search_filter_excluded_actionlogs", "excludedActionLogIds" },
+			{ "search_filter_text", "searchText" },
+			{ "search_filter_states", "states" },
+			{ "search_filter_assignees", "assigneeIds" },
+			{ "search_filter_embargos", "embargoIds" },
+			{ "search_filter_semesters", "semesters" },
+			{ "search_filter_degrees", "degrees" },
+			{ "search_filter_departments", "departments" },
+			{ "search_filter_colleges", "colleges" },
+			{ "search_filter_programs", "programs" },
+			{ "search_filter_majors", "majors" },
+			{ "search_filter_documenttypes", "documentTypes" } };
+		
+		public void doJob() {
+			try {
+				if (!tableExists(TABLES[0][0]))
+					return;
+				
+				EntityManager em = JPA.em();
+				List<Object[]> rows = em.createNativeQuery(
+						"SELECT id, umiRelease, rangeStart, rangeEnd FROM search_filter WHERE criteria IS NULL")
+						.getResultList();
+				
+				for (Object[] row : rows) {
+					Long id = ((Number) row[0]).longValue();
+					
+					List<?>[] lists = new List<?>[TABLES.length];
+					for (int i = 0; i < TABLES.length; i++) {
+						List<Object> values = new ArrayList<Object>();
+						for (Object value : em.createNativeQuery("SELECT "+TABLES[i][1]+" FROM "+TABLES[i][0]+" WHERE search_filter_id = ?")
+								.setParameter(1, id).getResultList())
+							values.add(migrateValue(TABLES[i][1], value));
+						lists[i] = values;
+					}
+					
+					// Write the new criteria before removing any of the old rows.
+					String criteria = UriActiveSearchFilterImpl.encode(lists, migrateBoolean(row[1]), (Date) row[2], (Date) row[3]);
+					em.createNativeQuery("UPDATE search_filter SET criteria = ? WHERE id = ?")
+							.setParameter(1, criteria).setParameter(2, id).executeUpdate();
+					
+					for (int i = 0; i < TABLES.length; i++) {
+						em.createNativeQuery("DELETE FROM "+TABLES[i][0]+" WHERE search_filter_id = ?")
+								.setParameter(1, id).executeUpdate();
+					}
+				}
+				
+				if (rows.size() > 0)
+					Logger.info("Migrated the criteria of "+rows.size()+" saved search filters into a single column.");
+			} catch (SQLException sqle) {
+				// Leave every filter as it was, so the migration is tried again.
+				JPA.setRollbackOnly();
+				Logger.error(sqle,"Unable to migrate saved search filter criteria, no filters have been migrated.");
+			} catch (RuntimeException re) {
+				JPA.setRollbackOnly();
+				Logger.error(re,"Unable to migrate saved search filter criteria, no filters have been migrated.");
+			}
+		}
+		
+		/**
+		 * @param column
+		 *            The old column the value came from.
+		 * @param value
+		 *            The raw value.
+		 * @return The value as it is held by the filter, before encoding.
+		 */
+		protected static Object migrateValue(String column, Object value) {
+			if (value instanceof Number) {
+				long id = ((Number) value).longValue();
+				
+				// Unassigned was stored as -1, but is encoded as null.
+				if ("assigneeIds".equals(column) && id == -1)
+					return null;
+				return id;
+			}
+			
+			if ("semesters".equals(column) && value != null) {
+				// Format: year/month
+				String[] split = value.toString().split("/");
+				
+				Semester semester = new Semester();
+				if (!"null".equals(split[0]))
+					semester.year = Integer.valueOf(split[0]);
+				if (split.length > 1 && !"null".equals(split[1]))
+					semester.month = Integer.valueOf(split[1]);
+				return semester;
+			}
+			
+			return value;
+		}
+		
+		/**
+		 * @return The old UMI release flag, which some databases return as a
+		 *         number.
+		 */
+		protected static Boolean migrateBoolean(Object value) {
+			if (value instanceof Number)
+				return ((Number) value).intValue() != 0;
+			return (Boolean) value;
+		}
+		
+		/**
+		 * @param table
+		 *            The table name.
+		 * @return True if the table exists in the database, in either case.
+		 */
+		protected static boolean tableExists(String table) throws SQLException {
+			DatabaseMetaData meta = DB.getConnection().getMetaData();
+			for (String name : new String[] { table, table.toUpperCase() }) {
+				ResultSet tables = meta.getTables(null, null, name, null);
+				try {
+					if (tables.next())
+						return true;
+				} finally {
+					tables.close();
+				}
+			}
+			return false;
+		}
+	}
 }
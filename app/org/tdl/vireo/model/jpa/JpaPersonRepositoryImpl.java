@@ -1,5 +1,6 @@
 package org.tdl.vireo.model.jpa;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import javax.persistence.TypedQuery;
@@ -32,6 +33,16 @@ public class JpaPersonRepositoryImpl implements PersonRepository {
 	public Person findPerson(Long id) {
 		return (Person) JpaPersonImpl.findById(id);
 	}
+	
+	@Override
+	public List<Person> findPersons(List<Long> ids) {
+		if (ids == null || ids.size() == 0)
+			return new ArrayList<Person>();
+		
+		TypedQuery<JpaPersonImpl> query = JPA.em().createQuery("SELECT p FROM JpaPersonImpl AS p WHERE p.id IN (:ids)", JpaPersonImpl.class);
+		query.setParameter("ids", ids);
+		return new ArrayList<Person>(query.getResultList());
+	}
 
 	@Override
 	public Person findPersonByEmail(String email) {
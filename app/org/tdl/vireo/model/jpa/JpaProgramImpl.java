@@ -13,7 +13,7 @@ import org.tdl.vireo.model.Program;
  */
 @Entity
 @Table(name = "program")
-public class JpaProgramImpl extends JpaAbstractModel<JpaProgramImpl> implements Program {
+public class JpaProgramImpl extends JpaAbstractSettingsModel<JpaProgramImpl> implements Program {
 
 	@Column(nullable = false)
 	public int displayOrder;
@@ -1,8 +1,22 @@
 package org.tdl.vireo.model.jpa;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
+import javax.persistence.EntityManager;
+import javax.transaction.Synchronization;
+
+import org.hibernate.EntityMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.ejb.HibernateEntityManagerFactory;
+import org.hibernate.metadata.ClassMetadata;
+import org.tdl.vireo.model.AbstractModel;
 import org.tdl.vireo.model.College;
 import org.tdl.vireo.model.CommitteeMemberRoleType;
 import org.tdl.vireo.model.Configuration;
@@ -20,12 +34,122 @@ import org.tdl.vireo.model.Major;
 import org.tdl.vireo.model.Program;
 import org.tdl.vireo.model.SettingsRepository;
 
+import play.db.jpa.JPA;
+
 /**
  * Jpa specific implementation of the Vireo Repository interface.
  * 
+ * The configuration values and the lists of degrees, majors, colleges, etc.
+ * are read far more often than they are changed, so they are all served from a
+ * single in-memory snapshot. The snapshot is loaded in one go through its own
+ * entity manager, so it only ever holds committed values, and is thrown away
+ * whenever any settings object is saved or deleted (and again once that
+ * transaction completes). The next read loads a fresh one.
+ * 
+ * The snapshot's own objects are never handed out, because they are shared
+ * between requests and must not be modified. Each find method returns detached
+ * copies instead, which may be modified and saved as normal. Saving a copy
+ * merges it into the current transaction, and returns the managed object. A
+ * thread which has modified any settings reads straight from the database
+ * until its transaction completes, so it always sees its own changes.
+ * 
  * @author <a href="http://www.scottphillips.com">Scott Phillips</a>
  */
 public class JpaSettingsRepositoryImpl implements SettingsRepository {
+	
+	// The settings types held in the snapshot.
+	public static final List<Class<?>> SNAPSHOT_TYPES = Collections.unmodifiableList(Arrays.asList(new Class<?>[] {
+			Configuration.class, Degree.class, Major.class, College.class,
+			Program.class, Department.class, DocumentType.class,
+			EmbargoType.class, GraduationMonth.class,
+			CommitteeMemberRoleType.class, EmailTemplate.class,
+			CustomActionDefinition.class, Language.class,
+			DepositLocation.class }));
+	
+	// The current snapshot, or null if it needs to be loaded.
+	private volatile SettingsSnapshot snapshot = null;
+	
+	// Counts every time the snapshot is thrown away, so that a snapshot loaded
+	// before then is never published.
+	private long generation = 0;
+	
+	// Set while the current thread's transaction has modified settings.
+	private final ThreadLocal<Boolean> modified = new ThreadLocal<Boolean>();
+	
+	// Metrics
+	public volatile long loads = 0;
+	
+	/**
+	 * @return The current snapshot of all settings, loading it if needed. Null
+	 *         if the current thread has modified settings and should read them
+	 *         from its own transaction instead.
+	 */
+	public SettingsSnapshot getSnapshot() {
+		if (modified.get() != null)
+			return null;
+		
+		SettingsSnapshot current = snapshot;
+		if (current != null)
+			return current;
+		
+		long loadingGeneration;
+		synchronized (this) {
+			loadingGeneration = generation;
+		}
+		
+		current = new SettingsSnapshot();
+		loads++;
+		
+		synchronized (this) {
+			if (generation == loadingGeneration)
+				snapshot = current;
+		}
+		return current;
+	}
+	
+	/**
+	 * Receive notice that a model has been saved or deleted. If it is one of
+	 * the settings then the snapshot is thrown away, both now and once the
+	 * current transaction has completed.
+	 * 
+	 * @param model
+	 *            The model which was saved or deleted.
+	 */
+	public void updated(AbstractModel model) {
+		
+		boolean setting = false;
+		for (Class<?> type : SNAPSHOT_TYPES)
+			setting |= type.isInstance(model);
+		if (!setting)
+			return;
+		
+		invalidate();
+		
+		if (modified.get() == null && JPA.isEnabled()) {
+			modified.set(Boolean.TRUE);
+			
+			Session session = (Session) JPA.em().getDelegate();
+			session.getTransaction().registerSynchronization(new Synchronization() {
+				@Override
+				public void beforeCompletion() {
+				}
+				
+				@Override
+				public void afterCompletion(int status) {
+					modified.remove();
+					invalidate();
+				}
+			});
+		}
+	}
+	
+	/**
+	 * Throw away the current snapshot, the next read will load a new one.
+	 */
+	public synchronized void invalidate() {
+		generation++;
+		snapshot = null;
+	}
 		
 	// ///////////////////////////////////////////////
 	// Degree, Major, College, and Department Models
@@ -43,11 +167,19 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 
 	@Override
 	public Degree findDegreeByName(String name) {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copy(snapshot.degreesByName.get(name));
+		
 		return JpaDegreeImpl.find("name = (?1)", name).first();
 	}
 
 	@Override
 	public List<Degree> findAllDegrees() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copies(snapshot.degrees);
+		
 		return (List) JpaDegreeImpl.find("order by displayOrder").fetch();
 	}
 
@@ -63,6 +195,10 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 
 	@Override
 	public List<Major> findAllMajors() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copies(snapshot.majors);
+		
 		return (List) JpaMajorImpl.find("order by displayOrder").fetch();
 	}
 
@@ -78,6 +214,10 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 
 	@Override
 	public List<College> findAllColleges() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copies(snapshot.colleges);
+		
 		return (List) JpaCollegeImpl.find("order by displayOrder").fetch();
 	}
 	
@@ -93,6 +233,10 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 	
 	@Override
 	public List<Program> findAllPrograms() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copies(snapshot.programs);
+		
 		return (List) JpaProgramImpl.find("order by displayOrder").fetch();
 	}
 
@@ -109,6 +253,10 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 
 	@Override
 	public List<Department> findAllDepartments() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copies(snapshot.departments);
+		
 		return (List) JpaDepartmentImpl.find("order by displayOrder").fetch();
 	}
 
@@ -131,11 +279,25 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 		if (level == null)
 			return findAllDocumentTypes();
 		
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null) {
+			List<DocumentType> results = new ArrayList<DocumentType>();
+			for (DocumentType type : snapshot.documentTypes) {
+				if (level == type.getLevel())
+					results.add(copy(type));
+			}
+			return results;
+		}
+		
 		return JpaDocumentTypeImpl.find("level = (?1)", level).fetch();
 	}
 
 	@Override
 	public List<DocumentType> findAllDocumentTypes() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copies(snapshot.documentTypes);
+		
 		return (List) JpaDocumentTypeImpl.find("order by displayOrder").fetch();
 	}
 
@@ -156,11 +318,25 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 
 	@Override
 	public List<EmbargoType> findAllEmbargoTypes() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copies(snapshot.embargoTypes);
+		
 		return (List) JpaEmbargoTypeImpl.find("order by displayOrder").fetch();
 	}
 
 	@Override
 	public List<EmbargoType> findAllActiveEmbargoTypes() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null) {
+			List<EmbargoType> results = new ArrayList<EmbargoType>();
+			for (EmbargoType type : snapshot.embargoTypes) {
+				if (type.isActive())
+					results.add(copy(type));
+			}
+			return results;
+		}
+		
 		return (List) JpaEmbargoTypeImpl.find("active = (?1) order by displayOrder", true).fetch();
 	}
 
@@ -180,6 +356,10 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 
 	@Override
 	public List<GraduationMonth> findAllGraduationMonths() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copies(snapshot.graduationMonths);
+		
 		return (List) JpaGraduationMonthImpl.find("order by displayOrder").fetch();
 	}
 
@@ -202,11 +382,25 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 		if (level == null)
 			return findAllCommitteeMemberRoleTypes();
 		
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null) {
+			List<CommitteeMemberRoleType> results = new ArrayList<CommitteeMemberRoleType>();
+			for (CommitteeMemberRoleType type : snapshot.committeeMemberRoleTypes) {
+				if (level == type.getLevel())
+					results.add(copy(type));
+			}
+			return results;
+		}
+		
 		return JpaCommitteeMemberRoleTypeImpl.find("level = (?1)", level).fetch();
 	}
 
 	@Override
 	public List<CommitteeMemberRoleType> findAllCommitteeMemberRoleTypes() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copies(snapshot.committeeMemberRoleTypes);
+		
 		return (List) JpaCommitteeMemberRoleTypeImpl.find("order by displayOrder").fetch();
 	}
 	
@@ -226,11 +420,19 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 	
 	@Override
 	public EmailTemplate findEmailTemplateByName(String name) {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copy(snapshot.emailTemplatesByName.get(name));
+		
 		return JpaEmailTemplateImpl.find("name = (?1)", name).first();
 	}
 
 	@Override
 	public List<EmailTemplate> findAllEmailTemplates() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copies(snapshot.emailTemplates);
+		
 		return (List) JpaEmailTemplateImpl.find("order by displayOrder").fetch();
 	}
 
@@ -250,6 +452,10 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 
 	@Override
 	public List<CustomActionDefinition> findAllCustomActionDefinition() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copies(snapshot.customActionDefinitions);
+		
 		return (List) JpaCustomActionDefinitionImpl.find("order by displayOrder").fetch();
 	}
 	
@@ -269,11 +475,19 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 	
 	@Override
 	public Language findLanguageByName(String name) {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copy(snapshot.languagesByName.get(name));
+		
 		return (Language) JpaLanguageImpl.find("name = (?1)", name).first();
 	}
 	
 	@Override
 	public List<Language> findAllLanguages() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copies(snapshot.languages);
+		
 		return (List) JpaLanguageImpl.find("order by displayOrder").fetch();
 	}
 	
@@ -293,13 +507,20 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 
 	@Override
 	public Configuration findConfigurationByName(String name) {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copy(snapshot.configurations.get(name));
+		
 		return JpaConfigurationImpl.find("name = (?1)", name).first();
 	}
 	
 	@Override
 	public String getConfigValue(String name, String defaultValue) {
 		
-		Configuration config = findConfigurationByName(name);
+		// Only the value is read, so there is no need to copy the snapshot's
+		// configuration.
+		SettingsSnapshot snapshot = getSnapshot();
+		Configuration config = (snapshot != null) ? snapshot.configurations.get(name) : findConfigurationByName(name);
 		if (config == null || config.getValue() == null || config.getValue().trim().length() == 0)
 			return defaultValue;
 		else
@@ -320,6 +541,10 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 
 	@Override
 	public List<Configuration> findAllConfigurations() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copies(snapshot.configurations.values());
+		
 		return (List) JpaConfigurationImpl.findAll();
 
 	}
@@ -354,11 +579,130 @@ public class JpaSettingsRepositoryImpl implements SettingsRepository {
 
 	@Override
 	public DepositLocation findDepositLocationByName(String name) {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copy(snapshot.depositLocationsByName.get(name));
+		
 		return JpaDepositLocationImpl.find("name = (?1)", name).first();
 	}
 
 	@Override
 	public List<DepositLocation> findAllDepositLocations() {
+		SettingsSnapshot snapshot = getSnapshot();
+		if (snapshot != null)
+			return copies(snapshot.depositLocations);
+		
 		return (List) JpaDepositLocationImpl.find("order by displayOrder").fetch();
 	}
+	
+	/**
+	 * Copy an object held by the snapshot, so that the caller may modify it
+	 * without changing the object seen by every other request. Only the
+	 * persistent values are copied, the settings have no associations.
+	 * 
+	 * @param model
+	 *            The snapshot's object, may be null.
+	 * @return A detached copy of the object, or null.
+	 */
+	protected static <T> T copy(T model) {
+		if (model == null)
+			return null;
+		
+		SessionFactory factory = ((HibernateEntityManagerFactory) JPA.entityManagerFactory).getSessionFactory();
+		ClassMetadata metadata = factory.getClassMetadata(model.getClass());
+		
+		Object copy = metadata.instantiate(metadata.getIdentifier(model, EntityMode.POJO), EntityMode.POJO);
+		metadata.setPropertyValues(copy, metadata.getPropertyValues(model, EntityMode.POJO), EntityMode.POJO);
+		return (T) copy;
+	}
+	
+	/**
+	 * @param models
+	 *            The snapshot's objects.
+	 * @return A new list of detached copies of the objects, in order.
+	 */
+	protected static <T> List<T> copies(Collection<T> models) {
+		List<T> copies = new ArrayList<T>(models.size());
+		for (T model : models)
+			copies.add(copy(model));
+		return copies;
+	}
+	
+	/**
+	 * An immutable copy of every setting, loaded with one query per type
+	 * through a separate entity manager. Everything held is detached, and is
+	 * only ever read. Use copy() before handing an object out.
+	 */
+	public static class SettingsSnapshot {
+		
+		public final Map<String, Configuration> configurations;
+		public final List<Degree> degrees;
+		public final List<Major> majors;
+		public final List<College> colleges;
+		public final List<Program> programs;
+		public final List<Department> departments;
+		public final List<DocumentType> documentTypes;
+		public final List<EmbargoType> embargoTypes;
+		public final List<GraduationMonth> graduationMonths;
+		public final List<CommitteeMemberRoleType> committeeMemberRoleTypes;
+		public final List<EmailTemplate> emailTemplates;
+		public final List<CustomActionDefinition> customActionDefinitions;
+		public final List<Language> languages;
+		public final List<DepositLocation> depositLocations;
+		
+		// Lookups by name
+		public final Map<String, Degree> degreesByName = new HashMap<String, Degree>();
+		public final Map<String, EmailTemplate> emailTemplatesByName = new HashMap<String, EmailTemplate>();
+		public final Map<String, Language> languagesByName = new HashMap<String, Language>();
+		public final Map<String, DepositLocation> depositLocationsByName = new HashMap<String, DepositLocation>();
+		
+		/**
+		 * Load a new snapshot of the committed settings.
+		 */
+		public SettingsSnapshot() {
+			EntityManager em = JPA.entityManagerFactory.createEntityManager();
+			try {
+				Map<String, Configuration> configurations = new HashMap<String, Configuration>();
+				for (Configuration config : (List<Configuration>) em.createQuery("SELECT o FROM JpaConfigurationImpl AS o").getResultList())
+					configurations.put(config.getName(), config);
+				this.configurations = Collections.unmodifiableMap(configurations);
+				
+				degrees = load(em, JpaDegreeImpl.class);
+				majors = load(em, JpaMajorImpl.class);
+				colleges = load(em, JpaCollegeImpl.class);
+				programs = load(em, JpaProgramImpl.class);
+				departments = load(em, JpaDepartmentImpl.class);
+				documentTypes = load(em, JpaDocumentTypeImpl.class);
+				embargoTypes = load(em, JpaEmbargoTypeImpl.class);
+				graduationMonths = load(em, JpaGraduationMonthImpl.class);
+				committeeMemberRoleTypes = load(em, JpaCommitteeMemberRoleTypeImpl.class);
+				emailTemplates = load(em, JpaEmailTemplateImpl.class);
+				customActionDefinitions = load(em, JpaCustomActionDefinitionImpl.class);
+				languages = load(em, JpaLanguageImpl.class);
+				depositLocations = load(em, JpaDepositLocationImpl.class);
+			} finally {
+				em.close();
+			}
+			
+			for (Degree degree : degrees)
+				degreesByName.put(degree.getName(), degree);
+			for (EmailTemplate template : emailTemplates)
+				emailTemplatesByName.put(template.getName(), template);
+			for (Language language : languages)
+				languagesByName.put(language.getName(), language);
+			for (DepositLocation location : depositLocations)
+				depositLocationsByName.put(location.getName(), location);
+		}
+		
+		/**
+		 * @param em
+		 *            The snapshot's entity manager.
+		 * @param type
+		 *            The jpa implementation to load.
+		 * @return Every object of the type, in display order.
+		 */
+		protected static List load(EntityManager em, Class<?> type) {
+			return Collections.unmodifiableList(em.createQuery("SELECT o FROM "+type.getSimpleName()+" AS o ORDER BY o.displayOrder").getResultList());
+		}
+	}
 }
@@ -165,13 +165,19 @@ public class JpaSubmissionImpl extends JpaAbstractModel<JpaSubmissionImpl> imple
 	@Transient
 	protected boolean documentSubjectsChanged = false;
 	
+	// The vocabulary values as of the last load or save, null if new.
+	@Transient
+	protected JpaSubmissionVocabularyImpl.Values savedVocabulary = null;
+	
 	/**
 	 * Insure that the pendingLogs array is initialized when loading the object
-	 * from the database.
+	 * from the database, and remember the vocabulary values it was loaded
+	 * with.
 	 */
 	@PostLoad
 	private void onPostLoad() {
 	     pendingLogs = new ArrayList<ActionLog>();
+	     savedVocabulary = new JpaSubmissionVocabularyImpl.Values(this);
 	}
 	
 	/**
@@ -233,6 +239,13 @@ public class JpaSubmissionImpl extends JpaAbstractModel<JpaSubmissionImpl> imple
 		
 		super.save();
 		
+		// Keep the vocabulary of filter options up to date.
+		JpaSubmissionVocabularyImpl.Values currentVocabulary = new JpaSubmissionVocabularyImpl.Values(this);
+		JpaSubmissionVocabularyImpl vocabulary = Spring.getBeanOfType(JpaSubmissionVocabularyImpl.class);
+		if (vocabulary != null)
+			vocabulary.updated(savedVocabulary, currentVocabulary);
+		savedVocabulary = currentVocabulary;
+		
 		// After saving save all pending actionlogs
 		for(ActionLog log : pendingLogs) {			
 			log.save();
@@ -268,7 +281,15 @@ public class JpaSubmissionImpl extends JpaAbstractModel<JpaSubmissionImpl> imple
 			).setParameter(1, this.getId())
 			.executeUpdate();
 
-		return super.delete();
+		JpaSubmissionImpl result = super.delete();
+		
+		// Keep the vocabulary of filter options up to date.
+		JpaSubmissionVocabularyImpl vocabulary = Spring.getBeanOfType(JpaSubmissionVocabularyImpl.class);
+		if (vocabulary != null && savedVocabulary != null)
+			vocabulary.updated(savedVocabulary, null);
+		savedVocabulary = null;
+		
+		return result;
 	}
 	
 	
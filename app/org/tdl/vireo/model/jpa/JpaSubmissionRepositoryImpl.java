@@ -1,9 +1,12 @@
 package org.tdl.vireo.model.jpa;
 
+import java.io.File;
 import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import javax.persistence.Query;
 import javax.persistence.TypedQuery;
@@ -11,7 +14,13 @@ import javax.persistence.criteria.CriteriaBuilder;
 import javax.persistence.criteria.CriteriaQuery;
 import javax.persistence.criteria.Expression;
 import javax.persistence.criteria.Root;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
 
+import org.hibernate.Session;
+
+import org.tdl.vireo.job.JobFamily;
+import org.tdl.vireo.job.ScheduledJob;
 import org.tdl.vireo.model.AbstractModel;
 import org.tdl.vireo.model.ActionLog;
 import org.tdl.vireo.model.Attachment;
@@ -21,9 +30,14 @@ import org.tdl.vireo.model.NamedSearchFilter;
 import org.tdl.vireo.model.Person;
 import org.tdl.vireo.model.Submission;
 import org.tdl.vireo.model.SubmissionRepository;
+import org.tdl.vireo.search.Indexer;
 import org.tdl.vireo.search.Semester;
+import org.tdl.vireo.security.SecurityContext;
 
+import play.Logger;
+import play.db.jpa.Blob;
 import play.db.jpa.JPA;
+import play.modules.spring.Spring;
 
 /**
  * Jpa specific implementation of the Vireo Submission Repository interface.
@@ -32,8 +46,49 @@ import play.db.jpa.JPA;
  */
 public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 	
-	// How many objects to load for each iterator's batch operaton.
-	public static final int ITERATOR_BATCH_SIZE = 10;
+	// The default number of objects to load for each iterator's batch operaton.
+	public static final int ITERATOR_BATCH_SIZE = 50;
+	
+	// How many objects to load for each iterator's batch operation.
+	public int iteratorBatchSize = ITERATOR_BATCH_SIZE;
+	
+	// The cache of distinct values for the filter option lists, if any.
+	public JpaSubmissionVocabularyImpl vocabulary = null;
+	
+	// The lazy collections of a submission which are fetched up front when
+	// submissions are loaded in bulk.
+	public static final String[] SUBMISSION_COLLECTIONS = { "attachments", "committeeMembers", "customActions", "documentSubjects" };
+	
+	// How many ids are looked up by each query when loading objects in bulk.
+	// Short chunks are padded out by repeating the last id so that every query
+	// has the same number of parameters, and the same query plan.
+	public static final int FIND_CHUNK_SIZE = 50;
+	
+	// The bulk queries, each ends with an id list of FIND_CHUNK_SIZE parameters.
+	public static final String FIND_SUBMISSIONS_QUERY = "SELECT DISTINCT sub FROM JpaSubmissionImpl AS sub JOIN FETCH sub.submitter LEFT JOIN FETCH sub.assignee LEFT JOIN FETCH sub.embargoType WHERE sub.id IN "+chunkParameters();
+	public static final String FIND_ACTION_LOGS_QUERY = "SELECT DISTINCT log FROM JpaActionLogImpl AS log JOIN FETCH log.submission LEFT JOIN FETCH log.person LEFT JOIN FETCH log.attachment WHERE log.id IN "+chunkParameters();
+	
+	/**
+	 * @param batchSize
+	 *            How many objects the iterators returned by findAllSubmissions()
+	 *            and findAllActionLogs() load from the database at a time.
+	 */
+	public void setIteratorBatchSize(int batchSize) {
+		if (batchSize < 1)
+			throw new IllegalArgumentException("The iterator batch size must be at least one.");
+		
+		this.iteratorBatchSize = batchSize;
+	}
+	
+	/**
+	 * @param vocabulary
+	 *            The cache of distinct values used by findAllPrograms(),
+	 *            findAllColleges(), etc. If not set then the database is
+	 *            queried every time.
+	 */
+	public void setSubmissionVocabulary(JpaSubmissionVocabularyImpl vocabulary) {
+		this.vocabulary = vocabulary;
+	}
 
 	// //////////////////
 	// Submission Model
@@ -55,23 +110,10 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 		if (submissionIds == null || submissionIds.size() == 0)
 			return new ArrayList<Submission>();
 		
-		StringBuilder sql = new StringBuilder();
-		sql.append("FROM JpaSubmissionImpl WHERE id IN (");
-		for (int i=0; i < submissionIds.size(); i++) {
-			if (i > 0)
-				sql.append(",");
-			sql.append("(?"+(i+1)+")");
-		}
-		sql.append(")");
-		
-		
-		TypedQuery query = JPA.em().createQuery(sql.toString(),JpaSubmissionImpl.class);
-		
-		for (int i=0; i < submissionIds.size(); i++) {
-		query.setParameter(i+1, submissionIds.get(i));
-		}
+		List<Submission> results = findInChunks(FIND_SUBMISSIONS_QUERY, submissionIds);
+		fetchCollections(results);
 		
-		return query.getResultList();
+		return results;
 	}
 
 	@Override
@@ -87,18 +129,97 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 	
 	@Override
 	public Iterator<Submission> findAllSubmissions() {
-		return new JpaIterator() {
+		return new JpaIterator<Submission>() {
 			@Override
-			protected List loadNextBatch(int offset) {
-				return JpaSubmissionImpl.find("order by id desc").from(offset).fetch(ITERATOR_BATCH_SIZE);
+			protected List<Submission> loadNextBatch(Long lastId) {
+				List<Submission> batch;
+				if (lastId == null)
+					batch = JpaSubmissionImpl.find("order by id desc").fetch(iteratorBatchSize);
+				else
+					batch = JpaSubmissionImpl.find("id < (?1) order by id desc", lastId).fetch(iteratorBatchSize);
+				
+				fetchCollections(batch);
+				return batch;
 			}
 		};
 	}
 	
+	@Override
+	public List<Long> findAllSubmissionIds() {
+		TypedQuery<Long> query = JPA.em().createQuery("SELECT sub.id FROM JpaSubmissionImpl AS sub ORDER BY sub.id ASC", Long.class);
+		return query.getResultList();
+	}
+	
 	@Override
 	public long findSubmissionsTotal() {
 		return JpaSubmissionImpl.count();
 	}
+	
+	/**
+	 * Delete the submissions with one set based statement per table for every
+	 * FIND_CHUNK_SIZE ids, instead of deleting each object (and everything it
+	 * cascades to) one at a time. The index is told about all the submissions
+	 * at once, and the attachment files are handed to a background job to be
+	 * removed after the transaction has been committed.
+	 */
+	@Override
+	public int deleteSubmissions(List<Long> submissionIds) {
+		
+		SecurityContext context = Spring.getBeanOfType(SecurityContext.class);
+		if (context.isAuthorizationActive() && !context.isReviewer())
+			throw new SecurityException("This operation requires reviewer level access.");
+		
+		if (submissionIds == null || submissionIds.size() == 0)
+			return 0;
+		
+		// Make sure anything pending is written before going around hibernate.
+		JPA.em().flush();
+		
+		// Remember the files to remove once the deletes have been committed.
+		List<File> files = new ArrayList<File>();
+		for (Blob data : (List<Blob>) selectInChunks("SELECT attachment.data FROM JpaAttachmentImpl AS attachment WHERE attachment.submission.id IN "+chunkParameters(), submissionIds)) {
+			if (data != null && data.exists())
+				files.add(data.getFile());
+		}
+		
+		// Children first, then the submissions themselves.
+		updateInChunks("DELETE FROM committee_member_roles WHERE JpaCommitteeMemberImpl_id IN (SELECT id FROM committee_member WHERE submission_id IN "+chunkParameters()+")", submissionIds, true);
+		updateInChunks("DELETE FROM submission_subjects WHERE JpaSubmissionImpl_id IN "+chunkParameters(), submissionIds, true);
+		updateInChunks("DELETE FROM JpaActionLogImpl WHERE submission.id IN "+chunkParameters(), submissionIds, false);
+		updateInChunks("DELETE FROM JpaCommitteeMemberImpl WHERE submission.id IN "+chunkParameters(), submissionIds, false);
+		updateInChunks("DELETE FROM JpaCustomActionValueImpl WHERE submission.id IN "+chunkParameters(), submissionIds, false);
+		updateInChunks("DELETE FROM JpaAttachmentImpl WHERE submission.id IN "+chunkParameters(), submissionIds, false);
+		int deleted = updateInChunks("DELETE FROM JpaSubmissionImpl WHERE id IN "+chunkParameters(), submissionIds, false);
+		
+		// Remove the submissions, and their action logs, from the index.
+		Indexer indexer = Spring.getBeanOfType(Indexer.class);
+		if (indexer != null)
+			indexer.updated(submissionIds);
+		
+		// The counts of the filter options can't be adjusted without loading
+		// the submissions, so they are recounted instead.
+		if (vocabulary != null)
+			vocabulary.clear();
+		
+		final List<File> reap = files;
+		Session session = (Session) JPA.em().getDelegate();
+		session.getTransaction().registerSynchronization(new Synchronization() {
+			@Override
+			public void beforeCompletion() {
+			}
+			
+			@Override
+			public void afterCompletion(int status) {
+				if (vocabulary != null)
+					vocabulary.clear();
+				
+				if (status == Status.STATUS_COMMITTED && reap.size() > 0)
+					new AttachmentReaperJob(reap).now();
+			}
+		});
+		
+		return deleted;
+	}
 
 	// //////////////////////////////////////////////////////////////
 	// Submission informational
@@ -106,6 +227,9 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 	
 	@Override
 	public List<Semester> findAllGraduationSemesters() {
+		if (vocabulary != null)
+			return vocabulary.findAllGraduationSemesters();
+		
 		Query query = JPA.em().createQuery("SELECT DISTINCT new org.tdl.vireo.search.Semester(sub.graduationYear, sub.graduationMonth) FROM JpaSubmissionImpl AS sub WHERE sub.graduationYear IS NOT NULL AND sub.graduationMonth IS NOT NULL ORDER BY sub.graduationYear DESC, sub.graduationMonth DESC");
 		
 		List<Semester> results = query.getResultList();
@@ -114,6 +238,8 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 	
 	@Override
 	public List<Integer> findAllSubmissionYears() {
+		if (vocabulary != null)
+			return vocabulary.findAllSubmissionYears();
 		
 		CriteriaBuilder cb = JPA.em().getCriteriaBuilder();
 		CriteriaQuery<Integer> cq = cb.createQuery(Integer.class);
@@ -142,6 +268,9 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 	
 	@Override
 	public List<String> findAllPrograms() {
+		if (vocabulary != null)
+			return vocabulary.findAllPrograms();
+		
 		Query query = JPA.em().createQuery("SELECT DISTINCT program FROM JpaSubmissionImpl WHERE program IS NOT NULL ORDER BY program ASC");
 		
 		List<String> results = query.getResultList();
@@ -150,6 +279,9 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 	
 	@Override
 	public List<String> findAllColleges() {
+		if (vocabulary != null)
+			return vocabulary.findAllColleges();
+		
 		Query query = JPA.em().createQuery("SELECT DISTINCT college FROM JpaSubmissionImpl WHERE college IS NOT NULL ORDER BY college ASC");
 		
 		List<String> results = query.getResultList();
@@ -158,6 +290,9 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 	
 	@Override
 	public List<String> findAllDepartments() {
+		if (vocabulary != null)
+			return vocabulary.findAllDepartments();
+		
 		Query query = JPA.em().createQuery("SELECT DISTINCT department FROM JpaSubmissionImpl WHERE department IS NOT NULL ORDER BY department ASC");
 		
 		List<String> results = query.getResultList();
@@ -166,6 +301,9 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 	
 	@Override
 	public List<String> findAllMajors() {
+		if (vocabulary != null)
+			return vocabulary.findAllMajors();
+		
 		Query query = JPA.em().createQuery("SELECT DISTINCT major FROM JpaSubmissionImpl WHERE major IS NOT NULL ORDER BY major ASC");
 		
 		List<String> results = query.getResultList();
@@ -174,6 +312,9 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 	
 	@Override
 	public List<String> findAllDegrees() {
+		if (vocabulary != null)
+			return vocabulary.findAllDegrees();
+		
 		Query query = JPA.em().createQuery("SELECT DISTINCT degree FROM JpaSubmissionImpl WHERE degree IS NOT NULL ORDER BY degree ASC");
 		
 		List<String> results = query.getResultList();
@@ -223,23 +364,7 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 		if (logIds == null || logIds.size() == 0)
 			return new ArrayList<ActionLog>();
 		
-		StringBuilder sql = new StringBuilder();
-		sql.append("FROM JpaActionLogImpl WHERE id IN (");
-		for (int i=0; i < logIds.size(); i++) {
-			if (i > 0)
-				sql.append(",");
-			sql.append("(?"+(i+1)+")");
-		}
-		sql.append(")");
-		
-		
-		TypedQuery query = JPA.em().createQuery(sql.toString(),JpaActionLogImpl.class);
-		
-		for (int i=0; i < logIds.size(); i++) {
-		query.setParameter(i+1, logIds.get(i));
-		}
-		
-		return query.getResultList();
+		return findInChunks(FIND_ACTION_LOGS_QUERY, logIds);
 	}
 	
 	@Override
@@ -249,10 +374,13 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 	
 	@Override
 	public Iterator<ActionLog> findAllActionLogs() {
-		return new JpaIterator() {
+		return new JpaIterator<ActionLog>() {
 			@Override
-			protected List loadNextBatch(int offset) {
-				return JpaActionLogImpl.find("order by id desc").from(offset).fetch(ITERATOR_BATCH_SIZE);
+			protected List<ActionLog> loadNextBatch(Long lastId) {
+				if (lastId == null)
+					return JpaActionLogImpl.find("order by id desc").fetch(iteratorBatchSize);
+				else
+					return JpaActionLogImpl.find("id < (?1) order by id desc", lastId).fetch(iteratorBatchSize);
 			}
 		};
 	}
@@ -292,6 +420,172 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 		return (List) JpaNamedSearchFilterImpl.find("order by id").fetch();
 	}
 	
+	/**
+	 * Initialize the lazy collections of a group of submissions with one query
+	 * per collection, instead of one query per collection for each submission
+	 * as they are accessed. The collections can't all be fetched in a single
+	 * query because hibernate will not join fetch several bags at once.
+	 * 
+	 * @param submissions
+	 *            The submissions, which must be attached to the current
+	 *            persistence context.
+	 */
+	protected void fetchCollections(List<Submission> submissions) {
+		
+		if (submissions == null || submissions.size() == 0)
+			return;
+		
+		List<Long> ids = new ArrayList<Long>(submissions.size());
+		for (Submission sub : submissions)
+			ids.add(sub.getId());
+		
+		for (String collection : SUBMISSION_COLLECTIONS) {
+			findInChunks("SELECT DISTINCT sub FROM JpaSubmissionImpl AS sub LEFT JOIN FETCH sub."+collection+" WHERE sub.id IN "+chunkParameters(), ids);
+		}
+	}
+	
+	/**
+	 * Load a list of objects by id, FIND_CHUNK_SIZE ids at a time. The objects
+	 * are returned in the same order as the ids, any ids which were not found
+	 * are skipped, and each object is only returned once.
+	 * 
+	 * @param jpql
+	 *            The query, ending with an id list of FIND_CHUNK_SIZE
+	 *            positional parameters. See chunkParameters().
+	 * @param ids
+	 *            The ids of the objects to load.
+	 * @return The objects found, in order.
+	 */
+	protected static <T extends AbstractModel> List<T> findInChunks(String jpql, List<Long> ids) {
+		
+		Map<Long,T> found = new HashMap<Long,T>();
+		for (int i = 0; i < ids.size(); i += FIND_CHUNK_SIZE) {
+			List<Long> chunk = ids.subList(i, Math.min(i + FIND_CHUNK_SIZE, ids.size()));
+			
+			Query query = JPA.em().createQuery(jpql);
+			setChunkParameters(query, chunk);
+			
+			List<T> results = query.getResultList();
+			for (T model : results)
+				found.put(model.getId(), model);
+		}
+		
+		List<T> ordered = new ArrayList<T>(found.size());
+		for (Long id : ids) {
+			T model = found.remove(id);
+			if (model != null)
+				ordered.add(model);
+		}
+		return ordered;
+	}
+	
+	/**
+	 * Run a query returning plain values, FIND_CHUNK_SIZE ids at a time.
+	 * 
+	 * @param jpql
+	 *            The query, ending with an id list of FIND_CHUNK_SIZE
+	 *            positional parameters. See chunkParameters().
+	 * @param ids
+	 *            The ids to query.
+	 * @return All the values returned, in no particular order.
+	 */
+	protected static List selectInChunks(String jpql, List<Long> ids) {
+		
+		List results = new ArrayList();
+		for (int i = 0; i < ids.size(); i += FIND_CHUNK_SIZE) {
+			List<Long> chunk = ids.subList(i, Math.min(i + FIND_CHUNK_SIZE, ids.size()));
+			
+			Query query = JPA.em().createQuery(jpql);
+			setChunkParameters(query, chunk);
+			results.addAll(query.getResultList());
+		}
+		return results;
+	}
+	
+	/**
+	 * Run a bulk update or delete statement, FIND_CHUNK_SIZE ids at a time.
+	 * 
+	 * @param ql
+	 *            The statement, ending with an id list of FIND_CHUNK_SIZE
+	 *            positional parameters. See chunkParameters().
+	 * @param ids
+	 *            The ids to update.
+	 * @param nativeQuery
+	 *            True if the statement is plain SQL, used for the tables
+	 *            behind element collections which JPQL can't reach.
+	 * @return The total number of rows changed.
+	 */
+	protected static int updateInChunks(String ql, List<Long> ids, boolean nativeQuery) {
+		
+		int updated = 0;
+		for (int i = 0; i < ids.size(); i += FIND_CHUNK_SIZE) {
+			List<Long> chunk = ids.subList(i, Math.min(i + FIND_CHUNK_SIZE, ids.size()));
+			
+			Query query = nativeQuery ? JPA.em().createNativeQuery(ql) : JPA.em().createQuery(ql);
+			setChunkParameters(query, chunk);
+			updated += query.executeUpdate();
+		}
+		return updated;
+	}
+	
+	/**
+	 * Fill in the FIND_CHUNK_SIZE positional parameters of a query, padding
+	 * out a short chunk by repeating its last id.
+	 * 
+	 * @param query
+	 *            The query.
+	 * @param chunk
+	 *            Up to FIND_CHUNK_SIZE ids.
+	 */
+	protected static void setChunkParameters(Query query, List<Long> chunk) {
+		for (int p = 0; p < FIND_CHUNK_SIZE; p++) {
+			query.setParameter(p+1, chunk.get(Math.min(p, chunk.size()-1)));
+		}
+	}
+	
+	/**
+	 * @return A parenthesized list of FIND_CHUNK_SIZE positional parameters,
+	 *         i.e. "((?1),(?2),...)".
+	 */
+	protected static String chunkParameters() {
+		StringBuilder params = new StringBuilder("(");
+		for (int i=0; i < FIND_CHUNK_SIZE; i++) {
+			if (i > 0)
+				params.append(",");
+			params.append("(?"+(i+1)+")");
+		}
+		params.append(")");
+		return params.toString();
+	}
+	
+	/**
+	 * Background job to remove the files of attachments which have been
+	 * deleted in bulk. Files which can't be removed are logged and left
+	 * behind.
+	 */
+	public static class AttachmentReaperJob extends ScheduledJob {
+		
+		// The files to remove.
+		public final List<File> files;
+		
+		/**
+		 * @param files
+		 *            The files to remove.
+		 */
+		public AttachmentReaperJob(List<File> files) {
+			super(JobFamily.BATCH);
+			this.files = files;
+		}
+		
+		@Override
+		public void doJob() {
+			for (File file : files) {
+				if (file.exists() && !file.delete())
+					Logger.warn("Unable to remove the file of a deleted attachment: "+file.getPath());
+			}
+		}
+	}
+	
 	/**
 	 * Inner class to handle iterating over submissions or action logs. This
 	 * class solves the problem of needing to loop over all objects which may be
@@ -299,13 +593,19 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 	 * problem by loading the objects in batches, so only a few objects are in
 	 * memory at any single time.
 	 * 
+	 * Objects are iterated in descending id order. Each batch is loaded
+	 * relative to the id of the last object retrieved (i.e. id < lastId)
+	 * rather than by offset, so that the database does not need to skip over
+	 * all the previous rows for every batch.
+	 * 
 	 * @param <T>
 	 *            The type of object to iterate over.
 	 */
 	public static abstract class JpaIterator<T extends AbstractModel> implements Iterator<T> {
 
-		// This is the offset into the global list of objects.
-		public int offset = 0;
+		// This is the id of the last object retrieved, or null if nothing has
+		// been retrieved yet.
+		public Long lastId = null;
 
 		// This is the pointer to the current object in the list of retrieved
 		// objects.
@@ -322,12 +622,13 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 		/**
 		 * Load the next batch of objects from the database.
 		 * 
-		 * @param offset
-		 *            How many objects have previously been loaded.
-		 * @return A list of objects returned from the database, or an empty
-		 *         list if no more objects exist.
+		 * @param lastId
+		 *            The id of the last object previously loaded, or null for
+		 *            the first batch.
+		 * @return A list of objects returned from the database in descending
+		 *         id order, or an empty list if no more objects exist.
 		 */
-		protected abstract List<T> loadNextBatch(int offset);
+		protected abstract List<T> loadNextBatch(Long lastId);
 		
 		
 		/**
@@ -339,8 +640,9 @@ public class JpaSubmissionRepositoryImpl implements SubmissionRepository {
 			for (T model : retrieved)
 				model.detach();
 			
-			retrieved = loadNextBatch(offset);
-			offset = offset + retrieved.size();
+			retrieved = loadNextBatch(lastId);
+			if (retrieved.size() > 0)
+				lastId = retrieved.get(retrieved.size()-1).getId();
 			currentPointer = 0;
 		}
 		
@@ -0,0 +1,378 @@
+package org.tdl.vireo.model.jpa;
+
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import javax.persistence.Query;
+import javax.transaction.Status;
+import javax.transaction.Synchronization;
+
+import org.hibernate.Session;
+
+import org.tdl.vireo.search.Semester;
+
+import play.Logger;
+import play.Play;
+import play.db.jpa.JPA;
+
+/**
+ * An in-memory cache of the distinct values used by submissions for the filter
+ * option lists: programs, colleges, departments, majors, degrees, graduation
+ * semesters, and submission years.
+ * 
+ * The cache counts how many submissions use each value. It is loaded with one
+ * grouped query per list, and then kept up to date as submissions are saved
+ * and deleted. Changes are held until the transaction which made them commits,
+ * and thrown away if it rolls back. Since bulk updates never pass through the
+ * model at all, the cache is also reloaded from the database once the refresh
+ * interval has passed.
+ */
+public class JpaSubmissionVocabularyImpl {
+
+	// How long the cache may be used before it is reloaded, in milliseconds.
+	public long refreshInterval;
+
+	// The number of submissions using each value.
+	public Map<String, Integer> programs = new TreeMap<String, Integer>();
+	public Map<String, Integer> colleges = new TreeMap<String, Integer>();
+	public Map<String, Integer> departments = new TreeMap<String, Integer>();
+	public Map<String, Integer> majors = new TreeMap<String, Integer>();
+	public Map<String, Integer> degrees = new TreeMap<String, Integer>();
+	public Map<Integer, Integer> semesters = new TreeMap<Integer, Integer>(Collections.reverseOrder());
+	public Map<Integer, Integer> years = new TreeMap<Integer, Integer>(Collections.reverseOrder());
+
+	// When the cache was last loaded, or zero if it never has been.
+	public long lastRefresh = 0;
+
+	// Changes made within each thread's transaction, until it completes.
+	protected final ThreadLocal<List<Values[]>> pending = new ThreadLocal<List<Values[]>>();
+
+	// Metrics
+	public long hits = 0;
+	public long misses = 0;
+	public long updates = 0;
+
+	/**
+	 * Construct a new vocabulary cache.
+	 */
+	public JpaSubmissionVocabularyImpl() {
+		refreshInterval = Long.valueOf(Play.configuration.getProperty("vocabulary.refreshInterval", "900")) * 1000;
+	}
+
+	/**
+	 * @return A sorted list of all programs used by submissions.
+	 */
+	public synchronized List<String> findAllPrograms() {
+		checkRefresh();
+		return new ArrayList<String>(programs.keySet());
+	}
+
+	/**
+	 * @return A sorted list of all colleges used by submissions.
+	 */
+	public synchronized List<String> findAllColleges() {
+		checkRefresh();
+		return new ArrayList<String>(colleges.keySet());
+	}
+
+	/**
+	 * @return A sorted list of all departments used by submissions.
+	 */
+	public synchronized List<String> findAllDepartments() {
+		checkRefresh();
+		return new ArrayList<String>(departments.keySet());
+	}
+
+	/**
+	 * @return A sorted list of all majors used by submissions.
+	 */
+	public synchronized List<String> findAllMajors() {
+		checkRefresh();
+		return new ArrayList<String>(majors.keySet());
+	}
+
+	/**
+	 * @return A sorted list of all degrees used by submissions.
+	 */
+	public synchronized List<String> findAllDegrees() {
+		checkRefresh();
+		return new ArrayList<String>(degrees.keySet());
+	}
+
+	/**
+	 * @return All graduation semesters used by submissions, most recent
+	 *         first.
+	 */
+	public synchronized List<Semester> findAllGraduationSemesters() {
+		checkRefresh();
+		List<Semester> results = new ArrayList<Semester>();
+		for (Integer semester : semesters.keySet())
+			results.add(new Semester(semester / 12, semester % 12));
+		return results;
+	}
+
+	/**
+	 * @return All years in which submissions were submitted, most recent
+	 *         first.
+	 */
+	public synchronized List<Integer> findAllSubmissionYears() {
+		checkRefresh();
+		return new ArrayList<Integer>(years.keySet());
+	}
+
+	/**
+	 * Record that a submission has changed. The change is applied to the cache
+	 * once the current transaction commits, or right away if there is no
+	 * transaction.
+	 * 
+	 * @param before
+	 *            The submission's values before the change, or null if it is
+	 *            new.
+	 * @param after
+	 *            The submission's values after the change, or null if it has
+	 *            been deleted.
+	 */
+	public void updated(Values before, Values after) {
+
+		if (before != null && before.equals(after))
+			return;
+
+		if (!JPA.isEnabled() || JPA.local.get() == null || !JPA.em().getTransaction().isActive()) {
+			apply(before, after);
+			return;
+		}
+
+		List<Values[]> changes = pending.get();
+		if (changes == null) {
+			final List<Values[]> transactionChanges = new ArrayList<Values[]>();
+			pending.set(transactionChanges);
+			changes = transactionChanges;
+
+			Session session = (Session) JPA.em().getDelegate();
+			session.getTransaction().registerSynchronization(new Synchronization() {
+				@Override
+				public void beforeCompletion() {
+				}
+
+				@Override
+				public void afterCompletion(int status) {
+					pending.remove();
+					if (status == Status.STATUS_COMMITTED) {
+						for (Values[] change : transactionChanges)
+							apply(change[0], change[1]);
+					}
+				}
+			});
+		}
+		changes.add(new Values[] { before, after });
+	}
+
+	/**
+	 * Apply a committed change to the cache.
+	 * 
+	 * @param before
+	 *            The submission's values before the change, or null.
+	 * @param after
+	 *            The submission's values after the change, or null.
+	 */
+	protected synchronized void apply(Values before, Values after) {
+
+		// If nothing has been loaded there is nothing to keep up to date.
+		if (lastRefresh == 0)
+			return;
+
+		updates++;
+		if (before != null)
+			adjust(before, -1);
+		if (after != null)
+			adjust(after, 1);
+	}
+
+	/**
+	 * Forget everything, so the cache will be reloaded the next time it is
+	 * used.
+	 */
+	public synchronized void clear() {
+		lastRefresh = 0;
+	}
+
+	/**
+	 * @return The number of lookups answered from the cache.
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * @return The number of lookups which required reloading the cache.
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * @return The number of submission changes applied to the cache.
+	 */
+	public synchronized long getUpdates() {
+		return updates;
+	}
+
+	/**
+	 * Reload the cache if it has never been loaded, or has expired.
+	 */
+	protected void checkRefresh() {
+		if (lastRefresh != 0 && System.currentTimeMillis() - lastRefresh < refreshInterval) {
+			hits++;
+			return;
+		}
+
+		misses++;
+		long start = System.currentTimeMillis();
+
+		programs = loadCounts("program", new TreeMap<String, Integer>());
+		colleges = loadCounts("college", new TreeMap<String, Integer>());
+		departments = loadCounts("department", new TreeMap<String, Integer>());
+		majors = loadCounts("major", new TreeMap<String, Integer>());
+		degrees = loadCounts("degree", new TreeMap<String, Integer>());
+
+		semesters = new TreeMap<Integer, Integer>(Collections.reverseOrder());
+		Query query = JPA.em().createQuery("SELECT graduationYear, graduationMonth, count(*) FROM JpaSubmissionImpl WHERE graduationYear IS NOT NULL AND graduationMonth IS NOT NULL GROUP BY graduationYear, graduationMonth");
+		for (Object[] row : (List<Object[]>) query.getResultList())
+			semesters.put(semesterKey((Integer) row[0], (Integer) row[1]), ((Number) row[2]).intValue());
+
+		years = new TreeMap<Integer, Integer>(Collections.reverseOrder());
+		query = JPA.em().createQuery("SELECT year(submissionDate), count(*) FROM JpaSubmissionImpl WHERE submissionDate IS NOT NULL GROUP BY year(submissionDate)");
+		for (Object[] row : (List<Object[]>) query.getResultList())
+			years.put(((Number) row[0]).intValue(), ((Number) row[1]).intValue());
+
+		lastRefresh = System.currentTimeMillis();
+		Logger.debug("Reloaded the submission vocabulary in " + (lastRefresh - start) + "ms (" + hits + " hits, " + misses + " misses, " + updates + " updates).");
+	}
+
+	/**
+	 * Count the submissions using each value of a string field.
+	 * 
+	 * @param field
+	 *            The submission field.
+	 * @param counts
+	 *            The map to load the counts into.
+	 * @return The counts.
+	 */
+	protected static Map<String, Integer> loadCounts(String field, Map<String, Integer> counts) {
+		Query query = JPA.em().createQuery("SELECT " + field + ", count(*) FROM JpaSubmissionImpl WHERE " + field + " IS NOT NULL GROUP BY " + field);
+		for (Object[] row : (List<Object[]>) query.getResultList())
+			counts.put((String) row[0], ((Number) row[1]).intValue());
+		return counts;
+	}
+
+	/**
+	 * Add or remove one submission's values from the counts.
+	 */
+	protected void adjust(Values values, int delta) {
+		increment(programs, values.program, delta);
+		increment(colleges, values.college, delta);
+		increment(departments, values.department, delta);
+		increment(majors, values.major, delta);
+		increment(degrees, values.degree, delta);
+		if (values.graduationYear != null && values.graduationMonth != null)
+			increment(semesters, semesterKey(values.graduationYear, values.graduationMonth), delta);
+		if (values.submissionDate != null)
+			increment(years, yearOf(values.submissionDate), delta);
+	}
+
+	/**
+	 * Change the count of one value, removing it once nothing uses it.
+	 */
+	protected static <K> void increment(Map<K, Integer> counts, K value, int delta) {
+		if (value == null)
+			return;
+
+		Integer count = counts.get(value);
+		count = (count == null ? 0 : count) + delta;
+		if (count > 0)
+			counts.put(value, count);
+		else
+			counts.remove(value);
+	}
+
+	/**
+	 * @return A single sortable key for a graduation semester.
+	 */
+	protected static int semesterKey(int year, int month) {
+		return year * 12 + month;
+	}
+
+	/**
+	 * @return The year of a date.
+	 */
+	protected static int yearOf(Date date) {
+		Calendar cal = Calendar.getInstance();
+		cal.setTime(date);
+		return cal.get(Calendar.YEAR);
+	}
+
+	/**
+	 * The values of a single submission which are tracked by the vocabulary.
+	 */
+	public static class Values {
+
+		public final String program;
+		public final String college;
+		public final String department;
+		public final String major;
+		public final String degree;
+		public final Integer graduationYear;
+		public final Integer graduationMonth;
+		public final Date submissionDate;
+
+		/**
+		 * Capture the current values of a submission.
+		 * 
+		 * @param sub
+		 *            The submission.
+		 */
+		public Values(JpaSubmissionImpl sub) {
+			this.program = sub.program;
+			this.college = sub.college;
+			this.department = sub.department;
+			this.major = sub.major;
+			this.degree = sub.degree;
+			this.graduationYear = sub.graduationYear;
+			this.graduationMonth = sub.graduationMonth;
+			this.submissionDate = (sub.submissionDate == null) ? null : new Date(sub.submissionDate.getTime());
+		}
+
+		@Override
+		public boolean equals(Object otherObject) {
+			if (!(otherObject instanceof Values))
+				return false;
+			Values other = (Values) otherObject;
+
+			return equals(program, other.program)
+					&& equals(college, other.college)
+					&& equals(department, other.department)
+					&& equals(major, other.major)
+					&& equals(degree, other.degree)
+					&& equals(graduationYear, other.graduationYear)
+					&& equals(graduationMonth, other.graduationMonth)
+					&& equals(submissionDate, other.submissionDate);
+		}
+
+		@Override
+		public int hashCode() {
+			return (program + college + department + major + degree).hashCode();
+		}
+
+		/**
+		 * @return True if both objects are null or equal.
+		 */
+		protected static boolean equals(Object a, Object b) {
+			return (a == null) ? b == null : a.equals(b);
+		}
+	}
+}
@@ -0,0 +1,148 @@
+package org.tdl.vireo.search;
+
+import java.io.Serializable;
+import java.util.Arrays;
+import java.util.Collection;
+
+import org.tdl.vireo.model.AbstractModel;
+
+/**
+ * An immutable set of object ids, held as a sorted array of primitive longs.
+ * Search filters use this to hand over the submissions and action logs they
+ * include or exclude, without loading each object or boxing each id. This
+ * stays compact even when tens of thousands of ids have been selected.
+ */
+public class IdSet implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	// The empty set.
+	public static final IdSet EMPTY = new IdSet(new long[0]);
+
+	// The ids, sorted ascending without duplicates.
+	private final long[] ids;
+
+	/**
+	 * Construct a new set, the ids must already be sorted without duplicates.
+	 * 
+	 * @param ids
+	 *            The sorted ids.
+	 */
+	protected IdSet(long[] ids) {
+		this.ids = ids;
+	}
+
+	/**
+	 * @param ids
+	 *            The ids, in any order, null values are ignored.
+	 * @return A set of the ids.
+	 */
+	public static IdSet of(Collection<Long> ids) {
+		if (ids == null || ids.size() == 0)
+			return EMPTY;
+
+		long[] array = new long[ids.size()];
+		int count = 0;
+		for (Long id : ids) {
+			if (id != null)
+				array[count++] = id;
+		}
+		return sorted(array, count);
+	}
+
+	/**
+	 * @param models
+	 *            The objects, in any order, null values are ignored.
+	 * @return A set of the objects' ids.
+	 */
+	public static IdSet ofModels(Collection<? extends AbstractModel> models) {
+		if (models == null || models.size() == 0)
+			return EMPTY;
+
+		long[] array = new long[models.size()];
+		int count = 0;
+		for (AbstractModel model : models) {
+			if (model != null && model.getId() != null)
+				array[count++] = model.getId();
+		}
+		return sorted(array, count);
+	}
+
+	/**
+	 * Sort the first part of an array and remove any duplicates.
+	 * 
+	 * @param array
+	 *            The unsorted ids.
+	 * @param count
+	 *            How many of the ids are used.
+	 * @return A set of the ids.
+	 */
+	protected static IdSet sorted(long[] array, int count) {
+		if (count == 0)
+			return EMPTY;
+
+		Arrays.sort(array, 0, count);
+		int unique = 1;
+		for (int i = 1; i < count; i++) {
+			if (array[i] != array[unique - 1])
+				array[unique++] = array[i];
+		}
+		return new IdSet(unique == array.length ? array : Arrays.copyOf(array, unique));
+	}
+
+	/**
+	 * @return The number of ids in the set.
+	 */
+	public int size() {
+		return ids.length;
+	}
+
+	/**
+	 * @return True if the set has no ids.
+	 */
+	public boolean isEmpty() {
+		return ids.length == 0;
+	}
+
+	/**
+	 * @param id
+	 *            The id to look for.
+	 * @return True if the set contains the id.
+	 */
+	public boolean contains(long id) {
+		return Arrays.binarySearch(ids, id) >= 0;
+	}
+
+	/**
+	 * @param index
+	 *            The position of an id, from zero to size() - 1.
+	 * @return The id at that position, the ids are in ascending order.
+	 */
+	public long get(int index) {
+		return ids[index];
+	}
+
+	/**
+	 * @return A copy of the ids, in ascending order.
+	 */
+	public long[] toArray() {
+		return ids.clone();
+	}
+
+	@Override
+	public boolean equals(Object otherObject) {
+		if (!(otherObject instanceof IdSet))
+			return false;
+		return Arrays.equals(ids, ((IdSet) otherObject).ids);
+	}
+
+	@Override
+	public int hashCode() {
+		return Arrays.hashCode(ids);
+	}
+
+	@Override
+	public String toString() {
+		return Arrays.toString(ids);
+	}
+}
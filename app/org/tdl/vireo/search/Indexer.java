@@ -1,6 +1,7 @@
 package org.tdl.vireo.search;
 
 import java.util.List;
+import java.util.concurrent.Future;
 
 import org.tdl.vireo.model.AbstractModel;
 import org.tdl.vireo.model.Submission;
@@ -82,36 +83,42 @@ public interface Indexer {
 	 *            If true the method will not return until rebuilding the index
 	 *            is completed, otherwise rebuilding will take place in a
 	 *            background thread.
+	 * @return A future which is done once the updates are searchable. Callers
+	 *         may block on it, optionally with a timeout, instead of waiting.
 	 */
-	public void commit(boolean wait);
+	public Future<Void> commit(boolean wait);
 
 	/**
 	 * Rebuild the entire search index from scratch.
 	 * 
-	 * This will remove all entries in the search index and rebuild it.
+	 * This will build a new search index containing every submission, and
+	 * then replace the current index with it. Searches and updates continue
+	 * against the current index until the new one is ready.
 	 * 
 	 * @param wait
 	 *            If true the method will not return until rebuilding the index
 	 *            is completed, otherwise rebuilding will take place in a
 	 *            background thread.
+	 * @return A future which is done once the index has been rebuilt.
 	 */
-	public void rebuild(boolean wait);
+	public Future<Void> rebuild(boolean wait);
 	
 	/**
-	 * Delete the entire search index and rebuild it from scratch. This will
-	 * cancel any index jobs currently in progress, and the index will be
-	 * irrevocably deleted. Following the deletion, the index will be rebuild.
+	 * Delete the entire search index and rebuild it from scratch. This is used
+	 * to recover from a corrupted index, the current index is irrevocably
+	 * deleted once the rebuilt index replaces it.
 	 * 
-	 * While this index is rebuilding searches may not be performed against the
-	 * index. Any search that does process will result in an exception.
+	 * While the index is rebuilding searches continue against the current
+	 * index, although if it is corrupted they may fail.
 	 * 
 	 * 
 	 * @param wait
 	 *            If true the method will not return until rebuilding the index
 	 *            is completed, otherwise rebuilding will take place in a
 	 *            background thread.
+	 * @return A future which is done once the index has been rebuilt.
 	 */
-	public void deleteAndRebuild(boolean wait);
+	public Future<Void> deleteAndRebuild(boolean wait);
 
 	/////////////////
 	// Job Management
@@ -29,6 +29,12 @@ public interface SearchFilter {
 	 */
 	public List<Submission> getIncludedSubmissions();
 
+	/**
+	 * @return The ids of the individual submissions this filter is restricted
+	 *         too, without loading the submissions.
+	 */
+	public IdSet getIncludedSubmissionIds();
+
 	/**
 	 * @param sub
 	 *            Add an individual submission this filter is limmitted too.
@@ -46,6 +52,12 @@ public interface SearchFilter {
 	 */
 	public List<ActionLog> getExcludedActionLogs();
 
+	/**
+	 * @return The ids of the individual logs this filter will exclude, without
+	 *         loading the logs.
+	 */
+	public IdSet getExcludedActionLogIds();
+
 	/**
 	 * @param log
 	 *            Add an individual logs this filter will exclude.
@@ -63,6 +75,12 @@ public interface SearchFilter {
 	 */
 	public List<ActionLog> getIncludedActionLogs();
 
+	/**
+	 * @return The ids of the individual logs this filter is restricted too,
+	 *         without loading the logs.
+	 */
+	public IdSet getIncludedActionLogIds();
+
 	/**
 	 * @param log
 	 *            Add an individual log this filter is limmitted too.
@@ -80,6 +98,12 @@ public interface SearchFilter {
 	 */
 	public List<Submission> getExcludedSubmissions();
 
+	/**
+	 * @return The ids of the individual submissions this filter will exclude,
+	 *         without loading the submissions.
+	 */
+	public IdSet getExcludedSubmissionIds();
+
 	/**
 	 * @param sub
 	 *            Add an individual submission this filter will exclude.
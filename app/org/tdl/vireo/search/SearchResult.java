@@ -47,12 +47,37 @@ public interface SearchResult<T extends AbstractModel> {
 	 */
 	public List<T> getResults();
 
+	/**
+	 * Return the results as displayable rows read straight from the search
+	 * index, without loading any objects from the database. This is only
+	 * possible when the index has been configured to store every one of the
+	 * requested columns.
+	 * 
+	 * @param columns
+	 *            The columns which will be displayed.
+	 * @return An ordered list of rows, or null if the index does not hold
+	 *         every column requested.
+	 */
+	public List<SearchRow> getRows(List<SearchOrder> columns);
+
 	/**
 	 * @return The total number of objects matched if the query did not have an
 	 *         offset or limit in place.
 	 */
 	public int getTotal();
+
 	
+	/**
+	 * @return An opaque cursor which will produce the page following this
+	 *         result, or null if this is the last page.
+	 */
+	public String getNextCursor();
+	
+	/**
+	 * @return An opaque cursor which will produce the page preceding this
+	 *         result, or null if this is the first page.
+	 */
+	public String getPreviousCursor();	
 	
 	/**
 	 * Return a list of pagination calculations to aid in displaying the
@@ -0,0 +1,323 @@
+package org.tdl.vireo.search;
+
+import java.text.DateFormatSymbols;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang.LocaleUtils;
+import org.tdl.vireo.model.ActionLog;
+import org.tdl.vireo.model.CommitteeMember;
+import org.tdl.vireo.model.CustomActionValue;
+import org.tdl.vireo.model.NameFormat;
+import org.tdl.vireo.model.Submission;
+
+import play.templates.JavaExtensions;
+
+/**
+ * A single row of a result listing, holding the displayable value of each
+ * column. A row may either be rendered from a submission (or action log) or
+ * read straight back from the search index, when the index has been configured
+ * to store the listed columns. This way a page of results can be displayed
+ * without loading any of the objects from the database.
+ */
+public class SearchRow {
+
+	// The columns whose value is taken from the action log, not its submission.
+	public static final Set<SearchOrder> LOG_COLUMNS = Collections.unmodifiableSet(EnumSet.of(
+			SearchOrder.ID, SearchOrder.STATE, SearchOrder.ASSIGNEE,
+			SearchOrder.LAST_EVENT_ENTRY, SearchOrder.LAST_EVENT_TIME));
+
+	// The submission of this row.
+	public final long subId;
+
+	// The action log of this row, or null if this is a submission.
+	public final Long logId;
+
+	// Weather the action log is private.
+	public final boolean privateLog;
+
+	// The displayable value of each column held.
+	public final Map<SearchOrder, String> cells;
+
+	/**
+	 * Construct a new row.
+	 * 
+	 * @param subId
+	 *            The submission's id.
+	 * @param logId
+	 *            The action log's id, or null.
+	 * @param privateLog
+	 *            Weather the action log is private.
+	 * @param cells
+	 *            The displayable value of each column.
+	 */
+	public SearchRow(long subId, Long logId, boolean privateLog, Map<SearchOrder, String> cells) {
+		this.subId = subId;
+		this.logId = logId;
+		this.privateLog = privateLog;
+		this.cells = cells;
+	}
+
+	/**
+	 * Render a row from a submission, or one of its action logs.
+	 * 
+	 * @param sub
+	 *            The submission.
+	 * @param log
+	 *            The action log, or null if the row is for the submission.
+	 * @param columns
+	 *            The columns to render.
+	 * @return The new row.
+	 */
+	public static SearchRow of(Submission sub, ActionLog log, Collection<SearchOrder> columns) {
+
+		Map<SearchOrder, String> cells = new EnumMap<SearchOrder, String>(SearchOrder.class);
+		for (SearchOrder column : columns)
+			cells.put(column, render(column, sub, log));
+
+		if (log == null)
+			return new SearchRow(sub.getId(), null, false, cells);
+		else
+			return new SearchRow(sub.getId(), log.getId(), log.isPrivate(), cells);
+	}
+
+	/**
+	 * @param column
+	 *            The column.
+	 * @return True if this row holds a value for the column.
+	 */
+	public boolean has(SearchOrder column) {
+		return cells.containsKey(column);
+	}
+
+	/**
+	 * @param column
+	 *            The column.
+	 * @return The displayable value of the column, never null.
+	 */
+	public String get(SearchOrder column) {
+		String value = cells.get(column);
+		return (value == null) ? "" : value;
+	}
+
+	/**
+	 * Render the displayable value of a single column.
+	 * 
+	 * When rendering an action log the columns in LOG_COLUMNS only look at the
+	 * action log, so the submission may be null for those.
+	 * 
+	 * @param column
+	 *            The column to render.
+	 * @param sub
+	 *            The submission.
+	 * @param log
+	 *            The action log, or null if the row is for the submission.
+	 * @return The displayable value, which may contain html.
+	 */
+	public static String render(SearchOrder column, Submission sub, ActionLog log) {
+
+		StringBuilder out = new StringBuilder();
+		switch (column) {
+		case ID:
+			if (log != null) {
+				// For action log show the log's id, not the submission's id.
+				out.append(log.getId());
+			} else {
+				out.append(sub.getId());
+			}
+			break;
+		case STUDENT_EMAIL:
+			if (sub.getSubmitter() != null && sub.getSubmitter().getEmail() != null)
+				out.append(sub.getSubmitter().getEmail());
+			break;
+		case STUDENT_NAME:
+			out.append(sub.getStudentFormattedName(NameFormat.LAST_FIRST_MIDDLE_BIRTH));
+			break;
+		case STUDENT_ID:
+			if (sub.getSubmitter() != null && sub.getSubmitter().getInstitutionalIdentifier() != null)
+				out.append(sub.getSubmitter().getInstitutionalIdentifier());
+			break;
+		case STATE:
+			if (log != null) {
+				// For action logs, show the state at the time the log was made.
+				if (log.getSubmissionState() != null)
+					out.append(log.getSubmissionState().getDisplayName());
+			} else {
+				if (sub.getState() != null)
+					out.append(sub.getState().getDisplayName());
+			}
+			break;
+		case ASSIGNEE:
+			if (log != null) {
+				if (log.getPerson() != null)
+					out.append(log.getPerson().getFormattedName(NameFormat.FIRST_LAST));
+			} else {
+				if (sub.getAssignee() != null)
+					out.append(sub.getAssignee().getFormattedName(NameFormat.FIRST_LAST));
+			}
+			break;
+		case DOCUMENT_TITLE:
+			if (sub.getDocumentTitle() != null)
+				out.append(sub.getDocumentTitle());
+			break;
+		case DOCUMENT_ABSTRACT:
+			if (sub.getDocumentAbstract() != null)
+				out.append(JavaExtensions.nl2br(sub.getDocumentAbstract()));
+			break;
+		case DOCUMENT_KEYWORDS:
+			if (sub.getDocumentKeywords() != null)
+				out.append(sub.getDocumentKeywords());
+			break;
+		case DOCUMENT_SUBJECTS:
+			if (sub.getDocumentSubjects() != null)
+				for (String subject : sub.getDocumentSubjects())
+					out.append("<p>").append(subject).append("</p>");
+			break;
+		case DOCUMENT_LANGUAGE:
+			if (sub.getDocumentLanguage() != null) {
+				Locale locale = null;
+				try {
+					locale = LocaleUtils.toLocale(sub.getDocumentLanguage());
+				} catch (RuntimeException re) { /* ignore */ }
+				if (locale != null)
+					out.append(locale.getDisplayName());
+				else
+					out.append(sub.getDocumentLanguage());
+			}
+			break;
+		case PUBLISHED_MATERIAL:
+			if (sub.getPublishedMaterial() != null)
+				out.append("Yes - ").append(JavaExtensions.nl2br(sub.getPublishedMaterial()));
+			else
+				out.append("No");
+			break;
+		case PRIMARY_DOCUMENT:
+			if (sub.getPrimaryDocument() != null)
+				out.append(sub.getPrimaryDocument().getName());
+			break;
+		case GRADUATION_DATE:
+			String monthName = null;
+			if (sub.getGraduationMonth() != null && sub.getGraduationMonth() >= 0 && sub.getGraduationMonth() <= 11)
+				monthName = new DateFormatSymbols().getMonths()[sub.getGraduationMonth()];
+			if (sub.getGraduationYear() != null)
+				out.append(sub.getGraduationYear());
+			if (monthName != null)
+				out.append(" ").append(monthName);
+			break;
+		case DEFENSE_DATE:
+			if (sub.getDefenseDate() != null)
+				out.append(JavaExtensions.format(sub.getDefenseDate(), "MM/dd/yyyy"));
+			break;
+		case SUBMISSION_DATE:
+			if (sub.getSubmissionDate() != null)
+				out.append(JavaExtensions.format(sub.getSubmissionDate(), "MM/dd/yyyy"));
+			break;
+		case LICENSE_AGREEMENT_DATE:
+			if (sub.getLicenseAgreementDate() != null)
+				out.append(JavaExtensions.format(sub.getLicenseAgreementDate(), "MM/dd/yyyy"));
+			break;
+		case APPROVAL_DATE:
+			if (sub.getApprovalDate() != null)
+				out.append(JavaExtensions.format(sub.getApprovalDate(), "MM/dd/yyyy"));
+			break;
+		case COMMITTEE_APPROVAL_DATE:
+			if (sub.getCommitteeApprovalDate() != null)
+				out.append(JavaExtensions.format(sub.getCommitteeApprovalDate(), "MM/dd/yyyy"));
+			break;
+		case COMMITTEE_EMBARGO_APPROVAL_DATE:
+			if (sub.getCommitteeEmbargoApprovalDate() != null)
+				out.append(JavaExtensions.format(sub.getCommitteeEmbargoApprovalDate(), "MM/dd/yyyy"));
+			break;
+		case COMMITTEE_MEMBERS:
+			for (CommitteeMember member : sub.getCommitteeMembers()) {
+				out.append("<p>");
+				out.append(member.getFormattedName(NameFormat.LAST_FIRST));
+				if (member.getRoles().size() > 0)
+					out.append(" (").append(member.getFormattedRoles()).append(")");
+				out.append("</p>");
+			}
+			break;
+		case COMMITTEE_CONTACT_EMAIL:
+			if (sub.getCommitteeContactEmail() != null)
+				out.append(sub.getCommitteeContactEmail());
+			break;
+		case DEGREE:
+			if (sub.getDegree() != null)
+				out.append(sub.getDegree());
+			break;
+		case DEGREE_LEVEL:
+			if (sub.getDegreeLevel() != null)
+				out.append(sub.getDegreeLevel().name());
+			break;
+		case PROGRAM:
+			if (sub.getProgram() != null)
+				out.append(sub.getProgram());
+			break;
+		case COLLEGE:
+			if (sub.getCollege() != null)
+				out.append(sub.getCollege());
+			break;
+		case DEPARTMENT:
+			if (sub.getDepartment() != null)
+				out.append(sub.getDepartment());
+			break;
+		case MAJOR:
+			if (sub.getMajor() != null)
+				out.append(sub.getMajor());
+			break;
+		case EMBARGO_TYPE:
+			if (sub.getEmbargoType() != null)
+				out.append(sub.getEmbargoType().getName());
+			break;
+		case DOCUMENT_TYPE:
+			if (sub.getDocumentType() != null)
+				out.append(sub.getDocumentType());
+			break;
+		case UMI_RELEASE:
+			if (sub.getUMIRelease() != null)
+				out.append(sub.getUMIRelease() ? "Yes" : "No");
+			break;
+		case CUSTOM_ACTIONS:
+			int actions = 0;
+			for (CustomActionValue action : sub.getCustomActions()) {
+				if (action.getValue())
+					actions++;
+			}
+			if (actions > 0)
+				out.append(actions);
+			break;
+		case DEPOSIT_ID:
+			if (sub.getDepositId() != null)
+				out.append(sub.getDepositId());
+			break;
+		case REVIEWER_NOTES:
+			if (sub.getReviewerNotes() != null)
+				out.append(JavaExtensions.nl2br(sub.getReviewerNotes()));
+			break;
+		case LAST_EVENT_ENTRY:
+			if (log != null) {
+				out.append(log.getEntry());
+				if (log.isPrivate())
+					out.append("<b> - [private]</b>");
+			} else {
+				if (sub.getLastLogEntry() != null)
+					out.append(sub.getLastLogEntry());
+			}
+			break;
+		case LAST_EVENT_TIME:
+			if (log != null) {
+				out.append(JavaExtensions.format(log.getActionDate(), "MM/dd/yyyy hh:mm:ss a"));
+			} else {
+				if (sub.getLastLogDate() != null)
+					out.append(JavaExtensions.format(sub.getLastLogDate(), "MM/dd/yyyy hh:mm:ss a"));
+			}
+			break;
+		}
+		return out.toString();
+	}
+}
@@ -2,6 +2,7 @@ package org.tdl.vireo.search;
 
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.tdl.vireo.model.ActionLog;
 import org.tdl.vireo.model.Submission;
@@ -62,6 +63,97 @@ public interface Searcher {
 			SearchOrder orderBy, SearchDirection direction, int offset,
 			int limit);
 
+	/**
+	 * Search for a page of submissions which match the parameters and order
+	 * specified below, starting from a cursor returned by a previous search.
+	 * Unlike the offset based search the cost of each page does not depend
+	 * upon how deep into the results the page is.
+	 * 
+	 * @param filter
+	 *            The filter parameters describing which submissions should be
+	 *            included.
+	 * @param orderBy
+	 *            How the submissions should be ordered.
+	 * @param direction
+	 *            The direction of the order.
+	 * @param cursor
+	 *            An opaque cursor from SearchResult.getNextCursor() or
+	 *            getPreviousCursor(). If null, or if the cursor was produced
+	 *            for a different order, then the first page is returned.
+	 * @param limit
+	 *            The pagination limit of results per page.
+	 * @return The submission results object.
+	 */
+	public SearchResult<Submission> submissionSearch(SearchFilter filter,
+			SearchOrder orderBy, SearchDirection direction, String cursor,
+			int limit);
+
+	/**
+	 * Search for a page of action logs which match the parameters and order
+	 * specified below, starting from a cursor returned by a previous search.
+	 * Unlike the offset based search the cost of each page does not depend
+	 * upon how deep into the results the page is.
+	 * 
+	 * @param filter
+	 *            The filter parameters describing which log items should be
+	 *            included.
+	 * @param orderBy
+	 *            How the logs items should be ordered.
+	 * @param direction
+	 *            The direction of the order.
+	 * @param cursor
+	 *            An opaque cursor from SearchResult.getNextCursor() or
+	 *            getPreviousCursor(). If null, or if the cursor was produced
+	 *            for a different order, then the first page is returned.
+	 * @param limit
+	 *            The pagination limit of results per page.
+	 * @return The action log results object.
+	 */
+	public SearchResult<ActionLog> actionLogSearch(SearchFilter filter,
+			SearchOrder orderBy, SearchDirection direction, String cursor,
+			int limit);
+
+	/**
+	 * Count the submissions which match the filter for each value of the
+	 * facets specified below. The counts for a facet ignore the filter's own
+	 * values for that facet, so that they reflect how many submissions would
+	 * match if that value was added to the filter.
+	 * 
+	 * Only the facets which select from a list of values are counted: STATE,
+	 * ASSIGNEE, GRADUATION_SEMESTER, DEPARTMENT, PROGRAM, COLLEGE, MAJOR,
+	 * EMBARGO, DEGREE, DOCUMENT_TYPE, and UMI_RELEASE. The values are keyed in
+	 * the same form they are added to the filter: state bean names, assignee
+	 * ids (or "null" for unassigned), graduation semesters as "year/month",
+	 * embargo names, and "true" or "false" for UMI release. Everything else is
+	 * keyed by it's value.
+	 * 
+	 * @param filter
+	 *            The filter parameters describing which submissions should be
+	 *            included.
+	 * @param facets
+	 *            The facets to count, others are ignored.
+	 * @return A map from each counted facet to it's values and their counts,
+	 *         sorted by value. Values with no matches are not included.
+	 */
+	public Map<SearchFacet, Map<String, Integer>> submissionFacetCounts(
+			SearchFilter filter, List<SearchFacet> facets);
+
+	/**
+	 * Count the action logs which match the filter for each value of the
+	 * facets specified below. See submissionFacetCounts() for how the values
+	 * are counted and keyed.
+	 * 
+	 * @param filter
+	 *            The filter parameters describing which log items should be
+	 *            included.
+	 * @param facets
+	 *            The facets to count, others are ignored.
+	 * @return A map from each counted facet to it's values and their counts,
+	 *         sorted by value. Values with no matches are not included.
+	 */
+	public Map<SearchFacet, Map<String, Integer>> actionLogFacetCounts(
+			SearchFilter filter, List<SearchFacet> facets);
+
 	/**
 	 * Search for the ids of all submissions which match the parameters and
 	 * order specified below. This method is useful for batch operations where
@@ -0,0 +1,89 @@
+package org.tdl.vireo.search.impl;
+
+import java.io.IOException;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.index.TermDocs;
+import org.apache.lucene.search.DocIdSet;
+import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.OpenBitSet;
+import org.tdl.vireo.search.IdSet;
+
+/**
+ * A filter matching every document whose numeric id field holds one of a set
+ * of ids. This replaces adding one term query per id, which runs into the
+ * boolean query's clause limit and slows down sharply once a few hundred ids
+ * have been selected.
+ * 
+ * The ids are sorted, so the terms are looked up in the same order they are
+ * stored in the index, and the matching documents of each segment are
+ * collected into a single bitset. Deleted documents are never matched.
+ */
+public class IdSetFilter extends Filter {
+
+	private static final long serialVersionUID = 1L;
+
+	// The numeric id field, either "subId" or "logId".
+	public final String field;
+
+	// The ids to match.
+	public final IdSet ids;
+
+	/**
+	 * Construct a new id set filter.
+	 * 
+	 * @param field
+	 *            The numeric id field.
+	 * @param ids
+	 *            The ids to match.
+	 */
+	public IdSetFilter(String field, IdSet ids) {
+		this.field = field;
+		this.ids = ids;
+	}
+
+	@Override
+	public DocIdSet getDocIdSet(IndexReader reader) throws IOException {
+
+		OpenBitSet bits = new OpenBitSet(reader.maxDoc());
+		int[] docs = new int[32];
+		int[] freqs = new int[32];
+
+		TermDocs termDocs = reader.termDocs();
+		try {
+			for (int i = 0; i < ids.size(); i++) {
+				termDocs.seek(new Term(field, NumericUtils.longToPrefixCoded(ids.get(i))));
+
+				int count;
+				while ((count = termDocs.read(docs, freqs)) > 0) {
+					for (int j = 0; j < count; j++)
+						bits.fastSet(docs[j]);
+				}
+			}
+		} finally {
+			termDocs.close();
+		}
+
+		return bits;
+	}
+
+	@Override
+	public boolean equals(Object otherObject) {
+		if (!(otherObject instanceof IdSetFilter))
+			return false;
+		IdSetFilter other = (IdSetFilter) otherObject;
+		return field.equals(other.field) && ids.equals(other.ids);
+	}
+
+	@Override
+	public int hashCode() {
+		return field.hashCode() ^ ids.hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return "IdSetFilter(" + field + ": " + ids.size() + " ids)";
+	}
+}
@@ -0,0 +1,183 @@
+package org.tdl.vireo.search.impl;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.tdl.vireo.model.AbstractModel;
+import org.tdl.vireo.search.IdSet;
+
+/**
+ * A list of models which starts out only knowing their ids. The models are
+ * loaded all at once, in a single batch, the first time any of them is
+ * actually needed. Until then the ids may be handed straight to the searcher,
+ * or encoded back into a filter, without loading anything.
+ * 
+ * The list may hold null if it was given a null id. Models which can not be
+ * found, such as ones deleted since their ids were searched for, are dropped
+ * from the list when it is loaded, so the size may shrink at that point.
+ * Adding and removing models only touches the ids until the list has been
+ * loaded.
+ */
+public abstract class LazyModelList<T extends AbstractModel> extends AbstractList<T> {
+
+	// The ids of the models, in order.
+	protected final List<Long> ids;
+
+	// The models, in the same order as the ids, or null until loaded.
+	protected List<T> models = null;
+
+	/**
+	 * Construct a new lazy list.
+	 * 
+	 * @param ids
+	 *            The ids of the models, null values are allowed.
+	 */
+	public LazyModelList(List<Long> ids) {
+		this.ids = new ArrayList<Long>(ids);
+	}
+
+	/**
+	 * Load a batch of models.
+	 * 
+	 * @param ids
+	 *            The ids to load, without nulls or duplicates.
+	 * @return The models found, in any order.
+	 */
+	protected abstract List<T> load(List<Long> ids);
+
+	/**
+	 * @return The ids of the models, in order, without loading them.
+	 */
+	public List<Long> getIds() {
+		return Collections.unmodifiableList(ids);
+	}
+
+	/**
+	 * @return The ids of the models, without loading them.
+	 */
+	public IdSet getIdSet() {
+		return IdSet.of(ids);
+	}
+
+	/**
+	 * @return True if the models have been loaded.
+	 */
+	public boolean isLoaded() {
+		return models != null;
+	}
+
+	@Override
+	public T get(int index) {
+		return loaded().get(index);
+	}
+
+	@Override
+	public int size() {
+		return ids.size();
+	}
+
+	@Override
+	public T set(int index, T model) {
+		T previous = loaded().set(index, model);
+		ids.set(index, idOf(model));
+		return previous;
+	}
+
+	@Override
+	public void add(int index, T model) {
+		if (models != null)
+			models.add(index, model);
+		ids.add(index, idOf(model));
+		modCount++;
+	}
+
+	@Override
+	public T remove(int index) {
+		T previous = loaded().remove(index);
+		ids.remove(index);
+		modCount++;
+		return previous;
+	}
+
+	@Override
+	public boolean remove(Object model) {
+		int index = indexOf(model);
+		if (index < 0)
+			return false;
+
+		if (models != null)
+			models.remove(index);
+		ids.remove(index);
+		modCount++;
+		return true;
+	}
+
+	@Override
+	public int indexOf(Object model) {
+		if (model != null && !(model instanceof AbstractModel))
+			return -1;
+		return ids.indexOf(idOf((AbstractModel) model));
+	}
+
+	@Override
+	public boolean contains(Object model) {
+		return indexOf(model) >= 0;
+	}
+
+	@Override
+	public void clear() {
+		ids.clear();
+		if (models != null)
+			models.clear();
+		modCount++;
+	}
+
+	/**
+	 * Load every model in one batch, if that has not already happened. The
+	 * ids of any models which could not be found are removed.
+	 * 
+	 * @return The loaded models, in the same order as the ids.
+	 */
+	protected List<T> loaded() {
+		if (models != null)
+			return models;
+
+		List<Long> distinct = new ArrayList<Long>(new LinkedHashSet<Long>(ids));
+		distinct.remove(null);
+
+		Map<Long, T> found = new HashMap<Long, T>();
+		if (distinct.size() > 0) {
+			for (T model : load(distinct))
+				found.put(model.getId(), model);
+		}
+
+		List<T> ordered = new ArrayList<T>(ids.size());
+		Iterator<Long> itr = ids.iterator();
+		while (itr.hasNext()) {
+			Long id = itr.next();
+			if (id == null) {
+				ordered.add(null);
+			} else if (found.containsKey(id)) {
+				ordered.add(found.get(id));
+			} else {
+				itr.remove();
+			}
+		}
+
+		models = ordered;
+		return models;
+	}
+
+	/**
+	 * @return The id of a model, or null if the model is null.
+	 */
+	protected static Long idOf(AbstractModel model) {
+		return (model == null) ? null : model.getId();
+	}
+}
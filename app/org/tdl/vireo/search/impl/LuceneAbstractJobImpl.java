@@ -1,10 +1,18 @@
 package org.tdl.vireo.search.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Calendar;
+import java.util.Collections;
 import java.util.Date;
+import java.util.EnumMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Future;
 
 import org.apache.commons.lang.LocaleUtils;
 import org.apache.lucene.document.Document;
@@ -13,16 +21,27 @@ import org.apache.lucene.document.Field.Index;
 import org.apache.lucene.document.NumericField;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.store.LockObtainFailedException;
+import org.apache.lucene.util.NumericUtils;
 import org.tdl.vireo.error.ErrorLog;
+import org.tdl.vireo.job.JobFamily;
+import org.tdl.vireo.job.ScheduledJob;
 import org.tdl.vireo.model.ActionLog;
 import org.tdl.vireo.model.CommitteeMember;
 import org.tdl.vireo.model.CustomActionValue;
 import org.tdl.vireo.model.NameFormat;
 import org.tdl.vireo.model.Submission;
+import org.tdl.vireo.search.SearchOrder;
+import org.tdl.vireo.search.SearchRow;
 
 import play.Logger;
-import play.jobs.Job;
+import play.libs.Codec;
+import play.libs.F.Promise;
 import play.modules.spring.Spring;
 
 /**
@@ -30,10 +49,13 @@ import play.modules.spring.Spring;
  * are background threads to update the index. This abstract implementation
  * shares code between the various implementations.
  * 
+ * Index updates run on the scheduler's INDEX pool, ahead of any bulk work,
+ * while a rebuild runs on its own REBUILD pool.
+ * 
  * @author <a href="http://www.scottphillips.com">Scott Phillips</a>
  * 
  */
-public abstract class LuceneAbstractJobImpl extends Job {
+public abstract class LuceneAbstractJobImpl extends ScheduledJob {
 	
 	// The indexer who's background job this belongs too.
 	public final LuceneIndexerImpl indexer;
@@ -47,7 +69,16 @@ public abstract class LuceneAbstractJobImpl extends Job {
 	public int total = 0;
 	
 	// Flag to stop this job immediately abandoning any results.
-	public boolean cancel = false;
+	public volatile boolean cancel = false;
+	
+	// The position in the indexer's journal covered by this job. Once the job
+	// has finished every entry before this position is in the index.
+	public long journalPosition = 0;
+	
+	// The promise returned to callers of this job, and the promises of any
+	// other jobs merged into it. They are all redeemed once this job finishes.
+	public final Promise<Void> completion = new Promise<Void>();
+	public final List<Promise<Void>> completions = new CopyOnWriteArrayList<Promise<Void>>(Collections.singletonList(completion));
 	
 	/**
 	 * Construct a new index job. 
@@ -55,6 +86,17 @@ public abstract class LuceneAbstractJobImpl extends Job {
 	 * @param indexer The indexer
 	 */
 	public LuceneAbstractJobImpl(LuceneIndexerImpl indexer) {
+		this(indexer, JobFamily.INDEX);
+	}
+	
+	/**
+	 * Construct a new index job, run by the given family's pool.
+	 * 
+	 * @param indexer The indexer
+	 * @param family The family of the job
+	 */
+	public LuceneAbstractJobImpl(LuceneIndexerImpl indexer, JobFamily family) {
+		super(family);
 		this.indexer = indexer;
 	}
 	
@@ -92,20 +134,49 @@ public abstract class LuceneAbstractJobImpl extends Job {
 	}
 	
 	/**
-	 * Single to the running job that it should be cancelled. If the job is
-	 * currently in progress it will stop after the next submission, rollback
-	 * any uncommitted changes to the index and finish processing.
+	 * Single to the job that it should be cancelled. A job which has not
+	 * started yet will not run at all. An update job which has started
+	 * writing always finishes, because the shared writer also holds the
+	 * uncommitted changes of earlier jobs. A rebuild stops after the next
+	 * submission, leaving the live index as it was.
 	 */
 	public void cancelJob() {
 		this.cancel = true;
 	}
 	
+	/**
+	 * @return A future which is done once this job, or the job it has been
+	 *         merged into, has finished.
+	 */
+	public Future<Void> getCompletion() {
+		return completion;
+	}
+	
+	/**
+	 * Take over responsibility for redeeming another job's promises, because
+	 * that job has been merged into this one.
+	 * 
+	 * @param job
+	 *            The other job.
+	 */
+	public void mergeCompletions(LuceneAbstractJobImpl job) {
+		if (job == null || job == this)
+			return;
+		
+		for (Promise<Void> promise : job.completions) {
+			if (!completions.contains(promise))
+				completions.add(promise);
+		}
+	}
+	
 	/**
 	 * Start an index job.
 	 * 
-	 * This method handles the exceptions
+	 * This method handles the exceptions, the job's completions are redeemed
+	 * with the failure so that callers waiting on them see it.
 	 */
 	public void doJob() {
+		Throwable failure = null;
 		try {
 			if (cancel) {
 				throw new InterruptedException("Lucene '"+this.getLabel()+"' job recieved a cancel request before begining processing.");
@@ -114,6 +185,12 @@ public abstract class LuceneAbstractJobImpl extends Job {
 			long start = System.currentTimeMillis();
 							
 			writeIndex();
+			indexer.indexed(journalPosition);
+			
+			// Commit the changes, unless they can be batched with the next
+			// job, and make them visible to searches.
+			indexer.commitWriter(false);
+			indexer.refreshSearcher();
 			
 			Logger.debug("Lucene '"+this.getLabel()+"' job processed "+total+" submissions completed succesfully in " + ((System.currentTimeMillis()-start)/1000F) +" seconds.");
 			
@@ -130,7 +207,6 @@ public abstract class LuceneAbstractJobImpl extends Job {
 				errorLog.logError(cie,"Updating search index");
 				
 				indexer.deleteAndRebuild(false);
-				cancel = true;
 				
 			} else {
 				Logger.fatal(cie, "Lucene's attempt to rebuild a corrupted index has failed. No further attempts will be made, and searching is disabled.");
@@ -138,6 +214,7 @@ public abstract class LuceneAbstractJobImpl extends Job {
 				ErrorLog errorLog = Spring.getBeanOfType(ErrorLog.class);
 				errorLog.logError(cie, "Updating search index");
 			}
+			failure = cie;
 			throw new RuntimeException(cie);
 			
 		} catch(LockObtainFailedException lofe) {
@@ -146,6 +223,7 @@ public abstract class LuceneAbstractJobImpl extends Job {
 			ErrorLog errorLog = Spring.getBeanOfType(ErrorLog.class);
 			errorLog.logError(lofe, "Updating search index");
 			
+			failure = lofe;
 			throw new RuntimeException(lofe);
 			
 		} catch (IOException ioe) {
@@ -154,14 +232,24 @@ public abstract class LuceneAbstractJobImpl extends Job {
 			ErrorLog errorLog = Spring.getBeanOfType(ErrorLog.class);
 			errorLog.logError(ioe, "Updating search index");
 			
+			failure = ioe;
 			throw new RuntimeException(ioe);
 		} catch (InterruptedException ie) {
 			// We were asked to stop.
 			Logger.info(ie.getMessage());
+		} catch (RuntimeException re) {
+			failure = re;
+			throw re;
 		} finally {
-			// If we were cancled don't start the next job.
-			if (!cancel)
-				indexer.runNextJob(null);
+			// Move on to the next job, and let anyone waiting know we are
+			// done, or why we failed.
+			indexer.jobFinished(this);
+			for (Promise<Void> promise : completions) {
+				if (failure == null)
+					promise.invoke(null);
+				else
+					promise.invokeWithException(failure);
+			}
 		}
 	}
 	
@@ -195,267 +283,378 @@ public abstract class LuceneAbstractJobImpl extends Job {
 	 */
 	public void indexSubmission(IndexWriter writer, Submission sub) throws CorruptIndexException, IOException {
 		
-		StringBuilder searchText = new StringBuilder();
-		
-		long subId = sub.getId();
-		
-		String state = sub.getState().getDisplayName();
-		searchText.append(state).append(" ");
-		
-		long searchAssigned = 0;
-		String sortAssigned = "";
-		if (sub.getAssignee() != null) {
-			searchAssigned = sub.getAssignee().getId();
-			sortAssigned = sub.getAssignee().getFormattedName(NameFormat.LAST_FIRST_MIDDLE_BIRTH);
-			searchText.append(sortAssigned).append(" ");
-		}
-		
-		Date graduationSemester = null;
-		if (sub.getGraduationYear() != null) {
-			Calendar cal = Calendar.getInstance();
-			cal.clear();
-			cal.set(Calendar.YEAR, sub.getGraduationYear());
-			if (sub.getGraduationMonth() != null)
-				cal.set(Calendar.MONTH,sub.getGraduationMonth());
-			
-			graduationSemester = cal.getTime();
-		}
-		
-		Date defenseDate = sub.getDefenseDate();
-		
-		String department = sub.getDepartment();
-		String program = sub.getProgram();
-		String college = sub.getCollege();
-		String major = sub.getMajor();
-		searchText.append(department).append(" ").append(program).append(" ").append(college).append(" ").append(major).append(" ");
-		
-		String embargo = null;
-		if (sub.getEmbargoType() != null) {
-			embargo = sub.getEmbargoType().getName();
-			searchText.append(embargo).append(" ");
-		}
-		
-		String degree = sub.getDegree();
-		String documentType = sub.getDocumentType();
-		searchText.append(degree).append(" ").append(documentType).append(" ");
-		
-		Date submissionDate = sub.getSubmissionDate();
-		
-		String studentName = "";
-		if (sub.getStudentLastName() != null)
-			studentName += sub.getStudentLastName() + " ";
-		if (sub.getStudentFirstName() != null)
-			studentName += sub.getStudentFirstName() + " ";
-		if (sub.getStudentMiddleName() != null)
-			studentName += sub.getStudentMiddleName() + " ";
-		searchText.append(studentName).append(" ");
-		
-		searchText.append(sub.getStudentFormattedName(NameFormat.LAST_FIRST_BIRTH)).append(" ");
-		searchText.append(sub.getStudentFormattedName(NameFormat.FIRST_LAST_BIRTH)).append(" ");
-
-		
-		String studentEmail = sub.getSubmitter().getEmail();
-		searchText.append(studentEmail).append(" ");
-		
-		String institutionalIdentifier = sub.getSubmitter().getInstitutionalIdentifier();
-		searchText.append(institutionalIdentifier).append(" ");
-		
-		String documentTitle = sub.getDocumentTitle();
-		String documentAbstract = sub.getDocumentAbstract();
-		String documentKeywords = sub.getDocumentKeywords();
-		searchText.append(documentTitle).append(" ").append(documentAbstract).append(" ").append(documentKeywords).append(" ");
-		
-		String documentSubjects = "";
-		for (String subject : sub.getDocumentSubjects()) {
-			documentSubjects += subject + " ";
-		}
-		searchText.append(documentSubjects).append(" ");
-		
-		String documentLanguage = null;
-		if (sub.getDocumentLanguageLocale() != null) {
-			Locale locale = sub.getDocumentLanguageLocale();
-			searchText.append(locale.getDisplayName()).append(" ");
-			searchText.append(locale.getDisplayLanguage()).append(" ");
-			searchText.append(locale.getDisplayCountry()).append(" ");
-			searchText.append(locale.getDisplayVariant()).append(" ");
-			
-			documentLanguage = locale.getDisplayName();
-		}
+		List<ActionLog> logs = indexer.subRepo.findActionLog(sub);
+		SubmissionFields fields = new SubmissionFields(sub, logs, indexer.rowColumns);
 		
-		String publishedMaterial = sub.getPublishedMaterial();
-		searchText.append(publishedMaterial).append(" ");
+		writer.addDocument(fields.submissionDocument());
 		
-		String primaryDocument = null;
-		if (sub.getPrimaryDocument() != null) {
-			primaryDocument = sub.getPrimaryDocument().getName();
-			searchText.append(primaryDocument).append(" ");
+		for (ActionLog log : logs) {
+			writer.addDocument(fields.actionLogDocument(log));
+			
+			// Detach the log so it dosn't keep stacking up in memory.
+			log.detach();
 		}
+	} // indexSubmission(writer,sub)
+	
+	/**
+	 * Update an existing submission in the index. The submission's document is
+	 * always replaced, but its action logs are only rewritten when the
+	 * submission fields copied onto each log have changed since the submission
+	 * was last indexed. Otherwise only the action logs which have been created,
+	 * modified, or deleted are written.
+	 * 
+	 * @param writer
+	 *            The index writer.
+	 * @param sub
+	 *            The submission to update.
+	 * @param previousSignature
+	 *            The log signature of the submission currently in the index,
+	 *            or null if the submission is not in the index.
+	 * @param logIds
+	 *            The ids of the action logs which have changed, may be null.
+	 */
+	public void updateSubmission(IndexWriter writer, Submission sub, String previousSignature, Set<Long> logIds) throws CorruptIndexException, IOException {
 		
-		Date licenseAgreementDate = sub.getLicenseAgreementDate();
-		Date approvalDate = sub.getApprovalDate();
-		Date committeeApprovalDate = sub.getCommitteeApprovalDate();
-		Date committeeEmbargoApprovalDate = sub.getCommitteeEmbargoApprovalDate();
+		long subId = sub.getId();
 		
-		String committeeMembers = "";
-		for (CommitteeMember member : sub.getCommitteeMembers()) {
-			// TODO: sort by display order?
-			committeeMembers += member.getFormattedName(NameFormat.LAST_FIRST) + " " + member.getFormattedRoles();
-		}
-		searchText.append(committeeMembers).append(" ");
-
-		String committeeContactEmail = sub.getCommitteeContactEmail();
-		searchText.append(committeeContactEmail).append(" ");
+		// The submission keeps a copy of its most recent log, only load them
+		// all if it is missing.
+		List<ActionLog> logs = null;
+		if (sub.getLastLogDate() == null)
+			logs = indexer.subRepo.findActionLog(sub);
+		SubmissionFields fields = new SubmissionFields(sub, logs, indexer.rowColumns);
 		
-		String umiRelease;
-		if (sub.getUMIRelease() == null) {
-			umiRelease = "";
-		} else if (sub.getUMIRelease()) {
-			umiRelease = "yes";
-		} else {
-			umiRelease = "no";
-		}
+		writer.deleteDocuments(submissionQuery(subId));
+		writer.addDocument(fields.submissionDocument());
 		
-		int customActions = 0;
-		for (CustomActionValue action : sub.getCustomActions()) {
-			if (action.getValue())
-				customActions++;
+		if (!fields.signature.equals(previousSignature)) {
+			
+			// Every log carries a stale copy of the submission, rewrite them all.
+			writer.deleteDocuments(actionLogQuery(subId));
+			for (ActionLog log : indexer.subRepo.findActionLog(sub)) {
+				writer.addDocument(fields.actionLogDocument(log));
+				log.detach();
+			}
+			
+		} else if (logIds != null && logIds.size() > 0) {
+			
+			// Only the changed logs need to be written.
+			Set<Long> missing = new HashSet<Long>(logIds);
+			for (ActionLog log : indexer.subRepo.findActionLogs(new ArrayList<Long>(logIds))) {
+				missing.remove(log.getId());
+				if (log.getSubmission() == null || log.getSubmission().getId() != subId)
+					continue;
+				
+				writer.updateDocument(new Term("logId", NumericUtils.longToPrefixCoded(log.getId())), fields.actionLogDocument(log));
+				log.detach();
+			}
+			
+			// Anything we could not find has been deleted.
+			for (Long logId : missing) {
+				writer.deleteDocuments(new Term("logId", NumericUtils.longToPrefixCoded(logId)));
+			}
 		}
-		
-		String degreeLevel = null;
-		if (sub.getDegreeLevel() != null)
-			degreeLevel = sub.getDegreeLevel().name();
-		searchText.append(degreeLevel).append(" ");
-		
-		String depositId = sub.getDepositId();
-		searchText.append(depositId).append(" ");
-		
-		String reviewerNotes = sub.getReviewerNotes();
-		searchText.append(reviewerNotes).append(" ");
-		
-		String lastEventEntry = null;
-		Date lastEventTime = null;
-		
-		List<ActionLog> logs = indexer.subRepo.findActionLog(sub);
-		if (logs.size() > 0) {
-			lastEventEntry = logs.get(0).getEntry();
-			lastEventTime = logs.get(0).getActionDate();
-			searchText.append(lastEventEntry);
+	} // updateSubmission(writer,sub,previousSignature,logIds)
+	
+	/**
+	 * @param subId
+	 *            The submission id.
+	 * @return A query matching only the submission's own document.
+	 */
+	public static Query submissionQuery(long subId) {
+		BooleanQuery query = new BooleanQuery();
+		query.add(new TermQuery(new Term("subId", NumericUtils.longToPrefixCoded(subId))), Occur.MUST);
+		query.add(new TermQuery(new Term("type", "submission")), Occur.MUST);
+		return query;
+	}
+	
+	/**
+	 * @param subId
+	 *            The submission id.
+	 * @return A query matching all of the submission's action log documents.
+	 */
+	public static Query actionLogQuery(long subId) {
+		BooleanQuery query = new BooleanQuery();
+		query.add(new TermQuery(new Term("subId", NumericUtils.longToPrefixCoded(subId))), Occur.MUST);
+		query.add(new TermQuery(new Term("type", "actionlog")), Occur.MUST);
+		return query;
+	}
+	
+	/**
+	 * The indexed values of a single submission. These are computed once, and
+	 * then used to build both the submission's document and the document for
+	 * each of its action logs, which carry a copy of most of the submission's
+	 * fields so that they may be filtered the same way.
+	 * 
+	 * The signature is a digest of the values copied onto the action logs. It
+	 * is stored with the submission's document so that an update can tell
+	 * whether the action logs already in the index are still current.
+	 */
+	public static class SubmissionFields {
+		
+		public final long subId;
+		public final String searchText;
+		public final String state;
+		public final long searchAssigned;
+		public final String sortAssigned;
+		public final Date graduationSemester;
+		public final Date defenseDate;
+		public final String department;
+		public final String program;
+		public final String college;
+		public final String major;
+		public final String embargo;
+		public final String degree;
+		public final String documentType;
+		public final Date submissionDate;
+		public final String studentName;
+		public final String studentEmail;
+		public final String institutionalIdentifier;
+		public final String documentTitle;
+		public final String documentAbstract;
+		public final String documentKeywords;
+		public final String documentSubjects;
+		public final String documentLanguage;
+		public final String publishedMaterial;
+		public final String primaryDocument;
+		public final Date licenseAgreementDate;
+		public final Date approvalDate;
+		public final Date committeeApprovalDate;
+		public final Date committeeEmbargoApprovalDate;
+		public final String committeeMembers;
+		public final String committeeContactEmail;
+		public final String umiRelease;
+		public final int customActions;
+		public final String degreeLevel;
+		public final String depositId;
+		public final String reviewerNotes;
+		public final String lastEventEntry;
+		public final Date lastEventTime;
+		public final Map<SearchOrder, String> rows;
+		public final String signature;
+		
+		/**
+		 * Compute the indexed values of a submission.
+		 * 
+		 * @param sub
+		 *            The submission.
+		 * @param logs
+		 *            The submission's action logs, most recent first, or null
+		 *            to use the submission's record of its last action log.
+		 * @param rowColumns
+		 *            The listed columns whose displayable values are stored.
+		 */
+		public SubmissionFields(Submission sub, List<ActionLog> logs, Set<SearchOrder> rowColumns) {
+			
+			StringBuilder searchText = new StringBuilder();
+			
+			subId = sub.getId();
+			
+			state = sub.getState().getDisplayName();
+			searchText.append(state).append(" ");
+			
+			if (sub.getAssignee() != null) {
+				searchAssigned = sub.getAssignee().getId();
+				sortAssigned = sub.getAssignee().getFormattedName(NameFormat.LAST_FIRST_MIDDLE_BIRTH);
+				searchText.append(sortAssigned).append(" ");
+			} else {
+				searchAssigned = 0;
+				sortAssigned = "";
+			}
+			
+			if (sub.getGraduationYear() != null) {
+				Calendar cal = Calendar.getInstance();
+				cal.clear();
+				cal.set(Calendar.YEAR, sub.getGraduationYear());
+				if (sub.getGraduationMonth() != null)
+					cal.set(Calendar.MONTH,sub.getGraduationMonth());
+				
+				graduationSemester = cal.getTime();
+			} else {
+				graduationSemester = null;
+			}
+			
+			defenseDate = sub.getDefenseDate();
+			
+			department = sub.getDepartment();
+			program = sub.getProgram();
+			college = sub.getCollege();
+			major = sub.getMajor();
+			searchText.append(department).append(" ").append(program).append(" ").append(college).append(" ").append(major).append(" ");
+			
+			if (sub.getEmbargoType() != null) {
+				embargo = sub.getEmbargoType().getName();
+				searchText.append(embargo).append(" ");
+			} else {
+				embargo = null;
+			}
+			
+			degree = sub.getDegree();
+			documentType = sub.getDocumentType();
+			searchText.append(degree).append(" ").append(documentType).append(" ");
+			
+			submissionDate = sub.getSubmissionDate();
+			
+			String studentName = "";
+			if (sub.getStudentLastName() != null)
+				studentName += sub.getStudentLastName() + " ";
+			if (sub.getStudentFirstName() != null)
+				studentName += sub.getStudentFirstName() + " ";
+			if (sub.getStudentMiddleName() != null)
+				studentName += sub.getStudentMiddleName() + " ";
+			this.studentName = studentName;
+			searchText.append(studentName).append(" ");
+			
+			searchText.append(sub.getStudentFormattedName(NameFormat.LAST_FIRST_BIRTH)).append(" ");
+			searchText.append(sub.getStudentFormattedName(NameFormat.FIRST_LAST_BIRTH)).append(" ");
+			
+			studentEmail = sub.getSubmitter().getEmail();
+			searchText.append(studentEmail).append(" ");
+			
+			institutionalIdentifier = sub.getSubmitter().getInstitutionalIdentifier();
+			searchText.append(institutionalIdentifier).append(" ");
+			
+			documentTitle = sub.getDocumentTitle();
+			documentAbstract = sub.getDocumentAbstract();
+			documentKeywords = sub.getDocumentKeywords();
+			searchText.append(documentTitle).append(" ").append(documentAbstract).append(" ").append(documentKeywords).append(" ");
+			
+			String documentSubjects = "";
+			for (String subject : sub.getDocumentSubjects()) {
+				documentSubjects += subject + " ";
+			}
+			this.documentSubjects = documentSubjects;
+			searchText.append(documentSubjects).append(" ");
+			
+			if (sub.getDocumentLanguageLocale() != null) {
+				Locale locale = sub.getDocumentLanguageLocale();
+				searchText.append(locale.getDisplayName()).append(" ");
+				searchText.append(locale.getDisplayLanguage()).append(" ");
+				searchText.append(locale.getDisplayCountry()).append(" ");
+				searchText.append(locale.getDisplayVariant()).append(" ");
+				
+				documentLanguage = locale.getDisplayName();
+			} else {
+				documentLanguage = null;
+			}
+			
+			publishedMaterial = sub.getPublishedMaterial();
+			searchText.append(publishedMaterial).append(" ");
+			
+			if (sub.getPrimaryDocument() != null) {
+				primaryDocument = sub.getPrimaryDocument().getName();
+				searchText.append(primaryDocument).append(" ");
+			} else {
+				primaryDocument = null;
+			}
+			
+			licenseAgreementDate = sub.getLicenseAgreementDate();
+			approvalDate = sub.getApprovalDate();
+			committeeApprovalDate = sub.getCommitteeApprovalDate();
+			committeeEmbargoApprovalDate = sub.getCommitteeEmbargoApprovalDate();
+			
+			String committeeMembers = "";
+			for (CommitteeMember member : sub.getCommitteeMembers()) {
+				// TODO: sort by display order?
+				committeeMembers += member.getFormattedName(NameFormat.LAST_FIRST) + " " + member.getFormattedRoles();
+			}
+			this.committeeMembers = committeeMembers;
+			searchText.append(committeeMembers).append(" ");
+			
+			committeeContactEmail = sub.getCommitteeContactEmail();
+			searchText.append(committeeContactEmail).append(" ");
+			
+			if (sub.getUMIRelease() == null) {
+				umiRelease = "";
+			} else if (sub.getUMIRelease()) {
+				umiRelease = "yes";
+			} else {
+				umiRelease = "no";
+			}
+			
+			int customActions = 0;
+			for (CustomActionValue action : sub.getCustomActions()) {
+				if (action.getValue())
+					customActions++;
+			}
+			this.customActions = customActions;
+			
+			if (sub.getDegreeLevel() != null)
+				degreeLevel = sub.getDegreeLevel().name();
+			else
+				degreeLevel = null;
+			searchText.append(degreeLevel).append(" ");
+			
+			depositId = sub.getDepositId();
+			searchText.append(depositId).append(" ");
+			
+			reviewerNotes = sub.getReviewerNotes();
+			searchText.append(reviewerNotes).append(" ");
+			
+			if (logs == null) {
+				lastEventEntry = sub.getLastLogEntry();
+				lastEventTime = sub.getLastLogDate();
+			} else if (logs.size() > 0) {
+				lastEventEntry = logs.get(0).getEntry();
+				lastEventTime = logs.get(0).getActionDate();
+			} else {
+				lastEventEntry = null;
+				lastEventTime = null;
+			}
+			if (lastEventEntry != null)
+				searchText.append(lastEventEntry);
+			
+			this.searchText = searchText.toString();
+			
+			rows = new EnumMap<SearchOrder, String>(SearchOrder.class);
+			for (SearchOrder column : rowColumns)
+				rows.put(column, SearchRow.render(column, sub, null));
+			
+			signature = computeSignature();
 		}
 		
-		Document doc = new Document();
-		
-		doc.add(new NumericField("subId",Field.Store.YES,true).setLongValue(subId));
-		doc.add(new Field("type","submission",Field.Store.YES,Index.NOT_ANALYZED));
-		doc.add(new Field("searchText",searchText.toString(),Field.Store.NO,Index.ANALYZED_NO_NORMS));
-		if (state != null)
-		doc.add(new Field("state",state,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		doc.add(new NumericField("searchAssigned",Field.Store.NO,true).setLongValue(searchAssigned));
-		
-		if (sortAssigned != null)
-		doc.add(new Field("sortAssigned",sortAssigned,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (graduationSemester != null)
-		doc.add(new NumericField("graduationSemester",Field.Store.NO,true).setLongValue(graduationSemester.getTime()));
-		
-		if (defenseDate != null)
-		doc.add(new NumericField("defenseDate",Field.Store.NO,true).setLongValue(defenseDate.getTime()));
-		
-		if (department != null)
-		doc.add(new Field("department",department,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (program != null)
-		doc.add(new Field("program",program,Field.Store.NO,Index.NOT_ANALYZED));
+		/**
+		 * @return The document for the submission itself.
+		 */
+		public Document submissionDocument() {
 			
-		if (college != null)
-		doc.add(new Field("college",college,Field.Store.NO,Index.NOT_ANALYZED));		
-		
-		if (major != null)
-		doc.add(new Field("major",major,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (embargo != null)
-		doc.add(new Field("embargo",embargo,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (degree != null)
-		doc.add(new Field("degree",degree,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (documentType != null)
-		doc.add(new Field("documentType",documentType,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (submissionDate != null)
-		doc.add(new NumericField("submissionDate",Field.Store.NO,true).setLongValue(submissionDate.getTime()));
-		
-		if (studentName != null)
-		doc.add(new Field("studentName",studentName, Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (studentEmail != null)
-		doc.add(new Field("studentEmail",studentEmail, Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (institutionalIdentifier != null)
-		doc.add(new Field("institutionalIdentifier",institutionalIdentifier,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (documentTitle != null)
-		doc.add(new Field("documentTitle",documentTitle, Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (documentAbstract != null)
-		doc.add(new Field("documentAbstract",documentAbstract, Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (documentKeywords != null)
-		doc.add(new Field("documentKeywords",documentKeywords, Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (documentSubjects != null)
-		doc.add(new Field("documentSubjects",documentSubjects, Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (documentLanguage != null)
-		doc.add(new Field("documentLanguage",documentLanguage, Field.Store.NO,Index.NOT_ANALYZED));
-
-		if (publishedMaterial != null)
-		doc.add(new Field("publishedMaterial",publishedMaterial, Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (primaryDocument != null)
-		doc.add(new Field("primaryDocument",primaryDocument, Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (licenseAgreementDate != null)
-		doc.add(new NumericField("licenseAgreementDate",Field.Store.NO,true).setLongValue(licenseAgreementDate.getTime()));
-		
-		if (approvalDate != null)
-		doc.add(new NumericField("approvalDate",Field.Store.NO,true).setLongValue(approvalDate.getTime()));
-		
-		if (committeeApprovalDate != null)
-		doc.add(new NumericField("committeeApprovalDate",Field.Store.NO,true).setLongValue(committeeApprovalDate.getTime()));
-		
-		if (committeeEmbargoApprovalDate != null)
-		doc.add(new NumericField("committeeEmbargoApprovalDate",Field.Store.NO,true).setLongValue(committeeEmbargoApprovalDate.getTime()));
-		
-		if (committeeMembers != null)
-		doc.add(new Field("committeeMembers",committeeMembers,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (committeeContactEmail != null)
-		doc.add(new Field("committeeContactEmail",committeeContactEmail,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (umiRelease != null)
-		doc.add(new Field("umiRelease",umiRelease,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		doc.add(new NumericField("customActions",Field.Store.NO,true).setIntValue(customActions));
-
-		if (degreeLevel != null)
-		doc.add(new Field("degreeLevel",degreeLevel,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (depositId != null)
-		doc.add(new Field("depositId",depositId,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (reviewerNotes != null)
-		doc.add(new Field("reviewerNotes",reviewerNotes,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (lastEventEntry != null)
-		doc.add(new Field("lastEventEntry",lastEventEntry,Field.Store.NO,Index.NOT_ANALYZED));
-		
-		if (lastEventTime != null)
-		doc.add(new NumericField("lastEventTime",Field.Store.NO,true).setLongValue(lastEventTime.getTime()));
-		
-		writer.addDocument(doc);
+			Document doc = new Document();
+			
+			doc.add(new NumericField("subId",Field.Store.YES,true).setLongValue(subId));
+			doc.add(new Field("type","submission",Field.Store.YES,Index.NOT_ANALYZED));
+			doc.add(new Field("logSignature",signature,Field.Store.YES,Index.NO));
+			doc.add(new Field("searchText",searchText,Field.Store.NO,Index.ANALYZED_NO_NORMS));
+			if (state != null)
+			doc.add(new Field("state",state,Field.Store.NO,Index.NOT_ANALYZED));
+			
+			doc.add(new NumericField("searchAssigned",Field.Store.NO,true).setLongValue(searchAssigned));
+			
+			if (sortAssigned != null)
+			doc.add(new Field("sortAssigned",sortAssigned,Field.Store.NO,Index.NOT_ANALYZED));
+			
+			if (documentTitle != null)
+			doc.add(new Field("documentTitle",documentTitle, Field.Store.NO,Index.NOT_ANALYZED));
+			
+			if (lastEventEntry != null)
+			doc.add(new Field("lastEventEntry",lastEventEntry,Field.Store.NO,Index.NOT_ANALYZED));
+			
+			if (lastEventTime != null)
+			doc.add(new NumericField("lastEventTime",Field.Store.NO,true).setLongValue(lastEventTime.getTime()));
+			
+			for (Map.Entry<SearchOrder, String> row : rows.entrySet())
+			doc.add(new Field("row."+row.getKey().name(),row.getValue(),Field.Store.YES,Index.NO));
+			
+			addSharedFields(doc);
+			
+			return doc;
+		}
 		
-		for (ActionLog log : logs) {
+		/**
+		 * @param log
+		 *            One of the submission's action logs.
+		 * @return The document for the action log.
+		 */
+		public Document actionLogDocument(ActionLog log) {
 			
 			Long logId = log.getId();
 			String logEntry = log.getEntry();
@@ -469,7 +668,7 @@ public abstract class LuceneAbstractJobImpl extends Job {
 			Date logTime = log.getActionDate();
 			
 			// The new special things for action logs.
-			doc = new Document();
+			Document doc = new Document();
 			doc.add(new NumericField("subId",Field.Store.YES,true).setLongValue(subId));
 			doc.add(new NumericField("logId",Field.Store.YES,true).setLongValue(logId));
 			doc.add(new Field("type","actionlog",Field.Store.YES,Index.NOT_ANALYZED));
@@ -491,8 +690,32 @@ public abstract class LuceneAbstractJobImpl extends Job {
 			if (logTime != null)
 			doc.add(new NumericField("lastEventTime",Field.Store.NO,true).setLongValue(logTime.getTime()));
 			
+			// The log's own values replace the submission's in its row.
+			for (Map.Entry<SearchOrder, String> row : rows.entrySet()) {
+				String value = row.getValue();
+				if (SearchRow.LOG_COLUMNS.contains(row.getKey()))
+					value = SearchRow.render(row.getKey(), null, log);
+				doc.add(new Field("row."+row.getKey().name(),value,Field.Store.YES,Index.NO));
+			}
+			
+			if (rows.size() > 0)
+			doc.add(new Field("private",String.valueOf(log.isPrivate()),Field.Store.YES,Index.NO));
 			
 			// Stuff that is the same as the submission.
+			addSharedFields(doc);
+			
+			return doc;
+		}
+		
+		/**
+		 * Add the fields which are the same on the submission and all of its
+		 * action logs.
+		 * 
+		 * @param doc
+		 *            The document to add the fields too.
+		 */
+		protected void addSharedFields(Document doc) {
+			
 			if (graduationSemester != null)
 			doc.add(new NumericField("graduationSemester",Field.Store.NO,true).setLongValue(graduationSemester.getTime()));
 			
@@ -581,11 +804,35 @@ public abstract class LuceneAbstractJobImpl extends Job {
 			
 			if (reviewerNotes != null)
 			doc.add(new Field("reviewerNotes",reviewerNotes,Field.Store.NO,Index.NOT_ANALYZED));
-			
-			writer.addDocument(doc);
-			
-			// Detach the log so it dosn't keep stacking up in memory.
-			log.detach();
-		} // for logs
-	} // indexSubmission(writer,sub)
+		}
+		
+		/**
+		 * @return A digest of every value added by addSharedFields(), and of
+		 *         the stored rows which are copied onto the action logs.
+		 */
+		protected String computeSignature() {
+			StringBuilder values = new StringBuilder();
+			for (Object value : new Object[] {
+					graduationSemester, defenseDate, department, program,
+					college, major, embargo, degree, documentType,
+					submissionDate, studentName, studentEmail,
+					institutionalIdentifier, documentAbstract,
+					documentKeywords, documentSubjects, documentLanguage,
+					publishedMaterial, primaryDocument, licenseAgreementDate,
+					approvalDate, committeeApprovalDate,
+					committeeEmbargoApprovalDate, committeeMembers,
+					committeeContactEmail, umiRelease, customActions,
+					degreeLevel, depositId, reviewerNotes }) {
+				
+				if (value instanceof Date)
+					value = ((Date) value).getTime();
+				values.append(value == null ? "\u0000" : value.toString()).append('\u0001');
+			}
+			for (Map.Entry<SearchOrder, String> row : rows.entrySet()) {
+				if (!SearchRow.LOG_COLUMNS.contains(row.getKey()))
+					values.append(row.getKey().name()).append('\u0002').append(row.getValue()).append('\u0001');
+			}
+			return Codec.hexSHA1(values.toString());
+		}
+	} // SubmissionFields
 } // IndexJob
@@ -0,0 +1,325 @@
+package org.tdl.vireo.search.impl;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.sf.oval.internal.util.LinkedSet;
+
+import play.Logger;
+
+/**
+ * An append-only journal of the submissions which need to be updated in the
+ * search index.
+ * 
+ * Each time an index transaction is committed the submission ids (and any
+ * action log ids) are appended to the journal and synced to disk before the
+ * update job is scheduled. Syncs are grouped: a thread whose entry was already
+ * covered by another thread's sync does not sync again. Once the index writer
+ * has committed those updates the entries are discarded. If the application
+ * stops before that happens, the journal is replayed on the next start so the
+ * index catches up without needing a full rebuild.
+ * 
+ * Entries are appended before their update job is handed to the indexer, so
+ * an entry may briefly not belong to any job. Until it is marked as assigned,
+ * no position past the start of that entry is treated as indexed.
+ * 
+ * Entries are identified by their logical position: the total number of bytes
+ * ever appended to the journal. Positions keep increasing even after the
+ * start of the file has been discarded.
+ * 
+ * Each line of the journal is either a submission id, or a submission id and
+ * an action log id separated by a space.
+ */
+public class LuceneIndexJournal {
+
+	// The journal file.
+	public final File file;
+
+	// The number of bytes discarded from the start of the journal.
+	private long discarded = 0;
+
+	// The current size of the journal file.
+	private long size = 0;
+
+	// The open journal, appended to until it is closed.
+	private FileOutputStream out = null;
+
+	// The start position of each appended entry not yet given to a job,
+	// keyed by the entry's end position.
+	private final TreeMap<Long, Long> unassigned = new TreeMap<Long, Long>();
+
+	// Only one thread syncs at a time, and how far it got. Guarded by syncLock.
+	private final Object syncLock = new Object();
+	private long synced = 0;
+
+	/**
+	 * Open the journal, any existing entries are kept so they may be replayed.
+	 * 
+	 * @param file
+	 *            The journal file.
+	 */
+	public LuceneIndexJournal(File file) {
+		this.file = file;
+		this.size = file.exists() ? file.length() : 0;
+
+		// Terminate any partially written entry so that it is not joined with
+		// the next one appended.
+		if (size > 0) {
+			try {
+				RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				try {
+					raf.seek(size - 1);
+					if (raf.read() != '\n') {
+						raf.write('\n');
+						size++;
+					}
+				} finally {
+					raf.close();
+				}
+			} catch (IOException ioe) {
+				Logger.error(ioe, "Unable to open the search index journal at '" + file.getPath() + "'.");
+			}
+		}
+	}
+
+	/**
+	 * Append a set of updates to the journal, and sync them to disk. The
+	 * entry is unassigned until assigned() is called with the returned
+	 * position.
+	 * 
+	 * @param subIds
+	 *            The submission ids.
+	 * @param logIds
+	 *            The action log ids grouped by submission id, may be null.
+	 * @return The position of the end of the journal after appending.
+	 */
+	public long append(Set<Long> subIds, Map<Long, Set<Long>> logIds) throws IOException {
+		long position = write(subIds, logIds);
+		sync(position);
+		return position;
+	}
+
+	/**
+	 * Write a set of updates to the end of the journal, without syncing.
+	 * 
+	 * @param subIds
+	 *            The submission ids.
+	 * @param logIds
+	 *            The action log ids grouped by submission id, may be null.
+	 * @return The position of the end of the journal after writing.
+	 */
+	protected synchronized long write(Set<Long> subIds, Map<Long, Set<Long>> logIds) throws IOException {
+
+		StringBuilder entries = new StringBuilder();
+		for (Long subId : subIds) {
+			entries.append(subId).append("\n");
+		}
+		if (logIds != null) {
+			for (Map.Entry<Long, Set<Long>> entry : logIds.entrySet()) {
+				for (Long logId : entry.getValue()) {
+					entries.append(entry.getKey()).append(" ").append(logId).append("\n");
+				}
+			}
+		}
+		byte[] bytes = entries.toString().getBytes("US-ASCII");
+
+		if (out == null) {
+			if (file.getParentFile() != null)
+				file.getParentFile().mkdirs();
+			out = new FileOutputStream(file, true);
+		}
+		out.write(bytes);
+
+		long start = discarded + size;
+		size += bytes.length;
+		unassigned.put(start + bytes.length, start);
+		return start + bytes.length;
+	}
+
+	/**
+	 * Make sure everything up to the given position is synced to disk. If
+	 * another thread's sync has already covered the position this returns
+	 * straight away, otherwise one sync covers everything written so far.
+	 * 
+	 * @param position
+	 *            The position which must be on disk.
+	 */
+	public void sync(long position) throws IOException {
+		synchronized (syncLock) {
+			if (synced >= position)
+				return;
+
+			FileOutputStream current;
+			long target;
+			synchronized (this) {
+				current = out;
+				target = discarded + size;
+			}
+			if (current != null)
+				current.getChannel().force(false);
+			synced = target;
+		}
+	}
+
+	/**
+	 * Record that an appended entry has been given to an update job.
+	 * 
+	 * @param position
+	 *            The position returned when the entry was appended.
+	 */
+	public synchronized void assigned(long position) {
+		unassigned.remove(position);
+	}
+
+	/**
+	 * Limit a position to the start of the oldest entry which has not been
+	 * given to a job yet, since that entry can't have been indexed.
+	 * 
+	 * @param position
+	 *            A position which has been indexed.
+	 * @return The position, or the start of the oldest unassigned entry if
+	 *         that is earlier.
+	 */
+	public synchronized long indexable(long position) {
+		if (unassigned.isEmpty())
+			return position;
+		return Math.min(position, unassigned.firstEntry().getValue());
+	}
+
+	/**
+	 * Close the journal file. Anything not yet committed to the index is
+	 * left in the journal to be replayed.
+	 */
+	public synchronized void close() {
+		if (out == null)
+			return;
+		try {
+			out.close();
+		} catch (IOException ioe) {
+			Logger.error(ioe, "Unable to close the search index journal at '" + file.getPath() + "'.");
+		}
+		out = null;
+	}
+
+	/**
+	 * @return The position of the end of the journal.
+	 */
+	public synchronized long getPosition() {
+		return discarded + size;
+	}
+
+	/**
+	 * Discard every entry before the given position, because they have been
+	 * committed to the index.
+	 * 
+	 * @param position
+	 *            The position to discard up too.
+	 */
+	public synchronized void discard(long position) throws IOException {
+
+		long drop = position - discarded;
+		if (drop <= 0)
+			return;
+
+		if (drop >= size) {
+			// Everything has been committed.
+			if (file.exists()) {
+				RandomAccessFile raf = new RandomAccessFile(file, "rw");
+				try {
+					raf.setLength(0);
+					raf.getChannel().force(false);
+				} finally {
+					raf.close();
+				}
+			}
+		} else {
+			// Keep the entries which are still pending.
+			byte[] pending = new byte[(int) (size - drop)];
+			RandomAccessFile raf = new RandomAccessFile(file, "rw");
+			try {
+				raf.seek(drop);
+				raf.readFully(pending);
+				raf.seek(0);
+				raf.write(pending);
+				raf.setLength(pending.length);
+				raf.getChannel().force(false);
+			} finally {
+				raf.close();
+			}
+		}
+
+		discarded += drop;
+		size = Math.max(0, size - drop);
+	}
+
+	/**
+	 * Read all the entries currently in the journal.
+	 * 
+	 * @param subIds
+	 *            The set to add submission ids too.
+	 * @param logIds
+	 *            The map to add action log ids too, grouped by submission id.
+	 */
+	public synchronized void read(Set<Long> subIds, Map<Long, Set<Long>> logIds) throws IOException {
+
+		if (!file.exists())
+			return;
+
+		BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), "US-ASCII"));
+		try {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				try {
+					String[] parts = line.trim().split(" ");
+					Long subId = Long.valueOf(parts[0]);
+					subIds.add(subId);
+
+					if (parts.length > 1) {
+						Set<Long> ids = logIds.get(subId);
+						if (ids == null) {
+							ids = new HashSet<Long>();
+							logIds.put(subId, ids);
+						}
+						ids.add(Long.valueOf(parts[1]));
+					}
+				} catch (NumberFormatException nfe) {
+					// A partially written entry from an unclean shutdown.
+					Logger.warn("Ignoring malformed search index journal entry: '" + line + "'");
+				}
+			}
+		} finally {
+			reader.close();
+		}
+	}
+
+	/**
+	 * Read the journal into a new update job.
+	 * 
+	 * @param indexer
+	 *            The indexer the job belongs too.
+	 * @return The job, or null if the journal is empty.
+	 */
+	public synchronized LuceneUpdateJob replay(LuceneIndexerImpl indexer) throws IOException {
+
+		Set<Long> subIds = new LinkedSet<Long>();
+		Map<Long, Set<Long>> logIds = new HashMap<Long, Set<Long>>();
+		read(subIds, logIds);
+
+		if (subIds.size() == 0)
+			return null;
+
+		LuceneUpdateJob job = new LuceneUpdateJob(indexer, subIds, logIds);
+		job.journalPosition = getPosition();
+		return job;
+	}
+}
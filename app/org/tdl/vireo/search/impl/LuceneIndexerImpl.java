@@ -2,16 +2,29 @@ package org.tdl.vireo.search.impl;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 import net.sf.oval.internal.util.LinkedSet;
 
 import org.apache.lucene.analysis.Analyzer;
 import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.TieredMergePolicy;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.SearcherFactory;
+import org.apache.lucene.search.SearcherManager;
 import org.apache.lucene.store.Directory;
 import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.util.Version;
+import org.tdl.vireo.job.JobScheduler;
 import org.tdl.vireo.model.AbstractModel;
 import org.tdl.vireo.model.ActionLog;
 import org.tdl.vireo.model.Attachment;
@@ -20,9 +33,11 @@ import org.tdl.vireo.model.CustomActionValue;
 import org.tdl.vireo.model.Submission;
 import org.tdl.vireo.model.SubmissionRepository;
 import org.tdl.vireo.search.Indexer;
+import org.tdl.vireo.search.SearchOrder;
 
 import play.Logger;
 import play.Play;
+import play.libs.F.Promise;
 
 /**
  * The Lucene Search Indexer.
@@ -48,6 +63,12 @@ import play.Play;
  * 
  * type: Either "submission" or "actionlog" depending on what type of record.
  * 
+ * row.[COLUMN]: The displayable value of a listed column, only stored for the
+ * columns configured by index.rows so that result pages may be displayed
+ * straight from the index (see SearchRow).
+ * 
+ * private: Weather an action log is private, stored along with the rows.
+ * 
  * SEARCH INDEXES (SOME USED FOR SORTING)
  * 
  * searchText: search index for textual searches
@@ -149,19 +170,69 @@ public class LuceneIndexerImpl implements Indexer {
 	// The current updated submissions for each thread.
 	public ThreadLocal<Set<Long>> transactionLocal = new ThreadLocal<Set<Long>>();	
 	
+	// The action logs updated by each thread, grouped by submission id.
+	public ThreadLocal<Map<Long,Set<Long>>> logTransactionLocal = new ThreadLocal<Map<Long,Set<Long>>>();
+	
 	// Thread state (Please don't mess with directly!) Use the method
 	// runNextJob() so all access is synchronized
 	private LuceneAbstractJobImpl currentJob = null;
 	private LuceneAbstractJobImpl nextJob = null;
 	
-	// Static Lucene configuration
+	// Rebuild state (Please don't mess with directly!) A rebuild runs beside
+	// the normal jobs, while it does the submissions they update are recorded
+	// so they can be replayed into the new index before it is swapped in.
+	private LuceneRebuildJobImpl rebuildJob = null;
+	private Set<Long> rebuildUpdates = new HashSet<Long>();
+	private boolean swapping = false;
+	
+	// The most updates left to replay into a rebuilt index once new jobs are
+	// held for the swap, any more are replayed before taking the lock.
+	public static final int SWAP_BACKLOG = 50;
+	
+	// Static Lucene configuration, the index directory is replaced after
+	// each rebuild.
 	public final File indexFile;
-	public final Directory index;
+	public final File rebuildFile;
+	public volatile Directory index;
 	public final Version version = Version.LUCENE_36;
 	public final Analyzer standardAnalyzer = new StandardAnalyzer(version);
 	
+	// Writer configuration
+	public final double ramBufferSizeMB;
+	public final long commitInterval;
+	public final double mergeSegmentsPerTier;
+	public final double mergeMaxSegmentMB;
+	public final int rebuildThreads;
+	
+	// The listed columns whose displayable values are stored in the index.
+	public final Set<SearchOrder> rowColumns;
+	
+	// Shared writer for the index, lazily opened and held open between jobs.
+	// (Please don't mess with directly!) Use getWriter() and commitWriter()
+	// so all access is synchronized.
+	private IndexWriter writer = null;
+	private long lastCommit = 0;
+	private final Object writerLock = new Object();
+	
+	// Journal of pending updates, and how far through it the writer has
+	// indexed. (Please don't mess with directly!) The position is only
+	// updated while holding the writer lock.
+	public final LuceneIndexJournal journal;
+	private long indexedPosition = 0;
+	
+	// Shared near-real-time searcher over the writer, lazily opened on the
+	// first search and refreshed after each index job completes. (Please
+	// don't mess with directly!) Use acquireSearcher() / releaseSearcher().
+	private SearcherManager searcherManager = null;
+	private final Object searcherLock = new Object();
+	
+	// Counts how many times the searcher has been refreshed or replaced, so
+	// that anything derived from an older searcher can tell it is stale.
+	private volatile long generation = 0;
+	
 	// Spring dependencies
 	public SubmissionRepository subRepo = null;
+	public JobScheduler scheduler = null;
 	
 	// A flag to designate weather the current index is corrupted. This does two
 	// things, prevents searches across the corrupted index and serves as a flag
@@ -173,7 +244,46 @@ public class LuceneIndexerImpl implements Indexer {
 	 */
 	public LuceneIndexerImpl() throws IOException {
 		indexFile = new File(Play.configuration.getProperty("index.path","data/indexes"));
+		rebuildFile = new File(indexFile.getPath()+".rebuild");
+		
+		// If we stopped part way through swapping in a rebuilt index, then
+		// go back to the old one.
+		File oldFile = new File(indexFile.getPath()+".old");
+		if (!indexFile.exists() && oldFile.exists())
+			oldFile.renameTo(indexFile);
+		
 		index = FSDirectory.open(indexFile);
+		
+		ramBufferSizeMB = Double.valueOf(Play.configuration.getProperty("index.ramBufferSizeMB", String.valueOf(IndexWriterConfig.DEFAULT_RAM_BUFFER_SIZE_MB)));
+		commitInterval = Long.valueOf(Play.configuration.getProperty("index.commitInterval", "30")) * 1000L;
+		mergeSegmentsPerTier = Double.valueOf(Play.configuration.getProperty("index.merge.segmentsPerTier", "10"));
+		mergeMaxSegmentMB = Double.valueOf(Play.configuration.getProperty("index.merge.maxSegmentMB", "5120"));
+		rebuildThreads = Integer.valueOf(Play.configuration.getProperty("index.rebuild.threads", "4"));
+		
+		rowColumns = EnumSet.noneOf(SearchOrder.class);
+		for (String column : Play.configuration.getProperty("index.rows", "").split(",")) {
+			if (column.trim().length() == 0)
+				continue;
+			
+			try {
+				rowColumns.add(SearchOrder.valueOf(column.trim().toUpperCase()));
+			} catch (IllegalArgumentException iae) {
+				Logger.warn("Ignoring unknown column '"+column.trim()+"' in the index.rows configuration.");
+			}
+		}
+		
+		journal = new LuceneIndexJournal(new File(Play.configuration.getProperty("index.journal", indexFile.getPath()+".journal")));
+	}
+	
+	/**
+	 * Close the indexer, committing any outstanding changes to the index. This
+	 * is called by spring when the application is stopped so that the index's
+	 * write lock is released.
+	 */
+	public void close() {
+		closeSearcher();
+		closeWriter();
+		journal.close();
 	}
 	
 	/**
@@ -186,6 +296,16 @@ public class LuceneIndexerImpl implements Indexer {
 		this.subRepo = subRepo;
 	}
 	
+	/**
+	 * Inject the job scheduler, which runs the threads of a rebuild.
+	 * 
+	 * @param scheduler
+	 *            The job scheduler
+	 */
+	public void setJobScheduler(JobScheduler scheduler) {
+		this.scheduler = scheduler;
+	}
+	
 	
 	/**
 	 * Receive the model and update the transactions with any submissions that
@@ -225,6 +345,19 @@ public class LuceneIndexerImpl implements Indexer {
 		} else if (model instanceof ActionLog) {
 			ActionLog log = (ActionLog) model;
 			sub = log.getSubmission();
+			
+			// Remember the log, so it may be indexed on its own.
+			if (sub != null && sub.getId() != null) {
+				if (logTransactionLocal.get() == null)
+					logTransactionLocal.set(new HashMap<Long,Set<Long>>());
+				
+				Set<Long> logIds = logTransactionLocal.get().get(sub.getId());
+				if (logIds == null) {
+					logIds = new HashSet<Long>();
+					logTransactionLocal.get().put(sub.getId(), logIds);
+				}
+				logIds.add(log.getId());
+			}
 		}
 		
 		// Add the submission to the transaction
@@ -281,131 +414,356 @@ public class LuceneIndexerImpl implements Indexer {
 	@Override
 	public void rollback() {
 		transactionLocal.remove();
+		logTransactionLocal.remove();
 	}
 
 	/**
 	 * Commit the current transaction.
 	 * 
-	 * Create a new job and add it to the queue.
+	 * Create a new job and add it to the queue. When waiting, the job is
+	 * instead run in the caller's own thread once any running update job has
+	 * finished. This way the job reads the submissions through the caller's
+	 * transaction, which it commits first, rather than from a background
+	 * transaction which could not yet see the caller's changes. Any failure to
+	 * index is thrown to the caller.
 	 */
 	@Override
-	public void commit(boolean wait) {
+	public Future<Void> commit(boolean wait) {
 	
 		Set<Long> txn = transactionLocal.get();
-		if (txn != null && txn.size() > 0) {
-			LuceneAbstractJobImpl newJob = new LuceneUpdateJob(this,txn);
-			
-			if (wait) {
-				// We will run this job in the current thread and wait for it to
-				// finish. However we have to wait around for all other background
-				// jobs to complete. We must also be thread safe about it.
-				while (true) {
-					synchronized (this) {
-						if (currentJob == null && nextJob == null) {
-							// Start the job now. Anyone attempting to schedule will
-							// block until the end of this synchronized block.
-							newJob.doJob();
-							return;
-						}
-					}
-					// Give all other thread a chance to do their thing now that we are out of the synchronized block. 
-					Thread.yield();
-				}
-			} else {
-				// Schedule the job as a background task.
+		if (txn == null || txn.size() == 0)
+			return completed();
+		
+		Map<Long,Set<Long>> logTxn = logTransactionLocal.get();
+		LuceneAbstractJobImpl newJob = new LuceneUpdateJob(this,txn,logTxn);
+		
+		// Journal the transaction outside of the indexer's lock, so that
+		// requests only wait on the disk for their own entries (and syncs are
+		// shared between them). Then schedule the job as a background task.
+		journal(newJob, txn, logTxn);
+		boolean inThread = false;
+		try {
+			if (wait)
+				inThread = runJobInThread(newJob);
+			else
 				runNextJob(newJob);
+		} finally {
+			journal.assigned(newJob.journalPosition);
+		}
+		
+		if (inThread)
+			newJob.doJob();
+		if (wait)
+			await(newJob.getCompletion());
+		return newJob.getCompletion();
+	}
+	
+	/**
+	 * Make the job the current job, so that it may be run in the caller's
+	 * thread. This waits until no other update job is running, and the
+	 * rebuilt index is not being swapped in. Any jobs committed meanwhile are
+	 * queued behind it as normal.
+	 * 
+	 * @param newJob
+	 *            The job about to be run by the caller.
+	 * @return True if the caller should run the job, or false if the caller
+	 *         was interrupted and the job has been queued instead.
+	 */
+	protected synchronized boolean runJobInThread(LuceneAbstractJobImpl newJob) {
+		
+		try {
+			while (currentJob != null || swapping)
+				wait();
+		} catch (InterruptedException ie) {
+			// Leave it to run in the background instead.
+			Thread.currentThread().interrupt();
+			runNextJob(newJob);
+			return false;
+		}
+		
+		// A rebuild in progress will need to replay these updates.
+		if (rebuildJob != null && newJob instanceof LuceneUpdateJob)
+			rebuildUpdates.addAll(((LuceneUpdateJob) newJob).getSubmissionIds());
+		
+		currentJob = newJob;
+		return true;
+	}
+	
+	/**
+	 * Record a transaction in the journal before it is indexed, so that it
+	 * can be replayed if the application stops before the index is committed.
+	 * 
+	 * @param job
+	 *            The job which will index the transaction.
+	 * @param subIds
+	 *            The submission ids.
+	 * @param logIds
+	 *            The action log ids grouped by submission id, may be null.
+	 */
+	protected void journal(LuceneAbstractJobImpl job, Set<Long> subIds, Map<Long,Set<Long>> logIds) {
+		try {
+			job.journalPosition = journal.append(subIds, logIds);
+		} catch (IOException ioe) {
+			// The update can still go ahead, it just won't survive a restart.
+			Logger.error(ioe, "Unable to write to the search index journal at '"+journal.file.getPath()+"'.");
+		}
+	}
+	
+	/**
+	 * Replay any updates left in the journal when the application last
+	 * stopped. This is called once the application has started.
+	 */
+	public void recover() {
+		try {
+			LuceneUpdateJob job = journal.replay(this);
+			if (job != null) {
+				Logger.info("Replaying "+job.getTotal()+" submission updates from the search index journal.");
+				runNextJob(job);
 			}
+		} catch (IOException ioe) {
+			Logger.error(ioe, "Unable to read the search index journal at '"+journal.file.getPath()+"'.");
+		}
+	}
+	
+	/**
+	 * Record that every journal entry before the given position has been
+	 * written to the index, so they may be discarded after the next commit.
+	 * Entries which have been journaled but not yet handed to a job hold the
+	 * position back, since jobs may finish out of journal order.
+	 * 
+	 * @param position
+	 *            The journal position.
+	 */
+	public void indexed(long position) {
+		synchronized (writerLock) {
+			indexedPosition = Math.max(indexedPosition, journal.indexable(position));
 		}
 	}
 	
 	/**
 	 * Rebuild the entire search index from scratch.
 	 * 
-	 * Create a new job and add it to the queue.
+	 * Start a rebuild beside the normal index jobs, unless one is already
+	 * running in which case it covers this request as well.
 	 */
 	@Override
-	public void rebuild(boolean wait) {
-		LuceneAbstractJobImpl newJob = new LuceneRebuildJobImpl(this);
-		
-		if (wait) {
-			// We will run this job in the current thread and wait for it to
-			// finish. However we have to wait around for all other background
-			// jobs to complete. We must also be thread safe about it.
-			while (true) {
-				synchronized (this) {
-					if (currentJob == null && nextJob == null) {
-						// Start the job now. Anyone attempting to schedule will
-						// block until the end of this synchronized block.
-						newJob.doJob();
-						return;
-					}
-				}
-				// Give all other thread a chance to do their thing now that we are out of the synchronized block. 
-				Thread.yield();
+	public Future<Void> rebuild(boolean wait) {
+		
+		LuceneAbstractJobImpl job;
+		synchronized (this) {
+			if (rebuildJob == null) {
+				rebuildJob = new LuceneRebuildJobImpl(this);
+				rebuildUpdates.clear();
+				rebuildJob.now();
 			}
-		} else {
-			// Schedule the job as a background task.
-			runNextJob(newJob);
+			job = rebuildJob;
 		}
+		
+		if (wait)
+			await(job.getCompletion());
+		return job.getCompletion();
 	}
 	
 	/**
 	 * Delete the index and rebuild.
 	 * 
-	 * This method allows for recovery of corrupted indexes because it blows
-	 * away whatever is in the index directory.
-	 * 
-	 * This method will (even with the wait flag turned off) will block until
-	 * all the current jobs have been canceled and the index files have been
-	 * deleted.
+	 * This method allows for recovery of corrupted indexes, because the
+	 * rebuilt index is written into a fresh directory. The old index directory
+	 * is deleted once the new one has been swapped in, until then searches and
+	 * updates continue against whatever is left of it.
 	 */
 	@Override
-	public void deleteAndRebuild(boolean wait) {
+	public Future<Void> deleteAndRebuild(boolean wait) {
 
-		Logger.info("Removing the entire lucene index at '"+indexFile.getPath()+"' and rebuilding.'");
+		Logger.info("Replacing the entire lucene index at '"+indexFile.getPath()+"' with a rebuilt index.");
 		
-		// First, cancel any currently running jobs.
-		nextJob = null;
-		if (currentJob != null)
-			currentJob.cancelJob();
-		synchronized(this) {
-			
-			// Wait for the jobs to stop
-			while(isJobRunning()) {
-				Thread.yield();
-			}
-			
-			// Delete everything in the index directory.
-			if (indexFile != null && indexFile.exists() ) {
-				File[] files = indexFile.listFiles();
-				for (File file : files) {
-					file.delete();
+		return rebuild(wait);
+	}
+	
+	/**
+	 * Take the submissions updated since the rebuild started, so they may be
+	 * replayed into the new index.
+	 * 
+	 * @return The submission ids, which may be empty.
+	 */
+	public synchronized Set<Long> drainRebuildUpdates() {
+		Set<Long> updates = rebuildUpdates;
+		rebuildUpdates = new HashSet<Long>();
+		return updates;
+	}
+	
+	/**
+	 * Swap a rebuilt index in place of the live index.
+	 * 
+	 * First the updates made since the rebuild started are replayed into the
+	 * new index, while jobs continue to run against the live index, until only
+	 * a few remain. Then this waits for the current index job to finish, and
+	 * holds any new jobs until the swap is complete. While no jobs can run,
+	 * the last of the updates are replayed into the new index, which is then
+	 * committed and moved into the index directory. The shared writer and
+	 * searcher are closed, so the next search opens the new index. Searches
+	 * already in progress keep using the old index until they are released.
+	 * 
+	 * @param job
+	 *            The rebuild job.
+	 * @param newWriter
+	 *            The writer for the rebuilt index, it is closed by the swap.
+	 * @param newIndex
+	 *            The directory of the rebuilt index.
+	 */
+	public void swapIndex(LuceneRebuildJobImpl job, IndexWriter newWriter, Directory newIndex) throws IOException, InterruptedException {
+		
+		// Catch up without the lock, so the live index keeps being updated.
+		// Stop after a few rounds in case updates arrive as fast as they are
+		// replayed, the rest are then replayed under the lock.
+		Set<Long> updated = drainRebuildUpdates();
+		for (int round = 0; round < 10 && updated.size() > SWAP_BACKLOG; round++) {
+			job.reindex(newWriter, updated);
+			updated = drainRebuildUpdates();
+		}
+		
+		// Most of the new index is committed now, so the final commit is small.
+		newWriter.commit();
+		
+		synchronized (this) {
+			swapping = true;
+			try {
+				while (currentJob != null)
+					wait();
+				
+				// Nothing can be updated while we hold the lock.
+				updated.addAll(drainRebuildUpdates());
+				if (updated.size() > 0)
+					job.reindex(newWriter, updated);
+				long position = journal.indexable(journal.getPosition());
+				
+				newWriter.commit();
+				newWriter.close();
+				
+				synchronized (searcherLock) {
+					synchronized (writerLock) {
+						closeSearcher();
+						closeWriter();
+						
+						File oldFile = new File(indexFile.getPath()+".old");
+						deleteDirectory(oldFile);
+						if (!indexFile.renameTo(oldFile))
+							throw new IOException("Unable to move the search index '"+indexFile.getPath()+"' aside to '"+oldFile.getPath()+"'.");
+						if (!rebuildFile.renameTo(indexFile)) {
+							oldFile.renameTo(indexFile);
+							throw new IOException("Unable to move the rebuilt search index '"+rebuildFile.getPath()+"' to '"+indexFile.getPath()+"'.");
+						}
+						
+						index = FSDirectory.open(indexFile);
+						newIndex.close();
+						
+						// Everything journaled so far is in the new index.
+						indexedPosition = Math.max(indexedPosition, position);
+						discardJournal(position);
+						
+						// Open files may keep the old index from being deleted
+						// on some platforms, if so it will go with the next swap.
+						deleteDirectory(oldFile);
+					}
 				}
+				
+				corruptIndex = false;
+				rebuildJob = null;
+				Logger.info("Swapped the rebuilt lucene index into '"+indexFile.getPath()+"'.");
+				
+			} finally {
+				swapping = false;
+				
+				// Start any jobs which were held while swapping.
+				if (currentJob == null && nextJob != null) {
+					currentJob = nextJob;
+					nextJob = null;
+					currentJob.now();
+				}
+				notifyAll();
 			}
-			
-			// Create our job, and put it on the queue. This will prevent any other jobs from jumping before this one while we are in the synchronized queue.
-			LuceneAbstractJobImpl newJob = new LuceneRebuildJobImpl(this);
-			currentJob = newJob;
 		}
+	}
+	
+	/**
+	 * Forget about a rebuild job which failed, or was cancelled, before it
+	 * swapped in the new index. The live index is left as it was.
+	 * 
+	 * @param job
+	 *            The rebuild job.
+	 */
+	public synchronized void rebuildFailed(LuceneRebuildJobImpl job) {
+		if (rebuildJob == job) {
+			rebuildJob = null;
+			rebuildUpdates.clear();
+		}
+	}
+	
+	/**
+	 * Delete a directory and all of the files inside it.
+	 * 
+	 * @param directory
+	 *            The directory to delete.
+	 */
+	public static void deleteDirectory(File directory) {
+		if (directory == null || !directory.exists())
+			return;
 		
-		if (wait) {
-			// Start the rebuild job in the current thread.
-			currentJob.doJob();
-		} else {
-			// Start it as a background job.
-			currentJob.now();
+		File[] files = directory.listFiles();
+		if (files != null) {
+			for (File file : files)
+				file.delete();
 		}
+		directory.delete();
+	}
+	
+	/**
+	 * Block until a job's future is done. If the thread is interrupted while
+	 * waiting, the interrupt is preserved and the method returns early. If
+	 * the job failed then its failure is rethrown.
+	 * 
+	 * @param future
+	 *            The job's future.
+	 */
+	protected static void await(Future<Void> future) {
+		try {
+			future.get();
+		} catch (InterruptedException ie) {
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException ee) {
+			if (ee.getCause() instanceof RuntimeException)
+				throw (RuntimeException) ee.getCause();
+			throw new RuntimeException(ee.getCause());
+		}
+	}
+	
+	/**
+	 * @return A future which is already done, for when there is nothing to do.
+	 */
+	protected static Future<Void> completed() {
+		Promise<Void> promise = new Promise<Void>();
+		promise.invoke(null);
+		return promise;
 	}
 	
 	@Override
 	public boolean isJobRunning() {
-		return !(currentJob == null);
+		return !(currentJob == null && rebuildJob == null);
+	}
+	
+	/**
+	 * @return The job to report on, a rebuild takes precedence over the
+	 *         smaller update jobs running beside it.
+	 */
+	protected LuceneAbstractJobImpl getReportedJob() {
+		LuceneAbstractJobImpl job = rebuildJob;
+		return (job != null) ? job : currentJob;
 	}
 	
 	@Override
 	public String getCurrentJobLabel() {
 		try {
-			return currentJob.getLabel();
+			return getReportedJob().getLabel();
 		} catch (Throwable t) {
 			// We need this method to be thread safe, so use a try catch block
 			// instead of an if block to check for the case where currentJob ==
@@ -417,7 +775,7 @@ public class LuceneIndexerImpl implements Indexer {
 	@Override
 	public long getCurrentJobProgress() {
 		try {
-			return currentJob.getProgress();
+			return getReportedJob().getProgress();
 		} catch (Throwable t) {
 			// We need this method to be thread safe, so use a try catch block
 			// instead of an if block to check for the case where currentJob ==
@@ -429,7 +787,7 @@ public class LuceneIndexerImpl implements Indexer {
 	@Override
 	public long getCurrentJobTotal() {
 		try {
-			return currentJob.getTotal();
+			return getReportedJob().getTotal();
 		} catch (Throwable t) {
 			// We need this method to be thread safe, so use a try catch block
 			// instead of an if block to check for the case where currentJob ==
@@ -440,41 +798,206 @@ public class LuceneIndexerImpl implements Indexer {
 	
 	
 	/**
-	 * Control processing of the next job. Any management of the current & next
-	 * job pointers is handled by this method to ensure thread safety.
+	 * Obtain the shared index writer, opening it if needed. All index jobs
+	 * write through this one writer so that the write lock, RAM buffer, and
+	 * segment merging are shared between jobs instead of opening and closing a
+	 * new writer for every job. Changes made through the writer are made
+	 * durable by calling commitWriter().
+	 * 
+	 * @return The shared index writer.
+	 */
+	public IndexWriter getWriter() throws IOException {
+		synchronized (writerLock) {
+			if (writer == null) {
+				writer = createWriter(index);
+				lastCommit = System.currentTimeMillis();
+			}
+			return writer;
+		}
+	}
+	
+	/**
+	 * Open a new index writer using the configured buffer and merge settings.
 	 * 
-	 * This method works under two scenarios:
+	 * @param directory
+	 *            The index directory to write.
+	 * @return The new writer.
+	 */
+	public IndexWriter createWriter(Directory directory) throws IOException {
+		TieredMergePolicy mergePolicy = new TieredMergePolicy();
+		mergePolicy.setSegmentsPerTier(mergeSegmentsPerTier);
+		mergePolicy.setMaxMergedSegmentMB(mergeMaxSegmentMB);
+		
+		IndexWriterConfig writerConfig = new IndexWriterConfig(version,standardAnalyzer);
+		writerConfig.setRAMBufferSizeMB(ramBufferSizeMB);
+		writerConfig.setMergePolicy(mergePolicy);
+		
+		return new IndexWriter(directory, writerConfig);
+	}
+	
+	/**
+	 * Commit the changes made through the shared writer to disk. Commits are
+	 * expensive, so unless forced they are batched: the commit only happens if
+	 * no other index job is waiting to run, or if the commit interval has
+	 * passed since the last commit. Otherwise the changes will be committed
+	 * along with the following job. Searches see the changes either way once
+	 * the searcher has been refreshed.
 	 * 
-	 * 1) A transaction has just been committed, generating a new index job.
-	 * This method is called with the new index job. It will either be started
-	 * right away and assigned as the current job. However if another job is
-	 * already running then this job will be held until that finishes. We only
-	 * keep track of one job in the future, so potentially if multiple jobs are
+	 * @param force
+	 *            Commit regardless of any waiting jobs.
+	 */
+	public void commitWriter(boolean force) throws IOException {
+		synchronized (writerLock) {
+			if (writer == null)
+				return;
+			
+			long now = System.currentTimeMillis();
+			if (force || nextJob == null || now - lastCommit >= commitInterval) {
+				long position = indexedPosition;
+				writer.commit();
+				lastCommit = now;
+				discardJournal(position);
+			}
+		}
+	}
+	
+	/**
+	 * Close the shared writer, committing any outstanding changes. A new
+	 * writer will be opened on the next use.
+	 */
+	protected void closeWriter() {
+		synchronized (writerLock) {
+			if (writer != null) {
+				try {
+					long position = indexedPosition;
+					writer.close();
+					discardJournal(position);
+				} catch (IOException ioe) {
+					Logger.error(ioe, "Unable to close the shared lucene writer.");
+				}
+				writer = null;
+			}
+		}
+	}
+	
+	/**
+	 * Discard the journal entries which have been committed to the index.
+	 * Must be called while holding the writer lock.
+	 * 
+	 * @param position
+	 *            The journal position covered by the commit.
+	 */
+	protected void discardJournal(long position) {
+		try {
+			journal.discard(position);
+		} catch (IOException ioe) {
+			// The entries will just be replayed again on the next start.
+			Logger.error(ioe, "Unable to discard committed entries from the search index journal at '"+journal.file.getPath()+"'.");
+		}
+	}
+	
+	/**
+	 * Acquire a reference to the shared index searcher. The searcher is shared
+	 * between all threads so that the underlying index reader (and the field
+	 * caches used for sorting) are reused between searches instead of being
+	 * re-opened for each request. The searcher is opened directly from the
+	 * shared writer, so changes are visible as soon as it is refreshed even if
+	 * their commit has been deferred. Every searcher acquired must be released
+	 * by calling releaseSearcher() in a finally block.
+	 * 
+	 * @return A searcher over the index.
+	 */
+	public IndexSearcher acquireSearcher() throws IOException {
+		
+		SearcherManager manager;
+		synchronized (searcherLock) {
+			if (searcherManager == null)
+				searcherManager = new SearcherManager(getWriter(), true, new SearcherFactory());
+			manager = searcherManager;
+		}
+		
+		return manager.acquire();
+	}
+	
+	/**
+	 * Release a searcher previously obtained from acquireSearcher(). After
+	 * calling this method the searcher must not be used again.
+	 * 
+	 * @param searcher
+	 *            The searcher to release, may be null.
+	 */
+	public void releaseSearcher(IndexSearcher searcher) throws IOException {
+		// This is the same as SearcherManager.release(), but it works even if
+		// the manager which produced the searcher has since been closed.
+		if (searcher != null)
+			searcher.getIndexReader().decRef();
+	}
+	
+	/**
+	 * Refresh the shared searcher so that it reflects all changes written to
+	 * the index. This is called by the index jobs after they have written their
+	 * changes. If no search has been performed yet then there is nothing to
+	 * refresh.
+	 */
+	public void refreshSearcher() throws IOException {
+		SearcherManager manager = searcherManager;
+		if (manager != null)
+			manager.maybeRefresh();
+		generation++;
+	}
+	
+	/**
+	 * The index generation changes every time the shared searcher is
+	 * refreshed, closed, or replaced by a rebuilt index. Read the generation
+	 * before acquiring a searcher, and any results from that searcher may be
+	 * reused for as long as the generation stays the same.
+	 * 
+	 * @return The current index generation.
+	 */
+	public long getGeneration() {
+		return generation;
+	}
+	
+	/**
+	 * Close the shared searcher, a new one will be opened on the next search.
+	 */
+	protected void closeSearcher() {
+		synchronized (searcherLock) {
+			if (searcherManager != null) {
+				try {
+					searcherManager.close();
+				} catch (IOException ioe) {
+					Logger.error(ioe, "Unable to close the shared lucene searcher.");
+				}
+				searcherManager = null;
+			}
+			generation++;
+		}
+	}
+	
+	/**
+	 * Control processing of the next job. Any management of the current & next
+	 * job pointers is handled by this method, and jobFinished(), to ensure
+	 * thread safety.
+	 * 
+	 * A transaction has just been committed, generating a new index job. This
+	 * method is called with the new index job. It will either be started right
+	 * away and assigned as the current job. However if another job is already
+	 * running then this job will be held until that finishes. We only keep
+	 * track of one job in the future, so potentially if multiple jobs are
 	 * waiting they will be merged into a single job covering all the
 	 * submissions across them all.
 	 * 
-	 * 2) The current job has finished processing and the next job in the queue
-	 * needs to be run. For this case the parameter newJob is null. The nextJob
-	 * pointer will move up to the currentJob freeing it's old position, and
-	 * then it will be executed right away.
-	 * 
 	 * @param newJob
-	 *            A new job to add to the queue, or null to run the next job
-	 *            (this should only be called by the current index job).
+	 *            A new job to add to the queue.
 	 */
 	public synchronized void runNextJob(LuceneAbstractJobImpl newJob) {
 		
-		if (newJob == null) {
-			// This means the current job has finished, so we should move on to the next job.
-			currentJob = nextJob;
-			nextJob = null;
-			if (currentJob != null)
-				currentJob.now();
-			return;
-		}
-		
+		// A rebuild in progress will need to replay these updates.
+		if (rebuildJob != null && newJob instanceof LuceneUpdateJob)
+			rebuildUpdates.addAll(((LuceneUpdateJob) newJob).getSubmissionIds());
 		
-		if (currentJob == null) {
+		if (currentJob == null && !swapping) {
 			// Nothing is running, so launch the job.
 			currentJob = newJob;
 			newJob.now();
@@ -483,7 +1006,41 @@ public class LuceneIndexerImpl implements Indexer {
 			nextJob = newJob;
 		} else {
 			// We already have the next job in the queue, so merge the two jobs together.
-			nextJob = nextJob.mergeJob(newJob);
+			LuceneAbstractJobImpl mergedJob = nextJob.mergeJob(newJob);
+			mergedJob.journalPosition = Math.max(nextJob.journalPosition, newJob.journalPosition);
+			mergedJob.mergeCompletions(nextJob);
+			mergedJob.mergeCompletions(newJob);
+			nextJob = mergedJob;
+		}
+	}
+	
+	/**
+	 * The current job has finished processing and the next job in the queue
+	 * needs to be run. The nextJob pointer will move up to the currentJob
+	 * freeing it's old position, and then it will be executed right away.
+	 * 
+	 * This should only be called by the index jobs, if the job is not the
+	 * current job (i.e. it is a rebuild) then nothing happens.
+	 * 
+	 * @param job
+	 *            The job which has finished.
+	 */
+	public synchronized void jobFinished(LuceneAbstractJobImpl job) {
+		if (currentJob != job)
+			return;
+		
+		if (swapping) {
+			// Hold the next job until the rebuilt index has been swapped in.
+			currentJob = null;
+			notifyAll();
+			return;
 		}
+		
+		currentJob = nextJob;
+		nextJob = null;
+		if (currentJob != null)
+			currentJob.now();
+		else
+			notifyAll();
 	}
 }
@@ -18,6 +18,15 @@ import play.modules.spring.Spring;
  */
 public class LucenePlayPluginImpl extends PlayPlugin {
 	
+	@Override
+	public void afterApplicationStart() {
+		// Catch up on any index updates which were not committed when the
+		// application last stopped.
+		Indexer indexer = Spring.getBeanOfType(Indexer.class);
+		if (indexer instanceof LuceneIndexerImpl)
+			((LuceneIndexerImpl) indexer).recover();
+	}
+
 	@Override
 	public void beforeInvocation() {
 		// Start the transaction by clearing it out of any previous state that
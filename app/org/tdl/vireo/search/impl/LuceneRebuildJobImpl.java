@@ -1,14 +1,29 @@
 package org.tdl.vireo.search.impl;
 
 import java.io.IOException;
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
 
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.store.AlreadyClosedException;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.FSDirectory;
 import org.apache.lucene.store.LockObtainFailedException;
+import org.apache.lucene.util.NumericUtils;
+import org.tdl.vireo.job.JobFamily;
 import org.tdl.vireo.model.Submission;
 
+import play.db.jpa.JPA;
+import play.db.jpa.JPAPlugin;
+
 /**
  * This is the background job to rebuild the entire search index.
  * 
@@ -16,15 +31,30 @@ import org.tdl.vireo.model.Submission;
  * the search index. This is a non-destructive rebuild, meaning that searches
  * may continue without effect while the rebuilding is occurring.
  * 
+ * The new index is written into a separate directory next to the live index.
+ * Meanwhile the live index keeps receiving the normal update jobs, and the
+ * indexer records which submissions they touched. Once every submission has
+ * been written those updates are replayed into the new index, and the indexer
+ * swaps it in place of the live index.
+ * 
+ * To speed things up the set of all submissions is split into contiguous
+ * ranges of ids, one for each rebuild thread. Each thread loads its range in
+ * batches using its own database connection, and writes the documents into
+ * the indexer's shared writer. The threads are the rebuild family's
+ * workers, run by the job scheduler.
+ * 
  * @author <a href="http://www.scottphillips.com">Scott Phillips</a>
  */
 public class LuceneRebuildJobImpl extends LuceneAbstractJobImpl {
 
+	// How many submissions each thread loads from the database at a time.
+	public static final int BATCH_SIZE = 50;
+
 	/**
 	 * Construct a new rebuild index job.
 	 */
 	public LuceneRebuildJobImpl(LuceneIndexerImpl indexer) {
-		super(indexer);
+		super(indexer, JobFamily.REBUILD);
 		progress = 0;
 		total = (int) indexer.subRepo.findSubmissionsTotal();
 	}
@@ -45,44 +75,162 @@ public class LuceneRebuildJobImpl extends LuceneAbstractJobImpl {
 	public void writeIndex() throws CorruptIndexException,
 	LockObtainFailedException, IOException, InterruptedException {
 
+		List<Long> subIds = indexer.subRepo.findAllSubmissionIds();
 		progress = 0;
-		total = (int) indexer.subRepo.findSubmissionsTotal();
+		total = subIds.size();
 
-		IndexWriterConfig writerConfig = new IndexWriterConfig(indexer.version,
-				indexer.standardAnalyzer);
-		IndexWriter writer = new IndexWriter(indexer.index, writerConfig);
+		// Split the ids into one contiguous range for each thread.
+		int threads = Math.max(1, Math.min(indexer.rebuildThreads, (subIds.size() / BATCH_SIZE) + 1));
+		List<List<Long>> partitions = new ArrayList<List<Long>>();
+		for (int i = 0; i < threads; i++) {
+			int start = (int) ((long) subIds.size() * i / threads);
+			int end = (int) ((long) subIds.size() * (i + 1) / threads);
+			partitions.add(subIds.subList(start, end));
+		}
 
+		// Start with an empty directory next to the live index.
+		LuceneIndexerImpl.deleteDirectory(indexer.rebuildFile);
+		Directory directory = FSDirectory.open(indexer.rebuildFile);
+		IndexWriter writer = indexer.createWriter(directory);
+		
+		ExecutorService executor = indexer.scheduler.createWorkers(JobFamily.REBUILD);
+		boolean success = false;
 		try {
-			writer.deleteAll();
+			List<Future<Void>> futures = new ArrayList<Future<Void>>();
+			for (List<Long> partition : partitions) {
+				futures.add(executor.submit(new PartitionWorker(writer, partition)));
+			}
 
-			Iterator<Submission> itr = indexer.subRepo.findAllSubmissions();
+			// Wait for every partition to finish.
+			for (Future<Void> future : futures) {
+				try {
+					future.get();
+				} catch (ExecutionException ee) {
+					// Stop the others, and report the original failure.
+					cancel = true;
+					Throwable cause = ee.getCause();
+					if (cause instanceof IOException)
+						throw (IOException) cause;
+					if (cause instanceof RuntimeException)
+						throw (RuntimeException) cause;
+					throw new RuntimeException(cause);
+				}
+			}
 
-			int count = 0;
-			while (itr.hasNext()) {
-				indexSubmission(writer, itr.next());
-				progress++;
-				
-				
-				// Have we been asked to stop?
-				if (cancel) {
+			// Have we been asked to stop?
+			if (cancel) {
+				throw new InterruptedException("Lucene '"+this.getLabel()+"' job recieved a cancel request after processing "+progress+" number of submissions, rolling back changes.");
+			}
+			
+			// The indexer catches up on the submissions updated while we were
+			// rebuilding, and then swaps in the new index.
+			indexer.swapIndex(this, writer, directory);
+			success = true;
+		} finally {
+			executor.shutdownNow();
+
+			// Never leave a partially rebuilt index behind.
+			if (!success) {
+				try {
 					writer.rollback();
-					writer = null;
-					throw new InterruptedException("Lucene '"+this.getLabel()+"' job recieved a cancel request after processing "+progress+" number of submissions, rolling back changes.");
+				} catch (AlreadyClosedException ace) {
+					// The swap got as far as closing the writer.
 				}
+				indexer.rebuildFailed(this);
+				LuceneIndexerImpl.deleteDirectory(indexer.rebuildFile);
+			}
+		}
+	}
+	
+	/**
+	 * Re-index a set of submissions in the new index, replacing anything
+	 * already written for them. This is used to replay the updates made to
+	 * the live index while the rebuild was running.
+	 * 
+	 * @param writer
+	 *            The writer for the new index.
+	 * @param ids
+	 *            The submission ids.
+	 */
+	public void reindex(IndexWriter writer, Set<Long> ids) throws CorruptIndexException, IOException {
+		
+		if (JPA.isInsideTransaction())
+			JPAPlugin.closeTx(false);
+		JPAPlugin.startTx(true);
+		try {
+			for (Long id : ids) {
+				writer.deleteDocuments(new TermQuery(new Term("subId",NumericUtils.longToPrefixCoded(id))));
 				
-				// Keep memory usage under control
-				if (count > 100) {
-					System.gc();
-					count = 0;
-				} else {
-					count++;
-				}
+				Submission sub = indexer.subRepo.findSubmission(id);
+				if (sub != null)
+					indexSubmission(writer, sub);
 			}
 		} finally {
-			if (writer != null)
-				writer.close();
+			JPAPlugin.closeTx(true);
+			JPAPlugin.startTx(false);
 		}
 	}
 
-}
+	/**
+	 * Record that another submission has been indexed, this may be called
+	 * from any of the rebuild threads.
+	 */
+	protected synchronized void incrementProgress() {
+		progress++;
+	}
+
+	/**
+	 * Index one partition of submissions. Each partition runs in its own
+	 * thread with its own database transaction, so that submissions may be
+	 * loaded and indexed in parallel. The persistence context is cleared after
+	 * each batch to keep memory usage under control.
+	 */
+	protected class PartitionWorker implements Callable<Void> {
+
+		// The shared index writer
+		public final IndexWriter writer;
+
+		// The ids of the submissions in this partition
+		public final List<Long> subIds;
+
+		/**
+		 * Construct a new partition worker.
+		 * 
+		 * @param writer
+		 *            The shared index writer.
+		 * @param subIds
+		 *            The ids of the submissions to index.
+		 */
+		public PartitionWorker(IndexWriter writer, List<Long> subIds) {
+			this.writer = writer;
+			this.subIds = subIds;
+		}
+
+		@Override
+		public Void call() throws Exception {
 
+			JPAPlugin.startTx(true);
+			try {
+				for (int i = 0; i < subIds.size(); i += BATCH_SIZE) {
+
+					List<Long> batch = subIds.subList(i, Math.min(i + BATCH_SIZE, subIds.size()));
+					for (Submission sub : indexer.subRepo.findSubmissions(batch)) {
+
+						// Have we been asked to stop?
+						if (cancel)
+							return null;
+
+						indexSubmission(writer, sub);
+						incrementProgress();
+					}
+
+					JPA.em().clear();
+				}
+			} finally {
+				JPAPlugin.closeTx(true);
+			}
+			return null;
+		}
+	}
+
+}
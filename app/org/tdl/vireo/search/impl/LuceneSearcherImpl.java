@@ -1,43 +1,74 @@
 package org.tdl.vireo.search.impl;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
-import java.util.Collections;
-import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
 
 import org.apache.lucene.document.Document;
+import org.apache.lucene.document.FieldSelector;
+import org.apache.lucene.document.FieldSelectorResult;
+import org.apache.lucene.document.Fieldable;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
 import org.apache.lucene.queryParser.ParseException;
 import org.apache.lucene.queryParser.QueryParser;
 import org.apache.lucene.search.BooleanClause.Occur;
 import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.CachingWrapperFilter;
+import org.apache.lucene.search.CachingWrapperFilter.DeletesMode;
+import org.apache.lucene.search.Collector;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.FieldCache.StringIndex;
+import org.apache.lucene.search.FieldDoc;
+import org.apache.lucene.search.Filter;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.NumericRangeQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.QueryWrapperFilter;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.Scorer;
 import org.apache.lucene.search.Sort;
 import org.apache.lucene.search.SortField;
 import org.apache.lucene.search.TermQuery;
 import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.TopFieldCollector;
 import org.apache.lucene.util.NumericUtils;
+import org.apache.lucene.util.ReaderUtil;
 import org.tdl.vireo.model.AbstractModel;
 import org.tdl.vireo.model.ActionLog;
 import org.tdl.vireo.model.EmbargoType;
 import org.tdl.vireo.model.Person;
 import org.tdl.vireo.model.Submission;
 import org.tdl.vireo.model.SubmissionRepository;
+import org.tdl.vireo.search.ActiveSearchFilter;
+import org.tdl.vireo.search.IdSet;
 import org.tdl.vireo.search.SearchDirection;
+import org.tdl.vireo.search.SearchFacet;
 import org.tdl.vireo.search.SearchFilter;
 import org.tdl.vireo.search.SearchOrder;
 import org.tdl.vireo.search.SearchResult;
+import org.tdl.vireo.search.SearchRow;
 import org.tdl.vireo.search.Searcher;
 import org.tdl.vireo.search.Semester;
 import org.tdl.vireo.state.State;
 import org.tdl.vireo.state.StateManager;
 
 import play.Logger;
+import play.Play;
+import play.libs.Codec;
 
 /**
  * Lucene implementation of the Searcher interface.
@@ -53,6 +84,17 @@ public class LuceneSearcherImpl implements Searcher {
 	public static String[] SORT_SUB_FIELDS = new String[SearchOrder.values().length];
 	public static String[] SORT_LOG_FIELDS = new String[SearchOrder.values().length];
 	public static int[] SORT_TYPES = new int[SearchOrder.values().length];
+	public static Map<SearchFacet,String> FACET_FIELDS = new EnumMap<SearchFacet,String>(SearchFacet.class);
+	
+	// Only load the stored fields needed to display a row.
+	public static final FieldSelector ROW_FIELDS = new FieldSelector() {
+		@Override
+		public FieldSelectorResult accept(String field) {
+			if (field.startsWith("row.") || "subId".equals(field) || "logId".equals(field) || "private".equals(field))
+				return FieldSelectorResult.LOAD;
+			return FieldSelectorResult.NO_LOAD;
+		}
+	};
 	{
 		// Sort fields for submissions
 		SORT_SUB_FIELDS[SearchOrder.ID.ordinal()] = "subId";
@@ -110,6 +152,19 @@ public class LuceneSearcherImpl implements Searcher {
 		SORT_TYPES[SearchOrder.COMMITTEE_EMBARGO_APPROVAL_DATE.ordinal()] = SortField.LONG;
 		SORT_TYPES[SearchOrder.CUSTOM_ACTIONS.ordinal()] = SortField.INT;
 		SORT_TYPES[SearchOrder.LAST_EVENT_TIME.ordinal()] = SortField.LONG;
+		
+		// Fields for the facets which may be counted
+		FACET_FIELDS.put(SearchFacet.STATE, "state");
+		FACET_FIELDS.put(SearchFacet.ASSIGNEE, "searchAssigned");
+		FACET_FIELDS.put(SearchFacet.GRADUATION_SEMESTER, "graduationSemester");
+		FACET_FIELDS.put(SearchFacet.DEPARTMENT, "department");
+		FACET_FIELDS.put(SearchFacet.PROGRAM, "program");
+		FACET_FIELDS.put(SearchFacet.COLLEGE, "college");
+		FACET_FIELDS.put(SearchFacet.MAJOR, "major");
+		FACET_FIELDS.put(SearchFacet.EMBARGO, "embargo");
+		FACET_FIELDS.put(SearchFacet.DEGREE, "degree");
+		FACET_FIELDS.put(SearchFacet.DOCUMENT_TYPE, "documentType");
+		FACET_FIELDS.put(SearchFacet.UMI_RELEASE, "umiRelease");
 	}
 	
 	// Spring dependencies
@@ -117,6 +172,28 @@ public class LuceneSearcherImpl implements Searcher {
 	public SubmissionRepository subRepo = null;
 	public StateManager stateManager = null;
 	
+	// Recently searched pages of results.
+	public final SearchPageCache cache;
+	
+	// Filters for the most recently used clauses, in access order.
+	public final int filterCacheSize;
+	public final Map<Query, Filter> filterCache;
+	
+	/**
+	 * Construct a new lucene searcher.
+	 */
+	public LuceneSearcherImpl() {
+		cache = new SearchPageCache(Integer.valueOf(Play.configuration.getProperty("search.cache.size", "500")));
+		
+		filterCacheSize = Integer.valueOf(Play.configuration.getProperty("search.filterCache.size", "256"));
+		filterCache = new LinkedHashMap<Query, Filter>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Query, Filter> eldest) {
+				return size() > filterCacheSize;
+			}
+		};
+	}
+	
 	/**
 	 * Spring injection for the LuceneIndexerImpl. Note that this implementation
 	 * is tied directly to the indexer implementation, that is why the datatype
@@ -150,108 +227,313 @@ public class LuceneSearcherImpl implements Searcher {
 	public SearchResult<Submission> submissionSearch(SearchFilter filter,
 			SearchOrder orderBy, SearchDirection direction, int offset,
 			int limit) {
+		return submissionSearch(filter, orderBy, direction, offset, null, limit);
+	}
+	
+	@Override
+	public SearchResult<Submission> submissionSearch(SearchFilter filter,
+			SearchOrder orderBy, SearchDirection direction, String cursor,
+			int limit) {
+		return submissionSearch(filter, orderBy, direction, 0, SearchCursor.decode(cursor, orderBy, direction), limit);
+	}
+	
+	@Override
+	public SearchResult<ActionLog> actionLogSearch(SearchFilter filter,
+			SearchOrder orderBy, SearchDirection direction, int offset,
+			int limit) {
+		return actionLogSearch(filter, orderBy, direction, offset, null, limit);
+	}
+	
+	@Override
+	public SearchResult<ActionLog> actionLogSearch(SearchFilter filter,
+			SearchOrder orderBy, SearchDirection direction, String cursor,
+			int limit) {
+		return actionLogSearch(filter, orderBy, direction, 0, SearchCursor.decode(cursor, orderBy, direction), limit);
+	}
+	
+	/**
+	 * Search for a page of submissions, either by offset or from a cursor.
+	 * 
+	 * @param filter
+	 *            The search filter.
+	 * @param orderBy
+	 *            How the submissions should be ordered.
+	 * @param direction
+	 *            The direction of the order.
+	 * @param offset
+	 *            The pagination offset, only used when there is no cursor.
+	 * @param cursor
+	 *            The decoded cursor, may be null.
+	 * @param limit
+	 *            The pagination limit of results per page.
+	 * @return The submission results object.
+	 */
+	protected SearchResult<Submission> submissionSearch(SearchFilter filter,
+			SearchOrder orderBy, SearchDirection direction, int offset,
+			SearchCursor cursor, int limit) {
 		try {
-			IndexReader reader = IndexReader.open(indexer.index);
-			try {
-				IndexSearcher searcher = new IndexSearcher(reader);
-				
-				
-				BooleanQuery andQuery = new BooleanQuery();
-				andQuery.add(new TermQuery(new Term("type","submission")),Occur.MUST);
-				buildQuery(andQuery,filter,true); // <-- This does most of the work.
-				
-				boolean reverse = (direction == SearchDirection.ASCENDING) ? false : true;
-				
-				SortField dynamicSortField = new SortField(SORT_SUB_FIELDS[orderBy.ordinal()], SORT_TYPES[orderBy.ordinal()], reverse);
-				SortField idSortField = new SortField("subId",SortField.LONG,reverse);
-				Sort sort = new Sort(dynamicSortField, idSortField);
-		
-				Logger.debug("Submission Query: "+andQuery.toString());
-				
-				// Run the search
-				TopDocs topDocs = searcher.search(andQuery, offset + limit, sort);
-								
-				List<Long> sortedIds = new ArrayList<Long>();
-				for(int i=offset; i < offset + limit ; i++) {
-					if (i >= topDocs.scoreDocs.length )
-						break;
-					Document doc = searcher.doc(topDocs.scoreDocs[i].doc);
+			String key = cacheKey("submission", filter, orderBy, direction, offset, cursor, limit);
+			long generation = indexer.getGeneration();
+			
+			SearchPage page = cache.get(key, generation);
+			if (page == null) {
+				IndexSearcher searcher = indexer.acquireSearcher();
+				try {
+					
+					
+					BooleanQuery andQuery = new BooleanQuery();
+					andQuery.add(filterQuery(new TermQuery(new Term("type","submission"))),Occur.MUST);
+					buildQuery(andQuery,filter,true); // <-- This does most of the work.
+					
+					Logger.debug("Submission Query: "+andQuery.toString());
 					
-					sortedIds.add(Long.valueOf(doc.get("subId")));
+					// Run the search
+					page = searchPage(searcher, andQuery, SORT_SUB_FIELDS, "subId", orderBy, direction, offset, cursor, limit);
+				} finally {
+					indexer.releaseSearcher(searcher);
 				}
-				
-				List<Submission> results = subRepo.findSubmissions(sortedIds);
-				Collections.sort(results,new ModelComparator(sortedIds));
-				
-				return new LuceneSearchResults<Submission>(filter, direction, orderBy, offset, limit, results, topDocs.totalHits);
-			} finally {
-				reader.close();
+				cache.put(key, generation, page);
 			}
+			
+			// The submissions are only loaded if the page can not be displayed
+			// from the rows stored in the index.
+			List<Submission> results = new LazyModelList<Submission>(page.ids) {
+				@Override
+				protected List<Submission> load(List<Long> ids) {
+					return subRepo.findSubmissions(ids);
+				}
+			};
+			
+			return new LuceneSearchResults<Submission>(filter, direction, orderBy, page.offset, limit, results, page.rows, page.total, page.next, page.previous);
 		} catch (IOException ioe) {
 			Logger.error(ioe,"Unable to search");
 		}
 		return null;
 	}
 
-	@Override
-	public SearchResult<ActionLog> actionLogSearch(SearchFilter filter,
+	/**
+	 * Search for a page of action logs, either by offset or from a cursor.
+	 * 
+	 * @param filter
+	 *            The search filter.
+	 * @param orderBy
+	 *            How the logs should be ordered.
+	 * @param direction
+	 *            The direction of the order.
+	 * @param offset
+	 *            The pagination offset, only used when there is no cursor.
+	 * @param cursor
+	 *            The decoded cursor, may be null.
+	 * @param limit
+	 *            The pagination limit of results per page.
+	 * @return The action log results object.
+	 */
+	protected SearchResult<ActionLog> actionLogSearch(SearchFilter filter,
 			SearchOrder orderBy, SearchDirection direction, int offset,
-			int limit) {
+			SearchCursor cursor, int limit) {
 		
 		try {
-			IndexReader reader = IndexReader.open(indexer.index);
-			try {
-				IndexSearcher searcher = new IndexSearcher(reader);
-				
-				
-				BooleanQuery andQuery = new BooleanQuery();
-				andQuery.add(new TermQuery(new Term("type","actionlog")),Occur.MUST);
-				buildQuery(andQuery,filter,false); // <-- This does most of the work.
-				
-				boolean reverse = (direction == SearchDirection.ASCENDING) ? false : true;
-				
-				SortField dynamicSortField = new SortField(SORT_LOG_FIELDS[orderBy.ordinal()], SORT_TYPES[orderBy.ordinal()], reverse);
-				SortField idSortField = new SortField("logId",SortField.LONG,reverse);
-				Sort sort = new Sort(dynamicSortField, idSortField);
-				
-				Logger.debug("Log Query: "+andQuery.toString());
-				
-				// Run the search
-				TopDocs topDocs = searcher.search(andQuery, offset + limit, sort);
-				
-				List<Long> sortedIds = new ArrayList<Long>();
-				for(int i=offset; i < offset + limit ; i++) {
-					if (i >= topDocs.scoreDocs.length )
-						break;
-					Document doc = searcher.doc(topDocs.scoreDocs[i].doc);
+			String key = cacheKey("actionlog", filter, orderBy, direction, offset, cursor, limit);
+			long generation = indexer.getGeneration();
+			
+			SearchPage page = cache.get(key, generation);
+			if (page == null) {
+				IndexSearcher searcher = indexer.acquireSearcher();
+				try {
+					
 					
-					sortedIds.add(Long.valueOf(doc.get("logId")));
+					BooleanQuery andQuery = new BooleanQuery();
+					andQuery.add(filterQuery(new TermQuery(new Term("type","actionlog"))),Occur.MUST);
+					buildQuery(andQuery,filter,false); // <-- This does most of the work.
+					
+					Logger.debug("Log Query: "+andQuery.toString());
+					
+					// Run the search
+					page = searchPage(searcher, andQuery, SORT_LOG_FIELDS, "logId", orderBy, direction, offset, cursor, limit);
+				} finally {
+					indexer.releaseSearcher(searcher);
 				}
-				
-				List<ActionLog> results = subRepo.findActionLogs(sortedIds);
-				Collections.sort(results,new ModelComparator(sortedIds));
-
-				return new LuceneSearchResults<ActionLog>(filter, direction, orderBy, offset, limit, results, topDocs.totalHits);
-			} finally {
-				reader.close();
+				cache.put(key, generation, page);
 			}
+			
+			// The action logs are only loaded if the page can not be displayed
+			// from the rows stored in the index.
+			List<ActionLog> results = new LazyModelList<ActionLog>(page.ids) {
+				@Override
+				protected List<ActionLog> load(List<Long> ids) {
+					return subRepo.findActionLogs(ids);
+				}
+			};
+
+			return new LuceneSearchResults<ActionLog>(filter, direction, orderBy, page.offset, limit, results, page.rows, page.total, page.next, page.previous);
 		} catch (IOException ioe) {
 			Logger.error(ioe,"Unable to search");
 		}
 		return null;
 	}
 	
+	/**
+	 * Build the key a page of results is cached under. Only active search
+	 * filters can be encoded into a key, any other kind of filter is never
+	 * cached.
+	 * 
+	 * @param type
+	 *            The type of document searched, "submission" or "actionlog".
+	 * @param filter
+	 *            The search filter.
+	 * @param orderBy
+	 *            How the results are ordered.
+	 * @param direction
+	 *            The direction of the order.
+	 * @param offset
+	 *            The pagination offset.
+	 * @param cursor
+	 *            The decoded cursor, may be null.
+	 * @param limit
+	 *            The pagination limit of results per page.
+	 * @return The cache key, or null if the results should not be cached.
+	 */
+	protected static String cacheKey(String type, SearchFilter filter, SearchOrder orderBy, SearchDirection direction, int offset, SearchCursor cursor, int limit) {
+		if (!(filter instanceof ActiveSearchFilter))
+			return null;
+		
+		String position = (cursor == null) ? String.valueOf(offset) : cursor.encode();
+		return type+"|"+orderBy.name()+"|"+direction.name()+"|"+position+"|"+limit+"|"+((ActiveSearchFilter) filter).encode();
+	}
+	
+	/**
+	 * Run a search for one page of results.
+	 * 
+	 * When there is no cursor, or the cursor could not record the sort value of
+	 * it's row, the top offset + limit documents are sorted and the first
+	 * offset are thrown away. Otherwise only documents which sort after (or
+	 * before) the cursor's row are sorted, so just one page worth of documents
+	 * are ever held in the priority queue.
+	 * 
+	 * @param searcher
+	 *            The index searcher.
+	 * @param query
+	 *            The query to run.
+	 * @param sortFields
+	 *            Either SORT_SUB_FIELDS or SORT_LOG_FIELDS.
+	 * @param idField
+	 *            The numeric id field, either "subId" or "logId".
+	 * @param orderBy
+	 *            How the results should be ordered.
+	 * @param direction
+	 *            The direction of the order.
+	 * @param offset
+	 *            The pagination offset, only used when there is no cursor.
+	 * @param cursor
+	 *            The decoded cursor, may be null.
+	 * @param limit
+	 *            The pagination limit of results per page.
+	 * @return The page of results.
+	 */
+	protected SearchPage searchPage(IndexSearcher searcher, Query query, String[] sortFields, String idField, SearchOrder orderBy, SearchDirection direction, int offset, SearchCursor cursor, int limit) throws IOException {
+		
+		boolean reverse = (direction == SearchDirection.ASCENDING) ? false : true;
+		String sortField = sortFields[orderBy.ordinal()];
+		int sortType = SORT_TYPES[orderBy.ordinal()];
+		limit = Math.max(1, limit);
+		
+		SearchPage page = new SearchPage();
+		ScoreDoc[] hits;
+		if (cursor != null && cursor.hasValue) {
+			
+			// Only sort the documents on the far side of the cursor. When
+			// moving backwards the sort is reversed, and then the page is
+			// flipped back around afterwards.
+			boolean backwards = !cursor.forward;
+			Sort sort = new Sort(
+					new SortField(sortField, sortType, reverse ^ backwards),
+					new SortField(idField, SortField.LONG, reverse ^ backwards));
+			
+			CursorCollector collector = new CursorCollector(TopFieldCollector.create(sort, limit, true, false, false, false), sortField, sortType, idField, cursor, reverse);
+			searcher.search(query, collector);
+			
+			ScoreDoc[] collected = collector.delegate.topDocs().scoreDocs;
+			hits = new ScoreDoc[collected.length];
+			for (int i = 0; i < collected.length; i++)
+				hits[i] = collected[backwards ? collected.length - 1 - i : i];
+			
+			page.total = collector.total;
+			if (backwards)
+				page.offset = collector.delegate.getTotalHits() - hits.length;
+			else
+				page.offset = collector.before;
+			
+		} else {
+			
+			if (cursor != null)
+				offset = cursor.offset;
+			
+			Sort sort = new Sort(
+					new SortField(sortField, sortType, reverse),
+					new SortField(idField, SortField.LONG, reverse));
+			
+			TopDocs topDocs = searcher.search(query, offset + limit, sort);
+			
+			int end = Math.min(offset + limit, topDocs.scoreDocs.length);
+			hits = new ScoreDoc[Math.max(0, end - offset)];
+			for (int i = 0; i < hits.length; i++)
+				hits[i] = topDocs.scoreDocs[offset + i];
+			
+			page.total = topDocs.totalHits;
+			page.offset = offset;
+		}
+		
+		for (long id : resolveIds(searcher, hits, 0, hits.length, idField))
+			page.ids.add(id);
+		
+		// Read the stored rows, if the index has been configured to hold them.
+		if (indexer.rowColumns.size() > 0) {
+			page.rows = new ArrayList<SearchRow>(hits.length);
+			for (ScoreDoc hit : hits)
+				page.rows.add(storedRow(searcher.doc(hit.doc, ROW_FIELDS)));
+		}
+		
+		// Record where the neighboring pages start.
+		if (hits.length > 0 && page.offset > 0)
+			page.previous = new SearchCursor(false, orderBy, direction, Math.max(0, page.offset - limit), (FieldDoc) hits[0]).encode();
+		if (hits.length > 0 && page.offset + hits.length < page.total)
+			page.next = new SearchCursor(true, orderBy, direction, page.offset + hits.length, (FieldDoc) hits[hits.length - 1]).encode();
+		
+		return page;
+	}
+	
+	/**
+	 * @param doc
+	 *            A document loaded with the ROW_FIELDS selector.
+	 * @return The row stored with the document.
+	 */
+	protected static SearchRow storedRow(Document doc) {
+		
+		Map<SearchOrder, String> cells = new EnumMap<SearchOrder, String>(SearchOrder.class);
+		for (Fieldable field : doc.getFields()) {
+			if (!field.name().startsWith("row."))
+				continue;
+			try {
+				cells.put(SearchOrder.valueOf(field.name().substring(4)), field.stringValue());
+			} catch (IllegalArgumentException iae) {
+				// A column which no longer exists, ignore it.
+			}
+		}
+		
+		String logId = doc.get("logId");
+		return new SearchRow(Long.valueOf(doc.get("subId")), logId == null ? null : Long.valueOf(logId), "true".equals(doc.get("private")), cells);
+	}
+	
 	@Override
 	public long[] submissionSearch(SearchFilter filter,
 			SearchOrder orderBy, SearchDirection direction) {
 		
 		try {
-			IndexReader reader = IndexReader.open(indexer.index);
+			IndexSearcher searcher = indexer.acquireSearcher();
 			try {
-				IndexSearcher searcher = new IndexSearcher(reader);
 				
 				BooleanQuery andQuery = new BooleanQuery();
-				andQuery.add(new TermQuery(new Term("type","submission")),Occur.MUST);
+				andQuery.add(filterQuery(new TermQuery(new Term("type","submission"))),Occur.MUST);
 				buildQuery(andQuery,filter,true); // <-- This does most of the work.
 				
 				boolean reverse = (direction == SearchDirection.ASCENDING) ? false : true;
@@ -262,19 +544,22 @@ public class LuceneSearcherImpl implements Searcher {
 		
 				Logger.debug("Submission ID Query: "+andQuery.toString());
 				
-				TopDocs topDocs = searcher.search(andQuery, Integer.MAX_VALUE, sort);
-								
-				long[] sortedIds = new long[topDocs.scoreDocs.length];
-				for (int i = 0; i < topDocs.scoreDocs.length; i++) {
-					Document doc = searcher.doc(topDocs.scoreDocs[i].doc);
-					sortedIds[i] = Long.valueOf(doc.get("subId")).longValue();
+				long[] sortedIds;
+				if (orderBy == SearchOrder.ID) {
+					// There's no need to sort the documents, just collect the
+					// ids straight from the field cache and sort them.
+					IdCollector collector = new IdCollector("subId");
+					searcher.search(andQuery, collector);
+					sortedIds = collector.getSortedIds(reverse);
+				} else {
+					TopDocs topDocs = searcher.search(andQuery, Integer.MAX_VALUE, sort);
+					sortedIds = resolveIds(searcher, topDocs.scoreDocs, 0, topDocs.scoreDocs.length, "subId");
 				}
 
 				return sortedIds;
 				
 			} finally {
-				reader.close();
-				
+				indexer.releaseSearcher(searcher);
 			}
 		} catch (IOException ioe) {
 			Logger.error(ioe,"Unable to search");
@@ -287,35 +572,37 @@ public class LuceneSearcherImpl implements Searcher {
 			SearchOrder orderBy, SearchDirection direction) {
 		
 		try {
-			IndexReader reader = IndexReader.open(indexer.index);
+			IndexSearcher searcher = indexer.acquireSearcher();
 			try {
-				IndexSearcher searcher = new IndexSearcher(reader);
 				
 				BooleanQuery andQuery = new BooleanQuery();
-				andQuery.add(new TermQuery(new Term("type","actionlog")),Occur.MUST);
+				andQuery.add(filterQuery(new TermQuery(new Term("type","actionlog"))),Occur.MUST);
 				buildQuery(andQuery,filter,true); // <-- This does most of the work.
 				
 				boolean reverse = (direction == SearchDirection.ASCENDING) ? false : true;
 				
-				SortField dynamicSortField = new SortField(SORT_SUB_FIELDS[orderBy.ordinal()], SORT_TYPES[orderBy.ordinal()], reverse);
+				SortField dynamicSortField = new SortField(SORT_LOG_FIELDS[orderBy.ordinal()], SORT_TYPES[orderBy.ordinal()], reverse);
 				SortField idSortField = new SortField("logId",SortField.LONG,reverse);
 				Sort sort = new Sort(dynamicSortField, idSortField);
 		
 				Logger.debug("Log ID Query: "+andQuery.toString());
 				
-				TopDocs topDocs = searcher.search(andQuery, Integer.MAX_VALUE, sort);
-								
-				long[] sortedIds = new long[topDocs.scoreDocs.length];
-				for (int i = 0; i < topDocs.scoreDocs.length; i++) {
-					Document doc = searcher.doc(topDocs.scoreDocs[i].doc);
-					sortedIds[i] = Long.valueOf(doc.get("logId")).longValue();
+				long[] sortedIds;
+				if (orderBy == SearchOrder.ID) {
+					// There's no need to sort the documents, just collect the
+					// ids straight from the field cache and sort them.
+					IdCollector collector = new IdCollector("logId");
+					searcher.search(andQuery, collector);
+					sortedIds = collector.getSortedIds(reverse);
+				} else {
+					TopDocs topDocs = searcher.search(andQuery, Integer.MAX_VALUE, sort);
+					sortedIds = resolveIds(searcher, topDocs.scoreDocs, 0, topDocs.scoreDocs.length, "logId");
 				}
 
 				return sortedIds;
 				
 			} finally {
-				reader.close();
-				
+				indexer.releaseSearcher(searcher);
 			}
 		} catch (IOException ioe) {
 			Logger.error(ioe,"Unable to search");
@@ -328,6 +615,192 @@ public class LuceneSearcherImpl implements Searcher {
 	
 	
 	
+	@Override
+	public Map<SearchFacet, Map<String, Integer>> submissionFacetCounts(
+			SearchFilter filter, List<SearchFacet> facets) {
+		return facetCounts(filter, facets, true);
+	}
+	
+	@Override
+	public Map<SearchFacet, Map<String, Integer>> actionLogFacetCounts(
+			SearchFilter filter, List<SearchFacet> facets) {
+		return facetCounts(filter, facets, false);
+	}
+	
+	/**
+	 * Count the values of each facet in one pass over the index.
+	 * 
+	 * The query is built without the filter's clauses for any of the counted
+	 * facets. Instead those clauses are checked against the field cache as
+	 * each document is collected. A document which passes every clause is
+	 * counted for every facet, while one which fails a single clause is only
+	 * counted for that facet.
+	 * 
+	 * @param filter
+	 *            The search filter.
+	 * @param facets
+	 *            The facets to count.
+	 * @param submissions
+	 *            Whether this is for submissions or action logs
+	 * @return The counts for each facet.
+	 */
+	protected Map<SearchFacet, Map<String, Integer>> facetCounts(SearchFilter filter, List<SearchFacet> facets, boolean submissions) {
+		
+		Map<SearchFacet, Map<String, Integer>> results = new EnumMap<SearchFacet, Map<String, Integer>>(SearchFacet.class);
+		
+		EnumSet<SearchFacet> counted = EnumSet.noneOf(SearchFacet.class);
+		for (SearchFacet facet : facets) {
+			if (facet != null && FACET_FIELDS.containsKey(facet))
+				counted.add(facet);
+		}
+		if (counted.isEmpty())
+			return results;
+		
+		try {
+			IndexSearcher searcher = indexer.acquireSearcher();
+			try {
+				
+				BooleanQuery andQuery = new BooleanQuery();
+				andQuery.add(filterQuery(new TermQuery(new Term("type",submissions ? "submission" : "actionlog"))),Occur.MUST);
+				buildQuery(andQuery,filter,submissions,counted); // <-- This does most of the work.
+				
+				Logger.debug("Facet Query: "+andQuery.toString());
+				
+				List<FacetCounter> counters = new ArrayList<FacetCounter>();
+				for (SearchFacet facet : counted)
+					counters.add(new FacetCounter(facet, FACET_FIELDS.get(facet), facetValues(filter, facet)));
+				
+				FacetCollector collector = new FacetCollector(counters);
+				searcher.search(andQuery, collector);
+				collector.finish();
+				
+				for (FacetCounter counter : counters)
+					results.put(counter.facet, facetKeys(counter));
+				
+				return results;
+			} finally {
+				indexer.releaseSearcher(searcher);
+			}
+		} catch (IOException ioe) {
+			Logger.error(ioe,"Unable to search");
+		}
+		return null;
+	}
+	
+	/**
+	 * Translate the filter's values for a facet into the values stored in the
+	 * index.
+	 * 
+	 * @param filter
+	 *            The search filter.
+	 * @param facet
+	 *            The facet.
+	 * @return The indexed values selected by the filter, or null if the filter
+	 *         does not restrict this facet. String fields produce strings,
+	 *         while numeric fields produce longs.
+	 */
+	protected Set<Object> facetValues(SearchFilter filter, SearchFacet facet) {
+		
+		Set<Object> values = new HashSet<Object>();
+		switch (facet) {
+		case STATE:
+			for (String stateName : filter.getStates())
+				values.add(stateManager.getState(stateName).getDisplayName());
+			break;
+		case ASSIGNEE:
+			for (Person assignee : filter.getAssignees())
+				values.add(assignee == null ? 0L : assignee.getId());
+			break;
+		case GRADUATION_SEMESTER:
+			for (Semester semester : filter.getGraduationSemesters()) {
+				if (semester.year != null)
+					values.add(semesterTime(semester));
+			}
+			break;
+		case EMBARGO:
+			for (EmbargoType embargo : filter.getEmbargoTypes())
+				values.add(embargo.getName());
+			break;
+		case DEGREE:
+			values.addAll(filter.getDegrees());
+			break;
+		case DEPARTMENT:
+			values.addAll(filter.getDepartments());
+			break;
+		case PROGRAM:
+			values.addAll(filter.getPrograms());
+			break;
+		case COLLEGE:
+			values.addAll(filter.getColleges());
+			break;
+		case MAJOR:
+			values.addAll(filter.getMajors());
+			break;
+		case DOCUMENT_TYPE:
+			values.addAll(filter.getDocumentTypes());
+			break;
+		case UMI_RELEASE:
+			if (filter.getUMIRelease() != null)
+				values.add(filter.getUMIRelease() ? "yes" : "no");
+			break;
+		}
+		
+		if (values.isEmpty())
+			return null;
+		return values;
+	}
+	
+	/**
+	 * Translate the indexed values counted for a facet into the form they are
+	 * added to a filter.
+	 * 
+	 * @param counter
+	 *            The facet counter.
+	 * @return The counts keyed by the filter's form of each value, sorted.
+	 */
+	protected Map<String, Integer> facetKeys(FacetCounter counter) {
+		
+		Map<String, Integer> keyed = new TreeMap<String, Integer>();
+		for (Map.Entry<Object, Integer> entry : counter.counts.entrySet()) {
+			
+			String key = null;
+			switch (counter.facet) {
+			case STATE:
+				for (State state : stateManager.getAllStates()) {
+					if (state.getDisplayName().equals(entry.getKey()))
+						key = state.getBeanName();
+				}
+				break;
+			case ASSIGNEE:
+				long assigneeId = (Long) entry.getKey();
+				key = (assigneeId == 0) ? "null" : String.valueOf(assigneeId);
+				break;
+			case GRADUATION_SEMESTER:
+				long time = (Long) entry.getKey();
+				if (time == 0)
+					break; // Documents without a semester.
+				Calendar cal = Calendar.getInstance();
+				cal.setTimeInMillis(time);
+				key = cal.get(Calendar.YEAR) + "/" + cal.get(Calendar.MONTH);
+				break;
+			case UMI_RELEASE:
+				if ("yes".equals(entry.getKey()))
+					key = "true";
+				else if ("no".equals(entry.getKey()))
+					key = "false";
+				break;
+			default:
+				key = (String) entry.getKey();
+			}
+			
+			if (key != null && key.length() > 0) {
+				Integer existing = keyed.get(key);
+				keyed.put(key, (existing == null ? 0 : existing) + entry.getValue());
+			}
+		}
+		return keyed;
+	}
+	
 	/**
 	 * This method produces the common part of the query handle the filter search clauses. 
 	 * 
@@ -336,35 +809,41 @@ public class LuceneSearcherImpl implements Searcher {
 	 * @param submissions Whether this is for submissions or action logs
 	 */
 	public void buildQuery(BooleanQuery andQuery, SearchFilter filter, boolean submissions) {
+		buildQuery(andQuery, filter, submissions, EnumSet.noneOf(SearchFacet.class));
+	}
+	
+	/**
+	 * Produce the common part of the query, leaving out the clauses for some
+	 * facets. This is used when counting facets, where those clauses are
+	 * checked while collecting.
+	 * 
+	 * @param andQuery The existing and-based query
+	 * @param filter The filter search paramaters.
+	 * @param submissions Whether this is for submissions or action logs
+	 * @param skip The facets whose clauses should be left out.
+	 */
+	public void buildQuery(BooleanQuery andQuery, SearchFilter filter, boolean submissions, Set<SearchFacet> skip) {
 		QueryParser parser = new QueryParser(indexer.version,"searchText",indexer.standardAnalyzer);
 		
 		// Include Submission filter
-		if (filter.getIncludedSubmissions().size() > 0) {
-			BooleanQuery orQuery = new BooleanQuery();
-			for(Submission sub : filter.getIncludedSubmissions()) {
-				orQuery.add(new TermQuery(new Term("subId", NumericUtils.longToPrefixCoded(sub.getId()))), Occur.SHOULD);
-			}
-			andQuery.add(orQuery,Occur.MUST);
-		}
+		IdSet includedSubmissions = filter.getIncludedSubmissionIds();
+		if (!includedSubmissions.isEmpty())
+			andQuery.add(new ConstantScoreQuery(new IdSetFilter("subId", includedSubmissions)),Occur.MUST);
 		
 		// Include Log filter
-		if (filter.getIncludedActionLogs().size() > 0) {
-			BooleanQuery orQuery = new BooleanQuery();
-			for(ActionLog log : filter.getIncludedActionLogs()) {
-				orQuery.add(new TermQuery(new Term("logId", NumericUtils.longToPrefixCoded(log.getId()))), Occur.SHOULD);
-			}
-			andQuery.add(orQuery,Occur.MUST);
-		}
+		IdSet includedActionLogs = filter.getIncludedActionLogIds();
+		if (!includedActionLogs.isEmpty())
+			andQuery.add(new ConstantScoreQuery(new IdSetFilter("logId", includedActionLogs)),Occur.MUST);
 		
 		// Exclude Submission filter
-		for(Submission sub : filter.getExcludedSubmissions()) {
-			andQuery.add(new TermQuery(new Term("subId", NumericUtils.longToPrefixCoded(sub.getId()))), Occur.MUST_NOT);
-		}
+		IdSet excludedSubmissions = filter.getExcludedSubmissionIds();
+		if (!excludedSubmissions.isEmpty())
+			andQuery.add(new ConstantScoreQuery(new IdSetFilter("subId", excludedSubmissions)),Occur.MUST_NOT);
 		
 		// Exclude Log filter
-		for(ActionLog log : filter.getExcludedActionLogs()) {
-			andQuery.add(new TermQuery(new Term("logId", NumericUtils.longToPrefixCoded(log.getId()))), Occur.MUST_NOT);
-		}
+		IdSet excludedActionLogs = filter.getExcludedActionLogIds();
+		if (!excludedActionLogs.isEmpty())
+			andQuery.add(new ConstantScoreQuery(new IdSetFilter("logId", excludedActionLogs)),Occur.MUST_NOT);
 		
 		// Search Text Filter
 		if (filter.getSearchText().size() > 0) {
@@ -382,17 +861,17 @@ public class LuceneSearcherImpl implements Searcher {
 		}
 	
 		// State Filter
-		if (filter.getStates().size() > 0) {
+		if (!skip.contains(SearchFacet.STATE) && filter.getStates().size() > 0) {
 			BooleanQuery orQuery = new BooleanQuery();
 			for(String stateName : filter.getStates()) {
 				State state = stateManager.getState(stateName);
 				orQuery.add(new TermQuery(new Term("state", state.getDisplayName())), Occur.SHOULD);
 			}
-			andQuery.add(orQuery,Occur.MUST);
+			andQuery.add(filterQuery(orQuery),Occur.MUST);
 		}
 		
 		// Assignee Filter
-		if (filter.getAssignees().size() > 0) {
+		if (!skip.contains(SearchFacet.ASSIGNEE) && filter.getAssignees().size() > 0) {
 			BooleanQuery orQuery = new BooleanQuery();
 			for(Person assignee : filter.getAssignees()) {
 				
@@ -402,20 +881,20 @@ public class LuceneSearcherImpl implements Searcher {
 				
 				orQuery.add(new TermQuery(new Term("searchAssigned", NumericUtils.longToPrefixCoded(assigneeId))), Occur.SHOULD);
 			}
-			andQuery.add(orQuery,Occur.MUST);
+			andQuery.add(filterQuery(orQuery),Occur.MUST);
 		}
 		
 		// Embargo Filter
-		if (filter.getEmbargoTypes().size() > 0) {
+		if (!skip.contains(SearchFacet.EMBARGO) && filter.getEmbargoTypes().size() > 0) {
 			BooleanQuery orQuery = new BooleanQuery();
 			for(EmbargoType embargo : filter.getEmbargoTypes()) {
 				orQuery.add(new TermQuery(new Term("embargo", embargo.getName())), Occur.SHOULD);
 			}			
-			andQuery.add(orQuery,Occur.MUST);
+			andQuery.add(filterQuery(orQuery),Occur.MUST);
 		}
 		
 		// Graduation Semester Filter
-		if (filter.getGraduationSemesters().size() > 0) {
+		if (!skip.contains(SearchFacet.GRADUATION_SEMESTER) && filter.getGraduationSemesters().size() > 0) {
 			BooleanQuery orQuery = new BooleanQuery();
 			for(Semester semester : filter.getGraduationSemesters()) {
 				
@@ -423,77 +902,71 @@ public class LuceneSearcherImpl implements Searcher {
 				if (semester.year == null)
 					continue;
 				
-				Calendar cal = Calendar.getInstance();
-				cal.clear();
-				cal.set(Calendar.YEAR, semester.year);
-				if (semester.month != null) {
-					cal.set(Calendar.MONTH,semester.month);
-				}
-				orQuery.add(new TermQuery(new Term("graduationSemester", NumericUtils.longToPrefixCoded(cal.getTimeInMillis()))), Occur.SHOULD);
+				orQuery.add(new TermQuery(new Term("graduationSemester", NumericUtils.longToPrefixCoded(semesterTime(semester)))), Occur.SHOULD);
 			}
-			andQuery.add(orQuery,Occur.MUST);
+			andQuery.add(filterQuery(orQuery),Occur.MUST);
 		}
 				
 		// Degree Filter
-		if (filter.getDegrees().size() > 0) {
+		if (!skip.contains(SearchFacet.DEGREE) && filter.getDegrees().size() > 0) {
 			BooleanQuery orQuery = new BooleanQuery();
 			for(String degree : filter.getDegrees()) {
 				orQuery.add(new TermQuery(new Term("degree", degree)), Occur.SHOULD);
 			}
-			andQuery.add(orQuery,Occur.MUST);
+			andQuery.add(filterQuery(orQuery),Occur.MUST);
 		}
 		
 		// Department Filter
-		if (filter.getDepartments().size() > 0) {
+		if (!skip.contains(SearchFacet.DEPARTMENT) && filter.getDepartments().size() > 0) {
 			BooleanQuery orQuery = new BooleanQuery();
 			for(String dept : filter.getDepartments()) {
 				orQuery.add(new TermQuery(new Term("department", dept)), Occur.SHOULD);
 			}
-			andQuery.add(orQuery,Occur.MUST);
+			andQuery.add(filterQuery(orQuery),Occur.MUST);
 		}
 		
 		// Program Filter
-		if (filter.getPrograms().size() > 0) {
+		if (!skip.contains(SearchFacet.PROGRAM) && filter.getPrograms().size() > 0) {
 			BooleanQuery orQuery = new BooleanQuery();
 			for(String program : filter.getPrograms()) {
 				orQuery.add(new TermQuery(new Term("program", program)), Occur.SHOULD);
 			}
-			andQuery.add(orQuery,Occur.MUST);
+			andQuery.add(filterQuery(orQuery),Occur.MUST);
 		}
 				
 		// College Filter
-		if (filter.getColleges().size() > 0) {
+		if (!skip.contains(SearchFacet.COLLEGE) && filter.getColleges().size() > 0) {
 			BooleanQuery orQuery = new BooleanQuery();
 			for(String college : filter.getColleges()) {
 				orQuery.add(new TermQuery(new Term("college", college)), Occur.SHOULD);
 			}
-			andQuery.add(orQuery,Occur.MUST);
+			andQuery.add(filterQuery(orQuery),Occur.MUST);
 		}		
 		
 		// Major Filter
-		if (filter.getMajors().size() > 0) {
+		if (!skip.contains(SearchFacet.MAJOR) && filter.getMajors().size() > 0) {
 			BooleanQuery orQuery = new BooleanQuery();
 			for(String major : filter.getMajors()) {
 				orQuery.add(new TermQuery(new Term("major", major)), Occur.SHOULD);
 			}
-			andQuery.add(orQuery,Occur.MUST);
+			andQuery.add(filterQuery(orQuery),Occur.MUST);
 		}
 		
 		// Document Type Filter
-		if (filter.getDocumentTypes().size() > 0) {
+		if (!skip.contains(SearchFacet.DOCUMENT_TYPE) && filter.getDocumentTypes().size() > 0) {
 			BooleanQuery orQuery = new BooleanQuery();
 			for(String docType : filter.getDocumentTypes()) {
 				orQuery.add(new TermQuery(new Term("documentType", docType)), Occur.SHOULD);
 			}
-			andQuery.add(orQuery,Occur.MUST);
+			andQuery.add(filterQuery(orQuery),Occur.MUST);
 		}
 		
 		// UMI Release Filter
-		if (filter.getUMIRelease() != null) {
+		if (!skip.contains(SearchFacet.UMI_RELEASE) && filter.getUMIRelease() != null) {
 			if (filter.getUMIRelease()) {
-				andQuery.add(new TermQuery(new Term("umiRelease","yes")),Occur.MUST);
+				andQuery.add(filterQuery(new TermQuery(new Term("umiRelease","yes"))),Occur.MUST);
 			} else {
-				andQuery.add(new TermQuery(new Term("umiRelease","no")),Occur.MUST);
+				andQuery.add(filterQuery(new TermQuery(new Term("umiRelease","no"))),Occur.MUST);
 			}
 		}
 		
@@ -509,62 +982,844 @@ public class LuceneSearcherImpl implements Searcher {
 				endTime = filter.getDateRangeEnd().getTime();
 			
 			if (submissions)
-				andQuery.add(NumericRangeQuery.newLongRange("submissionDate", startTime, endTime, true,true),Occur.MUST);
+				andQuery.add(filterQuery(NumericRangeQuery.newLongRange("submissionDate", startTime, endTime, true,true)),Occur.MUST);
 			else
-				andQuery.add(NumericRangeQuery.newLongRange("lastEventTime", startTime, endTime, true,true),Occur.MUST);
+				andQuery.add(filterQuery(NumericRangeQuery.newLongRange("lastEventTime", startTime, endTime, true,true)),Occur.MUST);
 
 		}
 	}
 	
 	/**
-	 * Search results object.
+	 * Wrap a clause which only narrows down the results, so that it is run as
+	 * a cached filter instead of being scored. The results are always sorted
+	 * by a field, so only the search text needs to be scored.
 	 * 
-	 * This method encapsulates the result of a search query for a particular
-	 * type of object. It records what the parameters where that generated the
-	 * query, and access to the results. In addition there are some helpful
-	 * pagination options to aid the front-end in generating pagination results.
+	 * The same filter is shared by every query with an equal clause. Each
+	 * filter remembers which documents matched in each segment of the index,
+	 * so after the index is refreshed only the new segments are searched
+	 * again. Deletions are checked as documents are matched, so a segment's
+	 * cached documents stay valid as its documents are deleted.
 	 * 
-	 * @param <T>
-	 *            Either Submission or ActionLog
+	 * @param query
+	 *            The clause.
+	 * @return A constant score query over the cached filter.
 	 */
-	public static class LuceneSearchResults<T extends AbstractModel> implements SearchResult<T> {
-
-		// The search parameters
-		public final SearchFilter filter;
-		public final SearchDirection direction;
-		public final SearchOrder orderBy;
-		public final int offset;
-		public final int limit;
-		public final List<T> results;
-		public final int total;
+	public Query filterQuery(Query query) {
+		if (filterCacheSize <= 0)
+			return query;
 		
-		/**
-		 * Construct a new search results object.
-		 * 
-		 * @param filter
-		 *            The filter which produced these results.
-		 * @param direction
-		 *            The direction of the results.
-		 * @param orderBy
-		 *            How the results are ordered.
-		 * @param offset
-		 *            The pagination offset of the results.
-		 * @param limit
-		 *            The number of items per page.
-		 * @param results
-		 *            The actual results.
-		 * @param total
-		 *            How many objects matched this query regardless of
-		 *            pagination limits.
-		 */
-		public LuceneSearchResults(SearchFilter filter, SearchDirection direction, SearchOrder orderBy, int offset, int limit, List<T> results, int total) {
-			this.filter = filter;
-			this.direction = direction;
-			this.orderBy = orderBy;
-			this.offset = offset;
+		Filter filter;
+		synchronized (filterCache) {
+			filter = filterCache.get(query);
+			if (filter == null) {
+				filter = new CachingWrapperFilter(new QueryWrapperFilter(query), DeletesMode.DYNAMIC);
+				filterCache.put(query, filter);
+			}
+		}
+		return new ConstantScoreQuery(filter);
+	}
+	
+	/**
+	 * @param semester
+	 *            A semester with a year.
+	 * @return The time the semester is indexed under.
+	 */
+	public static long semesterTime(Semester semester) {
+		Calendar cal = Calendar.getInstance();
+		cal.clear();
+		cal.set(Calendar.YEAR, semester.year);
+		if (semester.month != null) {
+			cal.set(Calendar.MONTH,semester.month);
+		}
+		return cal.getTimeInMillis();
+	}
+	
+	/**
+	 * Look up the ids for a range of search hits. Rather than loading each
+	 * hit's stored document, the id is read from the field cache of the index
+	 * segment containing the hit. This is the same cache that is used when
+	 * sorting by id, so it is typically already loaded.
+	 * 
+	 * @param searcher
+	 *            The searcher which produced the hits.
+	 * @param hits
+	 *            The search hits.
+	 * @param start
+	 *            The first hit to look up (inclusive).
+	 * @param end
+	 *            The last hit to look up (exclusive), this may be past the end
+	 *            of the hits.
+	 * @param idField
+	 *            The numeric id field, either "subId" or "logId".
+	 * @return The ids of the hits, in order.
+	 */
+	public static long[] resolveIds(IndexSearcher searcher, ScoreDoc[] hits, int start, int end, String idField) throws IOException {
+		
+		end = Math.min(end, hits.length);
+		if (start >= end)
+			return new long[0];
+		
+		List<IndexReader> segments = new ArrayList<IndexReader>();
+		ReaderUtil.gatherSubReaders(segments, searcher.getIndexReader());
+		
+		int[] docStarts = new int[segments.size()];
+		int maxDoc = 0;
+		for (int i = 0; i < segments.size(); i++) {
+			docStarts[i] = maxDoc;
+			maxDoc += segments.get(i).maxDoc();
+		}
+		
+		long[][] segmentIds = new long[segments.size()][];
+		long[] ids = new long[end - start];
+		for (int i = start; i < end; i++) {
+			int doc = hits[i].doc;
+			int segment = ReaderUtil.subIndex(doc, docStarts);
+			if (segmentIds[segment] == null)
+				segmentIds[segment] = FieldCache.DEFAULT.getLongs(segments.get(segment), idField);
+			
+			ids[i - start] = segmentIds[segment][doc - docStarts[segment]];
+		}
+		return ids;
+	}
+	
+	/**
+	 * Collect the ids of all matching documents, without scoring or sorting
+	 * the documents. Ids are read from the field cache for each index segment
+	 * rather than the stored documents.
+	 */
+	public static class IdCollector extends Collector {
+		
+		// The numeric id field, either "subId" or "logId".
+		public final String idField;
+		
+		// The ids collected so far.
+		public long[] ids = new long[1024];
+		public int count = 0;
+		
+		// The ids for the current segment.
+		public long[] segmentIds;
+		
+		/**
+		 * Construct a new id collector.
+		 * 
+		 * @param idField
+		 *            The numeric id field, either "subId" or "logId".
+		 */
+		public IdCollector(String idField) {
+			this.idField = idField;
+		}
+		
+		@Override
+		public void setScorer(Scorer scorer) {
+			// We don't care about scores.
+		}
+		
+		@Override
+		public void setNextReader(IndexReader reader, int docBase) throws IOException {
+			segmentIds = FieldCache.DEFAULT.getLongs(reader, idField);
+		}
+		
+		@Override
+		public void collect(int doc) {
+			if (count == ids.length)
+				ids = Arrays.copyOf(ids, count * 2);
+			ids[count++] = segmentIds[doc];
+		}
+		
+		@Override
+		public boolean acceptsDocsOutOfOrder() {
+			return true;
+		}
+		
+		/**
+		 * @param reverse
+		 *            Whether the ids should be in descending order.
+		 * @return The collected ids, sorted.
+		 */
+		public long[] getSortedIds(boolean reverse) {
+			long[] sorted = Arrays.copyOf(ids, count);
+			Arrays.sort(sorted);
+			
+			if (reverse) {
+				for (int i = 0, j = sorted.length - 1; i < j; i++, j--) {
+					long swap = sorted[i];
+					sorted[i] = sorted[j];
+					sorted[j] = swap;
+				}
+			}
+			return sorted;
+		}
+	}
+	
+	/**
+	 * One page of search results, as ids, along with where the page is located
+	 * within the entire result set.
+	 */
+	public static class SearchPage {
+		
+		// The ids of this page, in order.
+		public List<Long> ids = new ArrayList<Long>();
+		
+		// The rows stored in the index for this page, in order, or null if
+		// the index does not store any.
+		public List<SearchRow> rows = null;
+		
+		// The offset of this page, and the total number of results.
+		public int offset = 0;
+		public int total = 0;
+		
+		// Encoded cursors to the neighboring pages, or null.
+		public String next;
+		public String previous;
+	}
+	
+	/**
+	 * A bounded cache of result pages, the least recently used page is
+	 * forgotten once the cache is full.
+	 * 
+	 * Each page is tagged with the index generation it was searched at. Once
+	 * the index changes every cached page is stale, so the whole cache is
+	 * cleared the first time a newer generation is seen. Only the ids (and any
+	 * stored rows) are cached, the submissions and action logs themselves are
+	 * always loaded fresh from the database.
+	 */
+	public static class SearchPageCache {
+		
+		// The maximum number of pages held, zero disables the cache.
+		public final int size;
+		
+		// The cached pages, in access order.
+		public final LinkedHashMap<String, SearchPage> pages;
+		
+		// The index generation of every cached page.
+		public long generation = -1;
+		
+		// Metrics
+		public long hits = 0;
+		public long misses = 0;
+		
+		/**
+		 * Construct a new cache.
+		 * 
+		 * @param size
+		 *            The maximum number of pages to hold.
+		 */
+		public SearchPageCache(final int size) {
+			this.size = size;
+			this.pages = new LinkedHashMap<String, SearchPage>(16, 0.75f, true) {
+				@Override
+				protected boolean removeEldestEntry(Map.Entry<String, SearchPage> eldest) {
+					return size() > SearchPageCache.this.size;
+				}
+			};
+		}
+		
+		/**
+		 * Look up a page.
+		 * 
+		 * @param key
+		 *            The page's key, may be null.
+		 * @param generation
+		 *            The current index generation.
+		 * @return The cached page, or null if it needs to be searched.
+		 */
+		public synchronized SearchPage get(String key, long generation) {
+			if (key == null || size <= 0)
+				return null;
+			
+			expire(generation);
+			SearchPage page = (this.generation == generation) ? pages.get(key) : null;
+			if (page == null)
+				misses++;
+			else
+				hits++;
+			return page;
+		}
+		
+		/**
+		 * Remember a page.
+		 * 
+		 * @param key
+		 *            The page's key, may be null.
+		 * @param generation
+		 *            The index generation read before the page was searched.
+		 * @param page
+		 *            The page.
+		 */
+		public synchronized void put(String key, long generation, SearchPage page) {
+			if (key == null || size <= 0)
+				return;
+			
+			// The index changed while we were searching, so the page may
+			// already be out of date.
+			expire(generation);
+			if (this.generation == generation)
+				pages.put(key, page);
+		}
+		
+		/**
+		 * Forget every page.
+		 */
+		public synchronized void clear() {
+			pages.clear();
+		}
+		
+		/**
+		 * @return The number of pages answered from the cache.
+		 */
+		public synchronized long getHits() {
+			return hits;
+		}
+		
+		/**
+		 * @return The number of pages which had to be searched.
+		 */
+		public synchronized long getMisses() {
+			return misses;
+		}
+		
+		/**
+		 * @return The fraction of pages answered from the cache.
+		 */
+		public synchronized double getHitRate() {
+			return (hits + misses == 0) ? 0 : (double) hits / (hits + misses);
+		}
+		
+		/**
+		 * Drop every page if the index has moved on to a newer generation.
+		 */
+		protected void expire(long generation) {
+			if (generation > this.generation) {
+				pages.clear();
+				this.generation = generation;
+			}
+		}
+	}
+	
+	/**
+	 * A position within a sorted result set. The cursor records the sort value
+	 * and id of the row at the edge of a page, so the next search only needs to
+	 * consider documents which sort after (or before) that row.
+	 * 
+	 * The encoded form is: direction.orderBy.sortDirection.offset.id.value
+	 * where direction is "n" for the next page or "p" for the previous page.
+	 * The value is prefixed with it's type, and strings are hex encoded. If
+	 * the value is too big to reasonably carry around then it is left off,
+	 * and the cursor falls back to the offset.
+	 */
+	public static class SearchCursor {
+		
+		// The longest value that will be encoded into a cursor.
+		public static final int MAX_VALUE_LENGTH = 256;
+		
+		// True if this cursor points to the rows after it, false for before.
+		public final boolean forward;
+		
+		// The order which produced this cursor.
+		public final SearchOrder orderBy;
+		public final SearchDirection direction;
+		
+		// The offset of the page this cursor produces.
+		public final int offset;
+		
+		// The id and sort value of the row at the cursor.
+		public final long id;
+		public final Object value;
+		public final boolean hasValue;
+		
+		/**
+		 * Construct a new cursor from a sorted hit.
+		 * 
+		 * @param forward
+		 *            Whether this cursor points forward or backward.
+		 * @param orderBy
+		 *            The search order.
+		 * @param direction
+		 *            The search direction.
+		 * @param offset
+		 *            The offset of the page this cursor produces.
+		 * @param hit
+		 *            The hit at the edge of the current page, it's first
+		 *            field is the sort value and it's second is the id.
+		 */
+		public SearchCursor(boolean forward, SearchOrder orderBy, SearchDirection direction, int offset, FieldDoc hit) {
+			this(forward, orderBy, direction, offset, (Long) hit.fields[1], hit.fields[0], true);
+		}
+		
+		/**
+		 * Construct a new cursor.
+		 */
+		protected SearchCursor(boolean forward, SearchOrder orderBy, SearchDirection direction, int offset, long id, Object value, boolean hasValue) {
+			this.forward = forward;
+			this.orderBy = orderBy;
+			this.direction = direction;
+			this.offset = offset;
+			this.id = id;
+			this.value = value;
+			this.hasValue = hasValue;
+		}
+		
+		/**
+		 * @return The opaque encoded form of this cursor.
+		 */
+		public String encode() {
+			
+			String encodedValue = null;
+			if (value == null)
+				encodedValue = "x";
+			else if (value instanceof Long)
+				encodedValue = "l" + value;
+			else if (value instanceof Integer)
+				encodedValue = "i" + value;
+			else if (value instanceof String && ((String) value).length() <= MAX_VALUE_LENGTH) {
+				try {
+					encodedValue = "s" + Codec.byteToHexString(((String) value).getBytes("UTF-8"));
+				} catch (UnsupportedEncodingException uee) {
+					throw new RuntimeException(uee);
+				}
+			}
+			
+			String encoded = (forward ? "n" : "p") + "." + orderBy.getId() + "." + direction.getId() + "." + offset + "." + id;
+			if (hasValue && encodedValue != null)
+				encoded += "." + encodedValue;
+			
+			return encoded;
+		}
+		
+		/**
+		 * Decode a cursor.
+		 * 
+		 * @param encoded
+		 *            The encoded cursor.
+		 * @param orderBy
+		 *            The order of the current search.
+		 * @param direction
+		 *            The direction of the current search.
+		 * @return The decoded cursor, or null if the cursor is invalid or was
+		 *         produced by a search in a different order.
+		 */
+		public static SearchCursor decode(String encoded, SearchOrder orderBy, SearchDirection direction) {
+			if (encoded == null)
+				return null;
+			
+			try {
+				String[] parts = encoded.split("\\.");
+				if (parts.length < 5 || parts.length > 6)
+					return null;
+				
+				if (!"n".equals(parts[0]) && !"p".equals(parts[0]))
+					return null;
+				boolean forward = "n".equals(parts[0]);
+				
+				if (orderBy != SearchOrder.find(Integer.valueOf(parts[1])) || direction != SearchDirection.find(Integer.valueOf(parts[2])))
+					return null;
+				
+				int offset = Integer.valueOf(parts[3]);
+				long id = Long.valueOf(parts[4]);
+				if (offset < 0)
+					return null;
+				
+				if (parts.length == 5)
+					return new SearchCursor(forward, orderBy, direction, offset, id, null, false);
+				
+				Object value;
+				char type = parts[5].charAt(0);
+				String encodedValue = parts[5].substring(1);
+				if (type == 'x')
+					value = null;
+				else if (type == 'l')
+					value = Long.valueOf(encodedValue);
+				else if (type == 'i')
+					value = Integer.valueOf(encodedValue);
+				else if (type == 's')
+					value = new String(Codec.hexStringToByte(encodedValue), "UTF-8");
+				else
+					return null;
+				
+				return new SearchCursor(forward, orderBy, direction, offset, id, value, true);
+				
+			} catch (RuntimeException re) {
+				Logger.warn("Unable to decode search cursor: "+encoded);
+				return null;
+			} catch (UnsupportedEncodingException uee) {
+				throw new RuntimeException(uee);
+			}
+		}
+	}
+	
+	/**
+	 * Count every matching document, but only pass those documents which sort
+	 * after the cursor (or before it, for a backwards cursor) on to the
+	 * delegate collector. The comparison is made using the same field cache
+	 * values that lucene uses to sort the documents, so the position of each
+	 * document relative to the cursor's row matches the sort order exactly.
+	 */
+	public static class CursorCollector extends Collector {
+		
+		// The collector which sorts the accepted documents.
+		public final TopFieldCollector delegate;
+		
+		// The sort field, and the id field used to break ties.
+		public final String sortField;
+		public final int sortType;
+		public final String idField;
+		
+		// The cursor to compare documents against.
+		public final SearchCursor cursor;
+		
+		// Whether the results are in descending order.
+		public final boolean reverse;
+		
+		// The number of matching documents, and the number which sort at or
+		// before the cursor.
+		public int total = 0;
+		public int before = 0;
+		
+		// The field cache values for the current segment.
+		public int[] ords;
+		public int cursorOrd;
+		public long[] longs;
+		public int[] ints;
+		public long[] ids;
+		
+		/**
+		 * Construct a new cursor collector.
+		 * 
+		 * @param delegate
+		 *            The collector to sort the accepted documents.
+		 * @param sortField
+		 *            The field being sorted.
+		 * @param sortType
+		 *            The type of the sort field.
+		 * @param idField
+		 *            The numeric id field, either "subId" or "logId".
+		 * @param cursor
+		 *            The cursor.
+		 * @param reverse
+		 *            Whether the results are in descending order.
+		 */
+		public CursorCollector(TopFieldCollector delegate, String sortField, int sortType, String idField, SearchCursor cursor, boolean reverse) {
+			this.delegate = delegate;
+			this.sortField = sortField;
+			this.sortType = sortType;
+			this.idField = idField;
+			this.cursor = cursor;
+			this.reverse = reverse;
+		}
+		
+		@Override
+		public void setScorer(Scorer scorer) throws IOException {
+			delegate.setScorer(scorer);
+		}
+		
+		@Override
+		public void setNextReader(IndexReader reader, int docBase) throws IOException {
+			delegate.setNextReader(reader, docBase);
+			
+			ids = FieldCache.DEFAULT.getLongs(reader, idField);
+			if (sortType == SortField.LONG) {
+				longs = FieldCache.DEFAULT.getLongs(reader, sortField);
+			} else if (sortType == SortField.INT) {
+				ints = FieldCache.DEFAULT.getInts(reader, sortField);
+			} else {
+				// String ordinals are only comparable within a segment, so
+				// find where the cursor's value falls among this segment's
+				// terms. Ordinals are doubled so that a value which falls
+				// between two terms can be represented as an odd number.
+				StringIndex index = FieldCache.DEFAULT.getStringIndex(reader, sortField);
+				ords = index.order;
+				int found = index.binarySearchLookup((String) cursor.value);
+				cursorOrd = (found >= 0) ? found * 2 : (-found - 1) * 2 - 1;
+			}
+		}
+		
+		@Override
+		public void collect(int doc) throws IOException {
+			total++;
+			
+			int position = position(doc);
+			if (cursor.forward ? position > 0 : position < 0)
+				delegate.collect(doc);
+			else if (cursor.forward)
+				before++;
+		}
+		
+		/**
+		 * @param doc
+		 *            A document in the current segment.
+		 * @return Negative if the document is displayed before the cursor's
+		 *         row, positive if after, and zero if it is the cursor's row.
+		 */
+		protected int position(int doc) {
+			int cmp;
+			if (sortType == SortField.LONG) {
+				cmp = compare(longs[doc], (Long) cursor.value);
+			} else if (sortType == SortField.INT) {
+				cmp = compare(ints[doc], (Integer) cursor.value);
+			} else {
+				cmp = compare(ords[doc] * 2, cursorOrd);
+			}
+			
+			if (cmp == 0)
+				cmp = compare(ids[doc], cursor.id);
+			
+			return reverse ? -cmp : cmp;
+		}
+		
+		/**
+		 * @return The sign of a compared to b.
+		 */
+		protected static int compare(long a, long b) {
+			return (a < b) ? -1 : ((a == b) ? 0 : 1);
+		}
+		
+		@Override
+		public boolean acceptsDocsOutOfOrder() {
+			return delegate.acceptsDocsOutOfOrder();
+		}
+	}
+	
+	/**
+	 * Count the values of one facet field, and check documents against the
+	 * filter's values for that facet. String fields are counted by their term
+	 * ordinals within each segment, and only resolved back into terms when
+	 * moving on to the next segment.
+	 */
+	public static class FacetCounter {
+		
+		// The facet, and the index field it is counted from.
+		public final SearchFacet facet;
+		public final String field;
+		public final boolean numeric;
+		
+		// The indexed values selected by the filter, or null if unrestricted.
+		public final Set<Object> selected;
+		
+		// The counts of each indexed value.
+		public final Map<Object, Integer> counts = new HashMap<Object, Integer>();
+		
+		// The field cache for the current segment.
+		public int[] order;
+		public String[] lookup;
+		public boolean[] selectedOrds;
+		public int[] ordCounts;
+		public long[] values;
+		
+		/**
+		 * Construct a new facet counter.
+		 * 
+		 * @param facet
+		 *            The facet being counted.
+		 * @param field
+		 *            The index field for the facet.
+		 * @param selected
+		 *            The indexed values selected by the filter, or null.
+		 */
+		public FacetCounter(SearchFacet facet, String field, Set<Object> selected) {
+			this.facet = facet;
+			this.field = field;
+			this.numeric = (facet == SearchFacet.ASSIGNEE || facet == SearchFacet.GRADUATION_SEMESTER);
+			this.selected = selected;
+		}
+		
+		/**
+		 * Load the field cache for the next segment.
+		 */
+		public void setNextReader(IndexReader reader) throws IOException {
+			finish();
+			
+			if (numeric) {
+				values = FieldCache.DEFAULT.getLongs(reader, field);
+			} else {
+				StringIndex index = FieldCache.DEFAULT.getStringIndex(reader, field);
+				order = index.order;
+				lookup = index.lookup;
+				ordCounts = new int[lookup.length];
+				
+				selectedOrds = null;
+				if (selected != null) {
+					selectedOrds = new boolean[lookup.length];
+					for (Object value : selected) {
+						int ord = index.binarySearchLookup((String) value);
+						if (ord > 0)
+							selectedOrds[ord] = true;
+					}
+				}
+			}
+		}
+		
+		/**
+		 * @return Whether the document passes the filter's clause for this
+		 *         facet.
+		 */
+		public boolean matches(int doc) {
+			if (selected == null)
+				return true;
+			if (numeric)
+				return selected.contains(values[doc]);
+			return selectedOrds[order[doc]];
+		}
+		
+		/**
+		 * Count the document's value.
+		 */
+		public void count(int doc) {
+			if (numeric) {
+				Integer count = counts.get(values[doc]);
+				counts.put(values[doc], (count == null ? 0 : count) + 1);
+			} else {
+				ordCounts[order[doc]]++;
+			}
+		}
+		
+		/**
+		 * Resolve the ordinal counts for the current segment into terms.
+		 */
+		public void finish() {
+			if (ordCounts == null)
+				return;
+			
+			// Ordinal zero is for documents without a value.
+			for (int ord = 1; ord < ordCounts.length; ord++) {
+				if (ordCounts[ord] > 0) {
+					Integer count = counts.get(lookup[ord]);
+					counts.put(lookup[ord], (count == null ? 0 : count) + ordCounts[ord]);
+				}
+			}
+			ordCounts = null;
+		}
+	}
+	
+	/**
+	 * Collect facet counts for every matching document without scoring or
+	 * sorting. Call finish() once the search is complete.
+	 */
+	public static class FacetCollector extends Collector {
+		
+		// The facets being counted.
+		public final FacetCounter[] counters;
+		
+		// The number of documents which passed every facet's clause.
+		public int total = 0;
+		
+		/**
+		 * Construct a new facet collector.
+		 * 
+		 * @param counters
+		 *            The facets to count.
+		 */
+		public FacetCollector(List<FacetCounter> counters) {
+			this.counters = counters.toArray(new FacetCounter[counters.size()]);
+		}
+		
+		@Override
+		public void setScorer(Scorer scorer) {
+			// We don't care about scores.
+		}
+		
+		@Override
+		public void setNextReader(IndexReader reader, int docBase) throws IOException {
+			for (FacetCounter counter : counters)
+				counter.setNextReader(reader);
+		}
+		
+		@Override
+		public void collect(int doc) {
+			
+			// Find the one facet this document fails, if any.
+			FacetCounter failed = null;
+			for (FacetCounter counter : counters) {
+				if (!counter.matches(doc)) {
+					if (failed != null)
+						return; // Fails more than one, so it doesn't count.
+					failed = counter;
+				}
+			}
+			
+			if (failed != null) {
+				failed.count(doc);
+			} else {
+				total++;
+				for (FacetCounter counter : counters)
+					counter.count(doc);
+			}
+		}
+		
+		@Override
+		public boolean acceptsDocsOutOfOrder() {
+			return true;
+		}
+		
+		/**
+		 * Finish counting the last segment.
+		 */
+		public void finish() {
+			for (FacetCounter counter : counters)
+				counter.finish();
+		}
+	}
+	
+	/**
+	 * Search results object.
+	 * 
+	 * This method encapsulates the result of a search query for a particular
+	 * type of object. It records what the parameters where that generated the
+	 * query, and access to the results. In addition there are some helpful
+	 * pagination options to aid the front-end in generating pagination results.
+	 * 
+	 * @param <T>
+	 *            Either Submission or ActionLog
+	 */
+	public static class LuceneSearchResults<T extends AbstractModel> implements SearchResult<T> {
+
+		// The search parameters
+		public final SearchFilter filter;
+		public final SearchDirection direction;
+		public final SearchOrder orderBy;
+		public final int offset;
+		public final int limit;
+		public final List<T> results;
+		public final List<SearchRow> rows;
+		public final int total;
+		public final String next;
+		public final String previous;
+		
+		/**
+		 * Construct a new search results object.
+		 * 
+		 * @param filter
+		 *            The filter which produced these results.
+		 * @param direction
+		 *            The direction of the results.
+		 * @param orderBy
+		 *            How the results are ordered.
+		 * @param offset
+		 *            The pagination offset of the results.
+		 * @param limit
+		 *            The number of items per page.
+		 * @param results
+		 *            The actual results.
+		 * @param rows
+		 *            The rows stored in the index for the results, or null.
+		 * @param total
+		 *            How many objects matched this query regardless of
+		 *            pagination limits.
+		 * @param next
+		 *            The cursor to the next page, or null.
+		 * @param previous
+		 *            The cursor to the previous page, or null.
+		 */
+		public LuceneSearchResults(SearchFilter filter, SearchDirection direction, SearchOrder orderBy, int offset, int limit, List<T> results, List<SearchRow> rows, int total, String next, String previous) {
+			this.filter = filter;
+			this.direction = direction;
+			this.orderBy = orderBy;
+			this.offset = offset;
 			this.limit = limit;
 			this.results = results;
+			this.rows = rows;
 			this.total = total;
+			this.next = next;
+			this.previous = previous;
 		}
 		
 		
@@ -597,12 +1852,37 @@ public class LuceneSearcherImpl implements Searcher {
 		public List<T> getResults() {
 			return results;
 		}
+		
+		@Override
+		public List<SearchRow> getRows(List<SearchOrder> columns) {
+			if (rows == null)
+				return null;
+			
+			// Rows indexed before a column was configured will not have it.
+			for (SearchRow row : rows) {
+				for (SearchOrder column : columns) {
+					if (!row.has(column))
+						return null;
+				}
+			}
+			return rows;
+		}
 
 		@Override
 		public int getTotal() {
 			return total;
 		}
 		
+		@Override
+		public String getNextCursor() {
+			return next;
+		}
+		
+		@Override
+		public String getPreviousCursor() {
+			return previous;
+		}
+		
 		@Override
 		public List<Pagination> getPagination(int windowSize) {
 			
@@ -637,37 +1917,6 @@ public class LuceneSearcherImpl implements Searcher {
 	
 	
 	
-	/**
-	 * Sort vireo model objects based upon a provided list of ids.
-	 * 
-	 */
-	public static class ModelComparator implements Comparator<AbstractModel> {
-		
-		// The predefined list of sorted ids.
-		public final List<Long> sortedIds;
-		
-		/**
-		 * Construct a new comparator.
-		 * @param sortedIds A predefined list of sorted ids.
-		 */
-		public ModelComparator(List<Long> sortedIds) {
-			this.sortedIds = sortedIds;
-		}
-
-		@Override
-		public int compare(AbstractModel a, AbstractModel b) {
-			
-			Long aId = a.getId();
-			Long bId = b.getId();
-			
-			if (aId == bId)
-				return 0;
-			if (sortedIds.indexOf(aId) < sortedIds.indexOf(bId))
-				return -1;
-			return 1;
-		}
-		
-	}
 	
 	
 	
@@ -1,20 +1,26 @@
 package org.tdl.vireo.search.impl;
 
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 import net.sf.oval.internal.util.LinkedSet;
 
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexWriter;
-import org.apache.lucene.index.IndexWriterConfig;
-import org.apache.lucene.index.Term;
-import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.TopDocs;
 import org.apache.lucene.store.LockObtainFailedException;
-import org.apache.lucene.util.NumericUtils;
 import org.tdl.vireo.model.Submission;
+import org.tdl.vireo.search.IdSet;
 
 import play.db.jpa.JPA;
 import play.db.jpa.JPAPlugin;
@@ -27,15 +33,29 @@ import play.db.jpa.JPAPlugin;
  * instead only re-indexes a subset of those submissions. Also like the rebuild
  * job searches may continue against the index while this job is processing.
  * 
+ * Each submission's own document is always replaced, but its action logs are
+ * only rewritten when the submission fields copied onto them have changed.
+ * Otherwise just the action logs which were created or modified are written,
+ * keyed by their log id.
+ * 
+ * The submissions are loaded a chunk at a time, and any which no longer exist
+ * are removed from the index together with a single delete for the chunk.
+ * 
  * 
  * @author <a href="http://www.scottphillips.com">Scott Phillips</a>
  * 
  */
 public class LuceneUpdateJob extends LuceneAbstractJobImpl {
 
+	// How many submissions are loaded from the database at a time.
+	public static final int CHUNK_SIZE = 50;
+
 	// The list of submission ids to update in the index.
 	private Set<Long> subIds;
 	
+	// The ids of the action logs which have changed, grouped by submission id.
+	private Map<Long, Set<Long>> logIds;
+	
 	// Don't allow the job to be modified once it has started indexing.
 	private boolean indexing = false;
 
@@ -45,9 +65,21 @@ public class LuceneUpdateJob extends LuceneAbstractJobImpl {
 	 * @param submissionIds The list of submissions to index.
 	 */
 	public LuceneUpdateJob(LuceneIndexerImpl indexer, Set<Long> submissionIds) {
+		this(indexer, submissionIds, null);
+	}
+	
+	/**
+	 * Construct a new update index job.
+	 * 
+	 * @param submissionIds The list of submissions to index.
+	 * @param actionLogIds The action logs which have changed, grouped by submission id. May be null.
+	 */
+	public LuceneUpdateJob(LuceneIndexerImpl indexer, Set<Long> submissionIds, Map<Long, Set<Long>> actionLogIds) {
 		super(indexer);
 		this.subIds = Collections.synchronizedSet(new LinkedSet<Long>());
 		this.subIds.addAll(submissionIds);
+		this.logIds = new ConcurrentHashMap<Long, Set<Long>>();
+		addLogIds(actionLogIds);
 		progress = 0; 
 		total = submissionIds.size();
 	}
@@ -69,6 +101,7 @@ public class LuceneUpdateJob extends LuceneAbstractJobImpl {
 			} else if (job instanceof LuceneUpdateJob) {
 				LuceneUpdateJob updateJob = (LuceneUpdateJob) job;
 				this.subIds.addAll(updateJob.subIds);
+				addLogIds(updateJob.logIds);
 				progress = 0;
 				total = subIds.size();
 				return this;
@@ -90,40 +123,96 @@ public class LuceneUpdateJob extends LuceneAbstractJobImpl {
 		progress = 0;
 		total = subIds.size();
 
-		IndexWriterConfig writerConfig = new IndexWriterConfig(indexer.version,indexer.standardAnalyzer);
-		IndexWriter writer = new IndexWriter(indexer.index, writerConfig);
+		IndexWriter writer = indexer.getWriter();
+		IndexSearcher searcher = indexer.acquireSearcher();
 		try {
-			for (Long id : subIds) {
-
-				// First, delete everything from with this submission id
-				// (submission and actionlogs!)
-				writer.deleteDocuments(new TermQuery(new Term("subId",
-						NumericUtils.longToPrefixCoded(id))));
+			List<Long> ids = new ArrayList<Long>(subIds);
+			for (int start = 0; start < ids.size(); start += CHUNK_SIZE) {
+				List<Long> chunk = ids.subList(start, Math.min(start + CHUNK_SIZE, ids.size()));
 
 				if (JPA.isInsideTransaction())
 					JPAPlugin.closeTx(false);
 				JPAPlugin.startTx(true);
 				
-				Submission sub = indexer.subRepo.findSubmission(id);
-				if (sub != null)
-					indexSubmission(writer, sub);
+				// Load the whole chunk at once.
+				Map<Long, Submission> found = new HashMap<Long, Submission>();
+				for (Submission sub : indexer.subRepo.findSubmissions(chunk))
+					found.put(sub.getId(), sub);
+				
+				List<Long> deleted = new ArrayList<Long>();
+				for (Long id : chunk) {
+					Submission sub = found.get(id);
+					if (sub != null) {
+						// Replace the submission, and only those action logs
+						// which are out of date.
+						updateSubmission(writer, sub, getLogSignature(searcher, id), logIds.get(id));
+					} else {
+						deleted.add(id);
+					}
+				}
+				
+				// Delete everything with any of the missing submission ids
+				// (submissions and actionlogs!) in one go.
+				if (deleted.size() > 0)
+					writer.deleteDocuments(new ConstantScoreQuery(new IdSetFilter("subId", IdSet.of(deleted))));
 
 				JPAPlugin.closeTx(false);
 				JPAPlugin.startTx(false);
 
-				progress++;
-				
-				// Have we been asked to stop?
-				if (cancel) {
-					writer.rollback();
-					writer = null;
-					throw new InterruptedException("Lucene '"+this.getLabel()+"' job recieved a cancel request after processing "+progress+" number of submissions, rolling back changes.");
-				}
+				progress += chunk.size();
 			}
 		} finally {
-			writer.close();
+			indexer.releaseSearcher(searcher);
 			subIds.clear();
+			logIds.clear();
 			indexing = false;
 		}
 	}
+	
+	/**
+	 * @return A copy of the submission ids to be updated by this job.
+	 */
+	public Set<Long> getSubmissionIds() {
+		synchronized (subIds) {
+			return new HashSet<Long>(subIds);
+		}
+	}
+	
+	/**
+	 * Merge a set of changed action logs into this job.
+	 * 
+	 * @param actionLogIds
+	 *            The action logs, grouped by submission id. May be null.
+	 */
+	protected void addLogIds(Map<Long, Set<Long>> actionLogIds) {
+		if (actionLogIds == null)
+			return;
+		
+		for (Map.Entry<Long, Set<Long>> entry : actionLogIds.entrySet()) {
+			Set<Long> existing = logIds.get(entry.getKey());
+			if (existing == null) {
+				existing = Collections.synchronizedSet(new HashSet<Long>());
+				logIds.put(entry.getKey(), existing);
+			}
+			existing.addAll(entry.getValue());
+		}
+	}
+	
+	/**
+	 * Look up the log signature stored with a submission currently in the
+	 * index.
+	 * 
+	 * @param searcher
+	 *            A searcher of the current index.
+	 * @param subId
+	 *            The submission id.
+	 * @return The signature, or null if the submission is not in the index.
+	 */
+	protected static String getLogSignature(IndexSearcher searcher, long subId) throws IOException {
+		TopDocs topDocs = searcher.search(submissionQuery(subId), 1);
+		if (topDocs.scoreDocs.length == 0)
+			return null;
+		
+		return searcher.doc(topDocs.scoreDocs[0].doc).get("logSignature");
+	}
 }
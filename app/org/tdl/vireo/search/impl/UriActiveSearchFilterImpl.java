@@ -8,6 +8,7 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+import org.tdl.vireo.model.AbstractModel;
 import org.tdl.vireo.model.ActionLog;
 import org.tdl.vireo.model.EmbargoType;
 import org.tdl.vireo.model.Person;
@@ -16,6 +17,7 @@ import org.tdl.vireo.model.SettingsRepository;
 import org.tdl.vireo.model.Submission;
 import org.tdl.vireo.model.SubmissionRepository;
 import org.tdl.vireo.search.ActiveSearchFilter;
+import org.tdl.vireo.search.IdSet;
 import org.tdl.vireo.search.SearchFilter;
 import org.tdl.vireo.search.Semester;
 
@@ -93,6 +95,11 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 		return includedSubmissions;
 	}
 
+	@Override
+	public IdSet getIncludedSubmissionIds() {
+		return ids(includedSubmissions);
+	}
+
 	@Override
 	public void addIncludedSubmission(Submission sub) {
 		includedSubmissions.add(sub);
@@ -108,6 +115,11 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 		return excludedSubmissions;
 	}
 
+	@Override
+	public IdSet getExcludedSubmissionIds() {
+		return ids(excludedSubmissions);
+	}
+
 	@Override
 	public void addExcludedSubmission(Submission sub) {
 		excludedSubmissions.add(sub);
@@ -123,6 +135,11 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 		return includedActionLogs;
 	}
 
+	@Override
+	public IdSet getIncludedActionLogIds() {
+		return ids(includedActionLogs);
+	}
+
 	@Override
 	public void addIncludedActionLog(ActionLog log) {
 		includedActionLogs.add(log);
@@ -138,6 +155,11 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 		return excludedActionLogs;
 	}
 
+	@Override
+	public IdSet getExcludedActionLogIds() {
+		return ids(excludedActionLogs);
+	}
+
 	@Override
 	public void addExcludedActionLog(ActionLog log) {
 		excludedActionLogs.add(log);
@@ -364,6 +386,33 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 	 */
 	@Override
 	public String encode() {
+		return encode(new List<?>[] {
+				includedSubmissions, excludedSubmissions,
+				includedActionLogs, excludedActionLogs,
+				searchText, states, assignees, embargos, semesters,
+				degrees, departments, colleges, programs, majors, documentTypes },
+				umiRelease, rangeStart, rangeEnd);
+	}
+	
+	/**
+	 * Encode the criteria of any search filter. This is shared with the named
+	 * search filters, which store their criteria in the same form.
+	 * 
+	 * @param lists
+	 *            The fifteen lists of the filter, in order: included
+	 *            submissions, excluded submissions, included action logs,
+	 *            excluded action logs, search text, states, assignees,
+	 *            embargos, semesters, degrees, departments, colleges, programs,
+	 *            majors, and document types. Models may be given by their ids.
+	 * @param umiRelease
+	 *            The UMI release flag, may be null.
+	 * @param rangeStart
+	 *            The start of the date range, may be null.
+	 * @param rangeEnd
+	 *            The end of the date range, may be null.
+	 * @return The encoded criteria.
+	 */
+	public static String encode(List<?>[] lists, Boolean umiRelease, Date rangeStart, Date rangeEnd) {
 		
 		// Format: :one,two:other,bob:
 		
@@ -371,21 +420,8 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 		result.append(":");
 		
 		// Handle all the lists.
-		encodeList(result,includedSubmissions);
-		encodeList(result,excludedSubmissions);
-		encodeList(result,includedActionLogs);
-		encodeList(result,excludedActionLogs);
-		encodeList(result,searchText);
-		encodeList(result,states);
-		encodeList(result,assignees);
-		encodeList(result,embargos);
-		encodeList(result,semesters);
-		encodeList(result,degrees);
-		encodeList(result,departments);
-		encodeList(result,colleges);
-		encodeList(result,programs);
-		encodeList(result,majors);
-		encodeList(result,documentTypes);
+		for (List<?> list : lists)
+			encodeList(result,list);
 		
 		// Handle the single values.
 		if (umiRelease != null) {
@@ -409,20 +445,18 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 	@Override
 	public void decode(String encoded) {
 		try {
-			String[] split = encoded.split(":",-1);
-			if (split.length != 20)
-				throw new IllegalArgumentException("Unable to decode active search filter because it does not have the 19 expected number of components instead it has "+split.length);
+			String[] split = split(encoded);
 
 			// Decode all the lists
 			int i = 1;
-			includedSubmissions = decodeList(split[i++],Submission.class);
-			excludedSubmissions = decodeList(split[i++],Submission.class);
-			includedActionLogs = decodeList(split[i++],ActionLog.class);
-			excludedActionLogs = decodeList(split[i++],ActionLog.class);
+			includedSubmissions = lazySubmissions(decodeIds(split[i++],Submission.class));
+			excludedSubmissions = lazySubmissions(decodeIds(split[i++],Submission.class));
+			includedActionLogs = lazyActionLogs(decodeIds(split[i++],ActionLog.class));
+			excludedActionLogs = lazyActionLogs(decodeIds(split[i++],ActionLog.class));
 			searchText = decodeList(split[i++],String.class);
 			states = decodeList(split[i++],String.class);
-			assignees = decodeList(split[i++],Person.class);
-			embargos = decodeList(split[i++],EmbargoType.class);
+			assignees = lazyPersons(decodeIds(split[i++],Person.class));
+			embargos = lazyEmbargoTypes(decodeIds(split[i++],EmbargoType.class));
 			semesters = decodeList(split[i++],Semester.class);
 			degrees = decodeList(split[i++],String.class);
 			departments = decodeList(split[i++],String.class);
@@ -432,35 +466,9 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 			documentTypes = decodeList(split[i++],String.class);
 
 			// Handle the single values
-			if ("true".equalsIgnoreCase(split[i])) {
-				umiRelease = true;
-			} else if ("false".equalsIgnoreCase(split[i])) {
-				umiRelease = false;
-			} else {
-				umiRelease = null;
-			}
-			i++;
-
-			if (split[i].length() != 0) {
-				try {
-					rangeStart = new Date(Long.valueOf(split[i]));
-				} catch (RuntimeException re) {
-					Logger.warn("Unable to decode value '"+split[i]+"' for rangeStart.");
-				}
-			} else {
-				rangeStart = null;
-			}
-			i++;
-			
-			if (split[i].length() != 0) {
-				try {
-					rangeEnd = new Date(Long.valueOf(split[i]));
-				} catch (RuntimeException re) {
-					Logger.warn("Unable to decode value '"+split[i]+"' for rangeEnd.");
-				}
-			} else {
-				rangeEnd = null;
-			}
+			umiRelease = decodeBoolean(split[i++]);
+			rangeStart = decodeDate(split[i++], "rangeStart");
+			rangeEnd = decodeDate(split[i++], "rangeEnd");
 			
 		} catch (RuntimeException re) {
 			// If anything other than the specific cases we have already caught
@@ -469,6 +477,57 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 		}
 	}
 	
+	/**
+	 * Split encoded criteria into their components. The first component is
+	 * always empty, followed by the fifteen lists in the order given to
+	 * encode(), then the UMI release flag, and the start and end of the date
+	 * range.
+	 * 
+	 * @param encoded
+	 *            The encoded criteria.
+	 * @return The components.
+	 */
+	public static String[] split(String encoded) {
+		String[] split = encoded.split(":",-1);
+		if (split.length != 20)
+			throw new IllegalArgumentException("Unable to decode active search filter because it does not have the 19 expected number of components instead it has "+split.length);
+		return split;
+	}
+	
+	/**
+	 * @param encoded
+	 *            The encoded UMI release flag.
+	 * @return The flag, or null if it is not set.
+	 */
+	public static Boolean decodeBoolean(String encoded) {
+		if ("true".equalsIgnoreCase(encoded)) {
+			return true;
+		} else if ("false".equalsIgnoreCase(encoded)) {
+			return false;
+		} else {
+			return null;
+		}
+	}
+	
+	/**
+	 * @param encoded
+	 *            The encoded date.
+	 * @param name
+	 *            The name of the value, for logging.
+	 * @return The date, or null if it is not set.
+	 */
+	public static Date decodeDate(String encoded, String name) {
+		if (encoded.length() == 0)
+			return null;
+		
+		try {
+			return new Date(Long.valueOf(encoded));
+		} catch (RuntimeException re) {
+			Logger.warn("Unable to decode value '"+encoded+"' for "+name+".");
+			return null;
+		}
+	}
+	
 	@Override
 	public void copyTo(SearchFilter other) {
 		
@@ -565,7 +624,7 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 	 *            The type of object expected.
 	 * @return A list of encoded objects
 	 */
-	protected <T> List<T> decodeList(String encoded, Class<T> type) {
+	public static <T> List<T> decodeList(String encoded, Class<T> type) {
 	
 		String[] split = encoded.split(",");
 		
@@ -584,37 +643,6 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 					Integer value = Integer.valueOf(raw);
 					result.add((T) value);
 					
-				} else if (type == Person.class){
-					// List type is person, just for assignee
-					
-					if ("null".equals(raw)) {
-						result.add(null); // unassigned
-					} else {
-						Long personId = Long.valueOf(raw);
-						Person person = personRepo.findPerson(personId);
-						result.add((T) person);
-					}
-				} else if (type == Submission.class) {
-					// List type is submission
-					
-					Long subId = Long.valueOf(raw);
-					Submission sub = subRepo.findSubmission(subId);
-					result.add((T) sub);
-					
-				} else if (type == ActionLog.class) {
-					// List type is ActionLog
-					
-					Long logId = Long.valueOf(raw);
-					ActionLog log = subRepo.findActionLog(logId);
-					result.add((T) log);
-					
-				} else if (type == EmbargoType.class) {
-					// List type is embargo types
-					
-					Long embargoId = Long.valueOf(raw);
-					EmbargoType embargo = settingRepo.findEmbargoType(embargoId);
-					result.add((T) embargo);
-					
 				} else if (type == Semester.class) {
 					// List type is graduation semestens: year/month
 					String[] semesterSplit = raw.split("/");
@@ -640,23 +668,129 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 		return result;
 	}
 	
+	/**
+	 * Internal method to decode a list of object ids from its serialized form,
+	 * without loading the objects. Only people may be encoded as "null",
+	 * meaning unassigned.
+	 * 
+	 * @param encoded
+	 *            The encoded string.
+	 * @param type
+	 *            The type of object the ids belong too.
+	 * @return A list of ids.
+	 */
+	public static List<Long> decodeIds(String encoded, Class<?> type) {
+		
+		List<Long> result = new ArrayList<Long>();
+		for (String raw : encoded.split(",")) {
+			if (raw.length() == 0)
+				continue;
+			
+			if (type == Person.class && "null".equals(raw)) {
+				result.add(null); // unassigned
+				continue;
+			}
+			
+			try {
+				result.add(Long.valueOf(raw));
+			} catch (RuntimeException re) {
+				Logger.warn(re,"Unable to decode value '"+raw+"' for type "+type.getName());
+			}
+		}
+		
+		return result;
+	}
+	
+	/**
+	 * @param ids
+	 *            The submission ids.
+	 * @return A list which loads the submissions when first used.
+	 */
+	protected List<Submission> lazySubmissions(List<Long> ids) {
+		return new LazyModelList<Submission>(ids) {
+			@Override
+			protected List<Submission> load(List<Long> ids) {
+				return subRepo.findSubmissions(ids);
+			}
+		};
+	}
+	
+	/**
+	 * @param ids
+	 *            The action log ids.
+	 * @return A list which loads the action logs when first used.
+	 */
+	protected List<ActionLog> lazyActionLogs(List<Long> ids) {
+		return new LazyModelList<ActionLog>(ids) {
+			@Override
+			protected List<ActionLog> load(List<Long> ids) {
+				return subRepo.findActionLogs(ids);
+			}
+		};
+	}
+	
+	/**
+	 * @param ids
+	 *            The person ids, null for unassigned.
+	 * @return A list which loads the people when first used.
+	 */
+	protected List<Person> lazyPersons(List<Long> ids) {
+		return new LazyModelList<Person>(ids) {
+			@Override
+			protected List<Person> load(List<Long> ids) {
+				return personRepo.findPersons(ids);
+			}
+		};
+	}
+	
+	/**
+	 * @param ids
+	 *            The embargo type ids.
+	 * @return A list which loads the embargo types when first used.
+	 */
+	protected List<EmbargoType> lazyEmbargoTypes(List<Long> ids) {
+		return new LazyModelList<EmbargoType>(ids) {
+			@Override
+			protected List<EmbargoType> load(List<Long> ids) {
+				// There are only ever a handful, so load them all at once.
+				return settingRepo.findAllEmbargoTypes();
+			}
+		};
+	}
+	
+	/**
+	 * @param models
+	 *            A list of models, which may not have been loaded yet.
+	 * @return The ids of the models.
+	 */
+	protected static IdSet ids(List<? extends AbstractModel> models) {
+		if (models instanceof LazyModelList)
+			return ((LazyModelList<?>) models).getIdSet();
+		return IdSet.ofModels(models);
+	}
+	
 	/**
 	 * Encode the list of provided objects. The result stringbuilder will be
 	 * modified to include a comma separated list of values, and for convenience
 	 * will end with a trailing ":". If the value type is string then it will be
 	 * URI encoded prior to putting in the list.
 	 * 
-	 * Only three datatypes are supported by this method: String, Integer,
-	 * Person, EmbargoType, and GraduationSemester. everything else will result
-	 * in an error.
+	 * Only these datatypes are supported by this method: String, Integer,
+	 * Person, Submission, ActionLog, EmbargoType, GraduationSemester, and the
+	 * Long ids of models which have not been loaded. Everything else will
+	 * result in an error.
 	 * 
 	 * @param result
 	 *            Where the encoded list will be appended.
 	 * @param values
 	 *            The values to encode.
 	 */
-	protected void encodeList(StringBuilder result, List<?> values) {
+	public static void encodeList(StringBuilder result, List<?> values) {
 
+		// Don't load the models just to encode their ids.
+		if (values instanceof LazyModelList && !((LazyModelList<?>) values).isLoaded())
+			values = ((LazyModelList<?>) values).getIds();
+		
 		boolean first = true;
 		for (Object value: values) {
 			if (first)
@@ -674,6 +808,10 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 				// Integers from grad month & year
 				result.append(String.valueOf((Integer) value));
 				
+			} else if (value instanceof Long){
+				// Ids of models which have not been loaded
+				result.append(String.valueOf((Long) value));
+				
 			} else if (value instanceof Person) {
 				// Full person object from assignee
 				Long personId = ((Person) value).getId();
@@ -728,7 +866,7 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 	 *            The raw value to be escaped.
 	 * @return The resulting escaped value.
 	 */
-	protected String escape(String raw) {
+	public static String escape(String raw) {
 		String escapped = URLEncoder.encode(raw);
 		escapped = escapped.replaceAll(",", "%2C");
 		escapped = escapped.replaceAll(":", "%3A");
@@ -743,7 +881,7 @@ public class UriActiveSearchFilterImpl implements ActiveSearchFilter {
 	 *            The escaped value.
 	 * @return The original raw string.
 	 */
-	protected String unescape(String escapped) {
+	public static String unescape(String escapped) {
 		return URLDecoder.decode(escapped);
 	}
 	
@@ -210,90 +210,13 @@ create table program (
 create table search_filter (
     id int8 not null,
     name varchar(255) not null,
+    criteria varchar(1048576),
     publicFlag bool not null,
-    rangeEnd date,
-    rangeStart date,
-    umiRelease bool,
     creator_id int8 not null,
     primary key (id),
     unique (creator_id, name)
 );
 
-create table search_filter_assignees (
-    search_filter_id int8 not null,
-    assigneeIds int8
-);
-
-create table search_filter_colleges (
-    search_filter_id int8 not null,
-    colleges varchar(255)
-);
-
-create table search_filter_degrees (
-    search_filter_id int8 not null,
-    degrees varchar(255)
-);
-
-create table search_filter_departments (
-    search_filter_id int8 not null,
-    departments varchar(255)
-);
-
-create table search_filter_documenttypes (
-    search_filter_id int8 not null,
-    documentTypes varchar(255)
-);
-
-create table search_filter_embargos (
-    search_filter_id int8 not null,
-    embargoIds int8
-);
-
-create table search_filter_excluded_actionlogs (
-    search_filter_id int8 not null,
-    excludedActionLogIds int8
-);
-
-create table search_filter_excluded_submissions (
-    search_filter_id int8 not null,
-    excludedSubmissionIds int8
-);
-
-create table search_filter_included_actionlogs (
-    search_filter_id int8 not null,
-    includedActionLogIds int8
-);
-
-create table search_filter_included_submissions (
-    search_filter_id int8 not null,
-    includedSubmissionIds int8
-);
-
-create table search_filter_majors (
-    search_filter_id int8 not null,
-    majors varchar(255)
-);
-
-create table search_filter_programs (
-    search_filter_id int8 not null,
-    programs varchar(255)
-);
-
-create table search_filter_semesters (
-    search_filter_id int8 not null,
-    semesters varchar(255)
-);
-
-create table search_filter_states (
-    search_filter_id int8 not null,
-    states varchar(255)
-);
-
-create table search_filter_text (
-    search_filter_id int8 not null,
-    searchText varchar(255)
-);
-
 create table submission (
     id int8 not null,
     UMIRelease bool,
@@ -401,81 +324,6 @@ alter table search_filter
     foreign key (creator_id) 
     references person;
 
-alter table search_filter_assignees 
-    add constraint FK110B7E348E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
-alter table search_filter_colleges 
-    add constraint FK32FE0A0C8E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
-alter table search_filter_degrees 
-    add constraint FK884FE8D78E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
-alter table search_filter_departments 
-    add constraint FKB38A4D118E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
-alter table search_filter_documenttypes 
-    add constraint FK208979EE8E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
-alter table search_filter_embargos 
-    add constraint FK874E5E908E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
-alter table search_filter_excluded_actionlogs 
-    add constraint FKD187842A8E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
-alter table search_filter_excluded_submissions 
-    add constraint FK2DF4C028E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
-alter table search_filter_included_actionlogs 
-    add constraint FK5A7E35F88E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
-alter table search_filter_included_submissions 
-    add constraint FK98BED3F48E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
-alter table search_filter_majors 
-    add constraint FKFAC40E2A8E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
-alter table search_filter_programs 
-    add constraint FK1CFDEABF8E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
-alter table search_filter_semesters 
-    add constraint FK8BFDE7EB8E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
-alter table search_filter_states 
-    add constraint FK608DA528E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
-alter table search_filter_text 
-    add constraint FK8068257D8E0B1A22 
-    foreign key (search_filter_id) 
-    references search_filter;
-
 alter table submission 
     add constraint FK84363B4C62B46408 
     foreign key (submitter_id) 
@@ -0,0 +1,7 @@
+--
+-- PostgreSQL upgrade for saved search filters.
+-- Saved search filters now keep all of their criteria in a single encoded
+-- column. Add the column before upgrading, the criteria of existing filters
+-- are moved into it from the old search_filter_* tables when vireo starts.
+
+ALTER TABLE search_filter ADD COLUMN criteria varchar(1048576);
@@ -127,6 +127,12 @@ public class FirstUserTest extends AbstractVireoFunctionalTest {
 			return null;
 		}
 
+		@Override
+		public List<Person> findPersons(List<Long> ids) {
+			// TODO Auto-generated method stub
+			return null;
+		}
+
 		@Override
 		public Person findPersonByEmail(String email) {
 			// TODO Auto-generated method stub
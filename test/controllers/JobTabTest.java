@@ -94,6 +94,12 @@ public class JobTabTest extends AbstractVireoFunctionalTest {
 		assertContentMatch("50.000%",response);
 		assertContentMatch("This is a test Job status message",response);
 		assertContentMatch("RUNNING",response);
+		assertContentMatch("\"version\" : \""+job.getVersion()+"\"",response);
+		
+		// A client which is behind is answered straight away.
+		response = GET(STATUS_URL+"?version="+(job.getVersion() - 1));
+		assertContentMatch("RUNNING",response);
+		assertContentMatch("\"version\" : \""+job.getVersion()+"\"",response);
 		
 		jobManager.deregister(job);
 	}
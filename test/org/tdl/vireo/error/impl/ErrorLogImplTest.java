@@ -2,6 +2,7 @@ package org.tdl.vireo.error.impl;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.tdl.vireo.error.ErrorLog;
@@ -12,6 +13,7 @@ import org.tdl.vireo.job.JobStatus;
 import org.tdl.vireo.job.JobMetadata.Progress;
 
 import play.jobs.Job;
+import play.libs.F.Promise;
 import play.modules.spring.Spring;
 import play.mvc.Http.Request;
 import play.test.UnitTest;
@@ -108,6 +110,21 @@ public class ErrorLogImplTest extends UnitTest {
 		public void setStatus(JobStatus status) {
 		}
 
+		@Override
+		public Future<JobStatus> getCompletion() {
+			return null;
+		}
+
+		@Override
+		public long getVersion() {
+			return 0;
+		}
+
+		@Override
+		public Promise<Long> getChange(long version) {
+			return null;
+		}
+
 		@Override
 		public Progress getProgress() {
 			return null;
@@ -1,6 +1,7 @@
 package org.tdl.vireo.export;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 import org.tdl.vireo.model.Submission;
@@ -16,7 +17,7 @@ public class MockPackager implements Packager {
 	public String displayName = "Mock Packager";
 
 	// List of all the generated packages;
-	public List<MockExportPackage> generated = new ArrayList<MockExportPackage>();
+	public List<MockExportPackage> generated = Collections.synchronizedList(new ArrayList<MockExportPackage>());
 
 	@Override
 	public String getBeanName() {
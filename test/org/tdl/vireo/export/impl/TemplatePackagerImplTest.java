@@ -146,8 +146,12 @@ public class TemplatePackagerImplTest extends UnitTest {
 		
 		for (TemplatePackagerImpl packager : packagers.values()) {
 			
+			String manifestNameTemplate = packager.manifestName;
 			ExportPackage pkg = packager.generatePackage(sub);
 			
+			// The packager is shared, so the template is never replaced.
+			assertEquals(manifestNameTemplate, packager.manifestName);
+			
 			//Since the manifest name can be customized, create a temporary manifest name to compare with.
 			Map<String, String> parameters = StringVariableReplacement.setParameters(sub);
 			String manifestName = StringVariableReplacement.applyParameterSubstitution(packager.manifestName, parameters);
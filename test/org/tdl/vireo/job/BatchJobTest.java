@@ -0,0 +1,152 @@
+package org.tdl.vireo.job;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tdl.vireo.model.MockSubmission;
+import org.tdl.vireo.model.Submission;
+import org.tdl.vireo.search.MockSearcher;
+
+import play.modules.spring.Spring;
+import play.test.UnitTest;
+
+/**
+ * Test the chunked batch job. We mock the submissions so no database
+ * interaction is used for this.
+ */
+public class BatchJobTest extends UnitTest {
+
+	// The job manager
+	public static JobManager jobManager = Spring.getBeanOfType(JobManager.class);
+
+	// Mock submissions
+	public MockSearcher searcher;
+	public long[] subIds;
+
+	/**
+	 * Create ten mock submissions to work through.
+	 */
+	@Before
+	public void setup() {
+		searcher = new MockSearcher();
+		for (int i = 0; i < 10; i++)
+			searcher.submissions.add(new MockSubmission());
+
+		subIds = searcher.submissionSearch(null, null, null);
+	}
+
+	/**
+	 * Clean up any jobs registered.
+	 */
+	@After
+	public void cleanup() {
+		for (JobMetadata job : jobManager.findAllJobs())
+			if ("Batch Test".equals(job.getName()))
+				jobManager.deregister(job);
+	}
+
+	/**
+	 * Test that every submission is processed, in order, a chunk at a time.
+	 */
+	@Test
+	public void testProcessInChunks() {
+
+		RecordingBatchJob job = new RecordingBatchJob(3);
+		job.metadata.getProgress().total = subIds.length;
+
+		assertTrue(job.processInChunks(searcher.subRepo, subIds));
+
+		assertEquals(10, job.processed.size());
+		for (int i = 0; i < subIds.length; i++)
+			assertEquals((Long) subIds[i], job.processed.get(i));
+		assertEquals(10, job.metadata.getProgress().completed);
+	}
+
+	/**
+	 * Test that cancelling a job stops it after the current chunk.
+	 */
+	@Test
+	public void testCancel() {
+
+		RecordingBatchJob job = new RecordingBatchJob(3);
+		job.cancelAfter = 4;
+
+		assertFalse(job.processInChunks(searcher.subRepo, subIds));
+
+		// The second chunk is finished, but nothing after it.
+		assertEquals(6, job.processed.size());
+		assertEquals(6, job.metadata.getProgress().completed);
+		assertTrue(job.isCancelled());
+	}
+
+	/**
+	 * Test that a paused job waits until it is resumed.
+	 */
+	@Test
+	public void testPauseAndResume() throws InterruptedException {
+
+		final RecordingBatchJob job = new RecordingBatchJob(3);
+		job.pauseAfter = 1;
+
+		// Resume the job from another thread once it has paused.
+		Thread resumer = new Thread() {
+			public void run() {
+				while (job.metadata.getStatus() != JobStatus.PAUSED)
+					Thread.yield();
+
+				assertEquals(3, job.processed.size());
+				job.resume();
+			}
+		};
+		resumer.start();
+
+		job.metadata.setStatus(JobStatus.RUNNING);
+		assertTrue(job.processInChunks(searcher.subRepo, subIds));
+		resumer.join();
+
+		assertEquals(10, job.processed.size());
+		assertEquals(JobStatus.RUNNING, job.metadata.getStatus());
+		assertFalse(job.isPaused());
+	}
+
+	/**
+	 * Test that the chunk size must be positive.
+	 */
+	@Test
+	public void testBadChunkSize() {
+		try {
+			new RecordingBatchJob(0);
+			fail("Able to create a batch job without any chunk size.");
+		} catch (IllegalArgumentException iae) {
+			/* yay */
+		}
+	}
+
+	/**
+	 * A batch job which records the submissions it processes, and optionally
+	 * pauses or cancels itself part way through.
+	 */
+	public static class RecordingBatchJob extends BatchJob {
+
+		public List<Long> processed = new ArrayList<Long>();
+		public int pauseAfter = -1;
+		public int cancelAfter = -1;
+
+		public RecordingBatchJob(int chunkSize) {
+			super(jobManager.register("Batch Test"), chunkSize);
+		}
+
+		@Override
+		protected void process(Submission sub) {
+			processed.add(sub.getId());
+
+			if (processed.size() == pauseAfter)
+				pause();
+			if (processed.size() == cancelAfter)
+				cancel();
+		}
+	}
+}
@@ -2,6 +2,8 @@ package org.tdl.vireo.job.impl;
 
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -111,6 +113,115 @@ public class JobManagerImplTests extends UnitTest {
 
 	}
 
+	/**
+	 * Test that finding jobs by status follows each job as its status changes.
+	 */
+	@Test
+	public void testFindByStatus() {
+
+		JobMetadata job1 = manager.register("Status Test 1");
+		JobMetadata job2 = manager.register("Status Test 2");
+
+		try {
+			assertContains(manager.findJobsByStatus(JobStatus.WAITING), job2, job1);
+			assertFalse(manager.findJobsByStatus(JobStatus.RUNNING).contains(job1));
+
+			job1.setStatus(JobStatus.RUNNING);
+			assertContains(manager.findJobsByStatus(JobStatus.RUNNING), job1);
+			assertFalse(manager.findJobsByStatus(JobStatus.WAITING).contains(job1));
+			assertContains(manager.findJobsByStatus(JobStatus.WAITING, JobStatus.RUNNING), job2, job1);
+
+			job1.setStatus(JobStatus.SUCCESS);
+			assertContains(manager.findJobsByStatus(JobStatus.SUCCESS), job1);
+			assertFalse(manager.findJobsByStatus(JobStatus.ACTIVE).contains(job1));
+
+			// Once deregistered the job is no longer found.
+			manager.deregister(job1);
+			assertFalse(manager.findJobsByStatus(JobStatus.SUCCESS).contains(job1));
+			assertNull(manager.findJob(job1.getId()));
+		} finally {
+			manager.deregister(job1);
+			manager.deregister(job2);
+		}
+	}
+
+	/**
+	 * Test that anyone waiting on a job is told when it changes.
+	 */
+	@Test
+	public void testChange() throws Exception {
+
+		JobMetadata job = manager.register("Change Test");
+
+		try {
+			long version = job.getVersion();
+			Future<Long> change = job.getChange(version);
+			assertFalse(change.isDone());
+
+			job.getProgress().setTotal(10);
+			assertTrue(change.isDone());
+			assertEquals((Long) job.getVersion(), change.get());
+			assertTrue(job.getVersion() > version);
+
+			// Each kind of change wakes the waiter.
+			change = job.getChange(job.getVersion());
+			job.getProgress().advance(1);
+			assertTrue(change.isDone());
+			assertEquals(1, job.getProgress().getCompleted());
+
+			change = job.getChange(job.getVersion());
+			job.setMessage("Changed");
+			assertTrue(change.isDone());
+
+			change = job.getChange(job.getVersion());
+			job.setStatus(JobStatus.RUNNING);
+			assertTrue(change.isDone());
+
+			// A caller who is behind does not wait at all.
+			assertTrue(job.getChange(version).isDone());
+			assertFalse(job.getChange(job.getVersion()).isDone());
+		} finally {
+			manager.deregister(job);
+		}
+	}
+
+	/**
+	 * Test waiting for a job, both timing out while it is active and returning
+	 * once another thread completes it.
+	 */
+	@Test
+	public void testWaitForJob() throws Exception {
+
+		final JobMetadata job = manager.register("Wait Test");
+
+		try {
+			job.setStatus(JobStatus.RUNNING);
+			assertFalse(job.getCompletion().isDone());
+			assertFalse(manager.waitForJobs(job.getId(), 10, TimeUnit.MILLISECONDS));
+
+			Thread finisher = new Thread() {
+				public void run() {
+					try {
+						Thread.sleep(50);
+					} catch (InterruptedException ie) {
+						// Finish early.
+					}
+					job.setStatus(JobStatus.SUCCESS);
+				}
+			};
+			finisher.start();
+
+			assertTrue(manager.waitForJobs(job.getId(), 10, TimeUnit.SECONDS));
+			assertEquals(JobStatus.SUCCESS, job.getCompletion().get());
+			
+			// Unknown jobs have nothing to wait for.
+			assertTrue(manager.waitForJobs(UUID.randomUUID(), 0, TimeUnit.MILLISECONDS));
+		} finally {
+			manager.deregister(job);
+		}
+
+	}
+
 	/**
 	 * Test how the manager prunes old jobs.
 	 */
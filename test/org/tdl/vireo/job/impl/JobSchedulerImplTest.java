@@ -0,0 +1,319 @@
+package org.tdl.vireo.job.impl;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.tdl.vireo.job.JobFamily;
+import org.tdl.vireo.job.JobPriority;
+import org.tdl.vireo.job.JobScheduler.PoolMetrics;
+import org.tdl.vireo.job.ScheduledJob;
+
+import play.libs.F.Promise;
+import play.test.UnitTest;
+
+/**
+ * Test the job scheduler. Each test uses its own scheduler so the pools start
+ * out empty.
+ */
+public class JobSchedulerImplTest extends UnitTest {
+
+	// The scheduler to test.
+	public JobSchedulerImpl scheduler;
+
+	// The names of the jobs, in the order they ran.
+	public List<String> ran = Collections.synchronizedList(new ArrayList<String>());
+
+	@Before
+	public void setup() {
+		scheduler = new JobSchedulerImpl();
+	}
+
+	@After
+	public void cleanup() {
+		scheduler.shutdown();
+	}
+
+	/**
+	 * Test that jobs are run on their own family's pool.
+	 */
+	@Test
+	public void testFamilyPool() throws Exception {
+
+		Promise<String> promise = scheduler.schedule(new ThreadNameJob(JobFamily.EMAIL));
+		assertTrue(promise.get(10, TimeUnit.SECONDS).startsWith("jobs-email-"));
+
+		promise = scheduler.schedule(new ThreadNameJob(JobFamily.EXPORT));
+		assertTrue(promise.get(10, TimeUnit.SECONDS).startsWith("jobs-export-"));
+	}
+
+	/**
+	 * Test that interactive jobs are started ahead of bulk jobs which were
+	 * queued before them, and that the queue shows up in the metrics.
+	 */
+	@Test
+	public void testPriority() throws Exception {
+
+		// Rebuild has a single thread, so hold it while the others are queued.
+		CountDownLatch latch = new CountDownLatch(1);
+		Promise<String> blocker = scheduler.schedule(new RecordingJob("blocker", JobPriority.BULK, latch));
+		while (metrics(JobFamily.REBUILD).active == 0)
+			Thread.yield();
+
+		scheduler.schedule(new RecordingJob("bulk1", JobPriority.BULK, null));
+		scheduler.schedule(new RecordingJob("bulk2", JobPriority.BULK, null));
+		Promise<String> last = scheduler.schedule(new RecordingJob("interactive", JobPriority.INTERACTIVE, null));
+
+		PoolMetrics waiting = metrics(JobFamily.REBUILD);
+		assertEquals(1, waiting.active);
+		assertEquals(3, waiting.queued);
+
+		latch.countDown();
+		blocker.get(10, TimeUnit.SECONDS);
+
+		// Wait until each of the queued jobs has started.
+		while (ran.size() < 4)
+			Thread.sleep(10);
+
+		assertEquals("blocker", ran.get(0));
+		assertEquals("interactive", ran.get(1));
+		assertEquals("bulk1", ran.get(2));
+		assertEquals("bulk2", ran.get(3));
+		assertEquals("interactive", last.get());
+
+		PoolMetrics done = metrics(JobFamily.REBUILD);
+		assertEquals(0, done.queued);
+		assertEquals(4, done.started);
+		assertTrue(done.longestWait >= done.getAverageWait());
+	}
+
+	/**
+	 * Test that jobs created by a bulk job, like the emails sent by a batch
+	 * operation, are bulk jobs. So an interactive job from the same family
+	 * is started ahead of them.
+	 */
+	@Test
+	public void testInheritedPriority() throws Exception {
+
+		// Index has a single interactive thread, so hold it while the others are queued.
+		CountDownLatch latch = new CountDownLatch(1);
+		Promise<String> blocker = scheduler.schedule(new RecordingJob(JobFamily.INDEX, "blocker", null, latch));
+		while (metrics(JobFamily.INDEX).active == 0)
+			Thread.yield();
+
+		// A batch job queues two index jobs of its own.
+		Promise<List<JobPriority>> batch = scheduler.schedule(new ScheduledJob<List<JobPriority>>(JobFamily.BATCH) {
+			@Override
+			public List<JobPriority> doJobWithResult() {
+				List<JobPriority> priorities = new ArrayList<JobPriority>();
+				for (String name : new String[] { "bulk1", "bulk2" }) {
+					RecordingJob job = new RecordingJob(JobFamily.INDEX, name, null, null);
+					priorities.add(job.getPriority());
+					scheduler.schedule(job);
+				}
+				return priorities;
+			}
+		});
+		assertEquals(Arrays.asList(JobPriority.BULK, JobPriority.BULK), batch.get(10, TimeUnit.SECONDS));
+
+		// Someone is waiting on this one.
+		RecordingJob interactive = new RecordingJob(JobFamily.INDEX, "interactive", null, null);
+		assertNull(interactive.getPriority());
+		scheduler.schedule(interactive);
+		assertEquals(3, metrics(JobFamily.INDEX).queued);
+
+		latch.countDown();
+		blocker.get(10, TimeUnit.SECONDS);
+
+		while (ran.size() < 4)
+			Thread.sleep(10);
+
+		assertEquals(Arrays.asList("blocker", "interactive", "bulk1", "bulk2"), ran);
+	}
+
+	/**
+	 * Test that a job's workers are run on its family's pool of workers, even
+	 * while the job holds the family's only thread, and that they show up in
+	 * the workers' metrics.
+	 */
+	@Test
+	public void testWorkers() throws Exception {
+
+		Promise<List<String>> promise = scheduler.schedule(new ScheduledJob<List<String>>(JobFamily.REBUILD) {
+			@Override
+			public List<String> doJobWithResult() throws Exception {
+				ExecutorService workers = scheduler.createWorkers(JobFamily.REBUILD);
+				try {
+					List<Future<String>> futures = new ArrayList<Future<String>>();
+					for (int i = 0; i < 3; i++)
+						futures.add(workers.submit(new Callable<String>() {
+							public String call() {
+								return Thread.currentThread().getName();
+							}
+						}));
+
+					List<String> names = new ArrayList<String>();
+					for (Future<String> future : futures)
+						names.add(future.get());
+					return names;
+				} finally {
+					workers.shutdown();
+				}
+			}
+		});
+
+		List<String> names = promise.get(10, TimeUnit.SECONDS);
+		assertEquals(3, names.size());
+		for (String name : names)
+			assertTrue(name.startsWith("jobs-rebuild-worker-"));
+
+		PoolMetrics workers = workerMetrics(JobFamily.REBUILD);
+		assertEquals(3, workers.started);
+		assertEquals(JobPriority.BULK, workers.priority);
+		assertEquals(1, metrics(JobFamily.REBUILD).started);
+
+		// Emails don't have any workers.
+		assertNull(workerMetrics(JobFamily.EMAIL));
+		try {
+			scheduler.createWorkers(JobFamily.EMAIL);
+			fail("Workers were created for a family without any.");
+		} catch (IllegalArgumentException iae) {
+			/* yay */
+		}
+	}
+
+	/**
+	 * Test that shutting down a job's workers cancels those which have not
+	 * started, but lets the running ones finish.
+	 */
+	@Test
+	public void testWorkersShutdown() throws Exception {
+
+		final CountDownLatch latch = new CountDownLatch(1);
+		ExecutorService workers = scheduler.createWorkers(JobFamily.EXPORT);
+
+		// Hold every export worker, then queue one more.
+		List<Future<String>> running = new ArrayList<Future<String>>();
+		for (int i = 0; i < JobFamily.EXPORT.getDefaultWorkers(); i++)
+			running.add(workers.submit(new Callable<String>() {
+				public String call() throws InterruptedException {
+					latch.await();
+					return "finished";
+				}
+			}));
+		while (workerMetrics(JobFamily.EXPORT).active < JobFamily.EXPORT.getDefaultWorkers())
+			Thread.yield();
+		Future<String> waiting = workers.submit(new Callable<String>() {
+			public String call() {
+				return "started";
+			}
+		});
+		assertEquals(1, workerMetrics(JobFamily.EXPORT).queued);
+
+		assertEquals(1, workers.shutdownNow().size());
+		assertTrue(waiting.isCancelled());
+		assertEquals(0, workerMetrics(JobFamily.EXPORT).queued);
+		assertFalse(workers.isTerminated());
+
+		latch.countDown();
+		for (Future<String> future : running)
+			assertEquals("finished", future.get(10, TimeUnit.SECONDS));
+		assertTrue(workers.awaitTermination(10, TimeUnit.SECONDS));
+	}
+
+	/**
+	 * Test that a job's failure is passed on to anyone waiting on it.
+	 */
+	@Test
+	public void testFailure() throws Exception {
+
+		Promise<String> promise = scheduler.schedule(new ScheduledJob<String>(JobFamily.BATCH) {
+			@Override
+			public String doJobWithResult() {
+				throw new IllegalStateException("Failing on purpose");
+			}
+		});
+
+		try {
+			promise.get(10, TimeUnit.SECONDS);
+			fail("The failure of the job was not passed on.");
+		} catch (ExecutionException ee) {
+			/* yay */
+		}
+	}
+
+	/**
+	 * @return The current metrics of a family's pool.
+	 */
+	public PoolMetrics metrics(JobFamily family) {
+		for (PoolMetrics pool : scheduler.getMetrics())
+			if (pool.family == family && !pool.workers)
+				return pool;
+		return null;
+	}
+
+	/**
+	 * @return The current metrics of a family's pool of workers.
+	 */
+	public PoolMetrics workerMetrics(JobFamily family) {
+		for (PoolMetrics pool : scheduler.getMetrics())
+			if (pool.family == family && pool.workers)
+				return pool;
+		return null;
+	}
+
+	/**
+	 * A job which returns the name of the thread it was run on.
+	 */
+	public static class ThreadNameJob extends ScheduledJob<String> {
+
+		public ThreadNameJob(JobFamily family) {
+			super(family);
+		}
+
+		@Override
+		public String doJobWithResult() {
+			return Thread.currentThread().getName();
+		}
+	}
+
+	/**
+	 * A job which records when it is run, optionally waiting on a latch before
+	 * it finishes. Unless the family is given it is a rebuild job.
+	 */
+	public class RecordingJob extends ScheduledJob<String> {
+
+		public final String name;
+		public final CountDownLatch latch;
+
+		public RecordingJob(String name, JobPriority priority, CountDownLatch latch) {
+			this(JobFamily.REBUILD, name, priority, latch);
+		}
+
+		public RecordingJob(JobFamily family, String name, JobPriority priority, CountDownLatch latch) {
+			super(family);
+			this.name = name;
+			this.latch = latch;
+			if (priority != null)
+				setPriority(priority);
+		}
+
+		@Override
+		public String doJobWithResult() throws InterruptedException {
+			ran.add(name);
+			if (latch != null)
+				latch.await();
+			return name;
+		}
+	}
+}
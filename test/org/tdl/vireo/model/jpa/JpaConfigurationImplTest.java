@@ -1,5 +1,7 @@
 package org.tdl.vireo.model.jpa;
 
+import java.util.List;
+
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -281,6 +283,65 @@ public class JpaConfigurationImplTest extends UnitTest {
 		JPA.em().getTransaction().begin();
 	}
 	
+	/**
+	 * Test that committed configuration is served from the snapshot, and that
+	 * the snapshot is replaced once a configuration changes.
+	 */
+	@Test
+	public void testSnapshot() {
+		// Start with a clean transaction.
+		if (JPA.em().getTransaction().getRollbackOnly())
+			JPA.em().getTransaction().rollback();
+		else
+			JPA.em().getTransaction().commit();
+		JPA.em().clear();
+		JPA.em().getTransaction().begin();
+		
+		Configuration config = settingRepo.createConfiguration("snapshot","one").save();
+		
+		// Until committed the change is only read from this transaction.
+		assertNull(settingRepo.getSnapshot());
+		assertEquals("one",settingRepo.getConfigValue("snapshot"));
+		
+		JPA.em().getTransaction().commit();
+		JPA.em().clear();
+		JPA.em().getTransaction().begin();
+		
+		// The first read loads the snapshot, the rest are served from it.
+		assertEquals("one",settingRepo.getConfigValue("snapshot"));
+		long loads = settingRepo.loads;
+		assertEquals("one",settingRepo.getConfigValue("snapshot"));
+		assertNotNull(settingRepo.findConfigurationByName("snapshot"));
+		assertEquals(loads,settingRepo.loads);
+		
+		// Each read is a copy, so modifying one is not seen by anyone else.
+		config = settingRepo.findConfigurationByName("snapshot");
+		assertNotSame(config, settingRepo.findConfigurationByName("snapshot"));
+		config.setValue("two");
+		assertEquals("one",settingRepo.getConfigValue("snapshot"));
+		List<Configuration> all = settingRepo.findAllConfigurations();
+		assertEquals("one",all.get(all.indexOf(config)).getValue());
+		
+		// The copy is merged back in when saved.
+		config = config.save();
+		assertTrue(JPA.em().contains(config));
+		
+		JPA.em().getTransaction().commit();
+		JPA.em().clear();
+		JPA.em().getTransaction().begin();
+		
+		assertEquals("two",settingRepo.getConfigValue("snapshot"));
+		assertEquals(loads+1,settingRepo.loads);
+		
+		settingRepo.findConfigurationByName("snapshot").delete();
+		
+		JPA.em().getTransaction().commit();
+		JPA.em().clear();
+		JPA.em().getTransaction().begin();
+		
+		assertNull(settingRepo.findConfigurationByName("snapshot"));
+	}
+	
 	/**
 	 * Test that managers have access and other don't.
 	 */
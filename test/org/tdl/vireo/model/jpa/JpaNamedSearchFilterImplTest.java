@@ -449,6 +449,55 @@ public class JpaNamedSearchFilterImplTest extends UnitTest {
 		JPA.em().getTransaction().begin();
 	}
 	
+	/**
+	 * Test that the criteria are kept in a single column, and that changing
+	 * only the criteria of an existing filter is saved.
+	 */
+	@Test
+	public void testCriteriaColumn() {
+
+		JpaNamedSearchFilterImpl filter = (JpaNamedSearchFilterImpl) subRepo.createSearchFilter(person, "filter").save();
+		assertEquals(JpaNamedSearchFilterImpl.EMPTY_CRITERIA, filter.criteria);
+		
+		// Commit and reopen a new transaction.
+		JPA.em().flush();
+		JPA.em().getTransaction().commit();
+		JPA.em().clear();
+		JPA.em().getTransaction().begin();
+		
+		Date start = new Date(1000000L);
+		JpaNamedSearchFilterImpl retrieved = (JpaNamedSearchFilterImpl) subRepo.findSearchFilter(filter.getId());
+		retrieved.addDegree("degree");
+		retrieved.addAssignee(null);
+		retrieved.setDateRangeStart(start);
+		retrieved.save();
+		
+		assertTrue(retrieved.criteria.contains("degree"));
+		assertTrue(retrieved.criteria.contains(String.valueOf(start.getTime())));
+		
+		// Commit and reopen a new transaction.
+		JPA.em().flush();
+		JPA.em().getTransaction().commit();
+		JPA.em().clear();
+		JPA.em().getTransaction().begin();
+		
+		retrieved = (JpaNamedSearchFilterImpl) subRepo.findSearchFilter(filter.getId());
+		assertEquals(1,retrieved.getDegrees().size());
+		assertEquals("degree",retrieved.getDegrees().get(0));
+		assertEquals(1,retrieved.getAssignees().size());
+		assertNull(retrieved.getAssignees().get(0));
+		assertEquals(start,retrieved.getDateRangeStart());
+		assertNull(retrieved.getDateRangeEnd());
+		assertNull(retrieved.getUMIRelease());
+		
+		retrieved.delete();
+		
+		// Commit and reopen a new transaction.
+		JPA.em().getTransaction().commit();
+		JPA.em().clear();
+		JPA.em().getTransaction().begin();
+	}
+	
 	/**
 	 * Test that managers can make filters public, others can't
 	 */
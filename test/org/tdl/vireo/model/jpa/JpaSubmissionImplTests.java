@@ -1,5 +1,7 @@
 package org.tdl.vireo.model.jpa;
 
+import java.io.File;
+import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -8,11 +10,15 @@ import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang.LocaleUtils;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 import org.tdl.vireo.model.ActionLog;
+import org.tdl.vireo.model.Attachment;
+import org.tdl.vireo.model.AttachmentType;
+import org.tdl.vireo.model.CommitteeMember;
 import org.tdl.vireo.model.DegreeLevel;
 import org.tdl.vireo.model.EmbargoType;
 import org.tdl.vireo.model.Language;
@@ -191,6 +197,183 @@ public class JpaSubmissionImplTests extends UnitTest {
 		}
 	}
 	
+	/**
+	 * Test finding a list of submissions by id, across several chunks, and
+	 * that they are returned in the same order as the ids.
+	 */
+	@Test
+	public void testFindSubmissions() {
+		
+		List<Submission> subs = new ArrayList<Submission>();
+		for (int i = 0; i < JpaSubmissionRepositoryImpl.FIND_CHUNK_SIZE + 5; i++) {
+			subs.add((Submission) subRepo.createSubmission(person).save());
+		}
+		
+		// Ask for them in reverse order, with a duplicate and a missing id.
+		List<Long> ids = new ArrayList<Long>();
+		for (int i = subs.size() - 1; i >= 0; i--) {
+			ids.add(subs.get(i).getId());
+		}
+		ids.add(subs.get(0).getId());
+		ids.add(-1L);
+		
+		JPA.em().flush();
+		JPA.em().clear();
+		
+		List<Submission> found = subRepo.findSubmissions(ids);
+		assertEquals(subs.size(), found.size());
+		for (int i = 0; i < found.size(); i++) {
+			assertEquals(ids.get(i), found.get(i).getId());
+			assertNotNull(found.get(i).getSubmitter());
+		}
+		
+		for (Submission sub : found) {
+			sub.delete();
+		}
+	}
+	
+	/**
+	 * Test deleting a group of submissions, and everything belonging to them,
+	 * in bulk.
+	 */
+	@Test
+	public void testDeleteSubmissions() throws IOException, InterruptedException {
+		
+		// Commit so the files are only removed by this test's transaction.
+		JPA.em().getTransaction().commit();
+		JPA.em().getTransaction().begin();
+		
+		File file = File.createTempFile("bulk-delete-test", ".dat");
+		FileUtils.writeStringToFile(file, "bulk delete");
+		
+		List<Long> ids = new ArrayList<Long>();
+		List<File> files = new ArrayList<File>();
+		for (int i = 0; i < 3; i++) {
+			Submission sub = subRepo.createSubmission(person);
+			sub.addDocumentSubject("subject");
+			sub.save();
+			
+			CommitteeMember member = sub.addCommitteeMember("first", "last", null);
+			member.addRole("role");
+			member.save();
+			
+			Attachment attachment = sub.addAttachment(file, AttachmentType.SUPPLEMENTAL).save();
+			files.add(attachment.getFile());
+			
+			sub.logAction("bulk delete test").save();
+			ids.add(sub.getId());
+		}
+		
+		// Another submission which is left alone.
+		Submission other = subRepo.createSubmission(person).save();
+		
+		JPA.em().getTransaction().commit();
+		JPA.em().clear();
+		JPA.em().getTransaction().begin();
+		
+		ids.add(-1L);
+		assertEquals(3, subRepo.deleteSubmissions(ids));
+		
+		JPA.em().getTransaction().commit();
+		JPA.em().clear();
+		JPA.em().getTransaction().begin();
+		
+		assertEquals(0, subRepo.findSubmissions(ids).size());
+		assertNotNull(subRepo.findSubmission(other.getId()));
+		assertEquals(0L, JpaCommitteeMemberImpl.count("submission.id IN (?1, ?2, ?3)", ids.get(0), ids.get(1), ids.get(2)));
+		assertEquals(0L, JpaAttachmentImpl.count("submission.id IN (?1, ?2, ?3)", ids.get(0), ids.get(1), ids.get(2)));
+		assertEquals(0L, JpaActionLogImpl.count("submission.id IN (?1, ?2, ?3)", ids.get(0), ids.get(1), ids.get(2)));
+		
+		// The files are removed in the background.
+		for (int i = 0; i < 100 && (files.get(0).exists() || files.get(1).exists() || files.get(2).exists()); i++)
+			Thread.sleep(100);
+		for (File attachmentFile : files)
+			assertFalse(attachmentFile.exists());
+		
+		subRepo.findSubmission(other.getId()).delete();
+		personRepo.findPerson(person.getId()).delete();
+		person = null;
+		file.delete();
+		
+		JPA.em().getTransaction().commit();
+		JPA.em().getTransaction().begin();
+	}
+	
+	/**
+	 * Test that the cached vocabulary of filter options follows submissions as
+	 * they are saved, changed, and deleted, but only once those changes have
+	 * been committed.
+	 */
+	@Test
+	public void testVocabulary() {
+		
+		// Commit the person, so each step below can be committed on its own.
+		JPA.em().getTransaction().commit();
+		JPA.em().getTransaction().begin();
+		
+		// Make sure the cache is loaded.
+		assertFalse(subRepo.findAllDepartments().contains("vocabulary-dept-1"));
+		
+		Submission sub = subRepo.createSubmission(person);
+		sub.setDepartment("vocabulary-dept-1");
+		sub.setGraduationYear(1901);
+		sub.setGraduationMonth(4);
+		sub.save();
+		
+		// Nothing changes until the transaction commits.
+		assertFalse(subRepo.findAllDepartments().contains("vocabulary-dept-1"));
+		commit();
+		
+		assertTrue(subRepo.findAllDepartments().contains("vocabulary-dept-1"));
+		assertTrue(subRepo.findAllGraduationSemesters().contains(new Semester(1901, 4)));
+		
+		// Another submission sharing the same department.
+		Submission other = subRepo.createSubmission(person);
+		other.setDepartment("vocabulary-dept-1");
+		other.save();
+		
+		sub = subRepo.findSubmission(sub.getId());
+		sub.setDepartment("vocabulary-dept-2");
+		sub.save();
+		commit();
+		
+		assertTrue(subRepo.findAllDepartments().contains("vocabulary-dept-1"));
+		assertTrue(subRepo.findAllDepartments().contains("vocabulary-dept-2"));
+		
+		// A change which is rolled back is never seen.
+		sub = subRepo.findSubmission(sub.getId());
+		sub.setDepartment("vocabulary-dept-3");
+		sub.save();
+		JPA.em().getTransaction().rollback();
+		JPA.em().clear();
+		JPA.em().getTransaction().begin();
+		
+		assertFalse(subRepo.findAllDepartments().contains("vocabulary-dept-3"));
+		assertTrue(subRepo.findAllDepartments().contains("vocabulary-dept-2"));
+		
+		subRepo.findSubmission(other.getId()).delete();
+		commit();
+		assertFalse(subRepo.findAllDepartments().contains("vocabulary-dept-1"));
+		
+		subRepo.findSubmission(sub.getId()).delete();
+		commit();
+		assertFalse(subRepo.findAllDepartments().contains("vocabulary-dept-2"));
+		assertFalse(subRepo.findAllGraduationSemesters().contains(new Semester(1901, 4)));
+		
+		personRepo.findPerson(person.getId()).delete();
+		person = null;
+		commit();
+	}
+	
+	/**
+	 * Commit the current transaction, and start a new one.
+	 */
+	protected static void commit() {
+		JPA.em().getTransaction().commit();
+		JPA.em().clear();
+		JPA.em().getTransaction().begin();
+	}
+	
 	/**
 	 * Test find total # of submissions 
 	 */
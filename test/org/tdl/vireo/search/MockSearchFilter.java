@@ -40,6 +40,11 @@ public class MockSearchFilter implements SearchFilter {
 		return includedSubmissions;
 	}
 
+	@Override
+	public IdSet getIncludedSubmissionIds() {
+		return IdSet.ofModels(includedSubmissions);
+	}
+
 	@Override
 	public void addIncludedSubmission(Submission sub) {
 		includedSubmissions.add(sub);
@@ -55,6 +60,11 @@ public class MockSearchFilter implements SearchFilter {
 		return excludedSubmissions;
 	}
 
+	@Override
+	public IdSet getExcludedSubmissionIds() {
+		return IdSet.ofModels(excludedSubmissions);
+	}
+
 	@Override
 	public void addExcludedSubmission(Submission sub) {
 		excludedSubmissions.add(sub);
@@ -70,6 +80,11 @@ public class MockSearchFilter implements SearchFilter {
 		return includedActionLogs;
 	}
 
+	@Override
+	public IdSet getIncludedActionLogIds() {
+		return IdSet.ofModels(includedActionLogs);
+	}
+
 	@Override
 	public void addIncludedActionLog(ActionLog log) {
 		includedActionLogs.add(log);
@@ -85,6 +100,11 @@ public class MockSearchFilter implements SearchFilter {
 		return excludedActionLogs;
 	}
 
+	@Override
+	public IdSet getExcludedActionLogIds() {
+		return IdSet.ofModels(excludedActionLogs);
+	}
+
 	@Override
 	public void addExcludedActionLog(ActionLog log) {
 		excludedActionLogs.add(log);
@@ -20,6 +20,8 @@ public class MockSearchResults<T extends AbstractModel> implements
 	public int limit;
 	public List<T> results = new ArrayList<T>();
 	public int total;
+	public String nextCursor;
+	public String previousCursor;
 
 	@Override
 	public SearchFilter getFilter() {
@@ -51,11 +53,26 @@ public class MockSearchResults<T extends AbstractModel> implements
 		return results;
 	}
 
+	@Override
+	public List<SearchRow> getRows(List<SearchOrder> columns) {
+		return null;
+	}
+
 	@Override
 	public int getTotal() {
 		return total;
 	}
 
+	@Override
+	public String getNextCursor() {
+		return nextCursor;
+	}
+
+	@Override
+	public String getPreviousCursor() {
+		return previousCursor;
+	}
+
 	@Override
 	public List<org.tdl.vireo.search.SearchResult.Pagination> getPagination(
 			int windowSize) {
@@ -1,8 +1,10 @@
 package org.tdl.vireo.search;
 
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 
 import org.tdl.vireo.model.ActionLog;
 import org.tdl.vireo.model.Attachment;
@@ -73,6 +75,36 @@ public class MockSearcher implements Searcher {
 		return results;
 	}
 
+	@Override
+	public SearchResult<Submission> submissionSearch(SearchFilter filter,
+			SearchOrder orderBy, SearchDirection direction, String cursor,
+			int limit) {
+		// The mock cursor is just the offset.
+		int offset = (cursor == null) ? 0 : Integer.valueOf(cursor);
+		return submissionSearch(filter, orderBy, direction, offset, limit);
+	}
+
+	@Override
+	public SearchResult<ActionLog> actionLogSearch(SearchFilter filter,
+			SearchOrder orderBy, SearchDirection direction, String cursor,
+			int limit) {
+		// The mock cursor is just the offset.
+		int offset = (cursor == null) ? 0 : Integer.valueOf(cursor);
+		return actionLogSearch(filter, orderBy, direction, offset, limit);
+	}
+
+	@Override
+	public Map<SearchFacet, Map<String, Integer>> submissionFacetCounts(
+			SearchFilter filter, List<SearchFacet> facets) {
+		return new HashMap<SearchFacet, Map<String, Integer>>();
+	}
+
+	@Override
+	public Map<SearchFacet, Map<String, Integer>> actionLogFacetCounts(
+			SearchFilter filter, List<SearchFacet> facets) {
+		return new HashMap<SearchFacet, Map<String, Integer>>();
+	}
+
 //	@Override
 //	public Iterator<Submission> submissionSearch(SearchFilter filter,
 //			SearchOrder orderBy, SearchDirection direction) {
@@ -134,7 +166,26 @@ public class MockSearcher implements Searcher {
 
 		@Override
 		public List<Submission> findSubmissions(List<Long> submissionIds) {
-			return null;
+			
+			List<Submission> found = new ArrayList<Submission>();
+			for (MockSubmission sub : submissions) {
+				if (submissionIds.contains(sub.getId()))
+					found.add(sub);
+			}
+			
+			return found;
+		}
+
+		@Override
+		public int deleteSubmissions(List<Long> submissionIds) {
+			
+			int deleted = 0;
+			for (Submission sub : findSubmissions(submissionIds)) {
+				sub.delete();
+				deleted++;
+			}
+			
+			return deleted;
 		}
 
 		@Override
@@ -152,6 +203,11 @@ public class MockSearcher implements Searcher {
 			return null;
 		}
 
+		@Override
+		public List<Long> findAllSubmissionIds() {
+			return null;
+		}
+
 		@Override
 		public long findSubmissionsTotal() {
 			return 0;
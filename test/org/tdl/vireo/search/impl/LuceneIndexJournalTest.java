@@ -0,0 +1,140 @@
+package org.tdl.vireo.search.impl;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import play.test.UnitTest;
+
+/**
+ * Test the search index journal.
+ */
+public class LuceneIndexJournalTest extends UnitTest {
+
+	public File file;
+	
+	@Before
+	public void setup() throws IOException {
+		file = File.createTempFile("index", ".journal");
+		file.delete();
+	}
+	
+	@After
+	public void cleanup() {
+		file.delete();
+	}
+	
+	/**
+	 * Test that appended entries can be read back, including any action logs.
+	 */
+	@Test
+	public void testAppendAndRead() throws IOException {
+		
+		LuceneIndexJournal journal = new LuceneIndexJournal(file);
+		assertEquals(0L, journal.getPosition());
+		
+		Map<Long, Set<Long>> logs = new HashMap<Long, Set<Long>>();
+		logs.put(2L, new HashSet<Long>());
+		logs.get(2L).add(20L);
+		
+		long first = journal.append(ids(1L, 2L), logs);
+		assertTrue(first > 0);
+		long second = journal.append(ids(3L), null);
+		assertTrue(second > first);
+		
+		// A new journal over the same file sees all the entries.
+		Set<Long> subIds = new HashSet<Long>();
+		Map<Long, Set<Long>> logIds = new HashMap<Long, Set<Long>>();
+		new LuceneIndexJournal(file).read(subIds, logIds);
+		
+		assertEquals(ids(1L, 2L, 3L), subIds);
+		assertEquals(1, logIds.size());
+		assertTrue(logIds.get(2L).contains(20L));
+	}
+	
+	/**
+	 * Test that an entry which has not been given to a job yet holds back the
+	 * indexed position, even after later entries have been indexed.
+	 */
+	@Test
+	public void testUnassigned() throws IOException {
+		
+		LuceneIndexJournal journal = new LuceneIndexJournal(file);
+		long first = journal.append(ids(1L), null);
+		long second = journal.append(ids(2L), null);
+		journal.assigned(second);
+		
+		// The second entry's job finished first, but the first entry starts at zero.
+		assertEquals(0L, journal.indexable(second));
+		
+		journal.assigned(first);
+		assertEquals(second, journal.indexable(second));
+		
+		// Syncing something already on disk does nothing.
+		journal.sync(first);
+		journal.close();
+	}
+	
+	/**
+	 * Test that committed entries are discarded while pending entries remain.
+	 */
+	@Test
+	public void testDiscard() throws IOException {
+		
+		LuceneIndexJournal journal = new LuceneIndexJournal(file);
+		long first = journal.append(ids(1L), null);
+		long second = journal.append(ids(2L), null);
+		
+		journal.discard(first);
+		assertEquals(second, journal.getPosition());
+		
+		Set<Long> subIds = new HashSet<Long>();
+		journal.read(subIds, new HashMap<Long, Set<Long>>());
+		assertEquals(ids(2L), subIds);
+		
+		// Positions keep increasing after a discard.
+		long third = journal.append(ids(3L), null);
+		assertTrue(third > second);
+		
+		journal.discard(third);
+		assertEquals(0L, file.length());
+		assertEquals(third, journal.getPosition());
+	}
+	
+	/**
+	 * Test that a partially written entry is ignored, and does not corrupt the
+	 * entries appended after it.
+	 */
+	@Test
+	public void testPartialEntry() throws IOException {
+		
+		FileOutputStream out = new FileOutputStream(file);
+		out.write("1\n2".getBytes("US-ASCII"));
+		out.close();
+		
+		LuceneIndexJournal journal = new LuceneIndexJournal(file);
+		journal.append(ids(3L), null);
+		
+		Set<Long> subIds = new HashSet<Long>();
+		journal.read(subIds, new HashMap<Long, Set<Long>>());
+		assertEquals(ids(1L, 2L, 3L), subIds);
+	}
+	
+	/**
+	 * @return A set of the provided ids.
+	 */
+	private static Set<Long> ids(Long... ids) {
+		Set<Long> set = new HashSet<Long>();
+		for (Long id : ids)
+			set.add(id);
+		return set;
+	}
+}
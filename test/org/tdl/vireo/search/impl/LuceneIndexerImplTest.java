@@ -4,11 +4,15 @@ import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.lucene.document.Document;
 import org.apache.lucene.index.CorruptIndexException;
 import org.apache.lucene.index.IndexReader;
 import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause.Occur;
+import org.apache.lucene.search.BooleanQuery;
 import org.apache.lucene.search.IndexSearcher;
 import org.apache.lucene.search.Query;
 import org.apache.lucene.search.TermQuery;
@@ -128,7 +132,9 @@ public class LuceneIndexerImplTest extends UnitTest {
 		log.submission = sub;
 		indexer.updated(log);
 		assertTrue(indexer.transactionLocal.get().contains(sub.getId()));
+		assertTrue(indexer.logTransactionLocal.get().get(sub.getId()).contains(log.getId()));
 		indexer.rollback();
+		assertNull(indexer.logTransactionLocal.get());
 	}
 	
 	/**
@@ -234,5 +240,182 @@ public class LuceneIndexerImplTest extends UnitTest {
 		assertEquals(String.valueOf(sub.getId()),doc.get("subId"));
 	}
 	
+	/**
+	 * Test that the index may be searched and updated while it is being
+	 * rebuilt, and that the updates are carried into the rebuilt index.
+	 */
+	@Test
+	public void testRebuildWhileUpdating() throws Exception {
+		
+		Submission sub = subRepo.createSubmission(person);
+		sub.setDepartment("Before Rebuild");
+		sub.save();
+		subs.add(sub);
+		
+		JPA.em().getTransaction().commit();
+		JPA.em().getTransaction().begin();
+		indexer.commit(true);
+		indexer.rollback();
+		
+		// Start rebuilding, and update the submission while it runs.
+		Future<Void> rebuild = indexer.rebuild(false);
+		assertTrue(indexer.isJobRunning());
+		
+		sub = subRepo.findSubmission(sub.getId());
+		sub.setDepartment("During Rebuild");
+		sub.save();
+		
+		JPA.em().getTransaction().commit();
+		JPA.em().getTransaction().begin();
+		indexer.commit(false);
+		indexer.rollback();
+		
+		// The live index is still searchable.
+		assertEquals(1, countDepartment("Before Rebuild") + countDepartment("During Rebuild"));
+		
+		rebuild.get(60, TimeUnit.SECONDS);
+		indexer.commit(true);
+		
+		assertFalse(indexer.rebuildFile.exists());
+		assertEquals(0, countDepartment("Before Rebuild"));
+		assertEquals(1, countDepartment("During Rebuild"));
+	}
+	
+	/**
+	 * @return The number of submissions in the index with the department.
+	 */
+	private int countDepartment(String department) throws IOException {
+		BooleanQuery query = new BooleanQuery();
+		query.add(new TermQuery(new Term("type", "submission")), Occur.MUST);
+		query.add(new TermQuery(new Term("department", department)), Occur.MUST);
+		
+		IndexSearcher searcher = indexer.acquireSearcher();
+		try {
+			return searcher.search(query, 1).totalHits;
+		} finally {
+			indexer.releaseSearcher(searcher);
+		}
+	}
+	
+	/**
+	 * Test that new action logs are added to the index on their own, and that
+	 * all the logs are rewritten once the submission fields copied onto them
+	 * change.
+	 */
+	@Test
+	public void testActionLogUpdate() throws CorruptIndexException, IOException, InterruptedException {
+		
+		Submission sub = subRepo.createSubmission(person);
+		sub.setDepartment("Original Department");
+		sub.save();
+		subs.add(sub);
+		sub.logAction("first");
+		sub.save();
+		
+		JPA.em().getTransaction().commit();
+		JPA.em().getTransaction().begin();
+		indexer.commit(true);
+		indexer.rollback();
+		
+		String signature = getSignature(sub.getId());
+		assertNotNull(signature);
+		int logs = countActionLogs(sub.getId(), null);
+		assertTrue(logs > 0);
+		
+		// Adding a log should not change the signature.
+		sub = subRepo.findSubmission(sub.getId());
+		sub.logAction("second");
+		sub.save();
+		
+		JPA.em().getTransaction().commit();
+		JPA.em().getTransaction().begin();
+		indexer.commit(true);
+		indexer.rollback();
+		
+		assertEquals(signature, getSignature(sub.getId()));
+		assertEquals(logs + 1, countActionLogs(sub.getId(), null));
+		assertEquals(0, countActionLogs(sub.getId(), "Changed Department"));
+		
+		// Changing the department should rewrite every log.
+		sub = subRepo.findSubmission(sub.getId());
+		sub.setDepartment("Changed Department");
+		sub.save();
+		
+		JPA.em().getTransaction().commit();
+		JPA.em().getTransaction().begin();
+		indexer.commit(true);
+		indexer.rollback();
+		
+		assertFalse(signature.equals(getSignature(sub.getId())));
+		int total = countActionLogs(sub.getId(), null);
+		assertTrue(total > logs + 1);
+		assertEquals(total, countActionLogs(sub.getId(), "Changed Department"));
+	}
+	
+	/**
+	 * @return The log signature stored with the submission's document.
+	 */
+	private String getSignature(Long subId) throws IOException {
+		IndexSearcher searcher = indexer.acquireSearcher();
+		try {
+			return LuceneUpdateJob.getLogSignature(searcher, subId);
+		} finally {
+			indexer.releaseSearcher(searcher);
+		}
+	}
+	
+	/**
+	 * @return The number of action log documents for the submission,
+	 *         optionally restricted to a department.
+	 */
+	private int countActionLogs(Long subId, String department) throws IOException {
+		BooleanQuery query = (BooleanQuery) LuceneAbstractJobImpl.actionLogQuery(subId);
+		if (department != null)
+			query.add(new TermQuery(new Term("department", department)), Occur.MUST);
+		
+		IndexSearcher searcher = indexer.acquireSearcher();
+		try {
+			return searcher.search(query, 1).totalHits;
+		} finally {
+			indexer.releaseSearcher(searcher);
+		}
+	}
+	
+	/**
+	 * Test that the shared searcher is reused between searches, and refreshed
+	 * once an index job has completed.
+	 */
+	@Test
+	public void testSharedSearcher() throws CorruptIndexException, IOException, InterruptedException {
+		
+		// Two searches without any changes should share the same reader.
+		IndexSearcher first = indexer.acquireSearcher();
+		IndexSearcher second = indexer.acquireSearcher();
+		try {
+			assertNotNull(first);
+			assertSame(first.getIndexReader(), second.getIndexReader());
+		} finally {
+			indexer.releaseSearcher(first);
+			indexer.releaseSearcher(second);
+		}
+		
+		// Update the index, and wait for it to complete.
+		Submission sub = subRepo.findAllSubmissions().next();
+		indexer.updated(sub);
+		indexer.commit(true);
+		assertFalse(indexer.isJobRunning());
+		
+		// The searcher should now have been refreshed.
+		IndexSearcher third = indexer.acquireSearcher();
+		try {
+			assertNotSame(first.getIndexReader(), third.getIndexReader());
+			
+			Query query = new TermQuery(new Term("subId",NumericUtils.longToPrefixCoded(sub.getId())));
+			TopDocs topDocs = third.search(query, 1);
+			assertTrue(topDocs.totalHits > 0);
+		} finally {
+			indexer.releaseSearcher(third);
+		}
+	}
 	
 }
@@ -4,12 +4,19 @@ import java.io.File;
 import java.io.IOException;
 import java.text.DateFormat;
 import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Calendar;
 import java.util.Date;
 import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.ConstantScoreQuery;
+import org.apache.lucene.search.TermQuery;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -22,13 +29,18 @@ import org.tdl.vireo.model.NamedSearchFilter;
 import org.tdl.vireo.model.Person;
 import org.tdl.vireo.model.RoleType;
 import org.tdl.vireo.model.Submission;
+import org.tdl.vireo.model.jpa.JpaNamedSearchFilterImpl;
 import org.tdl.vireo.model.jpa.JpaPersonRepositoryImpl;
 import org.tdl.vireo.model.jpa.JpaSettingsRepositoryImpl;
 import org.tdl.vireo.model.jpa.JpaSubmissionRepositoryImpl;
+import org.tdl.vireo.search.IdSet;
 import org.tdl.vireo.search.Indexer;
 import org.tdl.vireo.search.SearchDirection;
+import org.tdl.vireo.search.SearchFacet;
 import org.tdl.vireo.search.SearchFilter;
 import org.tdl.vireo.search.SearchOrder;
+import org.tdl.vireo.search.SearchResult;
+import org.tdl.vireo.search.SearchRow;
 import org.tdl.vireo.search.Searcher;
 import org.tdl.vireo.security.SecurityContext;
 import org.tdl.vireo.state.StateManager;
@@ -139,6 +151,318 @@ public class LuceneSearcherImplTest extends UnitTest{
 		assertEquals(total,(int)sortedIds.length);
 	}
 	
+	/**
+	 * Test that the id searches return the same ids in either direction, and
+	 * when sorted by a field other than the id.
+	 */
+	@Test
+	public void testIDSearchOrders() {
+		
+		SearchFilter filter = Spring.getBeanOfType(UriActiveSearchFilterImpl.class);
+		
+		long[] ascending = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.ASCENDING);
+		long[] descending = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.DESCENDING);
+		long[] byState = searcher.submissionSearch(filter, SearchOrder.STATE, SearchDirection.ASCENDING);
+		
+		assertEquals(ascending.length, descending.length);
+		assertEquals(ascending.length, byState.length);
+		for (int i = 0; i < ascending.length; i++) {
+			assertEquals(ascending[i], descending[descending.length - 1 - i]);
+		}
+		
+		long[] sortedByState = byState.clone();
+		Arrays.sort(sortedByState);
+		assertTrue(Arrays.equals(ascending, sortedByState));
+	}
+	
+	/**
+	 * Test that paging through the results with cursors, in both directions,
+	 * produces the same pages as paging by offset.
+	 */
+	@Test
+	public void testCursorPaging() {
+		
+		SearchFilter filter = Spring.getBeanOfType(UriActiveSearchFilterImpl.class);
+		
+		SearchOrder[] orders = {SearchOrder.ID, SearchOrder.STATE, SearchOrder.STUDENT_NAME, SearchOrder.SUBMISSION_DATE, SearchOrder.CUSTOM_ACTIONS};
+		SearchDirection[] directions = {SearchDirection.ASCENDING, SearchDirection.DESCENDING};
+		int limit = 3;
+		
+		for (SearchOrder order : orders) {
+			for (SearchDirection direction : directions) {
+				
+				// Walk forward to the last page.
+				SearchResult<Submission> page = searcher.submissionSearch(filter, order, direction, (String) null, limit);
+				assertEquals(0, page.getOffset());
+				assertNull(page.getPreviousCursor());
+				
+				List<SearchResult<Submission>> pages = new ArrayList<SearchResult<Submission>>();
+				pages.add(page);
+				while (page.getNextCursor() != null) {
+					page = searcher.submissionSearch(filter, order, direction, page.getNextCursor(), limit);
+					pages.add(page);
+				}
+				
+				// Each page should match the same page by offset.
+				for (SearchResult<Submission> cursorPage : pages) {
+					SearchResult<Submission> offsetPage = searcher.submissionSearch(filter, order, direction, cursorPage.getOffset(), limit);
+					assertEquals(offsetPage.getTotal(), cursorPage.getTotal());
+					assertEquals(offsetPage.getResults(), cursorPage.getResults());
+				}
+				assertEquals(subRepo.findSubmissionsTotal(), (long) (page.getOffset() + page.getResults().size()));
+				
+				// Then walk back to the first page.
+				for (int i = pages.size() - 2; i >= 0; i--) {
+					page = searcher.submissionSearch(filter, order, direction, page.getPreviousCursor(), limit);
+					assertEquals(pages.get(i).getOffset(), page.getOffset());
+					assertEquals(pages.get(i).getResults(), page.getResults());
+				}
+				assertNull(page.getPreviousCursor());
+			}
+		}
+		
+		// Cursors from a different order start over at the first page.
+		SearchResult<Submission> first = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.ASCENDING, (String) null, limit);
+		SearchResult<Submission> other = searcher.submissionSearch(filter, SearchOrder.STATE, SearchDirection.ASCENDING, first.getNextCursor(), limit);
+		assertEquals(0, other.getOffset());
+		
+		// Bogus cursors also start over at the first page.
+		other = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.ASCENDING, "bogus", limit);
+		assertEquals(0, other.getOffset());
+		assertEquals(first.getResults(), other.getResults());
+	}
+
+	/**
+	 * Test that filters including or excluding thousands of submissions, more
+	 * than a boolean query could hold as separate clauses, still find the
+	 * right results.
+	 */
+	@Test
+	public void testLargeIdSelection() {
+
+		IdSet ids = IdSet.of(Arrays.asList(5L, 3L, null, 5L, 1L));
+		assertEquals(3, ids.size());
+		assertTrue(Arrays.equals(new long[] {1L, 3L, 5L}, ids.toArray()));
+		assertTrue(ids.contains(3L));
+		assertFalse(ids.contains(4L));
+
+		long[] all = searcher.submissionSearch(Spring.getBeanOfType(UriActiveSearchFilterImpl.class), SearchOrder.ID, SearchDirection.ASCENDING);
+		assertTrue(all.length > 1);
+
+		// Pad the selections with ids which do not exist.
+		long bogus = all[all.length - 1] + 1;
+
+		JpaNamedSearchFilterImpl filter = (JpaNamedSearchFilterImpl) subRepo.createSearchFilter(person, "test-ids");
+		try {
+			for (long id : all)
+				filter.includedSubmissionIds.add(id);
+			for (int i = 0; i < 5000; i++)
+				filter.includedSubmissionIds.add(bogus + i);
+
+			long[] included = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.ASCENDING);
+			assertTrue(Arrays.equals(all, included));
+
+			// Exclude the first half.
+			int half = all.length / 2;
+			for (int i = 0; i < half; i++)
+				filter.excludedSubmissionIds.add(all[i]);
+			for (int i = 0; i < 5000; i++)
+				filter.excludedSubmissionIds.add(bogus + i);
+
+			long[] remaining = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.ASCENDING);
+			assertTrue(Arrays.equals(Arrays.copyOfRange(all, half, all.length), remaining));
+		} finally {
+			if (filter.getId() != null)
+				filter.delete();
+		}
+	}
+
+	/**
+	 * Test that equal filter clauses share the same cached filter, and that
+	 * searching through the cached filters finds the same results.
+	 */
+	@Test
+	public void testFilterCache() {
+
+		LuceneSearcherImpl impl = Spring.getBeanOfType(LuceneSearcherImpl.class);
+
+		ConstantScoreQuery first = (ConstantScoreQuery) impl.filterQuery(new TermQuery(new Term("type", "submission")));
+		ConstantScoreQuery second = (ConstantScoreQuery) impl.filterQuery(new TermQuery(new Term("type", "submission")));
+		ConstantScoreQuery other = (ConstantScoreQuery) impl.filterQuery(new TermQuery(new Term("type", "actionlog")));
+		assertSame(first.getFilter(), second.getFilter());
+		assertNotSame(first.getFilter(), other.getFilter());
+
+		SearchFilter filter = Spring.getBeanOfType(UriActiveSearchFilterImpl.class);
+		for (int i = 0; i < 2; i++) {
+			long[] ids = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.ASCENDING);
+			assertEquals(subRepo.findSubmissionsTotal(), (long) ids.length);
+		}
+	}
+
+	/**
+	 * Test that repeating a search is answered from the cache, until the index
+	 * changes.
+	 */
+	@Test
+	public void testSearchCache() {
+
+		LuceneSearcherImpl.SearchPageCache cache = Spring.getBeanOfType(LuceneSearcherImpl.class).cache;
+		SearchFilter filter = Spring.getBeanOfType(UriActiveSearchFilterImpl.class);
+
+		SearchResult<Submission> first = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.DESCENDING, 0, 20);
+		long hits = cache.getHits();
+		long misses = cache.getMisses();
+
+		SearchResult<Submission> second = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.DESCENDING, 0, 20);
+		assertEquals(hits + 1, cache.getHits());
+		assertEquals(misses, cache.getMisses());
+		assertEquals(first.getTotal(), second.getTotal());
+		assertEquals(first.getResults(), second.getResults());
+
+		// A different page is searched on it's own.
+		searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.DESCENDING, 20, 20);
+		assertEquals(misses + 1, cache.getMisses());
+
+		// Once the index changes the search is run again.
+		Submission sub = subRepo.createSubmission(person).save();
+		JPA.em().getTransaction().commit();
+		JPA.em().getTransaction().begin();
+		indexer.commit(true);
+		indexer.rollback();
+
+		try {
+			SearchResult<Submission> third = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.DESCENDING, 0, 20);
+			assertEquals(misses + 2, cache.getMisses());
+			assertEquals(first.getTotal() + 1, third.getTotal());
+			assertEquals(sub, third.getResults().get(0));
+		} finally {
+			subRepo.findSubmission(sub.getId()).delete();
+		}
+	}
+
+	/**
+	 * Test that a submission deleted before the index has been updated is left
+	 * out of the results, rather than appearing as a null.
+	 */
+	@Test
+	public void testDeletedResults() {
+		
+		SearchFilter filter = Spring.getBeanOfType(UriActiveSearchFilterImpl.class);
+		
+		Submission sub = subRepo.createSubmission(person).save();
+		JPA.em().getTransaction().commit();
+		JPA.em().getTransaction().begin();
+		indexer.commit(true);
+		indexer.rollback();
+		
+		SearchResult<Submission> before = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.DESCENDING, 0, 20);
+		assertEquals(sub, before.getResults().get(0));
+		
+		// Delete the submission, but leave it in the index.
+		subRepo.findSubmission(sub.getId()).delete();
+		JPA.em().getTransaction().commit();
+		JPA.em().clear();
+		JPA.em().getTransaction().begin();
+		indexer.rollback();
+		
+		SearchResult<Submission> after = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.DESCENDING, 0, 20);
+		assertEquals(before.getResults().size() - 1, after.getResults().size());
+		for (Submission result : after.getResults()) {
+			assertNotNull(result);
+			assertFalse(sub.getId().equals(result.getId()));
+		}
+	}
+	
+	/**
+	 * Test that once the index stores the listed columns, each page of results
+	 * can be displayed from the index alone and matches the rows rendered from
+	 * the submissions and action logs themselves.
+	 */
+	@Test
+	public void testStoredRows() {
+		
+		Set<SearchOrder> rowColumns = Spring.getBeanOfType(LuceneIndexerImpl.class).rowColumns;
+		List<SearchOrder> columns = Arrays.asList(SearchOrder.ID, SearchOrder.STUDENT_NAME, SearchOrder.STATE, SearchOrder.DEGREE, SearchOrder.LAST_EVENT_ENTRY);
+		SearchFilter filter = Spring.getBeanOfType(UriActiveSearchFilterImpl.class);
+		
+		// Without any stored rows the results have to be loaded.
+		assertNull(searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.ASCENDING, 0, 20).getRows(columns));
+		
+		rowColumns.addAll(columns);
+		try {
+			indexer.rebuild(true);
+			
+			SearchResult<Submission> subs = searcher.submissionSearch(filter, SearchOrder.ID, SearchDirection.ASCENDING, 0, 20);
+			List<SearchRow> rows = subs.getRows(columns);
+			assertNotNull(rows);
+			assertNull(subs.getRows(Arrays.asList(SearchOrder.DOCUMENT_ABSTRACT)));
+			assertEquals(subs.getResults().size(), rows.size());
+			for (int i = 0; i < rows.size(); i++) {
+				SearchRow expected = SearchRow.of(subs.getResults().get(i), null, columns);
+				assertEquals(expected.subId, rows.get(i).subId);
+				assertNull(rows.get(i).logId);
+				assertEquals(expected.cells, rows.get(i).cells);
+			}
+			
+			SearchResult<ActionLog> logs = searcher.actionLogSearch(filter, SearchOrder.ID, SearchDirection.ASCENDING, 0, 20);
+			rows = logs.getRows(columns);
+			assertNotNull(rows);
+			assertEquals(logs.getResults().size(), rows.size());
+			for (int i = 0; i < rows.size(); i++) {
+				ActionLog log = logs.getResults().get(i);
+				SearchRow expected = SearchRow.of(log.getSubmission(), log, columns);
+				assertEquals(expected.subId, rows.get(i).subId);
+				assertEquals(expected.logId, rows.get(i).logId);
+				assertEquals(expected.privateLog, rows.get(i).privateLog);
+				assertEquals(expected.cells, rows.get(i).cells);
+			}
+		} finally {
+			rowColumns.clear();
+			indexer.rebuild(true);
+		}
+	}
+
+	/**
+	 * Test that the facet counts match the number of results when each value
+	 * is added to the filter, and that a facet's counts ignore the filter's
+	 * own values for that facet.
+	 */
+	@Test
+	public void testFacetCounts() {
+		
+		List<SearchFacet> facets = Arrays.asList(SearchFacet.DEPARTMENT, SearchFacet.COLLEGE, SearchFacet.STATE, SearchFacet.TEXT);
+		
+		SearchFilter filter = Spring.getBeanOfType(UriActiveSearchFilterImpl.class);
+		Map<SearchFacet, Map<String, Integer>> counts = searcher.submissionFacetCounts(filter, facets);
+		
+		// Facets which are not value lists are not counted.
+		assertFalse(counts.containsKey(SearchFacet.TEXT));
+		assertTrue(counts.get(SearchFacet.DEPARTMENT).size() > 0);
+		
+		int checked = 0;
+		for (String department : counts.get(SearchFacet.DEPARTMENT).keySet()) {
+			if (checked++ > 5)
+				break;
+			
+			SearchFilter departmentFilter = Spring.getBeanOfType(UriActiveSearchFilterImpl.class);
+			departmentFilter.addDepartment(department);
+			
+			int total = searcher.submissionSearch(departmentFilter, SearchOrder.ID, SearchDirection.ASCENDING, 0, 1).getTotal();
+			assertEquals((int) counts.get(SearchFacet.DEPARTMENT).get(department), total);
+			
+			// The department counts don't change, but the others are narrowed.
+			Map<SearchFacet, Map<String, Integer>> narrowed = searcher.submissionFacetCounts(departmentFilter, facets);
+			assertEquals(counts.get(SearchFacet.DEPARTMENT), narrowed.get(SearchFacet.DEPARTMENT));
+			
+			int stateTotal = 0;
+			for (Map.Entry<String, Integer> entry : narrowed.get(SearchFacet.STATE).entrySet()) {
+				assertNotNull(stateManager.getState(entry.getKey()));
+				stateTotal += entry.getValue();
+			}
+			assertEquals(total, stateTotal);
+		}
+	}
+	
 	/**
 	 * Okay, there is almost literally is an infinite number of search filters
 	 * that we could test. Instead of testing each combination I'm just going to
@@ -531,4 +531,33 @@ public class UriActiveSearchFilterImplTest extends UnitTest {
 		
 	}
 	
+	/**
+	 * Test that decoding a filter does not load the selected submissions until
+	 * they are actually used.
+	 */
+	@Test
+	public void testLazyDecode() {
+		
+		UriActiveSearchFilterImpl empty = Spring.getBeanOfType(UriActiveSearchFilterImpl.class);
+		String encoded = ":999999999,999999998,999999999"+empty.encode().substring(1);
+		
+		UriActiveSearchFilterImpl filter = Spring.getBeanOfType(UriActiveSearchFilterImpl.class);
+		filter.decode(encoded);
+		
+		LazyModelList<Submission> included = (LazyModelList<Submission>) filter.getIncludedSubmissions();
+		assertFalse(included.isLoaded());
+		assertEquals(3, included.size());
+		assertEquals(2, filter.getIncludedSubmissionIds().size());
+		assertTrue(filter.getIncludedSubmissionIds().contains(999999998L));
+		
+		// Encoding the filter should not load anything either.
+		assertEquals(encoded, filter.encode());
+		assertFalse(included.isLoaded());
+		
+		// Once they are used they are all loaded together.
+		assertNull(included.get(0));
+		assertTrue(included.isLoaded());
+		assertEquals(3, included.size());
+	}
+	
 }